@@ -31,16 +31,22 @@ import io.cassandrareaper.resources.SnapshotResource;
 import io.cassandrareaper.resources.auth.LoginResource;
 import io.cassandrareaper.resources.auth.ShiroExceptionMapper;
 import io.cassandrareaper.resources.auth.ShiroJwtProvider;
+import io.cassandrareaper.resources.auth.ShiroJwtVerifyingFilter;
 import io.cassandrareaper.service.AutoSchedulingManager;
 import io.cassandrareaper.service.PurgeService;
 import io.cassandrareaper.service.RepairManager;
 import io.cassandrareaper.service.SchedulingManager;
+import io.cassandrareaper.service.StatusViewCache;
 import io.cassandrareaper.storage.CassandraStorage;
 import io.cassandrareaper.storage.IDistributedStorage;
 import io.cassandrareaper.storage.IStorage;
+import io.cassandrareaper.storage.InstrumentedStorage;
 import io.cassandrareaper.storage.MemoryStorage;
+import io.cassandrareaper.storage.ObservedStorage;
 import io.cassandrareaper.storage.PostgresStorage;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
@@ -170,6 +176,9 @@ public final class ReaperApplication extends Application<ReaperApplicationConfig
         TimeUnit.SECONDS);
 
     tryInitializeStorage(config, environment);
+    // the run and schedule views get updated as the storage is mutated
+    final StatusViewCache statusViews = StatusViewCache.create(context);
+    context.storage = ObservedStorage.create(context.storage, statusViews);
 
     if (context.jmxConnectionFactory == null) {
       LOG.info("no JMX connection factory given in context, creating default");
@@ -223,9 +232,9 @@ public final class ReaperApplication extends Application<ReaperApplicationConfig
         environment.lifecycle().executorService("SnapshotManager").minThreads(6).maxThreads(6).build());
 
     environment.jersey().register(addClusterResource);
-    final RepairRunResource addRepairRunResource = new RepairRunResource(context);
+    final RepairRunResource addRepairRunResource = new RepairRunResource(context, statusViews);
     environment.jersey().register(addRepairRunResource);
-    final RepairScheduleResource addRepairScheduleResource = new RepairScheduleResource(context);
+    final RepairScheduleResource addRepairScheduleResource = new RepairScheduleResource(context, statusViews);
     environment.jersey().register(addRepairScheduleResource);
     final SnapshotResource snapshotResource = new SnapshotResource(context, environment);
     environment.jersey().register(snapshotResource);
@@ -241,6 +250,7 @@ public final class ReaperApplication extends Application<ReaperApplicationConfig
       environment.jersey().register(new ShiroExceptionMapper());
       environment.jersey().register(new LoginResource());
       environment.jersey().register(new ShiroJwtProvider(context));
+      ShiroJwtVerifyingFilter.registerMetrics(context.metricRegistry);
     }
 
     Thread.sleep(1000);
@@ -361,7 +371,9 @@ public final class ReaperApplication extends Application<ReaperApplicationConfig
     IStorage storage;
 
     if ("memory".equalsIgnoreCase(config.getStorageType())) {
-      storage = new MemoryStorage();
+      storage = config.getMemoryStorageDirectory().isPresent()
+          ? createMemoryStorage(config, environment)
+          : new MemoryStorage();
     } else if ("cassandra".equalsIgnoreCase(config.getStorageType())) {
       storage = new CassandraStorage(config, environment);
     } else if ("postgres".equalsIgnoreCase(config.getStorageType())
@@ -378,7 +390,20 @@ public final class ReaperApplication extends Application<ReaperApplicationConfig
       throw new ReaperException("invalid storage type: " + config.getStorageType());
     }
     Preconditions.checkState(storage.isStorageConnected(), "Failed to connect storage");
-    return storage;
+    return InstrumentedStorage.create(storage, environment.metrics());
+  }
+
+  private static IStorage createMemoryStorage(ReaperApplicationConfiguration config, Environment environment)
+      throws ReaperException {
+    try {
+      MemoryStorage storage = MemoryStorage.create(
+          Paths.get(config.getMemoryStorageDirectory().get()), config.getMemoryStorageCheckpointPeriod());
+      // flushes and closes the log on shutdown
+      environment.lifecycle().manage(storage);
+      return storage;
+    } catch (IOException e) {
+      throw new ReaperException("failed recovering the memory storage", e);
+    }
   }
 
   private void checkConfiguration(ReaperApplicationConfiguration config) {
@@ -21,6 +21,7 @@ import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.DecimalMin;
@@ -40,6 +41,9 @@ public final class ReaperApplicationConfiguration extends Configuration {
 
   private static final int DEFAULT_SEGMENT_COUNT_PER_NODE = 16;
   private static final Integer DEFAULT_MAX_PENDING_COMPACTIONS = 20;
+  private static final int DEFAULT_PURGE_BATCH_SIZE = 20;
+  private static final double DEFAULT_PURGE_MAX_RUNS_PER_SECOND = 10;
+  private static final Duration DEFAULT_MEMORY_STORAGE_CHECKPOINT_PERIOD = Duration.ofMinutes(1);
 
   @JsonProperty
   private Integer maxPendingCompactions;
@@ -83,6 +87,9 @@ public final class ReaperApplicationConfiguration extends Configuration {
   @NotNull
   private Integer hangingRepairTimeoutMins;
 
+  @JsonProperty
+  private Duration targetSegmentDuration;
+
   @NotEmpty
   private String storageType;
 
@@ -100,6 +107,9 @@ public final class ReaperApplicationConfiguration extends Configuration {
   @JsonProperty
   private AutoSchedulingConfiguration autoScheduling;
 
+  @JsonProperty
+  private AdaptiveIntensityConfiguration adaptiveIntensity;
+
   @JsonProperty
   @DefaultValue("true")
   private Boolean enableDynamicSeedList;
@@ -132,6 +142,26 @@ public final class ReaperApplicationConfiguration extends Configuration {
   @JsonProperty
   private Integer numberOfRunsToKeepPerUnit;
 
+  /** Number of repair runs deleted concurrently, and read per page, when purging the history. */
+  @Nullable
+  @JsonProperty
+  private Integer purgeBatchSize;
+
+  /** Upper bound on the number of repair runs deleted per second when purging the history. */
+  @Nullable
+  @JsonProperty
+  private Double purgeMaxRunsPerSecond;
+
+  /** Directory where the memory storage keeps its data across restarts. Data is lost on restart when unset. */
+  @Nullable
+  @JsonProperty
+  private String memoryStorageDirectory;
+
+  /** How often the memory storage flushes its log to disk, and checkpoints it once it has doubled in size. */
+  @Nullable
+  @JsonProperty
+  private Duration memoryStorageCheckpointPeriod;
+
   private CassandraFactory cassandra = new CassandraFactory();
 
   @Deprecated
@@ -301,6 +331,18 @@ public final class ReaperApplicationConfiguration extends Configuration {
     this.autoScheduling = autoRepairScheduling;
   }
 
+  public boolean hasAdaptiveIntensityEnabled() {
+    return adaptiveIntensity != null && adaptiveIntensity.isEnabled();
+  }
+
+  public AdaptiveIntensityConfiguration getAdaptiveIntensity() {
+    return adaptiveIntensity;
+  }
+
+  public void setAdaptiveIntensity(AdaptiveIntensityConfiguration adaptiveIntensity) {
+    this.adaptiveIntensity = adaptiveIntensity;
+  }
+
   public void setEnableDynamicSeedList(boolean enableDynamicSeedList) {
     this.enableDynamicSeedList = enableDynamicSeedList;
   }
@@ -353,6 +395,18 @@ public final class ReaperApplicationConfiguration extends Configuration {
     this.hangingRepairTimeoutMins = hangingRepairTimeoutMins;
   }
 
+  /**
+   * The duration segments of new repair runs are resized to take, based on how long the previous run of the same repair
+   * unit took to repair them. Segments are generated by token count alone when not set.
+   */
+  public Optional<Duration> getTargetSegmentDuration() {
+    return Optional.ofNullable(targetSegmentDuration);
+  }
+
+  public void setTargetSegmentDuration(Duration targetSegmentDuration) {
+    this.targetSegmentDuration = targetSegmentDuration;
+  }
+
   public DatacenterAvailability getDatacenterAvailability() {
     return this.datacenterAvailability != null ? this.datacenterAvailability : DatacenterAvailability.ALL;
   }
@@ -396,6 +450,44 @@ public final class ReaperApplicationConfiguration extends Configuration {
     this.numberOfRunsToKeepPerUnit = numberOfRunsToKeepPerUnit;
   }
 
+  public int getPurgeBatchSize() {
+    return purgeBatchSize == null ? DEFAULT_PURGE_BATCH_SIZE : purgeBatchSize;
+  }
+
+  @JsonProperty("purgeBatchSize")
+  public void setPurgeBatchSize(Integer purgeBatchSize) {
+    this.purgeBatchSize = purgeBatchSize;
+  }
+
+  public double getPurgeMaxRunsPerSecond() {
+    return purgeMaxRunsPerSecond == null ? DEFAULT_PURGE_MAX_RUNS_PER_SECOND : purgeMaxRunsPerSecond;
+  }
+
+  @JsonProperty("purgeMaxRunsPerSecond")
+  public void setPurgeMaxRunsPerSecond(Double purgeMaxRunsPerSecond) {
+    this.purgeMaxRunsPerSecond = purgeMaxRunsPerSecond;
+  }
+
+  public Optional<String> getMemoryStorageDirectory() {
+    return Optional.ofNullable(memoryStorageDirectory);
+  }
+
+  @JsonProperty("memoryStorageDirectory")
+  public void setMemoryStorageDirectory(String memoryStorageDirectory) {
+    this.memoryStorageDirectory = memoryStorageDirectory;
+  }
+
+  public Duration getMemoryStorageCheckpointPeriod() {
+    return memoryStorageCheckpointPeriod == null
+        ? DEFAULT_MEMORY_STORAGE_CHECKPOINT_PERIOD
+        : memoryStorageCheckpointPeriod;
+  }
+
+  @JsonProperty("memoryStorageCheckpointPeriod")
+  public void setMemoryStorageCheckpointPeriod(Duration memoryStorageCheckpointPeriod) {
+    this.memoryStorageCheckpointPeriod = memoryStorageCheckpointPeriod;
+  }
+
   public static final class JmxCredentials {
 
     @JsonProperty
@@ -502,6 +594,71 @@ public final class ReaperApplicationConfiguration extends Configuration {
     }
   }
 
+  public static final class AdaptiveIntensityConfiguration {
+
+    private static final double DEFAULT_MIN_INTENSITY_FACTOR = 0.1;
+    private static final double DEFAULT_INTENSITY_FACTOR_INCREASE = 0.1;
+    private static final Duration DEFAULT_MAX_CLIENT_LATENCY_P99 = Duration.ofMillis(100);
+
+    @JsonProperty
+    private Boolean enabled;
+
+    @JsonProperty
+    private Double minIntensityFactor;
+
+    @JsonProperty
+    private Double intensityFactorIncrease;
+
+    @JsonProperty
+    private Duration maxClientLatencyP99;
+
+    public boolean isEnabled() {
+      return enabled != null && enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public double getMinIntensityFactor() {
+      return minIntensityFactor != null ? minIntensityFactor : DEFAULT_MIN_INTENSITY_FACTOR;
+    }
+
+    public void setMinIntensityFactor(Double minIntensityFactor) {
+      this.minIntensityFactor = minIntensityFactor;
+    }
+
+    public double getIntensityFactorIncrease() {
+      return intensityFactorIncrease != null ? intensityFactorIncrease : DEFAULT_INTENSITY_FACTOR_INCREASE;
+    }
+
+    public void setIntensityFactorIncrease(Double intensityFactorIncrease) {
+      this.intensityFactorIncrease = intensityFactorIncrease;
+    }
+
+    public Duration getMaxClientLatencyP99() {
+      return maxClientLatencyP99 != null ? maxClientLatencyP99 : DEFAULT_MAX_CLIENT_LATENCY_P99;
+    }
+
+    public void setMaxClientLatencyP99(Duration maxClientLatencyP99) {
+      this.maxClientLatencyP99 = maxClientLatencyP99;
+    }
+
+    @Override
+    public String toString() {
+      return "AdaptiveIntensityConfiguration{"
+          + "enabled="
+          + enabled
+          + ", minIntensityFactor="
+          + minIntensityFactor
+          + ", intensityFactorIncrease="
+          + intensityFactorIncrease
+          + ", maxClientLatencyP99="
+          + maxClientLatencyP99
+          + '}';
+    }
+  }
+
   public enum DatacenterAvailability {
     /* We require direct JMX access to all nodes across all datacenters */
     ALL,
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.core;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Tracks a cluster wide snapshot running asynchronously, one node at a time within each datacenter slot.
+ *
+ * <p>Per-node statuses are updated as nodes complete, so the job can be polled while it progresses.
+ */
+public final class SnapshotJob {
+
+  private final UUID id;
+  private final String clusterName;
+  private final String snapshotName;
+  private final DateTime creationTime;
+  private final Map<String, NodeStatus> nodes = new ConcurrentSkipListMap<>();
+  private volatile State state = State.PENDING;
+  private volatile String lastEvent = "submitted";
+
+  public SnapshotJob(UUID id, String clusterName, String snapshotName) {
+    this.id = id;
+    this.clusterName = clusterName;
+    this.snapshotName = snapshotName;
+    this.creationTime = DateTime.now();
+  }
+
+  @JsonProperty
+  public UUID getId() {
+    return id;
+  }
+
+  @JsonProperty("cluster_name")
+  public String getClusterName() {
+    return clusterName;
+  }
+
+  @JsonProperty("snapshot_name")
+  public String getSnapshotName() {
+    return snapshotName;
+  }
+
+  @JsonProperty
+  public State getState() {
+    return state;
+  }
+
+  @JsonProperty("last_event")
+  public String getLastEvent() {
+    return lastEvent;
+  }
+
+  @JsonProperty("creation_time")
+  public String getCreationTime() {
+    return creationTime.toString(ISODateTimeFormat.dateTimeNoMillis());
+  }
+
+  @JsonProperty
+  public Collection<NodeStatus> getNodes() {
+    return ImmutableList.copyOf(nodes.values());
+  }
+
+  public NodeStatus getNode(String host) {
+    return nodes.get(host);
+  }
+
+  public synchronized void addNode(String host, String datacenter) {
+    nodes.put(host, new NodeStatus(host, datacenter, State.PENDING, null, null, null));
+  }
+
+  public synchronized void start() {
+    state = nodes.isEmpty() ? State.DONE : State.RUNNING;
+    lastEvent = String.format("snapshotting %d nodes", nodes.size());
+  }
+
+  public synchronized void fail(String message) {
+    state = State.FAILED;
+    lastEvent = message;
+  }
+
+  public synchronized void nodeStarted(String host) {
+    NodeStatus node = nodes.get(host);
+    nodes.put(host, new NodeStatus(host, node.datacenter, State.RUNNING, null, DateTime.now(), null));
+  }
+
+  public synchronized void nodeTerminated(String host, State nodeState, String message) {
+    NodeStatus node = nodes.get(host);
+    nodes.put(host, new NodeStatus(host, node.datacenter, nodeState, message, node.startTime, DateTime.now()));
+
+    if (nodes.values().stream().allMatch(status -> status.state.isTerminated())) {
+      boolean allDone = nodes.values().stream().allMatch(status -> State.DONE == status.state);
+      state = allDone ? State.DONE : State.FAILED;
+      lastEvent = allDone ? "snapshot taken on all nodes" : "snapshot failed on some nodes";
+    }
+  }
+
+  public boolean isTerminated() {
+    return state.isTerminated();
+  }
+
+  public enum State {
+    PENDING,
+    RUNNING,
+    DONE,
+    FAILED,
+    TIMED_OUT;
+
+    public boolean isTerminated() {
+      return this == DONE || this == FAILED || this == TIMED_OUT;
+    }
+  }
+
+  public static final class NodeStatus {
+
+    private final String host;
+    private final String datacenter;
+    private final State state;
+    private final String message;
+    private final DateTime startTime;
+    private final DateTime endTime;
+
+    private NodeStatus(
+        String host,
+        String datacenter,
+        State state,
+        String message,
+        DateTime startTime,
+        DateTime endTime) {
+
+      this.host = host;
+      this.datacenter = datacenter;
+      this.state = state;
+      this.message = message;
+      this.startTime = startTime;
+      this.endTime = endTime;
+    }
+
+    @JsonProperty
+    public String getHost() {
+      return host;
+    }
+
+    @JsonProperty
+    public String getDatacenter() {
+      return datacenter;
+    }
+
+    @JsonProperty
+    public State getState() {
+      return state;
+    }
+
+    @JsonProperty
+    public String getMessage() {
+      return message;
+    }
+
+    @JsonProperty("start_time")
+    public String getStartTime() {
+      return null != startTime ? startTime.toString(ISODateTimeFormat.dateTimeNoMillis()) : null;
+    }
+
+    @JsonProperty("end_time")
+    public String getEndTime() {
+      return null != endTime ? endTime.toString(ISODateTimeFormat.dateTimeNoMillis()) : null;
+    }
+  }
+}
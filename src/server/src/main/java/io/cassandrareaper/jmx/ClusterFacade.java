@@ -73,6 +73,9 @@ public final class ClusterFacade {
   private static final long TOKEN_RANGES_IN_KEYSPACE_TTL_SECONDS
       = Long.getLong(ClusterFacade.class.getPackage().getName() + ".token_ranges_in_keyspace_ttl_seconds", 60);
 
+  private static final long NODES_STATUS_TTL_SECONDS
+      = Long.getLong(ClusterFacade.class.getPackage().getName() + ".nodes_status_ttl_seconds", 5);
+
   private static final Cache<Pair<Cluster,String>,String> CLUSTER_VERSIONS
       = CacheBuilder.newBuilder().expireAfterWrite(CLUSTER_VERSIONS_TTL_SECONDS, TimeUnit.SECONDS).build();
 
@@ -82,6 +85,9 @@ public final class ClusterFacade {
   private static final Cache<Pair<Cluster,String>,Map<List<String>, List<String>>> TOKEN_RANGES_IN_KEYSPACE
       = CacheBuilder.newBuilder().expireAfterWrite(TOKEN_RANGES_IN_KEYSPACE_TTL_SECONDS, TimeUnit.SECONDS).build();
 
+  private static final Cache<String,NodesStatus> NODES_STATUS
+      = CacheBuilder.newBuilder().expireAfterWrite(NODES_STATUS_TTL_SECONDS, TimeUnit.SECONDS).build();
+
   private final AppContext context;
 
   private ClusterFacade(AppContext context) {
@@ -206,6 +212,7 @@ public final class ClusterFacade {
    * Get the status of all nodes in the cluster.
    * In EACH, LOCAL and ALL : connect directly to any provided node to get the information
    * In SIDECAR : Enforce connecting to the local node to get the information
+   * The status is cached per cluster for a few seconds, as every cluster page view asks for it.
    *
    * @param cluster the cluster to connect to
    * @param endpoints the list of endpoints to connect to
@@ -213,6 +220,14 @@ public final class ClusterFacade {
    * @throws ReaperException any runtime exception we catch
    */
   public NodesStatus getNodesStatus(Cluster cluster, Collection<String> endpoints) throws ReaperException {
+    try {
+      return NODES_STATUS.get(cluster.getName(), () -> getNodesStatusImpl(cluster, endpoints));
+    } catch (ExecutionException ex) {
+      throw new ReaperException(ex);
+    }
+  }
+
+  private NodesStatus getNodesStatusImpl(Cluster cluster, Collection<String> endpoints) throws ReaperException {
     JmxProxy jmxProxy = connectAnyNode(cluster, endpoints);
     FailureDetectorProxy proxy = FailureDetectorProxy.create(jmxProxy);
 
@@ -722,4 +737,24 @@ public final class ClusterFacade {
       throw new ReaperException(e);
     }
   }
+
+  /**
+   * Subscribe to the streaming notifications of a node.
+   *
+   * <p>The subscription lives as long as the node's JMX connection, so callers should subscribe again from time to time
+   * to pick up reconnections. Subscribing twice through the same connection has no effect.
+   *
+   * @param node the node to listen to
+   * @param handler the handler the notifications are passed to
+   * @return false if the node does not emit streaming notifications
+   * @throws ReaperException any runtime exception we can catch in the process
+   */
+  public boolean subscribeToStreams(Node node, StreamStatusHandler handler) throws ReaperException {
+    try {
+      JmxProxy jmxProxy = connectNode(node);
+      return StreamsProxy.create(jmxProxy).addStreamStatusHandler(handler);
+    } catch (InterruptedException e) {
+      throw new ReaperException(e);
+    }
+  }
 }
@@ -55,6 +55,7 @@ import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
 import javax.management.Notification;
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
@@ -70,6 +71,7 @@ import com.google.common.collect.BiMap;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.net.HostAndPort;
 import org.apache.cassandra.db.ColumnFamilyStoreMBean;
 import org.apache.cassandra.db.compaction.CompactionManager;
@@ -81,6 +83,7 @@ import org.apache.cassandra.repair.RepairParallelism;
 import org.apache.cassandra.repair.messages.RepairOption;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.service.StorageServiceMBean;
+import org.apache.cassandra.streaming.StreamEvent;
 import org.apache.cassandra.streaming.StreamManagerMBean;
 import org.apache.cassandra.utils.progress.ProgressEventType;
 import org.apache.commons.lang3.StringUtils;
@@ -98,6 +101,7 @@ final class JmxProxyImpl implements JmxProxy {
 
 
   private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+  private static final RepairStatusDispatcher REPAIR_STATUS_DISPATCHER = new RepairStatusDispatcher();
 
   private final JMXConnector jmxConnector;
   private final MBeanServerConnection mbeanServer;
@@ -108,8 +112,8 @@ final class JmxProxyImpl implements JmxProxy {
   private final String host;
   private final String hostBeforeTranslation;
   private final String clusterName;
-  private final ConcurrentMap<Integer, ExecutorService> repairStatusExecutors = Maps.newConcurrentMap();
   private final ConcurrentMap<Integer, RepairStatusHandler> repairStatusHandlers = Maps.newConcurrentMap();
+  private final Set<StreamStatusHandler> streamStatusHandlers = Sets.newConcurrentHashSet();
   private final MetricRegistry metricRegistry;
   private final Optional<StreamManagerMBean> smProxy;
 
@@ -137,6 +141,7 @@ final class JmxProxyImpl implements JmxProxy {
     this.metricRegistry = metricRegistry;
     this.smProxy = smProxy;
     registerConnectionsGauge();
+    REPAIR_STATUS_DISPATCHER.registerMetrics(metricRegistry);
   }
 
   /**
@@ -590,7 +595,6 @@ final class JmxProxyImpl implements JmxProxy {
             associatedTokens,
             repairThreadCount);
       }
-      repairStatusExecutors.putIfAbsent(repairNo, Executors.newSingleThreadExecutor());
       repairStatusHandlers.putIfAbsent(repairNo, repairStatusHandler);
       return repairNo;
     } catch (RuntimeException e) {
@@ -732,12 +736,16 @@ final class JmxProxyImpl implements JmxProxy {
    */
   @Override
   public void handleNotification(final Notification notification, Object handback) {
+    if (notification.getType().startsWith(StreamEvent.class.getCanonicalName())) {
+      processStreamNotification(notification);
+      return;
+    }
     // pass off the work immediately to a separate thread
     final int repairNo = "repair".equals(notification.getType())
         ? ((int[]) notification.getUserData())[0]
         : Integer.parseInt(((String) notification.getSource()).split(":")[1]);
 
-    repairStatusExecutors.get(repairNo).submit(() -> {
+    REPAIR_STATUS_DISPATCHER.dispatch(repairNo, () -> {
       String threadName = Thread.currentThread().getName();
       try {
         String type = notification.getType();
@@ -805,6 +813,31 @@ final class JmxProxyImpl implements JmxProxy {
     }
   }
 
+  /**
+   * Handles notifications from the StreamManager. Handlers are expected to hand off any heavy work themselves.
+   */
+  private void processStreamNotification(Notification notification) {
+    CompositeData payload = notification.getUserData() instanceof CompositeData
+        ? (CompositeData) notification.getUserData()
+        : null;
+
+    for (StreamStatusHandler handler : streamStatusHandlers) {
+      try {
+        handler.handleNotification(clusterName, host, payload, notification.getTimeStamp());
+      } catch (RuntimeException e) {
+        LOG.error("Error while processing stream JMX notification", e);
+      }
+    }
+  }
+
+  void addStreamStatusHandler(StreamStatusHandler handler) {
+    streamStatusHandlers.add(handler);
+  }
+
+  void removeStreamStatusHandler(StreamStatusHandler handler) {
+    streamStatusHandlers.remove(handler);
+  }
+
   private String getConnectionId() throws IOException {
     return jmxConnector.getConnectionId();
   }
@@ -822,11 +855,8 @@ final class JmxProxyImpl implements JmxProxy {
 
   @Override
   public void removeRepairStatusHandler(int repairNo) {
+    // notifications of the repair still queued in the dispatcher find no handler and are dropped
     repairStatusHandlers.remove(repairNo);
-    ExecutorService repairStatusExecutor = repairStatusExecutors.remove(repairNo);
-    if (null != repairStatusExecutor) {
-      repairStatusExecutor.shutdown();
-    }
   }
 
   /** Cleanly shut down by un-registering the listener and closing the JMX connection. */
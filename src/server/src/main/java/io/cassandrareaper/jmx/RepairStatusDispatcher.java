@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.jmx;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands repair notifications off the JMX listener thread to a fixed set of serial executors.
+ *
+ * <p>Notifications are striped by repair number, so that the notifications of one repair are always handled by the
+ * same thread and in the order they were received, while different repairs are handled in parallel. Queues are
+ * bounded: once a stripe is full the JMX listener thread waits for room rather than dropping a notification, as a
+ * lost repair notification would leave its segment hanging until it times out.
+ */
+final class RepairStatusDispatcher {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RepairStatusDispatcher.class);
+
+  private static final int STRIPES = Integer.getInteger(
+      RepairStatusDispatcher.class.getName() + ".stripes",
+      Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+  private static final int QUEUE_CAPACITY
+      = Integer.getInteger(RepairStatusDispatcher.class.getName() + ".queue_capacity", 1000);
+
+  private final ThreadPoolExecutor[] stripes;
+  private final Timer handlerLatency = new Timer();
+
+  RepairStatusDispatcher() {
+    this(STRIPES, QUEUE_CAPACITY);
+  }
+
+  RepairStatusDispatcher(int stripeCount, int queueCapacity) {
+    Preconditions.checkArgument(0 < stripeCount && 0 < queueCapacity);
+    stripes = new ThreadPoolExecutor[stripeCount];
+    for (int i = 0; i < stripeCount; ++i) {
+      stripes[i] = new ThreadPoolExecutor(
+          1,
+          1,
+          0L,
+          TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(queueCapacity),
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("repair-status-" + i).build(),
+          RepairStatusDispatcher::waitForRoom);
+    }
+  }
+
+  /**
+   * Queues the handling of a notification of the given repair, after all previously queued ones of that repair.
+   */
+  void dispatch(int repairNo, Runnable handler) {
+    stripes[Math.floorMod(repairNo, stripes.length)].execute(() -> {
+      try (Timer.Context ignored = handlerLatency.time()) {
+        handler.run();
+      } catch (RuntimeException e) {
+        LOG.error("Error while handling notification of repair {}", repairNo, e);
+      }
+    });
+  }
+
+  /**
+   * @return the number of notifications waiting to be handled, across all stripes
+   */
+  int queueDepth() {
+    return Arrays.stream(stripes).mapToInt(stripe -> stripe.getQueue().size()).sum();
+  }
+
+  Timer getHandlerLatency() {
+    return handlerLatency;
+  }
+
+  void registerMetrics(MetricRegistry metricRegistry) {
+    String queueDepthName = MetricRegistry.name(RepairStatusDispatcher.class, "queueDepth");
+    String handlerLatencyName = MetricRegistry.name(RepairStatusDispatcher.class, "handlerLatency");
+    try {
+      if (!metricRegistry.getMetrics().containsKey(queueDepthName)) {
+        metricRegistry.register(queueDepthName, (Gauge<Integer>) this::queueDepth);
+      }
+      if (!metricRegistry.getMetrics().containsKey(handlerLatencyName)) {
+        metricRegistry.register(handlerLatencyName, handlerLatency);
+      }
+    } catch (IllegalArgumentException ignore) {
+      // concurrently registered by another proxy
+    }
+  }
+
+  private static void waitForRoom(Runnable task, ThreadPoolExecutor executor) {
+    if (executor.isShutdown()) {
+      throw new RejectedExecutionException("repair status dispatcher is shut down");
+    }
+    try {
+      executor.getQueue().put(task);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException("interrupted while waiting to queue a repair notification", e);
+    }
+  }
+}
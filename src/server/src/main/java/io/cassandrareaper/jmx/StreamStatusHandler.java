@@ -26,7 +26,7 @@ public interface StreamStatusHandler {
    * Handle the notification about an event related to Cassandra streaming.
    * @param clusterName name of the cluster where the streaming event occurred
    * @param host name of the node originating the notification
-   * @param payload payload attached to the notification by Cassandra
+   * @param payload payload attached to the notification by Cassandra, or null if it did not carry composite data
    * @param timeStamp of the JMX notification
    */
   Future<?> handleNotification(String clusterName, String host, CompositeData payload, long timeStamp);
@@ -46,4 +46,21 @@ public final class StreamsProxy {
       return ImmutableSet.of();
     }
   }
+
+  /**
+   * Registers a handler for the node's streaming notifications. Registering the same handler again is a no-op.
+   *
+   * @return false if the node has no StreamManager to listen to
+   */
+  public boolean addStreamStatusHandler(StreamStatusHandler handler) {
+    if (proxy.getStreamManagerMBean().isPresent()) {
+      proxy.addStreamStatusHandler(handler);
+      return true;
+    }
+    return false;
+  }
+
+  public void removeStreamStatusHandler(StreamStatusHandler handler) {
+    proxy.removeStreamStatusHandler(handler);
+  }
 }
@@ -29,9 +29,9 @@ import io.cassandrareaper.resources.view.RepairRunStatus;
 import io.cassandrareaper.service.PurgeService;
 import io.cassandrareaper.service.RepairRunService;
 import io.cassandrareaper.service.RepairUnitService;
+import io.cassandrareaper.service.StatusViewCache;
 
 import java.net.URI;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -73,11 +73,17 @@ public final class RepairRunResource {
   private final AppContext context;
   private final RepairUnitService repairUnitService;
   private final RepairRunService repairRunService;
+  private final StatusViewCache statusViews;
 
   public RepairRunResource(AppContext context) {
+    this(context, StatusViewCache.uncached(context));
+  }
+
+  public RepairRunResource(AppContext context, StatusViewCache statusViews) {
     this.context = context;
     this.repairUnitService = RepairUnitService.create(context);
     this.repairRunService = RepairRunService.create(context);
+    this.statusViews = statusViews;
   }
 
   /**
@@ -611,21 +617,14 @@ public final class RepairRunResource {
       @PathParam("cluster_name") String clusterName) {
 
     LOG.debug("get repair run for cluster called with: cluster_name = {}", clusterName);
-    final Collection<RepairRun> repairRuns = context.storage.getRepairRunsForCluster(clusterName, Optional.empty());
-    final Collection<RepairRunStatus> repairRunViews = new ArrayList<>();
-    for (final RepairRun repairRun : repairRuns) {
-      repairRunViews.add(getRepairRunStatus(repairRun));
-    }
-    return Response.ok().entity(repairRunViews).build();
+    return Response.ok().entity(statusViews.getRepairRunStatuses(clusterName)).build();
   }
 
   /**
    * @return only a status of a repair run, not the entire repair run info.
    */
   private RepairRunStatus getRepairRunStatus(RepairRun repairRun) {
-    RepairUnit repairUnit = context.storage.getRepairUnit(repairRun.getRepairUnitId());
-    int segmentsRepaired = getSegmentAmountForRepairRun(repairRun.getId());
-    return new RepairRunStatus(repairRun, repairUnit, segmentsRepaired);
+    return statusViews.getRepairRunStatus(repairRun);
   }
 
   /**
@@ -668,7 +667,7 @@ public final class RepairRunResource {
 
 
       for (final Cluster clstr : clusters) {
-        Collection<RepairRun> runs = context.storage.getRepairRunsForCluster(clstr.getName(), Optional.empty());
+        Collection<RepairRun> runs = statusViews.getRepairRunsForCluster(clstr.getName());
         runStatuses.addAll(
             (List<RepairRunStatus>) getRunStatuses(runs, desiredStates)
                 .stream()
@@ -693,12 +692,7 @@ public final class RepairRunResource {
       if (!desiredStates.isEmpty() && !desiredStates.contains(run.getRunState().name())) {
         continue;
       }
-      RepairUnit runsUnit = context.storage.getRepairUnit(run.getRepairUnitId());
-      int segmentsRepaired = run.getSegmentCount();
-      if (!run.getRunState().equals(RepairRun.RunState.DONE)) {
-        segmentsRepaired = getSegmentAmountForRepairRun(run.getId());
-      }
-      runStatuses.add(new RepairRunStatus(run, runsUnit, segmentsRepaired));
+      runStatuses.add(getRepairRunStatus(run));
     }
 
     return runStatuses;
@@ -27,6 +27,7 @@ import io.cassandrareaper.resources.view.RepairScheduleStatus;
 import io.cassandrareaper.service.RepairRunService;
 import io.cassandrareaper.service.RepairScheduleService;
 import io.cassandrareaper.service.RepairUnitService;
+import io.cassandrareaper.service.StatusViewCache;
 
 import java.net.URI;
 import java.util.ArrayList;
@@ -67,12 +68,18 @@ public final class RepairScheduleResource {
   private final RepairUnitService repairUnitService;
   private final RepairScheduleService repairScheduleService;
   private final RepairRunService repairRunService;
+  private final StatusViewCache statusViews;
 
   public RepairScheduleResource(AppContext context) {
+    this(context, StatusViewCache.uncached(context));
+  }
+
+  public RepairScheduleResource(AppContext context, StatusViewCache statusViews) {
     this.context = context;
     this.repairUnitService = RepairUnitService.create(context);
     this.repairScheduleService = RepairScheduleService.create(context);
     this.repairRunService = RepairRunService.create(context);
+    this.statusViews = statusViews;
   }
 
   /**
@@ -436,7 +443,8 @@ public final class RepairScheduleResource {
   public Response getRepairSchedulesForCluster(
       @PathParam("cluster_name") String clusterName) {
     LOG.debug("get repair schedules for cluster called with: cluster_name = {}", clusterName);
-    Collection<RepairSchedule> repairSchedules = context.storage.getRepairSchedulesForCluster(clusterName);
+    Collection<RepairSchedule> repairSchedules
+        = statusViews.getRepairSchedules(Optional.of(clusterName), Optional.empty());
     Collection<RepairScheduleStatus> repairScheduleViews = new ArrayList<>();
     for (RepairSchedule repairSchedule : repairSchedules) {
       repairScheduleViews.add(getRepairScheduleStatus(repairSchedule));
@@ -448,8 +456,7 @@ public final class RepairScheduleResource {
    * @return RepairSchedule status for viewing
    */
   private RepairScheduleStatus getRepairScheduleStatus(RepairSchedule repairSchedule) {
-    RepairUnit repairUnit = context.storage.getRepairUnit(repairSchedule.getRepairUnitId());
-    return new RepairScheduleStatus(repairSchedule, repairUnit);
+    return statusViews.getRepairScheduleStatus(repairSchedule);
   }
 
   /**
@@ -474,27 +481,11 @@ public final class RepairScheduleResource {
       @QueryParam("keyspace") Optional<String> keyspaceName) {
 
     List<RepairScheduleStatus> scheduleStatuses = Lists.newArrayList();
-    getScheduleList(clusterName, keyspaceName).forEach((schedule) -> {
-      RepairUnit unit = context.storage.getRepairUnit(schedule.getRepairUnitId());
-      scheduleStatuses.add(new RepairScheduleStatus(schedule, unit));
-    });
+    statusViews.getRepairSchedules(clusterName, keyspaceName)
+        .forEach(schedule -> scheduleStatuses.add(getRepairScheduleStatus(schedule)));
     return Response.ok().entity(scheduleStatuses).build();
   }
 
-  private Collection<RepairSchedule> getScheduleList(Optional<String> clusterName, Optional<String> keyspaceName) {
-    Collection<RepairSchedule> schedules;
-    if (clusterName.isPresent() && keyspaceName.isPresent()) {
-      schedules = context.storage.getRepairSchedulesForClusterAndKeyspace(clusterName.get(), keyspaceName.get());
-    } else if (clusterName.isPresent()) {
-      schedules = context.storage.getRepairSchedulesForCluster(clusterName.get());
-    } else if (keyspaceName.isPresent()) {
-      schedules = context.storage.getRepairSchedulesForKeyspace(keyspaceName.get());
-    } else {
-      schedules = context.storage.getAllRepairSchedules();
-    }
-    return schedules;
-  }
-
   /**
    * Delete a RepairSchedule object with given id.
    *
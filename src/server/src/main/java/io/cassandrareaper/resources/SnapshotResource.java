@@ -21,10 +21,13 @@ import io.cassandrareaper.AppContext;
 import io.cassandrareaper.ReaperException;
 import io.cassandrareaper.core.Node;
 import io.cassandrareaper.core.Snapshot;
+import io.cassandrareaper.core.SnapshotJob;
 import io.cassandrareaper.service.SnapshotService;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -147,6 +150,65 @@ public final class SnapshotResource {
     }
   }
 
+  /**
+   * Endpoint used to submit an asynchronous cluster wide snapshot.
+   *
+   * @return the submitted job with a status code 202, its progress can be followed through GET /snapshot/job/{jobId}
+   */
+  @POST
+  @Path("/cluster/{clusterName}/job")
+  public Response submitSnapshotClusterWide(
+      @Context UriInfo uriInfo,
+      @PathParam("clusterName") String clusterName,
+      @QueryParam("keyspace") Optional<String> keyspace,
+      @QueryParam("snapshot_name") Optional<String> snapshotName,
+      @QueryParam("owner") Optional<String> owner,
+      @QueryParam("cause") Optional<String> cause,
+      @QueryParam("concurrency_per_dc") Optional<Integer> concurrencyPerDc,
+      @QueryParam("node_timeout_seconds") Optional<Long> nodeTimeoutSeconds) {
+
+    if (concurrencyPerDc.isPresent() && concurrencyPerDc.get() < 1) {
+      return Response.status(Status.BAD_REQUEST).entity("concurrency_per_dc must be positive").build();
+    }
+    if (nodeTimeoutSeconds.isPresent() && nodeTimeoutSeconds.get() < 1) {
+      return Response.status(Status.BAD_REQUEST).entity("node_timeout_seconds must be positive").build();
+    }
+    try {
+      if (!context.storage.getCluster(clusterName).isPresent()) {
+        return Response.status(Status.NOT_FOUND).entity("cluster \"" + clusterName + "\" does not exist").build();
+      }
+      String[] keyspaces = keyspace.isPresent() && !keyspace.get().isEmpty()
+          ? new String[]{keyspace.get()}
+          : new String[0];
+
+      SnapshotJob job = snapshotManager.submitSnapshotClusterWide(
+          snapshotManager.formatSnapshotName(snapshotName.or(SnapshotService.SNAPSHOT_PREFIX)),
+          clusterName,
+          owner.or("reaper"),
+          cause.or("Snapshot taken with Reaper"),
+          concurrencyPerDc.or(SnapshotService.DEFAULT_CONCURRENCY_PER_DC),
+          nodeTimeoutSeconds.isPresent()
+              ? Duration.ofSeconds(nodeTimeoutSeconds.get())
+              : SnapshotService.DEFAULT_NODE_TIMEOUT,
+          keyspaces);
+
+      return Response.accepted(job)
+          .location(uriInfo.getBaseUriBuilder().path("snapshot").path("job").path(job.getId().toString()).build())
+          .build();
+    } catch (ReaperException e) {
+      LOG.error(e.getMessage(), e);
+      return Response.serverError().entity(e.getMessage()).build();
+    }
+  }
+
+  @GET
+  @Path("/job/{jobId}")
+  public Response getSnapshotJob(@PathParam("jobId") UUID jobId) {
+    return snapshotManager.getSnapshotJob(jobId)
+        .map(job -> Response.ok().entity(job).build())
+        .orElse(Response.status(Status.NOT_FOUND).entity("snapshot job " + jobId + " not found").build());
+  }
+
   @GET
   @Path("/{clusterName}/{host}")
   public Response listSnapshots(
@@ -17,13 +17,25 @@
 
 package io.cassandrareaper.resources.auth;
 
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.lang.Strings;
@@ -35,8 +47,47 @@ public final class ShiroJwtVerifyingFilter extends AccessControlFilter {
 
   private static final Logger LOG = LoggerFactory.getLogger(ShiroJwtVerifyingFilter.class);
 
+  private static final long VERIFIED_TOKENS_TTL_SECONDS = Long.getLong(
+      ShiroJwtVerifyingFilter.class.getPackage().getName() + ".verified_jwt_ttl_seconds", 300);
+
+  private static final AtomicBoolean GAUGES_REGISTERED = new AtomicBoolean(false);
+
+  // tokens that passed verification, keyed by their SHA-256 hash so the tokens themselves are not kept around
+  @VisibleForTesting
+  static final Cache<String, VerifiedToken> VERIFIED_TOKENS = CacheBuilder.newBuilder()
+      .maximumSize(10000)
+      .expireAfterWrite(VERIFIED_TOKENS_TTL_SECONDS, TimeUnit.SECONDS)
+      .recordStats()
+      .build();
+
   public ShiroJwtVerifyingFilter() {}
 
+  public static void registerMetrics(MetricRegistry metricRegistry) {
+    if (!GAUGES_REGISTERED.getAndSet(true)) {
+
+      metricRegistry.register(
+          MetricRegistry.name(ShiroJwtVerifyingFilter.class, "verifiedTokens", "size"),
+          (Gauge<Long>) () -> VERIFIED_TOKENS.size());
+
+      metricRegistry.register(
+          MetricRegistry.name(ShiroJwtVerifyingFilter.class, "verifiedTokens", "hits"),
+          (Gauge<Long>) () -> VERIFIED_TOKENS.stats().hitCount());
+
+      metricRegistry.register(
+          MetricRegistry.name(ShiroJwtVerifyingFilter.class, "verifiedTokens", "misses"),
+          (Gauge<Long>) () -> VERIFIED_TOKENS.stats().missCount());
+
+      metricRegistry.register(
+          MetricRegistry.name(ShiroJwtVerifyingFilter.class, "verifiedTokens", "hitRatio"),
+          new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+              return Ratio.of(VERIFIED_TOKENS.stats().hitCount(), VERIFIED_TOKENS.stats().requestCount());
+            }
+          });
+    }
+  }
+
   @Override
   protected boolean isAccessAllowed(ServletRequest req, ServletResponse res, Object mappedValue) throws Exception {
     if (null != getSubject(req, res).getPrincipal()
@@ -48,8 +99,7 @@ public final class ShiroJwtVerifyingFilter extends AccessControlFilter {
     if (null != jwt && jwt.startsWith("Bearer ")) {
       try {
         jwt = jwt.substring(jwt.indexOf(' ') + 1);
-        Jws<Claims> claims = Jwts.parser().setSigningKey(ShiroJwtProvider.SIGNING_KEY).parseClaimsJws(jwt);
-        String user = claims.getBody().getSubject();
+        String user = getVerifiedSubject(jwt);
         return Strings.hasText(user);
       } catch (JwtException | IllegalArgumentException e) {
         LOG.error("Failed validating JWT {} from {}", jwt, httpRequest.getRemoteAddr());
@@ -59,10 +109,49 @@ public final class ShiroJwtVerifyingFilter extends AccessControlFilter {
     return false;
   }
 
+  /**
+   * Verifies the token's signature and returns its subject. Tokens already verified with the current signing key are
+   * served from memory until they expire.
+   */
+  private static String getVerifiedSubject(String jwt) {
+    Key signingKey = ShiroJwtProvider.SIGNING_KEY;
+    String hash = Hashing.sha256().hashString(jwt, StandardCharsets.UTF_8).toString();
+
+    VerifiedToken verified = VERIFIED_TOKENS.getIfPresent(hash);
+    if (null != verified) {
+      if (verified.isValid(signingKey)) {
+        return verified.subject;
+      }
+      VERIFIED_TOKENS.invalidate(hash);
+    }
+
+    Claims claims = Jwts.parser().setSigningKey(signingKey).parseClaimsJws(jwt).getBody();
+    VERIFIED_TOKENS.put(hash, new VerifiedToken(claims.getSubject(), claims.getExpiration(), signingKey));
+    return claims.getSubject();
+  }
+
   @Override
   protected boolean onAccessDenied(ServletRequest req, ServletResponse res) throws Exception {
     HttpServletResponse response = (HttpServletResponse) res;
     response.setStatus(HttpServletResponse.SC_FORBIDDEN);
     return false;
   }
+
+  @VisibleForTesting
+  static final class VerifiedToken {
+
+    private final String subject;
+    private final Date expiration;
+    private final Key signingKey;
+
+    VerifiedToken(String subject, Date expiration, Key signingKey) {
+      this.subject = subject;
+      this.expiration = expiration;
+      this.signingKey = signingKey;
+    }
+
+    private boolean isValid(Key currentSigningKey) {
+      return signingKey.equals(currentSigningKey) && (null == expiration || expiration.after(new Date()));
+    }
+  }
 }
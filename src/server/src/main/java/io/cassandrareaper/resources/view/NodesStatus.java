@@ -17,14 +17,10 @@
 
 package io.cassandrareaper.resources.view;
 
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -34,45 +30,11 @@ import com.google.common.collect.Sets;
 
 public final class NodesStatus {
 
-  private static final List<Pattern> ENDPOINT_NAME_PATTERNS = Lists.newArrayList();
-  private static final List<Pattern> ENDPOINT_STATUS_PATTERNS = Lists.newArrayList();
-  private static final List<Pattern> ENDPOINT_DC_PATTERNS = Lists.newArrayList();
-  private static final List<Pattern> ENDPOINT_RACK_PATTERNS = Lists.newArrayList();
-  private static final List<Pattern> ENDPOINT_LOAD_PATTERNS = Lists.newArrayList();
-  private static final List<Pattern> ENDPOINT_RELEASE_PATTERNS = Lists.newArrayList();
-  private static final List<Pattern> ENDPOINT_SEVERITY_PATTERNS = Lists.newArrayList();
-  private static final List<Pattern> ENDPOINT_HOSTID_PATTERNS = Lists.newArrayList();
-  private static final List<Pattern> ENDPOINT_TOKENS_PATTERNS = Lists.newArrayList();
-
-  private static final Pattern ENDPOINT_NAME_PATTERN_IP4
-      = Pattern.compile("^([0-9]{1,3}\\.[0-9]{1,3}\\.[0-9]{1,3}\\.[0-9]{1,3})", Pattern.MULTILINE | Pattern.DOTALL);
-  private static final Pattern ENDPOINT_NAME_PATTERN_IP6
-          = Pattern.compile("^([0-9:a-fA-F\\]\\[]{3,41})", Pattern.MULTILINE | Pattern.DOTALL);
-  private static final Pattern ENDPOINT_STATUS_22_PATTERN = Pattern.compile("(STATUS):([0-9]*):(\\w+)");
-  private static final Pattern ENDPOINT_DC_22_PATTERN = Pattern.compile("(DC):([0-9]*):([0-9a-zA-Z-\\.]+)");
-  private static final Pattern ENDPOINT_RACK_22_PATTERN = Pattern.compile("(RACK):([0-9]*):([0-9a-zA-Z-\\.]+)");
-  private static final Pattern ENDPOINT_LOAD_22_PATTERN = Pattern.compile("(LOAD):([0-9]*):([0-9eE.]+)");
-  private static final Pattern ENDPOINT_RELEASE_22_PATTERN = Pattern.compile("(RELEASE_VERSION):([0-9]*):([0-9.]+)");
-  private static final Pattern ENDPOINT_SEVERITY_22_PATTERN = Pattern.compile("(SEVERITY):([0-9]*):([0-9.]+)");
-  private static final Pattern ENDPOINT_HOSTID_22_PATTERN = Pattern.compile("(HOST_ID):([0-9]*):([0-9a-z-]+)");
-  private static final Pattern ENDPOINT_TOKENS_22_PATTERN = Pattern.compile("(TOKENS):([0-9]*)");
-  private static final Pattern ENDPOINT_STATUS_21_PATTERN = Pattern.compile("(STATUS)(:)(\\w+)");
-  private static final Pattern ENDPOINT_DC_21_PATTERN = Pattern.compile("(DC)(:)([0-9a-zA-Z-\\.]+)");
-  private static final Pattern ENDPOINT_RACK_21_PATTERN = Pattern.compile("(RACK)(:)([0-9a-zA-Z-\\.]+)");
-  private static final Pattern ENDPOINT_LOAD_21_PATTERN = Pattern.compile("(LOAD)(:)([0-9eE.]+)");
-  private static final Pattern ENDPOINT_RELEASE_21_PATTERN = Pattern.compile("(RELEASE_VERSION)(:)([0-9.]+)");
-  private static final Pattern ENDPOINT_SEVERITY_21_PATTERN = Pattern.compile("(SEVERITY)(:)([0-9.]+)");
-  private static final Pattern ENDPOINT_HOSTID_21_PATTERN = Pattern.compile("(HOST_ID)(:)([0-9a-z-]+)");
-
   private static final String NOT_AVAILABLE = "Not available";
 
   @JsonProperty
   public final List<GossipInfo> endpointStates;
 
-  static {
-    initPatterns();
-  }
-
   public NodesStatus(List<GossipInfo> endpointStates) {
     this.endpointStates = endpointStates;
   }
@@ -82,124 +44,224 @@ public final class NodesStatus {
     this.endpointStates.add(parseEndpointStatesString(sourceNode, allEndpointStates, simpleStates));
   }
 
-  private GossipInfo parseEndpointStatesString(
+  /**
+   * Parses the output of FailureDetectorMBean.getAllEndpointStates() in a single pass.
+   *
+   * <p>Each endpoint starts with an unindented "hostname/address" line, followed by indented "KEY:VALUE" (2.1) or
+   * "KEY:VERSION:VALUE" (2.2+) application state lines.
+   */
+  private static GossipInfo parseEndpointStatesString(
       String sourceNode,
       String allEndpointStates,
       Map<String, String> simpleStates) {
 
+    // Cleanup hostnames from simpleStates keys
+    Map<String, String> simpleStatesByAddress = Maps.newHashMapWithExpectedSize(simpleStates.size());
+    for (Map.Entry<String, String> entry: simpleStates.entrySet()) {
+      simpleStatesByAddress.put(entry.getKey().substring(entry.getKey().indexOf('/') + 1), entry.getValue());
+    }
+
     List<EndpointState> endpointStates = Lists.newArrayList();
     Set<String> endpoints = Sets.newHashSet();
-    Matcher matcher;
-
-    // Split into endpointState record strings
-    String[] endpointLines = allEndpointStates.split("\n");
-    List<String> strEndpoints = Lists.newArrayList();
-    StringBuilder recordBuilder = null;
-    for (String line: endpointLines) {
-      if (!line.startsWith("  ")) {
-        if (recordBuilder != null) {
-          strEndpoints.add(recordBuilder.toString());
+    double totalLoad = 0.0;
+
+    EndpointStateParser record = null;
+    int lineStart = 0;
+    while (lineStart < allEndpointStates.length()) {
+      int lineEnd = allEndpointStates.indexOf('\n', lineStart);
+      lineEnd = 0 <= lineEnd ? lineEnd : allEndpointStates.length();
+
+      if (allEndpointStates.startsWith("  ", lineStart)) {
+        if (null != record) {
+          record.parseApplicationState(allEndpointStates, lineStart + 2, lineEnd);
+        }
+      } else if (lineStart < lineEnd) {
+        if (null != record) {
+          totalLoad += record.addTo(endpointStates, endpoints, simpleStatesByAddress);
         }
-        recordBuilder = new StringBuilder(line.substring(line.indexOf('/') + 1));
-      } else if (recordBuilder != null) {
-        recordBuilder.append('\n');
-        recordBuilder.append(line);
+        record = new EndpointStateParser(allEndpointStates, lineStart, lineEnd);
       }
+      lineStart = lineEnd + 1;
     }
-    if (recordBuilder != null) {
-      strEndpoints.add(recordBuilder.toString());
+    if (null != record) {
+      totalLoad += record.addTo(endpointStates, endpoints, simpleStatesByAddress);
     }
 
-    // Cleanup hostnames from simpleStates keys
-    Map<String, String> simpleStatesCopy = new HashMap<>();
-    for (Map.Entry<String, String> entry: simpleStates.entrySet()) {
-      String entryKey = entry.getKey().substring(entry.getKey().indexOf('/'));
-      simpleStatesCopy.put(entryKey, entry.getValue());
-    }
-    simpleStates = simpleStatesCopy;
+    Map<String, Map<String, List<EndpointState>>> endpointsByDcAndRack = endpointStates.stream()
+        .collect(
+            Collectors.groupingBy(
+                EndpointState::getDc,
+                Collectors.groupingBy(EndpointState::getRack, Collectors.toList())));
 
-    Double totalLoad = 0.0;
+    return new GossipInfo(sourceNode, endpointsByDcAndRack, totalLoad, endpoints);
+  }
 
-    for (String endpointString: strEndpoints) {
-      Optional<String> status = Optional.empty();
-      Optional<String> endpoint = parseEndpointState(ENDPOINT_NAME_PATTERNS, endpointString, 1, String.class);
+  private static final class EndpointStateParser {
+
+    private final Optional<String> endpoint;
+    private Optional<String> status = Optional.empty();
+    private Optional<String> dc = Optional.empty();
+    private Optional<String> rack = Optional.empty();
+    private Optional<Double> load = Optional.empty();
+    private Optional<String> releaseVersion = Optional.empty();
+    private Optional<Double> severity = Optional.empty();
+    private Optional<String> hostId = Optional.empty();
+    private Optional<String> tokens = Optional.empty();
+
+    EndpointStateParser(String source, int start, int end) {
+      int slash = source.indexOf('/', start);
+      endpoint = parseAddress(source, 0 <= slash && slash < end ? slash + 1 : start, end);
+    }
 
-      for (Pattern endpointStatusPattern : ENDPOINT_STATUS_PATTERNS) {
-        matcher = endpointStatusPattern.matcher(endpointString);
-        if (matcher.find() && matcher.groupCount() >= 3) {
-          status = Optional
-              .of(matcher.group(3) + " - " + simpleStates.getOrDefault("/" + endpoint.orElse(""), "UNKNOWN"));
+    void parseApplicationState(String source, int start, int end) {
+      int colon = source.indexOf(':', start);
+      if (colon < 0 || colon >= end) {
+        return;
+      }
+      // 2.2+ prefixes values with their version
+      int versionEnd = skip(source, colon + 1, end, NodesStatus::isDigit);
+      boolean versioned = versionEnd < end && ':' == source.charAt(versionEnd);
+      int valueStart = versioned ? versionEnd + 1 : colon + 1;
+
+      // the first occurrence of a state wins
+      switch (source.substring(start, colon)) {
+        case "STATUS":
+          status = status.isPresent() ? status : value(source, valueStart, end, NodesStatus::isWordChar);
+          break;
+        case "DC":
+          dc = dc.isPresent() ? dc : value(source, valueStart, end, NodesStatus::isNameChar);
+          break;
+        case "RACK":
+          rack = rack.isPresent() ? rack : value(source, valueStart, end, NodesStatus::isNameChar);
+          break;
+        case "LOAD":
+          load = load.isPresent() ? load : doubleValue(source, valueStart, end, NodesStatus::isFloatChar);
+          break;
+        case "RELEASE_VERSION":
+          releaseVersion = releaseVersion.isPresent()
+              ? releaseVersion
+              : value(source, valueStart, end, NodesStatus::isVersionChar);
+          break;
+        case "SEVERITY":
+          severity = severity.isPresent() ? severity : doubleValue(source, valueStart, end, NodesStatus::isVersionChar);
+          break;
+        case "HOST_ID":
+          hostId = hostId.isPresent() ? hostId : value(source, valueStart, end, NodesStatus::isHostIdChar);
+          break;
+        case "TOKENS":
+          // the tokens themselves are hidden, only their version is shown
+          tokens = tokens.isPresent()
+              ? tokens
+              : Optional.of(versioned ? source.substring(colon + 1, versionEnd) : "");
+          break;
+        default:
           break;
-        }
       }
+    }
 
-      Optional<String> dc = parseEndpointState(ENDPOINT_DC_PATTERNS, endpointString, 3, String.class);
-      Optional<String> rack = parseEndpointState(ENDPOINT_RACK_PATTERNS, endpointString, 3, String.class);
-      Optional<Double> severity = parseEndpointState(ENDPOINT_SEVERITY_PATTERNS, endpointString, 3, Double.class);
-      Optional<String> releaseVersion = parseEndpointState(ENDPOINT_RELEASE_PATTERNS, endpointString, 3, String.class);
-      Optional<String> hostId = parseEndpointState(ENDPOINT_HOSTID_PATTERNS, endpointString, 3, String.class);
-      Optional<String> tokens = parseEndpointState(ENDPOINT_TOKENS_PATTERNS, endpointString, 2, String.class);
-      Optional<Double> load = parseEndpointState(ENDPOINT_LOAD_PATTERNS, endpointString, 3, Double.class);
-      totalLoad += load.orElse(0.0);
+    /**
+     * @return the load of the endpoint
+     */
+    double addTo(List<EndpointState> endpointStates, Set<String> endpoints, Map<String, String> simpleStates) {
+      String endpointName = endpoint.orElse(NOT_AVAILABLE);
+      String fullStatus = status
+          .map(state -> state + " - " + simpleStates.getOrDefault(endpoint.orElse(""), "UNKNOWN"))
+          .orElse(NOT_AVAILABLE);
 
       EndpointState endpointState = new EndpointState(
-          endpoint.orElse(NOT_AVAILABLE),
+          endpointName,
           hostId.orElse(NOT_AVAILABLE),
           dc.orElse(NOT_AVAILABLE),
           rack.orElse(NOT_AVAILABLE),
-          status.orElse(NOT_AVAILABLE),
+          fullStatus,
           severity.orElse(0.0),
           releaseVersion.orElse(NOT_AVAILABLE),
           tokens.orElse(NOT_AVAILABLE),
           load.orElse(0.0));
 
-      if (!status.orElse(NOT_AVAILABLE).toLowerCase().contains("left")
-          && !status.orElse(NOT_AVAILABLE).toLowerCase().contains("removed")) {
+      String lowerCaseStatus = fullStatus.toLowerCase();
+      if (!lowerCaseStatus.contains("left") && !lowerCaseStatus.contains("removed")) {
         // Only add nodes that haven't left the cluster (they could still appear in Gossip state for a while)
-        endpoints.add(endpoint.orElse(NOT_AVAILABLE));
+        endpoints.add(endpointName);
         endpointStates.add(endpointState);
       }
+      return load.orElse(0.0);
     }
+  }
 
-    Map<String, Map<String, List<EndpointState>>> endpointsByDcAndRack = Maps.newHashMap();
-    Map<String, List<EndpointState>> endpointsByDc
-        = endpointStates.stream().collect(Collectors.groupingBy(EndpointState::getDc, Collectors.toList()));
-
-    for (String dc : endpointsByDc.keySet()) {
-      Map<String, List<EndpointState>> endpointsByRack
-          = endpointsByDc.get(dc).stream().collect(Collectors.groupingBy(EndpointState::getRack, Collectors.toList()));
-      endpointsByDcAndRack.put(dc, endpointsByRack);
+  /**
+   * An IPv4 address, else anything looking like an IPv6 one, at the start of the given region.
+   */
+  private static Optional<String> parseAddress(String source, int start, int end) {
+    int pos = start;
+    for (int part = 0; part < 4; ++part) {
+      int partEnd = skip(source, pos, Math.min(end, pos + 3), NodesStatus::isDigit);
+      if (partEnd == pos || (part < 3 && (partEnd >= end || '.' != source.charAt(partEnd)))) {
+        return value(source, start, Math.min(end, start + 41), NodesStatus::isIpv6Char)
+            .filter(address -> 3 <= address.length());
+      }
+      pos = part < 3 ? partEnd + 1 : partEnd;
     }
+    return Optional.of(source.substring(start, pos));
+  }
 
-    return new GossipInfo(sourceNode, endpointsByDcAndRack, totalLoad, endpoints);
+  private static Optional<String> value(String source, int start, int end, CharPredicate accepted) {
+    int valueEnd = skip(source, start, end, accepted);
+    return start < valueEnd ? Optional.of(source.substring(start, valueEnd)) : Optional.empty();
   }
 
-  private <T> Optional<T> parseEndpointState(List<Pattern> patterns, String endpointString, int group, Class<T> type) {
-    Optional<T> result = Optional.empty();
-    for (Pattern pattern : patterns) {
-      Matcher matcher = pattern.matcher(endpointString);
-      if (matcher.find() && matcher.groupCount() >= group) {
-        result = (Optional<T>) Optional.of(matcher.group(group));
-        if (type.equals(Double.class)) {
-          result = (Optional<T>) Optional.of(Double.parseDouble(matcher.group(group)));
-        }
-        break;
-      }
+  private static Optional<Double> doubleValue(String source, int start, int end, CharPredicate accepted) {
+    try {
+      return value(source, start, end, accepted).map(Double::parseDouble);
+    } catch (NumberFormatException ex) {
+      return Optional.empty();
+    }
+  }
+
+  private static int skip(String source, int start, int end, CharPredicate accepted) {
+    int pos = start;
+    while (pos < end && accepted.test(source.charAt(pos))) {
+      ++pos;
     }
+    return pos;
+  }
+
+  private static boolean isDigit(char ch) {
+    return '0' <= ch && ch <= '9';
+  }
+
+  private static boolean isWordChar(char ch) {
+    return isAsciiLetterOrDigit(ch) || '_' == ch;
+  }
+
+  private static boolean isNameChar(char ch) {
+    return isAsciiLetterOrDigit(ch) || '-' == ch || '.' == ch;
+  }
+
+  private static boolean isFloatChar(char ch) {
+    return isVersionChar(ch) || 'e' == ch || 'E' == ch;
+  }
+
+  private static boolean isVersionChar(char ch) {
+    return isDigit(ch) || '.' == ch;
+  }
+
+  private static boolean isHostIdChar(char ch) {
+    return isDigit(ch) || ('a' <= ch && ch <= 'z') || '-' == ch;
+  }
+
+  private static boolean isIpv6Char(char ch) {
+    return isDigit(ch) || ('a' <= ch && ch <= 'f') || ('A' <= ch && ch <= 'F')
+        || ':' == ch || '[' == ch || ']' == ch;
+  }
 
-    return result;
+  private static boolean isAsciiLetterOrDigit(char ch) {
+    return isDigit(ch) || ('a' <= ch && ch <= 'z') || ('A' <= ch && ch <= 'Z');
   }
 
-  private static void initPatterns() {
-    ENDPOINT_NAME_PATTERNS.addAll(Arrays.asList(ENDPOINT_NAME_PATTERN_IP4, ENDPOINT_NAME_PATTERN_IP6));
-    ENDPOINT_STATUS_PATTERNS.addAll(Arrays.asList(ENDPOINT_STATUS_22_PATTERN, ENDPOINT_STATUS_21_PATTERN));
-    ENDPOINT_DC_PATTERNS.addAll(Arrays.asList(ENDPOINT_DC_22_PATTERN, ENDPOINT_DC_21_PATTERN));
-    ENDPOINT_RACK_PATTERNS.addAll(Arrays.asList(ENDPOINT_RACK_22_PATTERN, ENDPOINT_RACK_21_PATTERN));
-    ENDPOINT_LOAD_PATTERNS.addAll(Arrays.asList(ENDPOINT_LOAD_22_PATTERN, ENDPOINT_LOAD_21_PATTERN));
-    ENDPOINT_RELEASE_PATTERNS.addAll(Arrays.asList(ENDPOINT_RELEASE_22_PATTERN, ENDPOINT_RELEASE_21_PATTERN));
-    ENDPOINT_SEVERITY_PATTERNS.addAll(Arrays.asList(ENDPOINT_SEVERITY_22_PATTERN, ENDPOINT_SEVERITY_21_PATTERN));
-    ENDPOINT_HOSTID_PATTERNS.addAll(Arrays.asList(ENDPOINT_HOSTID_22_PATTERN, ENDPOINT_HOSTID_21_PATTERN));
-    ENDPOINT_TOKENS_PATTERNS.add(ENDPOINT_TOKENS_22_PATTERN);
+  @FunctionalInterface
+  private interface CharPredicate {
+    boolean test(char ch);
   }
 
   public static final class GossipInfo {
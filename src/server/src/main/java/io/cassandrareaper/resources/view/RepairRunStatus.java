@@ -109,6 +109,12 @@ public final class RepairRunStatus {
   @JsonProperty("repair_thread_count")
   private int repairThreadCount;
 
+  @JsonProperty("segments_per_minute")
+  private Double segmentsPerMinute;
+
+  @JsonProperty("tokens_per_minute")
+  private Double tokensPerMinute;
+
   /**
    * Default public constructor Required for Jackson JSON parsing.
    */
@@ -445,6 +451,10 @@ public final class RepairRunStatus {
     }
   }
 
+  public void setEstimatedTimeOfArrival(DateTime estimatedTimeOfArrival) {
+    this.estimatedTimeOfArrival = estimatedTimeOfArrival;
+  }
+
   public Collection<String> getNodes() {
     return nodes;
   }
@@ -479,6 +489,24 @@ public final class RepairRunStatus {
     this.repairThreadCount = repairThreadCount;
   }
 
+  @Nullable
+  public Double getSegmentsPerMinute() {
+    return segmentsPerMinute;
+  }
+
+  public void setSegmentsPerMinute(@Nullable Double segmentsPerMinute) {
+    this.segmentsPerMinute = segmentsPerMinute;
+  }
+
+  @Nullable
+  public Double getTokensPerMinute() {
+    return tokensPerMinute;
+  }
+
+  public void setTokensPerMinute(@Nullable Double tokensPerMinute) {
+    this.tokensPerMinute = tokensPerMinute;
+  }
+
   static double roundDoubleNicely(double intensity) {
     return Math.round(intensity * 10000f) / 10000f;
   }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.service;
+
+import io.cassandrareaper.AppContext;
+import io.cassandrareaper.ReaperApplicationConfiguration.AdaptiveIntensityConfiguration;
+import io.cassandrareaper.ReaperException;
+import io.cassandrareaper.core.Cluster;
+import io.cassandrareaper.core.DroppedMessages;
+import io.cassandrareaper.core.MetricsHistogram;
+import io.cassandrareaper.core.Node;
+import io.cassandrareaper.jmx.ClusterFacade;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Feedback controller scaling down the intensity of repairs while the nodes of a cluster are under load.
+ *
+ * <p>After each segment the nodes it involved are sampled in the background for pending compactions, newly dropped
+ * mutations, client read/write p99 latencies and streaming activity, at most one sample per cluster at a time.
+ * Segment runners never wait on the sampling, they apply the factor of the latest completed sample. Any sign of load
+ * halves the cluster's intensity factor, down to the configured minimum, while quiet nodes let it grow back linearly
+ * up to the intensity the run was configured with. The factor only ever lowers the intensity, and so lengthens the
+ * pause between segments, it never exceeds the run's.
+ */
+public final class AdaptiveIntensity {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AdaptiveIntensity.class);
+
+  private static final ImmutableSet<String> CLIENT_REQUESTS = ImmutableSet.of("Read", "Write");
+  private static final String MUTATION = "MUTATION";
+
+  // state is shared by all segment runners of a cluster, the same way the ClusterFacade caches are
+  private static final Map<String, Double> FACTORS = Maps.newConcurrentMap();
+  private static final Map<String, Long> DROPPED_MUTATIONS = Maps.newConcurrentMap();
+  private static final Set<String> SAMPLING = Sets.newConcurrentHashSet();
+
+  private static final ExecutorService SAMPLER = Executors.newFixedThreadPool(
+      2, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("adaptive-intensity-%d").build());
+
+  private final AppContext context;
+  private final ClusterFacade clusterFacade;
+  private final Executor executor;
+
+  private AdaptiveIntensity(AppContext context, ClusterFacade clusterFacade, Executor executor) {
+    this.context = context;
+    this.clusterFacade = clusterFacade;
+    this.executor = executor;
+  }
+
+  public static AdaptiveIntensity create(AppContext context, ClusterFacade clusterFacade) {
+    return new AdaptiveIntensity(context, clusterFacade, SAMPLER);
+  }
+
+  @VisibleForTesting
+  static AdaptiveIntensity create(AppContext context, ClusterFacade clusterFacade, Executor executor) {
+    return new AdaptiveIntensity(context, clusterFacade, executor);
+  }
+
+  /**
+   * The intensity to apply to the next segment of a cluster's repair run.
+   *
+   * @param clusterName the cluster being repaired
+   * @param intensity the intensity the repair run is configured with
+   * @return the intensity scaled down by the cluster's current load, or unchanged if adaptive intensity is disabled
+   */
+  public double effectiveIntensity(String clusterName, double intensity) {
+    return context.config.hasAdaptiveIntensityEnabled() ? intensity * factor(clusterName) : intensity;
+  }
+
+  /**
+   * Samples the load of the given nodes in the background, unless a sample of the cluster is already in flight.
+   */
+  public void requestSample(String clusterName, Collection<String> nodes) {
+    if (context.config.hasAdaptiveIntensityEnabled() && !nodes.isEmpty() && SAMPLING.add(clusterName)) {
+      try {
+        executor.execute(() -> {
+          try {
+            sample(clusterName, nodes);
+          } finally {
+            SAMPLING.remove(clusterName);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        SAMPLING.remove(clusterName);
+        LOG.warn("failed scheduling a load sample of cluster {}", clusterName, e);
+      }
+    }
+  }
+
+  /**
+   * Samples the load signals of the given nodes and adjusts the cluster's intensity factor accordingly.
+   */
+  @VisibleForTesting
+  void sample(String clusterName, Collection<String> nodes) {
+    if (context.config.hasAdaptiveIntensityEnabled() && !nodes.isEmpty()) {
+      try {
+        Cluster cluster = context.storage.getCluster(clusterName).get();
+        // every node is sampled so that the dropped mutation counts stay current
+        long loadedNodes = nodes.stream().filter(node -> isUnderLoad(cluster, node)).count();
+        double factor = update(clusterName, 0 < loadedNodes);
+        LOG.debug("{} out of {} nodes under load, intensity factor of cluster {} is {}",
+            loadedNodes, nodes.size(), clusterName, factor);
+      } catch (ReaperException | RuntimeException e) {
+        LOG.warn("failed sampling the load of cluster {}", clusterName, e);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  double factor(String clusterName) {
+    return FACTORS.getOrDefault(clusterName, 1.0);
+  }
+
+  @VisibleForTesting
+  double update(String clusterName, boolean underLoad) {
+    AdaptiveIntensityConfiguration config = context.config.getAdaptiveIntensity();
+    Preconditions.checkState(null != config);
+    registerGauge(clusterName);
+
+    return FACTORS.compute(clusterName, (name, factor) -> {
+      double current = null != factor ? factor : 1.0;
+      return underLoad
+          ? Math.max(config.getMinIntensityFactor(), current / 2)
+          : Math.min(1.0, current + config.getIntensityFactorIncrease());
+    });
+  }
+
+  @VisibleForTesting
+  boolean isUnderLoad(Cluster cluster, String host) {
+    Node node = Node.builder().withCluster(cluster).withHostname(host).build();
+    try {
+      int pendingCompactions
+          = clusterFacade.connectAny(cluster, Collections.singleton(host)).getPendingCompactions();
+
+      // the hard gate on maxPendingCompactions stays in SegmentRunner, backing off starts half way there
+      if (hasDroppedMutations(cluster, host, node)) {
+        LOG.debug("{} dropped mutations", host);
+        return true;
+      }
+      if (pendingCompactions > context.config.getMaxPendingCompactions() / 2) {
+        LOG.debug("{} has {} pending compactions", host, pendingCompactions);
+        return true;
+      }
+      if (hasSlowClientRequests(node)) {
+        LOG.debug("{} client requests p99 latency is above {}", host, maxClientLatencyP99Micros());
+        return true;
+      }
+      if (!clusterFacade.listStreams(node).isEmpty()) {
+        LOG.debug("{} is streaming", host);
+        return true;
+      }
+    } catch (ReaperException | JMException | RuntimeException e) {
+      // a node we cannot sample does not slow repairs down, SegmentRunner already handles unreachable nodes
+      LOG.debug("failed sampling the load of {}", host, e);
+    }
+    return false;
+  }
+
+  private boolean hasDroppedMutations(Cluster cluster, String host, Node node) throws ReaperException {
+    Optional<Integer> dropped = clusterFacade.getDroppedMessages(node).stream()
+        .filter(messages -> MUTATION.equals(messages.getName()))
+        .map(DroppedMessages::getCount)
+        .filter(count -> null != count)
+        .findFirst();
+
+    if (dropped.isPresent()) {
+      // the jmx counter is cumulative since the node started, only an increase is a signal
+      Long previous = DROPPED_MUTATIONS.put(cluster.getName() + '/' + host, (long) dropped.get());
+      return null != previous && dropped.get() > previous;
+    }
+    return false;
+  }
+
+  private boolean hasSlowClientRequests(Node node) throws ReaperException {
+    long maxMicros = maxClientLatencyP99Micros();
+    return clusterFacade.getClientRequestLatencies(node).stream()
+        .filter(histogram -> CLIENT_REQUESTS.contains(histogram.getName()))
+        .filter(histogram -> "Latency".equals(histogram.getType()))
+        .map(MetricsHistogram::getP99)
+        .anyMatch(p99 -> null != p99 && p99 > maxMicros);
+  }
+
+  private long maxClientLatencyP99Micros() {
+    return TimeUnit.NANOSECONDS.toMicros(context.config.getAdaptiveIntensity().getMaxClientLatencyP99().toNanos());
+  }
+
+  private void registerGauge(String clusterName) {
+    String metricName = MetricRegistry.name(
+        AdaptiveIntensity.class, "factor", clusterName.replaceAll("[^A-Za-z0-9]", ""));
+
+    if (!context.metricRegistry.getMetrics().containsKey(metricName)) {
+      try {
+        context.metricRegistry.register(metricName, (Gauge<Double>) () -> factor(clusterName));
+      } catch (IllegalArgumentException ignore) {
+        // concurrently registered by another segment runner
+      }
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * The hosts of a cluster that are involved in a segment repair.
+ *
+ * <p>The segments this instance repairs are added and removed as their repair starts and ends, so that checking a
+ * host usually needs no storage query. Segments repaired by other reaper instances are only known from storage, which
+ * is read again once the last read is older than the reconcile period, and always before a host is considered idle.
+ */
+final class BusyHosts {
+
+  private static final long RECONCILE_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(
+      Long.getLong(BusyHosts.class.getPackage().getName() + ".busy_hosts_reconcile_seconds", 30));
+
+  private static final Map<String, BusyHosts> CLUSTERS = Maps.newConcurrentMap();
+
+  private final long reconcilePeriodMillis;
+  private final Map<UUID, Collection<String>> localSegments = Maps.newConcurrentMap();
+  private final ConcurrentHashMultiset<String> localHosts = ConcurrentHashMultiset.create();
+  private volatile Set<String> storedHosts = Collections.emptySet();
+  private volatile long reconciledNanos;
+
+  @VisibleForTesting
+  BusyHosts(long reconcilePeriodMillis) {
+    this.reconcilePeriodMillis = reconcilePeriodMillis;
+    this.reconciledNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(reconcilePeriodMillis) - 1;
+  }
+
+  static BusyHosts of(String clusterName) {
+    return CLUSTERS.computeIfAbsent(clusterName, name -> new BusyHosts(RECONCILE_PERIOD_MILLIS));
+  }
+
+  /**
+   * Marks the hosts as busy until the segment is removed.
+   */
+  void add(UUID segmentId, Collection<String> hosts) {
+    Collection<String> segmentHosts = ImmutableSet.copyOf(hosts);
+    if (null == localSegments.putIfAbsent(segmentId, segmentHosts)) {
+      segmentHosts.forEach(localHosts::add);
+    }
+  }
+
+  void remove(UUID segmentId) {
+    Collection<String> segmentHosts = localSegments.remove(segmentId);
+    if (null != segmentHosts) {
+      segmentHosts.forEach(localHosts::remove);
+    }
+  }
+
+  /**
+   * @param host the host to check
+   * @param storedBusyHosts reads the hosts involved in the running segments in storage
+   * @return true if a segment repaired by this instance, or running in storage, involves the host
+   */
+  boolean isBusy(String host, Supplier<Set<String>> storedBusyHosts) {
+    if (localHosts.contains(host)) {
+      return true;
+    }
+    if (!isReconcileDue() && storedHosts.contains(host)) {
+      return true;
+    }
+    // the last read of storage may miss a segment that started since
+    reconcile(storedBusyHosts);
+    return storedHosts.contains(host);
+  }
+
+  private boolean isReconcileDue() {
+    return System.nanoTime() - reconciledNanos > TimeUnit.MILLISECONDS.toNanos(reconcilePeriodMillis);
+  }
+
+  private synchronized void reconcile(Supplier<Set<String>> storedBusyHosts) {
+    long startNanos = System.nanoTime();
+    storedHosts = ImmutableSet.copyOf(storedBusyHosts.get());
+    reconciledNanos = startNanos;
+  }
+}
@@ -21,18 +21,25 @@ import io.cassandrareaper.AppContext;
 import io.cassandrareaper.ReaperApplicationConfiguration;
 import io.cassandrareaper.ReaperApplicationConfiguration.DatacenterAvailability;
 import io.cassandrareaper.ReaperException;
+import io.cassandrareaper.core.Cluster;
+import io.cassandrareaper.core.Node;
 import io.cassandrareaper.core.NodeMetrics;
 import io.cassandrareaper.jmx.ClusterFacade;
 import io.cassandrareaper.jmx.JmxProxy;
 import io.cassandrareaper.storage.IDistributedStorage;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import javax.management.JMException;
 
@@ -41,6 +48,8 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +65,7 @@ final class Heart implements AutoCloseable {
   private final AppContext context;
   private final long maxBeatFrequencyMillis;
   private final AtomicBoolean updatingNodeMetrics = new AtomicBoolean(false);
+  private final AtomicBoolean publishingNodeMetrics = new AtomicBoolean(false);
 
   private Heart(AppContext context, long maxBeatFrequency) {
     this.context = context;
@@ -88,6 +98,17 @@ final class Heart implements AutoCloseable {
     }
   }
 
+  /**
+   * Publishes the metrics of the nodes this instance reaches through JMX, in the clusters it is repairing, so that
+   * instances in other datacenters read them in one query instead of requesting them and polling for an answer.
+   */
+  synchronized void publishMetrics() {
+    if (context.storage instanceof IDistributedStorage
+        && DatacenterAvailability.EACH == context.config.getDatacenterAvailability()) {
+      publishReachableNodeMetrics();
+    }
+  }
+
   AtomicBoolean isCurrentlyUpdatingNodeMetrics() {
     return new AtomicBoolean(updatingNodeMetrics.get());
   }
@@ -153,6 +174,80 @@ final class Heart implements AutoCloseable {
     }
   }
 
+  private void publishReachableNodeMetrics() {
+    IDistributedStorage storage = ((IDistributedStorage) context.storage);
+    registerGauges();
+
+    if (!publishingNodeMetrics.getAndSet(true)) {
+      forkJoinPool.submit(() -> {
+        try (Timer.Context t0 = timer(context, "publishingNodeMetrics")) {
+          ClusterFacade clusterFacade = ClusterFacade.create(context);
+
+          context.repairManager.repairRunners.values().stream()
+              .map(RepairRunner::getClusterName)
+              .filter(Objects::nonNull)
+              .distinct()
+              .flatMap(clusterName -> getReachableNodes(clusterFacade, clusterName).stream())
+              .collect(Collectors.toList())
+              .parallelStream()
+              .forEach(node -> publishNodeMetrics(storage, clusterFacade, node));
+        } catch (RuntimeException ex) {
+          LOG.warn("Failed publishing node metrics during heartbeat", ex);
+        } finally {
+          publishingNodeMetrics.set(false);
+        }
+      });
+    }
+  }
+
+  /**
+   * @return the nodes of the cluster in the datacenters this instance reaches through JMX, with their datacenter
+   */
+  private List<Pair<Node, String>> getReachableNodes(ClusterFacade clusterFacade, String clusterName) {
+    Set<String> accessibleDatacenters = context.jmxConnectionFactory.getAccessibleDatacenters();
+    try {
+      Cluster cluster = context.storage.getCluster(clusterName).get();
+      List<Pair<Node, String>> nodes = Lists.newArrayList();
+
+      clusterFacade.getNodesStatus(cluster, cluster.getSeedHosts()).endpointStates.stream()
+          .flatMap(gossip -> gossip.endpoints.entrySet().stream())
+          .filter(endpointsByDc -> accessibleDatacenters.contains(endpointsByDc.getKey()))
+          .forEach(endpointsByDc -> endpointsByDc.getValue().values().stream()
+              .flatMap(List::stream)
+              .map(endpoint -> Node.builder().withCluster(cluster).withHostname(endpoint.endpoint).build())
+              .forEach(node -> nodes.add(Pair.of(node, endpointsByDc.getKey()))));
+
+      return nodes;
+    } catch (ReaperException | RuntimeException ex) {
+      LOG.debug("failed listing the nodes of cluster {}", clusterName, ex);
+      return Collections.emptyList();
+    }
+  }
+
+  private void publishNodeMetrics(IDistributedStorage storage, ClusterFacade clusterFacade, Pair<Node, String> node) {
+    String hostname = node.getLeft().getHostname();
+    Cluster cluster = node.getLeft().getCluster();
+    try (Timer.Context t1 = timer(context, "publishNodeMetrics", hostname.replace('.', '-'))) {
+      JmxProxy nodeProxy = clusterFacade.connectAny(cluster, Arrays.asList(hostname));
+
+      storage.publishNodeMetrics(
+          NodeMetrics.builder()
+              .withNode(hostname)
+              .withCluster(cluster.getName())
+              .withDatacenter(node.getRight())
+              .withPendingCompactions(nodeProxy.getPendingCompactions())
+              .withHasRepairRunning(nodeProxy.isRepairRunning())
+              .withActiveAnticompactions(0) // for future use
+              .build());
+    } catch (ReaperException | RuntimeException ex) {
+      LOG.debug("failed publishing metrics of node {} in cluster {}", hostname, cluster.getName(), ex);
+    } catch (JMException e) {
+      LOG.warn(
+          "failed querying JMX MBean for metrics on node {} of cluster {} due to {}",
+          hostname, cluster.getName(), e.getMessage());
+    }
+  }
+
   /**
    * Checks if the local Reaper instance is supposed to answer a metrics request.
    * Requires to be in sidecar on the node for which metrics are requested, or to be in a different mode than ALL.
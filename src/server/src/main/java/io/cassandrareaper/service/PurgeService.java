@@ -21,16 +21,27 @@ import io.cassandrareaper.AppContext;
 import io.cassandrareaper.ReaperException;
 import io.cassandrareaper.core.Cluster;
 import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.storage.IDistributedStorage;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,9 +51,13 @@ public final class PurgeService {
   private static final Logger LOG = LoggerFactory.getLogger(PurgeService.class);
 
   private final AppContext context;
+  private final int batchSize;
+  private final RateLimiter rateLimiter;
 
   private PurgeService(AppContext context) {
     this.context = context;
+    this.batchSize = Math.max(1, context.config.getPurgeBatchSize());
+    this.rateLimiter = RateLimiter.create(context.config.getPurgeMaxRunsPerSecond());
   }
 
   public static PurgeService create(AppContext context) {
@@ -53,81 +68,174 @@ public final class PurgeService {
     int purgedRuns = 0;
     if (context.config.getNumberOfRunsToKeepPerUnit() != 0
         || context.config.getPurgeRecordsAfterInDays() != 0) {
-      // List clusters
-      Collection<Cluster> clusters = context.storage.getClusters();
 
-      // List repair runs
-      for (Cluster cluster : clusters) {
+      ExecutorService executor = new InstrumentedExecutorService(
+          Executors.newFixedThreadPool(batchSize), context.metricRegistry, MetricRegistry.name(PurgeService.class));
+      try {
+        // List clusters
+        Collection<Cluster> clusters = context.storage.getClusters();
 
-        Collection<RepairRun> repairRuns
-            = context.storage.getRepairRunsForCluster(cluster.getName(), Optional.empty());
-
-        if (context.config.getPurgeRecordsAfterInDays() > 0) {
-          // Purge all runs that are older than threshold
-          purgedRuns += purgeRepairRunsByDate(repairRuns);
+        for (Cluster cluster : clusters) {
+          purgedRuns += purgeCluster(cluster, executor);
         }
+      } finally {
+        executor.shutdown();
+      }
+    }
+    return purgedRuns;
+  }
 
-        if (context.config.getNumberOfRunsToKeepPerUnit() > 0) {
-          // Purge units that have more runs than the threshold
-          purgedRuns += purgeRepairRunsByHistoryDepth(repairRuns);
-        }
+  /**
+   * Reads the run history of the cluster one page at a time, purging expired runs as pages are read and keeping
+   * only terminated runs aside to apply the history depth purge once the whole history has been seen.
+   */
+  private int purgeCluster(Cluster cluster, ExecutorService executor) throws ReaperException {
+    int purgedRuns = 0;
+    Map<UUID, List<RepairRun>> repairRunsByRepairUnit = Maps.newHashMap();
+
+    // a distributed storage reads the ids as they are iterated, instead of listing the whole history up front
+    Iterable<UUID> repairRunIds = context.storage instanceof IDistributedStorage
+        ? ((IDistributedStorage) context.storage).getRepairRunIdsForCluster(cluster.getName(), batchSize)
+        : context.storage.getRepairRunIdsForCluster(cluster.getName());
+
+    for (List<UUID> page : Iterables.partition(repairRunIds, batchSize)) {
+      List<RepairRun> repairRuns = getRepairRuns(page, executor)
+          .stream()
+          .filter(run -> run.getRunState().isTerminated()) // only delete terminated runs
+          .collect(Collectors.toList());
+
+      context.metricRegistry.counter(MetricRegistry.name(PurgeService.class, "runsScanned")).inc(page.size());
+
+      if (context.config.getPurgeRecordsAfterInDays() > 0) {
+        // Purge all runs that are older than threshold
+        List<RepairRun> expiredRuns = filterRepairRunsByDate(repairRuns);
+        purgedRuns += deleteRepairRuns(expiredRuns, executor);
+        repairRuns.removeAll(expiredRuns);
+      }
+
+      if (context.config.getNumberOfRunsToKeepPerUnit() > 0) {
+        repairRuns.forEach(
+            run -> repairRunsByRepairUnit.computeIfAbsent(run.getRepairUnitId(), id -> Lists.newArrayList()).add(run));
       }
     }
+
+    // Purge units that have more runs than the threshold
+    List<RepairRun> excessRuns = filterRepairRunsByHistoryDepth(repairRunsByRepairUnit);
+    for (List<RepairRun> batch : Lists.partition(excessRuns, batchSize)) {
+      purgedRuns += deleteRepairRuns(batch, executor);
+    }
+
+    if (0 < purgedRuns) {
+      LOG.info("Purged {} repair runs from the history of cluster {}", purgedRuns, cluster.getName());
+    }
     return purgedRuns;
   }
 
   /**
-   * Purges all the repair runs that exceed the required number to keep per repair unit. Runs
-   * provided as argument will be grouped by repair unit and the purge will be applied by unit.
+   * Lists all the repair runs that exceed the required number to keep per repair unit.
    *
-   * @param repairRuns the existing repair runs
-   * @return the number of purged runs
+   * @param repairRunsByRepairUnit the existing terminated repair runs, grouped by repair unit
+   * @return the runs to purge
    */
-  private int purgeRepairRunsByHistoryDepth(Collection<RepairRun> repairRuns) {
-    int purgedRuns = 0;
-    Map<UUID, List<RepairRun>> repairRunsByRepairUnit = repairRuns
-            .stream()
-            .filter(run -> run.getRunState().isTerminated()) // only delete terminated runs
-            .collect(Collectors.groupingBy(RepairRun::getRepairUnitId));
-    for (Entry<UUID, List<RepairRun>> repairUnit : repairRunsByRepairUnit.entrySet()) {
-      List<RepairRun> repairRunsForUnit = repairUnit.getValue();
+  private List<RepairRun> filterRepairRunsByHistoryDepth(Map<UUID, List<RepairRun>> repairRunsByRepairUnit) {
+    List<RepairRun> excessRuns = Lists.newArrayList();
+    for (List<RepairRun> repairRunsForUnit : repairRunsByRepairUnit.values()) {
       repairRunsForUnit.sort(
           (RepairRun r1, RepairRun r2) -> r2.getEndTime().compareTo(r1.getEndTime()));
       for (int i = context.config.getNumberOfRunsToKeepPerUnit();
           i < repairRunsForUnit.size();
           i++) {
-        context.storage.deleteRepairRun(repairRunsForUnit.get(i).getId());
-        purgedRuns++;
+        excessRuns.add(repairRunsForUnit.get(i));
       }
     }
+    return excessRuns;
+  }
 
-    return purgedRuns;
+  /**
+   * Lists all repair runs that are older than the required history depth in days.
+   *
+   * @param repairRuns the list of existing terminated repair runs
+   * @return the runs to purge
+   */
+  private List<RepairRun> filterRepairRunsByDate(Collection<RepairRun> repairRuns) {
+    DateTime threshold = DateTime.now().minusDays(context.config.getPurgeRecordsAfterInDays());
+    return repairRuns
+        .stream()
+        .filter(run -> run.getEndTime().isBefore(threshold)) // filter by date
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Reads the given page of repair runs concurrently.
+   *
+   * @param repairRunIds the page of run ids to read, no larger than the configured purge batch size
+   * @return the runs that still exist
+   */
+  private List<RepairRun> getRepairRuns(List<UUID> repairRunIds, ExecutorService executor) throws ReaperException {
+    List<Future<Optional<RepairRun>>> futures = Lists.newArrayList();
+    repairRunIds.forEach(id -> futures.add(executor.submit(() -> context.storage.getRepairRun(id))));
+
+    List<RepairRun> repairRuns = Lists.newArrayList();
+    try {
+      for (Future<Optional<RepairRun>> future : futures) {
+        future.get().ifPresent(repairRuns::add);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      futures.forEach(future -> future.cancel(true));
+      throw new ReaperException(e);
+    } catch (ExecutionException e) {
+      LOG.error("Failed reading a page of {} repair runs to purge", repairRunIds.size(), e);
+      throw new ReaperException(e);
+    }
+    return repairRuns;
   }
 
   /**
-   * Purges all repair runs that are older than the required history depth in days.
+   * Deletes the given batch of repair runs concurrently, waiting for all deletes to complete before returning so that
+   * no more than one batch is ever in flight. Deletes are throttled by the configured purge rate.
    *
-   * @param repairRuns the list of existing repair runs
+   * <p>A failed delete does not stop the rest of the batch, it is counted apart from the purged runs.
+   *
+   * @param repairRuns the batch of runs to delete, no larger than the configured purge batch size
    * @return the number of purged runs
    */
-  private int purgeRepairRunsByDate(Collection<RepairRun> repairRuns) {
-    AtomicInteger purgedRuns = new AtomicInteger(0);
-    repairRuns
-        .stream()
-        .filter(run -> run.getRunState().isTerminated()) // only delete terminated runs
-        .filter(
-            run ->
-                run.getEndTime()
-                    .isBefore(
-                        DateTime.now()
-                            .minusDays(
-                                context.config.getPurgeRecordsAfterInDays()))) // filter by date
-        .forEach(
-            run -> {
-              context.storage.deleteRepairRun(run.getId());
-              purgedRuns.incrementAndGet();
-            });
-
-    return purgedRuns.get();
+  private int deleteRepairRuns(List<RepairRun> repairRuns, ExecutorService executor) throws ReaperException {
+    if (repairRuns.isEmpty()) {
+      return 0;
+    }
+    int purgedRuns = 0;
+    int failedRuns = 0;
+    try (Timer.Context cxt = context.metricRegistry.timer(MetricRegistry.name(PurgeService.class, "batch")).time()) {
+      List<Future<Optional<RepairRun>>> futures = Lists.newArrayList();
+      try {
+        for (RepairRun run : repairRuns) {
+          rateLimiter.acquire();
+          Callable<Optional<RepairRun>> delete = () -> context.storage.deleteRepairRun(run.getId());
+          futures.add(executor.submit(delete));
+        }
+        for (int i = 0; i < futures.size(); ++i) {
+          try {
+            // absent if the run was deleted meanwhile, by another instance or through the api
+            purgedRuns += futures.get(i).get().isPresent() ? 1 : 0;
+          } catch (ExecutionException e) {
+            ++failedRuns;
+            LOG.error("Failed purging repair run {}", repairRuns.get(i).getId(), e.getCause());
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        futures.forEach(future -> future.cancel(true));
+        throw new ReaperException(e);
+      }
+    } finally {
+      context.metricRegistry.counter(MetricRegistry.name(PurgeService.class, "runsPurged")).inc(purgedRuns);
+      context.metricRegistry.counter(MetricRegistry.name(PurgeService.class, "runsFailed")).inc(failedRuns);
+    }
+    if (0 < failedRuns) {
+      LOG.warn("Failed purging {} out of a batch of {} repair runs", failedRuns, repairRuns.size());
+    }
+    LOG.debug("Purged {} out of a batch of {} repair runs", purgedRuns, repairRuns.size());
+    return purgedRuns;
   }
 }
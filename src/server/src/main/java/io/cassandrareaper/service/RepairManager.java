@@ -147,6 +147,7 @@ public final class RepairManager implements AutoCloseable {
   public void handleMetricsRequests() throws ReaperException {
     try {
       heart.beatMetrics();
+      heart.publishMetrics();
     } catch (RuntimeException e) {
       throw new ReaperException(e);
     }
@@ -30,6 +30,7 @@ import io.cassandrareaper.jmx.ClusterFacade;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -46,6 +47,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.apache.cassandra.repair.RepairParallelism;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -166,15 +168,21 @@ public final class RepairRunService {
         globalSegmentCount = computeGlobalSegmentCount(segmentCountPerNode, endpointToRange);
       }
 
-      segments = filterSegmentsByNodes(
-              sg.generateSegments(
-                  globalSegmentCount,
-                  tokens,
-                  repairUnit.getIncrementalRepair(),
-                  replicasToRange,
-                  cassandraVersion),
-              repairUnit,
-              endpointToRange);
+      List<Segment> generatedSegments = sg.generateSegments(
+          globalSegmentCount,
+          tokens,
+          repairUnit.getIncrementalRepair(),
+          replicasToRange,
+          cassandraVersion);
+
+      if (context.config.getTargetSegmentDuration().isPresent()) {
+        generatedSegments = sg.resizeByDuration(
+            generatedSegments,
+            tokens,
+            getSegmentDurations(repairUnit),
+            context.config.getTargetSegmentDuration().get().toMillis());
+      }
+      segments = filterSegmentsByNodes(generatedSegments, repairUnit, endpointToRange);
 
     } catch (ReaperException e) {
       LOG.warn("couldn't connect to any host: {}, life sucks...", targetCluster.getSeedHosts(), e);
@@ -188,6 +196,29 @@ public final class RepairRunService {
     return segments;
   }
 
+  /**
+   * The token ranges and repair durations of the segments repaired by the last finished run of the repair unit.
+   */
+  @VisibleForTesting
+  List<Pair<Segment, Long>> getSegmentDurations(RepairUnit repairUnit) {
+    Optional<RepairRun> lastRun = context.storage.getRepairRunsForUnit(repairUnit.getId())
+        .stream()
+        .filter(run -> run.getRunState().isTerminated() && null != run.getEndTime())
+        .max(Comparator.comparing(RepairRun::getEndTime));
+
+    if (!lastRun.isPresent()) {
+      return Collections.emptyList();
+    }
+    return context.storage.getRepairSegmentsForRun(lastRun.get().getId())
+        .stream()
+        .filter(segment -> RepairSegment.State.DONE == segment.getState())
+        .filter(segment -> null != segment.getStartTime() && null != segment.getEndTime())
+        .map(segment -> Pair.of(
+            segment.getTokenRange(),
+            segment.getEndTime().getMillis() - segment.getStartTime().getMillis()))
+        .collect(Collectors.toList());
+  }
+
   static int computeGlobalSegmentCount(
       int segmentCountPerNode,
       Map<String, List<RingRange>> endpointToRange) {
@@ -25,24 +25,33 @@ import io.cassandrareaper.core.RepairSegment;
 import io.cassandrareaper.core.RepairUnit;
 import io.cassandrareaper.core.Segment;
 import io.cassandrareaper.jmx.ClusterFacade;
+import io.cassandrareaper.storage.IDistributedStorage;
 
+import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -60,11 +69,19 @@ final class RepairRunner implements Runnable {
   private final ClusterFacade clusterFacade;
   private final UUID repairRunId;
   private final String clusterName;
+  private final String keyspace;
   private final AtomicReferenceArray<UUID> currentlyRunningSegments;
-  private final List<RingRange> parallelRanges;
+  private final Map<UUID, Collection<String>> replicasOfRunningSegments = Maps.newConcurrentMap();
+  private final Map<UUID, Collection<String>> segmentReplicas = Maps.newConcurrentMap();
+  // the segments not started yet, grouped by replicas, listed once and then only read back one at a time when picked
+  private Map<Collection<String>, Queue<RepairSegment>> freeSegments = Collections.emptyMap();
+  private volatile boolean freeSegmentsStale = true;
   private final String metricNameForMillisSinceLastRepairPerKeyspace;
   private final String metricNameForMillisSinceLastRepair;
+  private final String metricNameForNextSegmentLookup;
   private final Optional<Cluster> cluster;
+  private final RepairThroughput throughput;
+  private final List<String> metricNamesForThroughput;
   private float repairProgress;
   private float segmentsDone;
   private float segmentsTotal;
@@ -86,7 +103,7 @@ final class RepairRunner implements Runnable {
     this.clusterName = cluster.get().getName();
 
     Preconditions.checkArgument(cluster.isPresent(), "Cluster couldn't be found in storage");
-    String keyspace = repairUnitOpt.getKeyspaceName();
+    this.keyspace = repairUnitOpt.getKeyspaceName();
     int parallelRepairs
         = getPossibleParallelRepairsCount(
             clusterFacade.getRangeToEndpointMap(cluster.get(), keyspace),
@@ -102,14 +119,6 @@ final class RepairRunner implements Runnable {
       currentlyRunningSegments.set(i, null);
     }
 
-    Collection<RepairSegment> repairSegments = context.storage.getRepairSegmentsForRun(repairRunId);
-
-    parallelRanges = getParallelRanges(
-            parallelRepairs,
-            Lists.newArrayList(
-                Collections2.transform(
-                    repairSegments, segment -> segment.getTokenRange().getBaseRange())));
-
     String repairUnitClusterName = repairUnitOpt.getClusterName();
     String repairUnitKeyspaceName = repairUnitOpt.getKeyspaceName();
 
@@ -142,6 +151,55 @@ final class RepairRunner implements Runnable {
 
     registerMetric(metricNameForTotalSegmentsPerKeyspace, (Gauge<Integer>) ()  -> (int)segmentsTotal);
     registerMetric(metricNameForTotalSegments, (Gauge<Float>) ()  -> segmentsTotal);
+
+    metricNameForNextSegmentLookup = MetricRegistry.name(
+        RepairRunner.class, "nextSegmentLookup", repairUnitClusterName.replaceAll("[^A-Za-z0-9]", ""));
+
+    throughput = RepairThroughput.start(
+        repairRun.get(),
+        getRingSize(cluster.get()),
+        context.storage.getSegmentsWithState(repairRunId, RepairSegment.State.DONE));
+
+    metricNamesForThroughput = ImmutableList.of(
+        metricName("segmentsPerMinute", repairUnitClusterName, repairUnitKeyspaceName, repairRunId),
+        metricName("tokensPerMinute", repairUnitClusterName, repairUnitKeyspaceName, repairRunId),
+        metricName("millisToCompletion", repairUnitClusterName, repairUnitKeyspaceName, repairRunId));
+
+    registerMetric(
+        metricNamesForThroughput.get(0),
+        (Gauge<Double>) () -> throughput.segmentsPerMinute().orElse(0));
+
+    registerMetric(
+        metricNamesForThroughput.get(1),
+        (Gauge<Double>) () -> throughput.tokensPerMinute().orElse(0));
+
+    // -1 until the first segment is repaired
+    registerMetric(
+        metricNamesForThroughput.get(2),
+        (Gauge<Long>) () -> throughput.millisToRepair((int) (segmentsTotal - segmentsDone)).orElse(-1L));
+
+    // throughput of all the runs of the cluster
+    String cleanClusterName = repairUnitClusterName.replaceAll("[^A-Za-z0-9]", "");
+    registerMetric(
+        MetricRegistry.name(RepairRunner.class, "segmentsPerMinute", cleanClusterName),
+        (Gauge<Double>) () -> RepairThroughput.clusterSegmentsPerMinute(clusterName));
+
+    registerMetric(
+        MetricRegistry.name(RepairRunner.class, "tokensPerMinute", cleanClusterName),
+        (Gauge<Double>) () -> RepairThroughput.clusterTokensPerMinute(clusterName));
+  }
+
+  private static Optional<BigInteger> getRingSize(Cluster cluster) {
+    // a cluster can be built with a null partitioner rather than an absent one
+    Optional<String> partitioner = Optional.ofNullable(cluster.getPartitioner()).orElse(Optional.empty());
+    try {
+      return partitioner.isPresent()
+          ? Optional.of(new SegmentGenerator(partitioner.get()).getRangeSize())
+          : Optional.empty();
+    } catch (ReaperException e) {
+      LOG.debug("unknown ring size for cluster {}", cluster.getName(), e);
+      return Optional.empty();
+    }
   }
 
   public static RepairRunner create(
@@ -158,10 +216,19 @@ final class RepairRunner implements Runnable {
     }
   }
 
+  private boolean isStorageCircuitBreakerOpen() {
+    return context.storage instanceof IDistributedStorage
+        && ((IDistributedStorage) context.storage).isCircuitBreakerOpen();
+  }
+
   UUID getRepairRunId() {
     return repairRunId;
   }
 
+  String getClusterName() {
+    return clusterName;
+  }
+
   static int getPossibleParallelRepairsCount(
       Map<List<String>, List<String>> ranges,
       Map<String, String> hostsInRing) throws ReaperException {
@@ -182,34 +249,6 @@ final class RepairRunner implements Runnable {
         Math.max(1, hostsInRing.keySet().size() / ranges.values().iterator().next().size()));
   }
 
-  static List<RingRange> getParallelRanges(int parallelRepairs, List<RingRange> segments)
-      throws ReaperException {
-
-    if (parallelRepairs == 0) {
-      String msg = "Can't repair anything with 0 threads";
-      LOG.error(msg);
-      throw new ReaperException(msg);
-    }
-
-    Collections.sort(segments, RingRange.START_COMPARATOR);
-
-    List<RingRange> parallelRanges = Lists.newArrayList();
-    for (int i = 0; i < parallelRepairs - 1; i++) {
-      parallelRanges.add(
-          new RingRange(
-              segments.get(i * segments.size() / parallelRepairs).getStart(),
-              segments.get((i + 1) * segments.size() / parallelRepairs).getStart()));
-    }
-    parallelRanges.add(
-        new RingRange(
-            segments.get((parallelRepairs - 1) * segments.size() / parallelRepairs).getStart(),
-            segments.get(0).getStart()));
-
-    LOG.debug("Parallel ranges : {}", parallelRanges);
-
-    return parallelRanges;
-  }
-
   /**
    * Starts/resumes a repair run that is supposed to run.
    */
@@ -233,6 +272,11 @@ final class RepairRunner implements Runnable {
           start();
           break;
         case RUNNING:
+          if (isStorageCircuitBreakerOpen()) {
+            LOG.warn("Storage backend is failing, not starting new segments of repair run {}", repairRunId);
+            context.repairManager.scheduleRetry(this);
+            break;
+          }
           startNextSegment();
           // We're updating the node list of the cluster at the start of each new run.
           // Helps keeping up with topology changes.
@@ -297,6 +341,9 @@ final class RepairRunner implements Runnable {
               liveNodes,
               cluster.get().getProperties());
       context.storage.updateCluster(newCluster);
+      // replicas of the segments get looked up again against the new topology
+      segmentReplicas.clear();
+      freeSegmentsStale = true;
     }
   }
 
@@ -343,6 +390,8 @@ final class RepairRunner implements Runnable {
     // so that a rescheduling of this runner will happen.
     boolean repairStarted = false;
 
+    boolean freeSegmentsListed = false;
+
     for (int rangeIndex = 0; rangeIndex < currentlyRunningSegments.length(); rangeIndex++) {
 
       if (currentlyRunningSegments.get(rangeIndex) != null) {
@@ -373,14 +422,30 @@ final class RepairRunner implements Runnable {
       }
 
       // We have an empty slot, so let's start new segment runner if possible.
-      // When in sidecar mode, filter on ranges that the local node is a replica for only.
-      LOG.info("Running segment for range {}", parallelRanges.get(rangeIndex));
-      Optional<RepairSegment> nextRepairSegment
-          = context.storage.getNextFreeSegmentInRange(
-                  repairRunId, Optional.of(parallelRanges.get(rangeIndex)));
+      // Any free segment will do, as long as none of its replicas are busy repairing another segment of this run.
+      Optional<RepairSegment> nextRepairSegment;
+      try (Timer.Context cxt = context.metricRegistry.timer(metricNameForNextSegmentLookup).time()) {
+        // segments started or postponed by other Reaper instances are only noticed when listing the free ones again
+        if (!freeSegmentsListed
+            && (freeSegmentsStale || (freeSegments.isEmpty() && replicasOfRunningSegments.isEmpty()))) {
+          listFreeSegments();
+          freeSegmentsListed = true;
+        }
+        nextRepairSegment = pollFreeSegment(freeSegments, replicasOfRunningSegments.values(), this::readFreeSegment);
+        // segments whose replicas could not be looked up are held back, until the lookup is retried on next listing
+        freeSegmentsStale |= freeSegments.containsKey(Collections.emptySet());
+      }
 
       if (!nextRepairSegment.isPresent()) {
-        LOG.debug("No repair segment available for range {}", parallelRanges.get(rangeIndex));
+        LOG.debug(
+            "No repair segment with idle replicas available for slot {}, {} replica sets with free segments",
+            rangeIndex,
+            freeSegments.size());
+
+      } else if (getReplicas(nextRepairSegment.get()).isEmpty()) {
+        // a segment running with unknown replicas would not keep other segments off its hosts
+        LOG.warn("Failed looking up the replicas of segment {}, not starting it", nextRepairSegment.get().getId());
+        freeSegmentsStale = true;
 
       } else {
         LOG.info("Next segment to run : {}", nextRepairSegment.get().getId());
@@ -390,11 +455,14 @@ final class RepairRunner implements Runnable {
           LOG.debug("Didn't set segment id `{}` to slot {} because it was busy", segmentId, rangeIndex);
         } else {
           LOG.debug("Did set segment id `{}` to slot {}", segmentId, rangeIndex);
+          replicasOfRunningSegments.put(segmentId, getReplicas(nextRepairSegment.get()));
           scheduleRetry = repairSegment(
                   rangeIndex,
                   nextRepairSegment.get().getId(),
                   nextRepairSegment.get().getTokenRange());
           if (!scheduleRetry) {
+            replicasOfRunningSegments.remove(segmentId);
+            freeSegmentsStale = true;
             break;
           }
           segmentsTotal = context.storage.getSegmentAmountForRepairRun(repairRunId);
@@ -423,6 +491,84 @@ final class RepairRunner implements Runnable {
     }
   }
 
+  /**
+   * Lists the segments not started yet, shuffled so that Reaper instances sharing the run don't compete.
+   */
+  private void listFreeSegments() {
+    freeSegmentsStale = false;
+    List<RepairSegment> segments
+        = Lists.newArrayList(context.storage.getSegmentsWithState(repairRunId, RepairSegment.State.NOT_STARTED));
+    Collections.shuffle(segments);
+    freeSegments = groupByReplicas(segments, this::getReplicas);
+  }
+
+  private Optional<RepairSegment> readFreeSegment(RepairSegment candidate) {
+    return SegmentStateWriter.of(context).getRepairSegment(repairRunId, candidate.getId())
+        .filter(segment -> RepairSegment.State.NOT_STARTED == segment.getState());
+  }
+
+  /**
+   * Groups the segments by their replicas, keeping the order of the segments within and across groups.
+   */
+  static Map<Collection<String>, Queue<RepairSegment>> groupByReplicas(
+      List<RepairSegment> segments,
+      Function<RepairSegment, Collection<String>> replicas) {
+
+    Map<Collection<String>, Queue<RepairSegment>> groups = Maps.newLinkedHashMap();
+    segments.forEach(
+        segment -> groups.computeIfAbsent(replicas.apply(segment), key -> Queues.newArrayDeque()).add(segment));
+    return groups;
+  }
+
+  /**
+   * Takes the first free segment whose replicas are not involved in any of the running repairs. Only the replica
+   * sets that are idle are looked at, and candidates found to have been started meanwhile are dropped. Segments whose
+   * replicas are unknown, grouped under an empty set, could conflict with any running repair and are never taken.
+   *
+   * @param freeSegments the segments that can be repaired grouped by replicas, in order of preference
+   * @param busyReplicas the replicas of each of the currently running segments
+   * @param stillFree reads a candidate back, empty if it is not free anymore
+   * @return the segment to repair next, or empty if all free segments share a replica with a running repair.
+   */
+  static Optional<RepairSegment> pollFreeSegment(
+      Map<Collection<String>, Queue<RepairSegment>> freeSegments,
+      Collection<Collection<String>> busyReplicas,
+      Function<RepairSegment, Optional<RepairSegment>> stillFree) {
+
+    Set<String> busy = busyReplicas.stream().flatMap(Collection::stream).collect(Collectors.toSet());
+    Iterator<Map.Entry<Collection<String>, Queue<RepairSegment>>> groups = freeSegments.entrySet().iterator();
+    while (groups.hasNext()) {
+      Map.Entry<Collection<String>, Queue<RepairSegment>> group = groups.next();
+      if (group.getKey().isEmpty() || !Collections.disjoint(group.getKey(), busy)) {
+        continue;
+      }
+      Optional<RepairSegment> segment = Optional.empty();
+      while (!segment.isPresent() && !group.getValue().isEmpty()) {
+        segment = stillFree.apply(group.getValue().poll());
+      }
+      if (group.getValue().isEmpty()) {
+        groups.remove();
+      }
+      if (segment.isPresent()) {
+        return segment;
+      }
+    }
+    return Optional.empty();
+  }
+
+  private Collection<String> getReplicas(RepairSegment segment) {
+    Collection<String> replicas = segmentReplicas.get(segment.getId());
+    if (null == replicas) {
+      replicas = ImmutableSet.copyOf(
+          clusterFacade.tokenRangeToEndpoint(cluster.get(), keyspace, segment.getTokenRange()));
+      // an empty list means the lookup failed, so try again next time
+      if (!replicas.isEmpty()) {
+        segmentReplicas.put(segment.getId(), replicas);
+      }
+    }
+    return replicas;
+  }
+
   /**
    * Start the repair of a segment.
    *
@@ -515,17 +661,22 @@ final class RepairRunner implements Runnable {
           new FutureCallback<Object>() {
             @Override
             public void onSuccess(Object ignored) {
+              replicasOfRunningSegments.remove(segmentId);
               currentlyRunningSegments.set(rangeIndex, null);
               handleResult(segmentId);
             }
 
             @Override
             public void onFailure(Throwable throwable) {
+              replicasOfRunningSegments.remove(segmentId);
+              freeSegmentsStale = true;
               currentlyRunningSegments.set(rangeIndex, null);
               LOG.error("Executing SegmentRunner failed", throwable);
             }
           });
     } catch (ReaperException ex) {
+      replicasOfRunningSegments.remove(segmentId);
+      freeSegmentsStale = true;
       LOG.error("Executing SegmentRunner failed", ex);
     }
 
@@ -562,7 +713,8 @@ final class RepairRunner implements Runnable {
   }
 
   private void handleResult(UUID segmentId) {
-    Optional<RepairSegment> segment = context.storage.getRepairSegment(repairRunId, segmentId);
+    // the segment runner might still be writing the outcome of the segment
+    Optional<RepairSegment> segment = SegmentStateWriter.of(context).getRepairSegment(repairRunId, segmentId);
 
     // Don't do rescheduling here, not to spawn uncontrolled amount of threads
     if (segment.isPresent()) {
@@ -570,11 +722,13 @@ final class RepairRunner implements Runnable {
       LOG.debug("In repair run #{}, triggerRepair on segment {} ended with state {}", repairRunId, segmentId, state);
       switch (state) {
         case NOT_STARTED:
-          // Unsuccessful repair
+          // Unsuccessful repair, the segment is free again
+          freeSegmentsStale = true;
           break;
 
         case DONE:
           // Successful repair
+          throughput.record(segment.get());
           break;
 
         default:
@@ -608,6 +762,9 @@ final class RepairRunner implements Runnable {
   }
 
   void killAndCleanupRunner() {
+    throughput.stop();
+    // the gauges of the run read its throughput, which is no longer tracked
+    metricNamesForThroughput.forEach(context.metricRegistry::remove);
     context.repairManager.removeRunner(this);
     Thread.currentThread().interrupt();
   }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.service;
+
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSegment;
+import io.cassandrareaper.resources.view.RepairRunStatus;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.UUID;
+
+import com.google.common.collect.Maps;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the throughput of a running repair run, from the end times of its repaired segments.
+ *
+ * <p>The time between two segment completions and the tokens of each completed segment are exponentially weighted
+ * moving averages, so that the throughput follows changes of intensity or of cluster load within a few segments. The
+ * averages project the time the remaining segments will take to repair.
+ */
+final class RepairThroughput {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RepairThroughput.class);
+
+  // weight of the latest segment in the moving averages
+  private static final double ALPHA = 0.2;
+
+  private static final Map<UUID, RepairThroughput> RUNS = Maps.newConcurrentMap();
+
+  private final UUID runId;
+  private final String clusterName;
+  private final Optional<BigInteger> ringSize;
+  private long lastEndMillis;
+  private double millisBetweenSegments = Double.NaN;
+  private double averageBeforeLastInterval = Double.NaN;
+  private long lastIntervalMillis;
+  private int segmentsInLastInterval;
+  private double tokensPerSegment = Double.NaN;
+
+  private RepairThroughput(RepairRun repairRun, Optional<BigInteger> ringSize) {
+    this.runId = repairRun.getId();
+    this.clusterName = repairRun.getClusterName();
+    this.ringSize = ringSize;
+    this.lastEndMillis = null != repairRun.getStartTime() ? repairRun.getStartTime().getMillis() : Long.MIN_VALUE;
+  }
+
+  /**
+   * Starts tracking the throughput of a repair run, replaying the segments it already repaired.
+   *
+   * @param repairRun the run being repaired
+   * @param ringSize the number of tokens in the ring, if known, to measure the tokens repaired per minute
+   * @param repairedSegments the segments of the run already repaired
+   */
+  static RepairThroughput start(
+      RepairRun repairRun,
+      Optional<BigInteger> ringSize,
+      Collection<RepairSegment> repairedSegments) {
+
+    RepairThroughput throughput = new RepairThroughput(repairRun, ringSize);
+    repairedSegments.stream()
+        .filter(segment -> null != segment.getEndTime())
+        .sorted(Comparator.comparing(RepairSegment::getEndTime))
+        .forEach(throughput::record);
+
+    RUNS.put(repairRun.getId(), throughput);
+    return throughput;
+  }
+
+  static Optional<RepairThroughput> of(UUID runId) {
+    return Optional.ofNullable(RUNS.get(runId));
+  }
+
+  /**
+   * @return the segments repaired per minute by all the runs of the cluster this reaper instance is running
+   */
+  static double clusterSegmentsPerMinute(String clusterName) {
+    return RUNS.values().stream()
+        .filter(throughput -> throughput.clusterName.equals(clusterName))
+        .mapToDouble(throughput -> throughput.segmentsPerMinute().orElse(0))
+        .sum();
+  }
+
+  /**
+   * @return the tokens repaired per minute by all the runs of the cluster this reaper instance is running
+   */
+  static double clusterTokensPerMinute(String clusterName) {
+    return RUNS.values().stream()
+        .filter(throughput -> throughput.clusterName.equals(clusterName))
+        .mapToDouble(throughput -> throughput.tokensPerMinute().orElse(0))
+        .sum();
+  }
+
+  void stop() {
+    RUNS.remove(runId, this);
+  }
+
+  synchronized void record(RepairSegment segment) {
+    if (null == segment.getEndTime()) {
+      // written by an older reaper, or read before its end time
+      LOG.debug("Not measuring the throughput of segment {} which has no end time", segment.getId());
+      return;
+    }
+    long endMillis = segment.getEndTime().getMillis();
+    if (Long.MIN_VALUE == lastEndMillis) {
+      lastEndMillis = null != segment.getStartTime() ? segment.getStartTime().getMillis() : endMillis;
+    }
+    if (endMillis > lastEndMillis || Double.isNaN(millisBetweenSegments)) {
+      averageBeforeLastInterval = millisBetweenSegments;
+      lastIntervalMillis = Math.max(0, endMillis - lastEndMillis);
+      segmentsInLastInterval = 1;
+      lastEndMillis = endMillis;
+    } else {
+      // parallel segments can complete out of order, rather than a zero interval this counts as one more segment
+      // repaired in the last interval
+      ++segmentsInLastInterval;
+    }
+    millisBetweenSegments = ewma(averageBeforeLastInterval, (double) lastIntervalMillis / segmentsInLastInterval);
+
+    if (ringSize.isPresent()) {
+      tokensPerSegment = ewma(tokensPerSegment, segment.getTokenRange().countTokens(ringSize.get()).doubleValue());
+    }
+  }
+
+  synchronized OptionalDouble segmentsPerMinute() {
+    return Double.isNaN(millisBetweenSegments)
+        ? OptionalDouble.empty()
+        : OptionalDouble.of(60_000 / Math.max(1, millisBetweenSegments));
+  }
+
+  synchronized OptionalDouble tokensPerMinute() {
+    OptionalDouble segmentsPerMinute = segmentsPerMinute();
+    return segmentsPerMinute.isPresent() && !Double.isNaN(tokensPerSegment)
+        ? OptionalDouble.of(segmentsPerMinute.getAsDouble() * tokensPerSegment)
+        : OptionalDouble.empty();
+  }
+
+  /**
+   * @return the projected time it takes to repair the given number of segments, at the current throughput
+   */
+  synchronized Optional<Long> millisToRepair(int segments) {
+    return Double.isNaN(millisBetweenSegments)
+        ? Optional.empty()
+        : Optional.of((long) (millisBetweenSegments * Math.max(0, segments)));
+  }
+
+  /**
+   * Adds the throughput and the completion time it projects to the status of the run.
+   */
+  void describe(RepairRunStatus status) {
+    segmentsPerMinute().ifPresent(status::setSegmentsPerMinute);
+    tokensPerMinute().ifPresent(status::setTokensPerMinute);
+    if (RepairRun.RunState.RUNNING == status.getState()) {
+      millisToRepair(status.getTotalSegments() - status.getSegmentsRepaired())
+          .ifPresent(millis -> status.setEstimatedTimeOfArrival(DateTime.now().plus(millis)));
+    }
+  }
+
+  private static double ewma(double average, double sample) {
+    return Double.isNaN(average) ? sample : ALPHA * sample + (1 - ALPHA) * average;
+  }
+}
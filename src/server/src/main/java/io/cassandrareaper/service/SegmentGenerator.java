@@ -22,13 +22,19 @@ import io.cassandrareaper.core.Segment;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +47,9 @@ final class SegmentGenerator {
   private static final boolean COALESCING_DISABLED
       = Boolean.getBoolean(SegmentGenerator.class.getName() + ".disable.tokenrange.coalescing");
 
+  // segments are only split once they are expected to overrun the target duration by half
+  private static final double SPLIT_THRESHOLD = 1.5;
+
   private final String partitioner;
   private final BigInteger rangeMin;
   private final BigInteger rangeMax;
@@ -67,6 +76,10 @@ final class SegmentGenerator {
     partitioner = "(" + rangeMin + "," + rangeMax + ")";
   }
 
+  BigInteger getRangeSize() {
+    return rangeSize;
+  }
+
   static BigInteger max(BigInteger big0, BigInteger big1) {
     return greaterThan(big0, big1) ? big0 : big1;
   }
@@ -260,10 +273,253 @@ final class SegmentGenerator {
     return (rangeMax.subtract(rangeMin)).divide(BigInteger.valueOf(segmentCount));
   }
 
+  /**
+   * Resizes segments so that each is expected to take about the target duration to repair, based on how long the same
+   * tokens took to repair in a previous run.
+   *
+   * <p>The previous durations give a cost per token for the ranges they covered, tokens without history are assumed
+   * to cost the average. The costs are indexed by token once, so that estimating a segment does not scan the history.
+   * Segments expected to overrun the target are split, into groups of token ranges or into equal sub ranges, and
+   * consecutive segments of the same vnode expected to finish early are merged back together.
+   *
+   * @param segments the segments generated by token count, in ring order
+   * @param ringTokens the tokens of the nodes, which segments are never merged across
+   * @param history the token ranges of previously repaired segments with their repair duration in milliseconds
+   * @param targetMillis the duration each segment should take to repair
+   * @return the resized segments, covering the same token ranges
+   */
+  List<Segment> resizeByDuration(
+      List<Segment> segments,
+      Collection<BigInteger> ringTokens,
+      List<Pair<Segment, Long>> history,
+      long targetMillis) {
+
+    Preconditions.checkArgument(0 < targetMillis);
+    if (history.isEmpty()) {
+      return segments;
+    }
+    TokenCosts.Builder costs = new TokenCosts.Builder();
+    double totalMillis = 0;
+    double totalTokens = 0;
+    for (Pair<Segment, Long> repaired : history) {
+      double tokens = Math.max(1, repaired.getLeft().countTokens(rangeSize).doubleValue());
+      for (RingRange range : repaired.getLeft().getTokenRanges()) {
+        unwrap(range).forEach(part -> costs.add(part[0], part[1], repaired.getRight() / tokens));
+      }
+      totalMillis += repaired.getRight();
+      totalTokens += tokens;
+    }
+    TokenCosts costPerToken = costs.build();
+    double defaultCostPerToken = totalMillis / totalTokens;
+    Set<BigInteger> vnodeBoundaries = Sets.newHashSet(ringTokens);
+
+    List<Segment> resized = Lists.newArrayList();
+    Segment pending = null;
+    double pendingMillis = 0;
+    for (Segment segment : segments) {
+      double millis = estimateMillis(segment.getTokenRanges(), costPerToken, defaultCostPerToken);
+      if (millis > targetMillis * SPLIT_THRESHOLD) {
+        if (null != pending) {
+          resized.add(pending);
+          pending = null;
+        }
+        resized.addAll(split(segment, millis, costPerToken, defaultCostPerToken, targetMillis));
+      } else if (null != pending
+          && pendingMillis + millis <= targetMillis
+          && adjacent(pending, segment, vnodeBoundaries)) {
+        pending = Segment.builder()
+            .withTokenRange(new RingRange(pending.getBaseRange().getStart(), segment.getBaseRange().getEnd()))
+            .build();
+        pendingMillis += millis;
+      } else {
+        if (null != pending) {
+          resized.add(pending);
+        }
+        pending = segment;
+        pendingMillis = millis;
+      }
+    }
+    if (null != pending) {
+      resized.add(pending);
+    }
+    LOG.info("Resized {} segments into {} segments of about {} ms each", segments.size(), resized.size(), targetMillis);
+    return resized;
+  }
+
+  private List<Segment> split(
+      Segment segment,
+      double millis,
+      TokenCosts costPerToken,
+      double defaultCostPerToken,
+      long targetMillis) {
+
+    List<Segment> splits = Lists.newArrayList();
+    if (1 < segment.getTokenRanges().size()) {
+      // coalesced token ranges are split back into groups, oversized ranges ending up on their own
+      List<RingRange> group = Lists.newArrayList();
+      double groupMillis = 0;
+      for (RingRange range : segment.getTokenRanges()) {
+        double rangeMillis = estimateMillis(Arrays.asList(range), costPerToken, defaultCostPerToken);
+        if (!group.isEmpty() && groupMillis + rangeMillis > targetMillis) {
+          splits.addAll(splitGroup(group, groupMillis, costPerToken, defaultCostPerToken, targetMillis));
+          group = Lists.newArrayList();
+          groupMillis = 0;
+        }
+        group.add(range);
+        groupMillis += rangeMillis;
+      }
+      splits.addAll(splitGroup(group, groupMillis, costPerToken, defaultCostPerToken, targetMillis));
+    } else if (millis > targetMillis * SPLIT_THRESHOLD) {
+      RingRange range = segment.getBaseRange();
+      BigInteger span = range.span(rangeSize);
+      int count = (int) Math.min(
+          Math.ceil(millis / targetMillis), span.min(BigInteger.valueOf(Integer.MAX_VALUE)).intValue());
+      LOG.info("Splitting token range {} expected to take {} ms into {} segments", range, (long) millis, count);
+
+      BigInteger start = range.getStart();
+      for (int i = 1; i <= count; i++) {
+        BigInteger end
+            = range.getStart().add(span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count)));
+        if (greaterThan(end, rangeMax)) {
+          end = end.subtract(rangeSize);
+        }
+        splits.add(Segment.builder().withTokenRange(new RingRange(start, end)).build());
+        start = end;
+      }
+    } else {
+      splits.add(segment);
+    }
+    return splits;
+  }
+
+  private List<Segment> splitGroup(
+      List<RingRange> group,
+      double millis,
+      TokenCosts costPerToken,
+      double defaultCostPerToken,
+      long targetMillis) {
+
+    Segment segment = Segment.builder().withTokenRanges(group).build();
+    return 1 == group.size()
+        ? split(segment, millis, costPerToken, defaultCostPerToken, targetMillis)
+        : Arrays.asList(segment);
+  }
+
+  private static boolean adjacent(Segment first, Segment second, Set<BigInteger> vnodeBoundaries) {
+    return 1 == first.getTokenRanges().size()
+        && 1 == second.getTokenRanges().size()
+        && first.getBaseRange().getEnd().equals(second.getBaseRange().getStart())
+        && !vnodeBoundaries.contains(first.getBaseRange().getEnd());
+  }
+
+  private double estimateMillis(List<RingRange> ranges, TokenCosts costPerToken, double defaultCostPerToken) {
+    double millis = 0;
+    for (RingRange range : ranges) {
+      BigInteger covered = BigInteger.ZERO;
+      for (BigInteger[] part : unwrap(range)) {
+        millis += costPerToken.millisBefore(part[1]) - costPerToken.millisBefore(part[0]);
+        covered = covered.add(costPerToken.coveredBefore(part[1]).subtract(costPerToken.coveredBefore(part[0])));
+      }
+      millis += max(range.span(rangeSize).subtract(covered), BigInteger.ZERO).doubleValue() * defaultCostPerToken;
+    }
+    return millis;
+  }
+
+  /** The [start, end) intervals a range covers, ranges wrapping around the ring covering two of them. */
+  private List<BigInteger[]> unwrap(RingRange range) {
+    return range.isWrapping()
+        ? Arrays.asList(
+            new BigInteger[] {range.getStart(), rangeMax.add(BigInteger.ONE)},
+            new BigInteger[] {rangeMin, range.getEnd()})
+        : Arrays.<BigInteger[]>asList(new BigInteger[] {range.getStart(), range.getEnd()});
+  }
+
   protected boolean inRange(BigInteger token) {
     return !(lowerThan(token, rangeMin) || greaterThan(token, rangeMax));
   }
 
+  /**
+   * The cost per token of previously repaired intervals, summed where they overlap, as a step function of the token.
+   * Its cumulative sums at each interval bound give the cost of any interval with two binary searches.
+   */
+  private static final class TokenCosts {
+
+    // the interval bounds in ascending order, with the cost per token and the number of intervals from each of them
+    private final BigInteger[] bounds;
+    private final double[] costs;
+    private final long[] counts;
+    // the cost and number of covered tokens of everything below each bound, the latter exact as it can be huge
+    private final double[] millisBelow;
+    private final BigInteger[] coveredBelow;
+
+    private TokenCosts(NavigableMap<BigInteger, Pair<Double, Long>> steps) {
+      int size = steps.size();
+      bounds = new BigInteger[size];
+      costs = new double[size];
+      counts = new long[size];
+      millisBelow = new double[size];
+      coveredBelow = new BigInteger[size];
+
+      int index = 0;
+      double cost = 0;
+      long count = 0;
+      for (Entry<BigInteger, Pair<Double, Long>> step : steps.entrySet()) {
+        bounds[index] = step.getKey();
+        millisBelow[index] = 0 == index ? 0 : millisAbove(index - 1, step.getKey());
+        coveredBelow[index] = 0 == index ? BigInteger.ZERO : coveredAbove(index - 1, step.getKey());
+        cost += step.getValue().getLeft();
+        count += step.getValue().getRight();
+        costs[index] = cost;
+        counts[index] = count;
+        ++index;
+      }
+    }
+
+    /** The summed cost of the tokens lower than the given one. */
+    double millisBefore(BigInteger token) {
+      int index = floorIndex(token);
+      return 0 > index ? 0 : millisAbove(index, token);
+    }
+
+    /** The summed number of covered tokens lower than the given one. */
+    BigInteger coveredBefore(BigInteger token) {
+      int index = floorIndex(token);
+      return 0 > index ? BigInteger.ZERO : coveredAbove(index, token);
+    }
+
+    private double millisAbove(int index, BigInteger token) {
+      return millisBelow[index] + costs[index] * token.subtract(bounds[index]).doubleValue();
+    }
+
+    private BigInteger coveredAbove(int index, BigInteger token) {
+      return coveredBelow[index].add(token.subtract(bounds[index]).multiply(BigInteger.valueOf(counts[index])));
+    }
+
+    private int floorIndex(BigInteger token) {
+      int index = Arrays.binarySearch(bounds, token);
+      return 0 <= index ? index : -index - 2;
+    }
+
+    private static final class Builder {
+
+      private final NavigableMap<BigInteger, Pair<Double, Long>> steps = new TreeMap<>();
+
+      /** Adds the cost per token of the [start, end) interval. */
+      void add(BigInteger start, BigInteger end, double cost) {
+        steps.merge(start, Pair.of(cost, 1L), Builder::sum);
+        steps.merge(end, Pair.of(-cost, -1L), Builder::sum);
+      }
+
+      TokenCosts build() {
+        return new TokenCosts(steps);
+      }
+
+      private static Pair<Double, Long> sum(Pair<Double, Long> first, Pair<Double, Long> second) {
+        return Pair.of(first.getLeft() + second.getLeft(), first.getRight() + second.getRight());
+      }
+    }
+  }
+
   private boolean supportsSegmentCoalescing(String cassandraVersion) {
     if (COALESCING_DISABLED) {
       LOG.info("Token range coalescing is disabled");
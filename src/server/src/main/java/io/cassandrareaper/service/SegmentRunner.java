@@ -48,6 +48,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -65,8 +66,6 @@ import org.apache.cassandra.repair.RepairParallelism;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.utils.progress.ProgressEventType;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.concurrent.ConcurrentException;
-import org.apache.commons.lang3.concurrent.LazyInitializer;
 import org.apache.commons.lang3.tuple.Pair;
 import org.joda.time.DateTime;
 import org.joda.time.Seconds;
@@ -87,8 +86,6 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
 
   private static final long SLEEP_TIME_AFTER_POSTPONE_IN_MS = 10000;
   private static final ExecutorService METRICS_GRABBER_EXECUTOR = Executors.newFixedThreadPool(10);
-  private static final long METRICS_POLL_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
-  private static final long METRICS_MAX_WAIT_MS = TimeUnit.MINUTES.toMillis(2);
 
   private final AppContext context;
   private final UUID segmentId;
@@ -105,8 +102,13 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
   private final UUID leaderElectionId;
   private final AtomicBoolean successOrFailedNotified = new AtomicBoolean(false);
   private final AtomicBoolean completeNotified = new AtomicBoolean(false);
+  private final AtomicLong triggeredNanos = new AtomicLong();
   private final ClusterFacade clusterFacade;
   private final Set<String> tablesToRepair;
+  private final AdaptiveIntensity adaptiveIntensity;
+  private final BusyHosts busyHosts;
+  private final SegmentStateWriter segmentStateWriter;
+  private volatile Collection<String> segmentNodes = Collections.emptySet();
 
 
   private SegmentRunner(
@@ -140,6 +142,9 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
     this.segmentFailed = new AtomicBoolean(false);
     this.leaderElectionId = repairUnit.getIncrementalRepair() ? repairRunner.getRepairRunId() : segmentId;
     this.tablesToRepair = tablesToRepair;
+    this.adaptiveIntensity = AdaptiveIntensity.create(context, clusterFacade);
+    this.busyHosts = BusyHosts.of(clusterName);
+    this.segmentStateWriter = SegmentStateWriter.of(context);
   }
 
   public static SegmentRunner create(
@@ -180,7 +185,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
       }
     }
     if (ran) {
-      long delay = intensityBasedDelayMillis(intensity);
+      long delay = intensityBasedDelayMillis(adaptIntensity());
       try {
         Thread.sleep(delay);
       } catch (InterruptedException e) {
@@ -196,7 +201,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
   private static void postpone(AppContext context, RepairSegment segment, RepairUnit repairUnit) {
     LOG.info("Postponing segment {}", segment.getId());
     try {
-      context.storage.updateRepairSegment(
+      SegmentStateWriter.of(context).write(
           segment
               .reset()
               // set coordinator host to null only for full repairs
@@ -232,7 +237,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
    */
   void postponeCurrentSegment() {
     synchronized (condition) {
-      RepairSegment segment = context.storage.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
+      RepairSegment segment = segmentStateWriter.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
       postpone(context, segment, context.storage.getRepairUnit(segment.getRepairUnitId()));
     }
 
@@ -257,12 +262,15 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
 
   private boolean runRepair() {
     LOG.debug("Run repair for segment #{}", segmentId);
-    RepairSegment segment = context.storage.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
+    RepairSegment segment = segmentStateWriter.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
     Thread.currentThread().setName(clusterName + ":" + segment.getRunId() + ":" + segmentId);
 
     try (Timer.Context cxt = context.metricRegistry.timer(metricNameForRunRepair(segment)).time()) {
       Cluster cluster = context.storage.getCluster(clusterName).get();
-      JmxProxy coordinator = clusterFacade.connectAny(cluster, potentialCoordinators);
+      JmxProxy coordinator;
+      try (Timer.Context cxt1 = timePhase("connectCoordinator")) {
+        coordinator = clusterFacade.connectAny(cluster, potentialCoordinators);
+      }
 
       if (SEGMENT_RUNNERS.containsKey(segmentId)) {
         LOG.error("SegmentRunner already exists for segment with ID: {}", segmentId);
@@ -272,9 +280,12 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
       String keyspace = repairUnit.getKeyspaceName();
       boolean fullRepair = !repairUnit.getIncrementalRepair();
 
-      LazyInitializer<Set<String>> busyHosts = new BusyHostsInitializer(cluster);
-
-      if (!canRepair(segment, keyspace, coordinator, cluster, busyHosts)) {
+      boolean repairable;
+      try (Timer.Context cxt1 = timePhase("canRepair")) {
+        repairable = canRepair(segment, keyspace, coordinator, cluster);
+      }
+      if (!repairable) {
+        context.metricRegistry.counter(metricNameForPhase("notRepairable")).inc();
         LOG.info(
             "Cannot run segment {} for repair {} at the moment. Will try again later",
             segmentId,
@@ -301,26 +312,33 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
                     .withId(segmentId)
                     .build();
 
-            context.storage.updateRepairSegment(segment);
-
-            repairNo = coordinator.triggerRepair(
-                    segment.getStartToken(),
-                    segment.getEndToken(),
-                    keyspace,
-                    validationParallelism,
-                    tablesToRepair,
-                    fullRepair,
-                    repairUnit.getDatacenters(),
-                    this,
-                    segment.getTokenRange().getTokenRanges(),
-                    repairUnit.getRepairThreadCount());
+            try (Timer.Context cxt2 = timePhase("updateSegment")) {
+              segmentStateWriter.write(segment);
+            }
+            busyHosts.add(segmentId, segmentNodes);
+
+            // notifications can arrive before triggerRepair returns
+            triggeredNanos.set(System.nanoTime());
+            try (Timer.Context cxt2 = timePhase("triggerRepair")) {
+              repairNo = coordinator.triggerRepair(
+                      segment.getStartToken(),
+                      segment.getEndToken(),
+                      keyspace,
+                      validationParallelism,
+                      tablesToRepair,
+                      fullRepair,
+                      repairUnit.getDatacenters(),
+                      this,
+                      segment.getTokenRange().getTokenRanges(),
+                      repairUnit.getRepairThreadCount());
+            }
 
             if (0 != repairNo) {
               processTriggeredSegment(segment, coordinator, repairNo);
             } else {
               LOG.info("Nothing to repair for segment {} in keyspace {}", segmentId, keyspace);
 
-              context.storage.updateRepairSegment(
+              segmentStateWriter.write(
                   segment
                       .with()
                       .withState(RepairSegment.State.DONE)
@@ -344,6 +362,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
       return false;
     } finally {
       SEGMENT_RUNNERS.remove(segment.getId());
+      busyHosts.remove(segmentId);
       context.metricRegistry
           .histogram(MetricRegistry.name(SegmentRunner.class, "openFiles"))
           .update(getOpenFilesAmount());
@@ -372,7 +391,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
 
         boolean isDoneOrTimedOut = lastLoopTime + 60_000 > System.currentTimeMillis();
 
-        isDoneOrTimedOut |= RepairSegment.State.DONE == context.storage
+        isDoneOrTimedOut |= RepairSegment.State.DONE == segmentStateWriter
             .getRepairSegment(segment.getRunId(), segmentId).get().getState();
 
         if (isDoneOrTimedOut) {
@@ -385,8 +404,14 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
       LOG.warn("Repair command {} on segment {} interrupted", this.repairNo, segmentId, e);
     } finally {
       coordinator.removeRepairStatusHandler(repairNo);
+      // the repair runner reads the outcome of the segment once this runner returns
+      if (!segmentStateWriter.flush(segmentId, timeoutMillis)) {
+        // an unwritten outcome is dropped, the segment is then postponed as it never ended
+        LOG.warn("State of segment {} is still being written after {} ms", segmentId, timeoutMillis);
+        segmentStateWriter.cancel(segmentId);
+      }
       RepairSegment resultingSegment
-          = context.storage.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
+          = segmentStateWriter.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
 
       LOG.info(
           "Repair command {} on segment {} returned with state {}",
@@ -427,6 +452,26 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
     }
   }
 
+  /**
+   * Times one of the steps between two segments, per cluster.
+   */
+  private Timer.Context timePhase(String phase) {
+    return context.metricRegistry.timer(metricNameForPhase(phase)).time();
+  }
+
+  private String metricNameForPhase(String phase) {
+    return MetricRegistry.name(SegmentRunner.class, phase, clusterName.replaceAll("[^A-Za-z0-9]", ""));
+  }
+
+  private void recordTimeToRunning() {
+    long triggered = triggeredNanos.getAndSet(0);
+    if (0 != triggered) {
+      context.metricRegistry
+          .timer(metricNameForPhase("triggerToRunning"))
+          .update(System.nanoTime() - triggered, TimeUnit.NANOSECONDS);
+    }
+  }
+
   private static String metricNameForPostpone(RepairUnit unit, RepairSegment segment) {
     String cleanHostName = Optional.ofNullable(segment.getCoordinatorHost()).orElse("null")
         .replace('.', 'x')
@@ -467,15 +512,24 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
       RepairSegment segment,
       String keyspace,
       JmxProxy coordinator,
-      Cluster cluster,
-      LazyInitializer<Set<String>> busyHosts) {
+      Cluster cluster) {
 
     if (RepairSegment.State.NOT_STARTED == segment.getState()) {
       try {
-        Map<String, String> dcByNode = getDCsByNodeForRepairSegment(coordinator, cluster, segment, keyspace);
+        Map<String, String> dcByNode;
+        try (Timer.Context cxt = timePhase("segmentReplicas")) {
+          dcByNode = getDCsByNodeForRepairSegment(coordinator, cluster, segment, keyspace);
+        }
+        segmentNodes = dcByNode.keySet();
 
-        return !isRepairRunningOnNodes(segment, dcByNode, keyspace, cluster)
-            && nodesReadyForNewRepair(coordinator, segment, dcByNode, busyHosts);
+        try (Timer.Context cxt = timePhase("runningOnNodes")) {
+          if (isRepairRunningOnNodes(segment, dcByNode, keyspace, cluster)) {
+            return false;
+          }
+        }
+        try (Timer.Context cxt = timePhase("nodesReady")) {
+          return nodesReadyForNewRepair(coordinator, segment, cluster, dcByNode);
+        }
 
       } catch (RuntimeException e) {
         LOG.warn("SegmentRunner couldn't get token ranges from coordinator: ", e);
@@ -494,13 +548,11 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
     return allHostsChecked || (allLocalDcHostsChecked && DatacenterAvailability.LOCAL == dcAvailability);
   }
 
-  private void handlePotentialStuckRepairs(LazyInitializer<Set<String>> busyHosts, String hostName)
-      throws ConcurrentException {
-
-    if (!busyHosts.get().contains(hostName) && context.storage instanceof IDistributedStorage) {
+  private void handlePotentialStuckRepairs(Cluster cluster, String hostName) {
+    if (context.storage instanceof IDistributedStorage
+        && !busyHosts.isBusy(hostName, () -> getStoredBusyHosts(cluster))) {
       try {
-        JmxProxy hostProxy
-            = clusterFacade.connectAny(context.storage.getCluster(clusterName).get(), Arrays.asList(hostName));
+        JmxProxy hostProxy = clusterFacade.connectAny(cluster, Arrays.asList(hostName));
 
         // We double check that repair is still running there before actually cancelling repairs
         if (hostProxy.isRepairRunning()) {
@@ -550,33 +602,10 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
   private Optional<NodeMetrics> getRemoteNodeMetrics(String node, String nodeDc) {
     Preconditions.checkState(DatacenterAvailability.ALL != context.config.getDatacenterAvailability());
     Preconditions.checkState(context.storage instanceof IDistributedStorage);
-    IDistributedStorage storage = ((IDistributedStorage) context.storage);
-    Optional<NodeMetrics> result = storage.getNodeMetrics(repairRunner.getRepairRunId(), node);
+    // the instances reaching the node through JMX publish its metrics every few seconds, see Heart.publishMetrics()
+    Optional<NodeMetrics> result = ((IDistributedStorage) context.storage).getPublishedNodeMetrics(clusterName, node);
     if (!result.isPresent()) {
-      // Sending a request for metrics to the other reaper instances through the Cassandra backend
-      storeNodeMetrics(
-          NodeMetrics.builder()
-              .withCluster(clusterName)
-              .withDatacenter(nodeDc)
-              .withNode(node)
-              .withRequested(true)
-              .build());
-
-      long start = System.currentTimeMillis();
-
-      while ( (!result.isPresent() || result.get().isRequested())
-          && start + METRICS_MAX_WAIT_MS > System.currentTimeMillis()) {
-
-        try {
-          Thread.sleep(METRICS_POLL_INTERVAL_MS);
-        } catch (InterruptedException ignore) { }
-        LOG.info("Trying to get metrics from remote DCs for {} in {} of {}", node, nodeDc, clusterName);
-        result = storage.getNodeMetrics(repairRunner.getRepairRunId(), node);
-        if (result.isPresent() && !result.get().isRequested()) {
-          // delete the metrics to force other instances to get a refreshed value
-          storage.deleteNodeMetrics(repairRunner.getRepairRunId(), node);
-        }
-      }
+      LOG.info("No metrics published from remote DCs for {} in {} of {}", node, nodeDc, clusterName);
     }
     return result;
   }
@@ -584,8 +613,8 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
   private boolean nodesReadyForNewRepair(
       JmxProxy coordinator,
       RepairSegment segment,
-      Map<String, String> dcByNode,
-      LazyInitializer<Set<String>> busyHosts) {
+      Cluster cluster,
+      Map<String, String> dcByNode) {
 
     Collection<String> nodes = getNodesInvolvedInSegment(dcByNode);
     String dc = EndpointSnitchInfoProxy.create(coordinator).getDataCenter();
@@ -601,7 +630,10 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
 
     for (Pair<String, Future<Optional<NodeMetrics>>> pair : nodeMetricsTasks) {
       try {
-        Optional<NodeMetrics> result = pair.getRight().get();
+        Optional<NodeMetrics> result;
+        try (Timer.Context cxt = timePhase("nodeMetrics")) {
+          result = pair.getRight().get();
+        }
         if (result.isPresent()) {
           NodeMetrics metrics = result.get();
           int pendingCompactions = metrics.getPendingCompactions();
@@ -619,12 +651,12 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
                 segmentId, metrics.getNode());
 
             repairRunner.updateLastEvent(msg);
-            handlePotentialStuckRepairs(busyHosts, metrics.getNode());
+            handlePotentialStuckRepairs(cluster, metrics.getNode());
             return false;
           }
           continue;
         }
-      } catch (InterruptedException | ExecutionException | ConcurrentException e) {
+      } catch (InterruptedException | ExecutionException e) {
         LOG.info("Failed grabbing metrics from {}", pair.getLeft(), e);
       }
       allHostsChecked = false;
@@ -718,13 +750,6 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
     return dcByNode;
   }
 
-  private void storeNodeMetrics(NodeMetrics metrics) {
-    assert context.storage instanceof IDistributedStorage;
-    if (DatacenterAvailability.ALL != context.config.getDatacenterAvailability()) {
-      ((IDistributedStorage) context.storage).storeNodeMetrics(repairRunner.getRepairRunId(), metrics);
-    }
-  }
-
   /**
    * Called when there is an event coming either from JMX or this runner regarding on-going repairs.
    *
@@ -740,7 +765,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
       String message,
       JmxProxy jmxProxy) {
 
-    final RepairSegment segment = context.storage.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
+    final RepairSegment segment = segmentStateWriter.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
     Thread.currentThread().setName(clusterName + ":" + segment.getRunId() + ":" + segmentId);
     LOG.debug(
         "handle called for repairCommandId {}, outcome {} / {} and message: {}",
@@ -757,7 +782,8 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
     boolean failOutsideSynchronizedBlock = false;
     // DO NOT ADD EXTERNAL CALLS INSIDE THIS SYNCHRONIZED BLOCK (JMX PROXY ETC)
     synchronized (condition) {
-      RepairSegment currentSegment = context.storage.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
+      RepairSegment currentSegment
+          = segmentStateWriter.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
 
       Preconditions.checkState(
           RepairSegment.State.NOT_STARTED != currentSegment.getState() || successOrFailedNotified.get(),
@@ -816,7 +842,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
               && RepairSegment.State.STARTED == currentSegment.getState()
               && renewLead()) {
 
-            context.storage.updateRepairSegment(
+            segmentStateWriter.submit(
                 currentSegment
                     .with()
                     .withState(RepairSegment.State.RUNNING)
@@ -824,6 +850,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
                     .build());
 
             LOG.debug("updated segment {} with state {}", segmentId, RepairSegment.State.RUNNING);
+            recordTimeToRunning();
             break;
           }
         } catch (AssertionError er) {
@@ -850,7 +877,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
                 segmentId,
                 repairNumber);
 
-            context.storage.updateRepairSegment(
+            segmentStateWriter.submit(
                 currentSegment
                     .with()
                     .withState(RepairSegment.State.DONE)
@@ -940,7 +967,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
               && RepairSegment.State.STARTED == currentSegment.getState()
               && renewLead()) {
 
-            context.storage.updateRepairSegment(
+            segmentStateWriter.submit(
                 currentSegment
                     .with()
                     .withState(RepairSegment.State.RUNNING)
@@ -948,6 +975,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
                     .build());
 
             LOG.debug("updated segment {} with state {}", segmentId, RepairSegment.State.RUNNING);
+            recordTimeToRunning();
             break;
           }
         } catch (AssertionError er) {
@@ -977,7 +1005,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
                   segmentId,
                   repairNumber);
 
-              context.storage.updateRepairSegment(
+              segmentStateWriter.submit(
                   currentSegment
                       .with()
                       .withState(RepairSegment.State.DONE)
@@ -1098,7 +1126,7 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
    * @return the delay in milliseconds.
    */
   long intensityBasedDelayMillis(double intensity) {
-    RepairSegment repairSegment = context.storage.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
+    RepairSegment repairSegment = segmentStateWriter.getRepairSegment(repairRunner.getRepairRunId(), segmentId).get();
     if (repairSegment.getEndTime() == null && repairSegment.getStartTime() == null) {
       return 0;
     } else if (repairSegment.getEndTime() != null && repairSegment.getStartTime() != null) {
@@ -1121,6 +1149,15 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
     }
   }
 
+  /**
+   * The run's intensity scaled down by the latest load sample of the cluster. The replicas of this segment are sampled
+   * in the background, for the next segments.
+   */
+  private double adaptIntensity() {
+    adaptiveIntensity.requestSample(clusterName, segmentNodes);
+    return adaptiveIntensity.effectiveIntensity(clusterName, intensity);
+  }
+
   private boolean takeLead() {
     try (Timer.Context cx
         = context.metricRegistry.timer(MetricRegistry.name(SegmentRunner.class, "takeLead")).time()) {
@@ -1152,6 +1189,8 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
   }
 
   private void releaseLead() {
+    // states written once the lead is released could overwrite those of the instance taking the segment over
+    segmentStateWriter.cancel(segmentId);
     try (Timer.Context cx
         = context.metricRegistry.timer(MetricRegistry.name(SegmentRunner.class, "releaseLead")).time()) {
       if (context.storage instanceof IDistributedStorage) {
@@ -1166,26 +1205,20 @@ final class SegmentRunner implements RepairStatusHandler, Runnable {
         : 1;
   }
 
-  private class BusyHostsInitializer extends LazyInitializer<Set<String>> {
-
-    private final Cluster cluster;
-
-    BusyHostsInitializer(Cluster cluster) {
-      this.cluster = cluster;
-    }
-
-    @Override
-    protected Set<String> initialize() {
+  /**
+   * @return the hosts involved in the segments running in storage, including those of the other reaper instances
+   */
+  private Set<String> getStoredBusyHosts(Cluster cluster) {
+    try (Timer.Context cxt = timePhase("busyHosts")) {
       Collection<RepairParameters> ongoingRepairs = context.storage.getOngoingRepairsInCluster(clusterName);
-      Set<String> busyHosts = Sets.newHashSet();
+      Set<String> storedBusyHosts = Sets.newHashSet();
       ongoingRepairs.forEach(
           (ongoingRepair) -> {
-            busyHosts.addAll(
+            storedBusyHosts.addAll(
                 clusterFacade.tokenRangeToEndpoint(
                     cluster, ongoingRepair.keyspaceName, ongoingRepair.tokenRange));
           });
-      return busyHosts;
+      return storedBusyHosts;
     }
   }
-
 }
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.service;
+
+import io.cassandrareaper.AppContext;
+import io.cassandrareaper.core.RepairSegment;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the state of the segments being repaired, off the threads that handle the repair notifications.
+ *
+ * <p>A segment has at most one write in flight. A state submitted while an earlier one of the same segment is still
+ * pending replaces it, so that a burst of notifications costs at most one more write per segment. As the latest
+ * state is always the last one written, the writes of a segment land in the order they were submitted and a terminal
+ * state is never overwritten by an earlier one. Reads through the writer see the pending state of a segment before
+ * it reaches storage. A failed write is retried a few times, then dropped.
+ *
+ * <p>Pending writes are only made while the segment runner holds the lead on its segment, which cancels them before
+ * releasing it, so that they can never overwrite the state written by the instance that takes the segment over.
+ *
+ * <p>Memory and h2 storages have no round trip to hide, their writes are applied inline.
+ */
+final class SegmentStateWriter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SegmentStateWriter.class);
+
+  private static final int THREADS = Integer.getInteger(
+      SegmentStateWriter.class.getPackage().getName() + ".segment_state_writers", 4);
+
+  private static final int MAX_ATTEMPTS = 10;
+  private static final long RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+  private static final long FLUSH_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final Map<AppContext, SegmentStateWriter> CONTEXTS = new MapMaker().weakKeys().makeMap();
+
+  private static final ScheduledExecutorService EXECUTOR = createExecutor(THREADS);
+
+  private final AppContext context;
+  private final Optional<ScheduledExecutorService> executor;
+  private final long retryDelayMillis;
+  private final Map<UUID, PendingWrite> pending = Maps.newConcurrentMap();
+  // held while a segment's state is written, so that writes of the same segment never overlap
+  private final Striped<Lock> segmentLocks = Striped.lock(64);
+  private final Timer writeLag;
+  private final Counter coalesced;
+  private final Counter failures;
+  private final Counter dropped;
+
+  @VisibleForTesting
+  SegmentStateWriter(AppContext context, Optional<ScheduledExecutorService> executor) {
+    this(context, executor, RETRY_DELAY_MILLIS);
+  }
+
+  @VisibleForTesting
+  SegmentStateWriter(AppContext context, Optional<ScheduledExecutorService> executor, long retryDelayMillis) {
+    this.context = context;
+    this.executor = executor;
+    this.retryDelayMillis = retryDelayMillis;
+    this.writeLag = context.metricRegistry.timer(MetricRegistry.name(SegmentStateWriter.class, "writeLag"));
+    this.coalesced = context.metricRegistry.counter(MetricRegistry.name(SegmentStateWriter.class, "coalesced"));
+    this.failures = context.metricRegistry.counter(MetricRegistry.name(SegmentStateWriter.class, "failures"));
+    this.dropped = context.metricRegistry.counter(MetricRegistry.name(SegmentStateWriter.class, "dropped"));
+    String pendingName = MetricRegistry.name(SegmentStateWriter.class, "pending");
+    try {
+      if (!context.metricRegistry.getMetrics().containsKey(pendingName)) {
+        context.metricRegistry.register(pendingName, (Gauge<Integer>) pending::size);
+      }
+    } catch (IllegalArgumentException ignore) {
+      // concurrently registered by another writer
+    }
+  }
+
+  static SegmentStateWriter of(AppContext context) {
+    return CONTEXTS.computeIfAbsent(
+        context,
+        ctx -> new SegmentStateWriter(ctx, isRemote(ctx) ? Optional.of(EXECUTOR) : Optional.empty()));
+  }
+
+  @VisibleForTesting
+  static boolean isRemote(AppContext context) {
+    if (null == context.config || null == context.config.getStorageType()) {
+      return false;
+    }
+    switch (context.config.getStorageType().toLowerCase()) {
+      case "cassandra":
+      case "postgres":
+        return true;
+      case "database":
+        // the deprecated storage type is either h2 or postgres, depending on its url
+        return null != context.config.getDataSourceFactory()
+            && null != context.config.getDataSourceFactory().getUrl()
+            && !context.config.getDataSourceFactory().getUrl().contains("h2");
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Queues the segment state to be written, replacing any state of the segment that is not written yet.
+   */
+  void submit(RepairSegment segment) {
+    if (!executor.isPresent()) {
+      try (Timer.Context ignored = writeLag.time()) {
+        context.storage.updateRepairSegment(segment);
+      }
+      return;
+    }
+    PendingWrite write = new PendingWrite(segment, System.nanoTime(), 0);
+    PendingWrite queued = pending.merge(segment.getId(), write, (previous, next) -> {
+      coalesced.inc();
+      return new PendingWrite(next.segment, previous.submittedNanos, 0);
+    });
+    // a segment already pending is drained by the task that is already queued for it
+    if (write == queued) {
+      executor.get().execute(() -> drain(segment.getId()));
+    }
+  }
+
+  /**
+   * Writes the segment state after any pending one, and waits for it to be in storage.
+   *
+   * <p>Should the queued write not land in time, the pending state is dropped and the segment state is written
+   * directly, failing like a direct storage write would.
+   */
+  void write(RepairSegment segment) {
+    submit(segment);
+    if (executor.isPresent() && !flush(segment.getId(), FLUSH_TIMEOUT_MILLIS)) {
+      LOG.warn("state {} of segment {} is still not written after {} ms, writing it directly",
+          segment.getState(), segment.getId(), FLUSH_TIMEOUT_MILLIS);
+
+      Lock lock = segmentLocks.get(segment.getId());
+      lock.lock();
+      try {
+        removePending(segment.getId());
+        context.storage.updateRepairSegment(segment);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @return the latest submitted state of the segment, which might not be in storage yet
+   */
+  Optional<RepairSegment> getRepairSegment(UUID runId, UUID segmentId) {
+    PendingWrite write = pending.get(segmentId);
+    return null != write ? Optional.of(write.segment) : context.storage.getRepairSegment(runId, segmentId);
+  }
+
+  /**
+   * Waits for the pending state of the segment to be written.
+   *
+   * @return false if the state is still not written after the timeout
+   */
+  boolean flush(UUID segmentId, long timeoutMillis) {
+    long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    synchronized (this) {
+      while (pending.containsKey(segmentId)) {
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        if (0 >= remainingMillis) {
+          return false;
+        }
+        try {
+          wait(remainingMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Drops the pending state of the segment, and waits for a write of it that is in flight to end.
+   *
+   * <p>Must be called before the lead on the segment is released.
+   *
+   * @return true if a pending state was dropped
+   */
+  boolean cancel(UUID segmentId) {
+    // removed first, so that the write in flight is the last one of the segment
+    PendingWrite write = removePending(segmentId);
+    Lock lock = segmentLocks.get(segmentId);
+    lock.lock();
+    lock.unlock();
+    if (null != write) {
+      dropped.inc();
+      LOG.warn("dropped the unwritten state {} of segment {}", write.segment.getState(), segmentId);
+      return true;
+    }
+    return false;
+  }
+
+  int pendingCount() {
+    return pending.size();
+  }
+
+  private void drain(UUID segmentId) {
+    Lock lock = segmentLocks.get(segmentId);
+    lock.lock();
+    try {
+      PendingWrite write = pending.get(segmentId);
+      while (null != write) {
+        try {
+          context.storage.updateRepairSegment(write.segment);
+        } catch (RuntimeException | AssertionError e) {
+          failures.inc();
+          if (e instanceof AssertionError || MAX_ATTEMPTS <= write.attempts + 1) {
+            // the lead on the segment is lost, or storage keeps failing
+            if (pending.remove(segmentId, write)) {
+              dropped.inc();
+              LOG.error("failed writing the state {} of segment {}, dropping it",
+                  write.segment.getState(), segmentId, e);
+              notifyFlushes();
+              return;
+            }
+          } else if (pending.replace(segmentId, write, write.retried())) {
+            LOG.warn("failed writing the state of segment {}, retrying in {} ms", segmentId, retryDelayMillis, e);
+            executor.get().schedule(() -> drain(segmentId), retryDelayMillis, TimeUnit.MILLISECONDS);
+            return;
+          }
+          // a newer state was submitted meanwhile, it is written right away
+          write = pending.get(segmentId);
+          continue;
+        }
+        writeLag.update(System.nanoTime() - write.submittedNanos, TimeUnit.NANOSECONDS);
+        if (pending.remove(segmentId, write)) {
+          notifyFlushes();
+          return;
+        }
+        // a newer state was submitted while this one was being written
+        write = pending.get(segmentId);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private PendingWrite removePending(UUID segmentId) {
+    PendingWrite write = pending.remove(segmentId);
+    if (null != write) {
+      notifyFlushes();
+    }
+    return write;
+  }
+
+  private synchronized void notifyFlushes() {
+    notifyAll();
+  }
+
+  @VisibleForTesting
+  static ScheduledExecutorService createExecutor(int threads) {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+        threads,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("segment-state-writer-%d").build());
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+
+  private static final class PendingWrite {
+
+    private final RepairSegment segment;
+    // the submission time of the oldest state this write replaces
+    private final long submittedNanos;
+    private final int attempts;
+
+    PendingWrite(RepairSegment segment, long submittedNanos, int attempts) {
+      this.segment = segment;
+      this.submittedNanos = submittedNanos;
+      this.attempts = attempts;
+    }
+
+    PendingWrite retried() {
+      return new PendingWrite(segment, submittedNanos, attempts + 1);
+    }
+  }
+}
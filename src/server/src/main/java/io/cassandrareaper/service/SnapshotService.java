@@ -23,20 +23,33 @@ import io.cassandrareaper.core.Cluster;
 import io.cassandrareaper.core.Node;
 import io.cassandrareaper.core.Snapshot;
 import io.cassandrareaper.core.Snapshot.Builder;
+import io.cassandrareaper.core.SnapshotJob;
 import io.cassandrareaper.jmx.ClusterFacade;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.utils.UUIDs;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
@@ -44,6 +57,12 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.tuple.Pair;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -52,19 +71,41 @@ import org.slf4j.LoggerFactory;
 public final class SnapshotService {
 
   public static final String SNAPSHOT_PREFIX = "reaper";
+  public static final int DEFAULT_CONCURRENCY_PER_DC = 2;
+  public static final Duration DEFAULT_NODE_TIMEOUT = Duration.ofMinutes(5);
 
   private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss");
   private static final Logger LOG = LoggerFactory.getLogger(SnapshotService.class);
 
+  private static final long NODE_SNAPSHOTS_TTL_SECONDS
+      = Long.getLong(SnapshotService.class.getPackage().getName() + ".node_snapshots_ttl_seconds", 30);
+
+  private static final long LIST_SNAPSHOTS_TIMEOUT_SECONDS
+      = Long.getLong(SnapshotService.class.getPackage().getName() + ".list_snapshots_timeout_seconds", 60);
+
+  private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("snapshot-timeouts-%d").build());
+
   private final AppContext context;
   private final ClusterFacade clusterFacade;
-  private final ExecutorService executor;
+  private final ListeningExecutorService executor;
   private final Cache<String, Snapshot> cache = CacheBuilder.newBuilder().weakValues().maximumSize(1000).build();
 
+  // raw listSnapshots results per node, invalidated whenever a snapshot is taken or cleared through this service
+  private final Cache<String, List<Snapshot>> nodeSnapshots = CacheBuilder.newBuilder()
+      .expireAfterWrite(NODE_SNAPSHOTS_TTL_SECONDS, TimeUnit.SECONDS)
+      .maximumSize(10000)
+      .build();
+
+  private final Cache<UUID, SnapshotJob> jobs = CacheBuilder.newBuilder()
+      .expireAfterAccess(1, TimeUnit.HOURS)
+      .maximumSize(1000)
+      .build();
+
   private SnapshotService(AppContext context, ExecutorService executor, Supplier<ClusterFacade> clusterFacadeSupplier) {
     this.context = context;
     this.clusterFacade = clusterFacadeSupplier.get();
-    this.executor = new InstrumentedExecutorService(executor, context.metricRegistry);
+    this.executor = MoreExecutors.listeningDecorator(new InstrumentedExecutorService(executor, context.metricRegistry));
   }
 
   @VisibleForTesting
@@ -78,7 +119,11 @@ public final class SnapshotService {
   }
 
   public Pair<Node, String> takeSnapshot(String snapshotName, Node host, String... keyspaces) throws ReaperException {
-    return clusterFacade.takeSnapshot(snapshotName, host, keyspaces);
+    try {
+      return clusterFacade.takeSnapshot(snapshotName, host, keyspaces);
+    } finally {
+      nodeSnapshots.invalidate(nodeKey(host));
+    }
   }
 
   Callable<Pair<Node, String>> takeSnapshotTask(String snapshotName, Node host, String... keyspace) {
@@ -146,8 +191,12 @@ public final class SnapshotService {
   }
 
   public List<Snapshot> listSnapshots(Node host) throws ReaperException {
-    return clusterFacade
-        .listSnapshots(host)
+    List<Snapshot> snapshots = nodeSnapshots.getIfPresent(nodeKey(host));
+    if (null == snapshots) {
+      snapshots = clusterFacade.listSnapshots(host);
+      nodeSnapshots.put(nodeKey(host), snapshots);
+    }
+    return snapshots
         .stream()
         .map(snapshot -> enrichSnapshotWithMetadata(snapshot))
         .collect(Collectors.toList());
@@ -167,11 +216,17 @@ public final class SnapshotService {
               .map(node -> listSnapshotTask(node))
               .collect(Collectors.toList());
 
-      List<Future<List<Snapshot>>> futures = executor.invokeAll(listSnapshotTasks);
+      // a slow node must not stall the whole listing, its snapshots are left out of the result instead
+      List<Future<List<Snapshot>>> futures
+          = executor.invokeAll(listSnapshotTasks, LIST_SNAPSHOTS_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
       List<Snapshot> snapshots = Lists.newArrayList();
-      for (Future<List<Snapshot>> future : futures) {
-        snapshots.addAll(future.get());
+      for (int i = 0; i < futures.size(); ++i) {
+        try {
+          snapshots.addAll(futures.get(i).get());
+        } catch (CancellationException e) {
+          LOG.warn("Timed out listing snapshots on {} for cluster {}", liveNodes.get(i), clusterName);
+        }
       }
 
       Map<String, List<Snapshot>> snapshotsByName
@@ -206,7 +261,11 @@ public final class SnapshotService {
   }
 
   public void clearSnapshot(String snapshotName, Node host) throws ReaperException {
-    clusterFacade.clearSnapshot(snapshotName, host);
+    try {
+      clusterFacade.clearSnapshot(snapshotName, host);
+    } finally {
+      nodeSnapshots.invalidate(nodeKey(host));
+    }
   }
 
   Callable<Node> clearSnapshotTask(String snapshotName, Node host) {
@@ -233,6 +292,7 @@ public final class SnapshotService {
       }
 
       context.storage.deleteSnapshot(Snapshot.builder().withClusterName(clusterName).withName(snapshotName).build());
+      cache.invalidate(clusterName + "-" + snapshotName);
     } catch (ExecutionException e) {
       LOG.error("Failed clearing {} snapshot for cluster {}", snapshotName, clusterName, e);
     } catch (InterruptedException e) {
@@ -241,6 +301,157 @@ public final class SnapshotService {
     }
   }
 
+  /**
+   * Submits an asynchronous cluster wide snapshot. The returned job is updated as each node completes, and can be
+   * polled through {@link #getSnapshotJob(UUID)}.
+   *
+   * <p>Within each datacenter at most concurrencyPerDc nodes are snapshotted at the same time. A node not answering
+   * within nodeTimeout is marked as TIMED_OUT and its snapshot call is interrupted. Its slot is handed over to the next
+   * node of the datacenter once the call has returned.
+   */
+  public SnapshotJob submitSnapshotClusterWide(
+      String snapshotName,
+      String clusterName,
+      String owner,
+      String cause,
+      int concurrencyPerDc,
+      Duration nodeTimeout,
+      String... keyspaces) throws ReaperException {
+
+    Preconditions.checkArgument(0 < concurrencyPerDc, "concurrency per datacenter must be positive");
+    Optional<Cluster> cluster = context.storage.getCluster(clusterName);
+    Preconditions.checkArgument(cluster.isPresent(), "no cluster named " + clusterName);
+
+    context.storage.saveSnapshot(
+        Snapshot.builder()
+            .withClusterName(clusterName)
+            .withName(snapshotName)
+            .withOwner(owner)
+            .withCause(cause)
+            .withCreationDate(DateTime.now())
+            .build());
+
+    SnapshotJob job = new SnapshotJob(UUIDs.timeBased(), cluster.get().getName(), snapshotName);
+    jobs.put(job.getId(), job);
+
+    ListenableFuture<?> planning = executor.submit(() -> startSnapshotJob(
+        job, cluster.get(), concurrencyPerDc, nodeTimeout, keyspaces));
+
+    Futures.addCallback(planning, new FutureCallback<Object>() {
+      @Override
+      public void onSuccess(Object result) {}
+
+      @Override
+      public void onFailure(Throwable throwable) {
+        LOG.error("Failed starting snapshot job {} for cluster {}", job.getId(), clusterName, throwable);
+        job.fail("failed listing the nodes to snapshot: " + throwable.getMessage());
+      }
+    }, MoreExecutors.directExecutor());
+
+    return job;
+  }
+
+  public Optional<SnapshotJob> getSnapshotJob(UUID jobId) {
+    return Optional.ofNullable(jobs.getIfPresent(jobId));
+  }
+
+  private Void startSnapshotJob(
+      SnapshotJob job,
+      Cluster cluster,
+      int concurrencyPerDc,
+      Duration nodeTimeout,
+      String... keyspaces) throws ReaperException {
+
+    Map<String, Queue<Node>> nodesByDc = Maps.newHashMap();
+    for (String host : clusterFacade.getLiveNodes(cluster)) {
+      String datacenter = getDatacenter(cluster, host);
+      job.addNode(host, datacenter);
+
+      nodesByDc
+          .computeIfAbsent(datacenter, dc -> new ConcurrentLinkedQueue<>())
+          .add(Node.builder().withCluster(cluster).withHostname(host).build());
+    }
+    job.start();
+    LOG.info("Snapshot job {} started on {} datacenters of cluster {}", job.getId(), nodesByDc.size(), cluster);
+
+    for (Queue<Node> pendingNodes : nodesByDc.values()) {
+      for (int i = 0; i < concurrencyPerDc; ++i) {
+        snapshotNextNode(job, pendingNodes, nodeTimeout, keyspaces);
+      }
+    }
+    return null;
+  }
+
+  private String getDatacenter(Cluster cluster, String host) {
+    try {
+      return clusterFacade.getDatacenter(cluster, host);
+    } catch (ReaperException | RuntimeException e) {
+      LOG.warn("Failed getting the datacenter of {} in cluster {}", host, cluster.getName(), e);
+      return "unknown";
+    }
+  }
+
+  /**
+   * Takes the snapshot on the next pending node of a datacenter, and chains itself once the snapshot call has returned.
+   * No thread waits on the outcome: completion and timeout are both handled through callbacks.
+   *
+   * <p>A timed out call is interrupted, but keeps its worker and its datacenter slot until it returns, so that a hung
+   * node never lets more than concurrencyPerDc calls run against its datacenter.
+   */
+  private void snapshotNextNode(SnapshotJob job, Queue<Node> pendingNodes, Duration nodeTimeout, String... keyspaces) {
+    Node node = pendingNodes.poll();
+    if (null == node) {
+      return;
+    }
+    job.nodeStarted(node.getHostname());
+
+    // claimed either by the call when it starts, or by its cancellation if it never started
+    AtomicBoolean claimed = new AtomicBoolean();
+    Callable<Pair<Node, String>> task = takeSnapshotTask(job.getSnapshotName(), node, keyspaces);
+    ListenableFuture<Pair<Node, String>> call = executor.submit(() -> {
+      if (!claimed.compareAndSet(false, true)) {
+        throw new CancellationException();
+      }
+      try {
+        return task.call();
+      } finally {
+        snapshotNextNode(job, pendingNodes, nodeTimeout, keyspaces);
+      }
+    });
+    call.addListener(() -> {
+      if (call.isCancelled() && claimed.compareAndSet(false, true)) {
+        snapshotNextNode(job, pendingNodes, nodeTimeout, keyspaces);
+      }
+    }, MoreExecutors.directExecutor());
+
+    // interrupts the call on timeout
+    ListenableFuture<Pair<Node, String>> snapshot
+        = Futures.withTimeout(call, nodeTimeout.toMillis(), TimeUnit.MILLISECONDS, TIMEOUT_SCHEDULER);
+
+    Futures.addCallback(snapshot, new FutureCallback<Pair<Node, String>>() {
+      @Override
+      public void onSuccess(Pair<Node, String> result) {
+        job.nodeTerminated(node.getHostname(), SnapshotJob.State.DONE, null);
+      }
+
+      @Override
+      public void onFailure(Throwable throwable) {
+        if (throwable instanceof TimeoutException) {
+          LOG.warn("Timed out taking snapshot {} on {}", job.getSnapshotName(), node);
+          context.metricRegistry.counter(MetricRegistry.name(SnapshotService.class, "nodeTimeouts")).inc();
+          job.nodeTerminated(node.getHostname(), SnapshotJob.State.TIMED_OUT, "timed out after " + nodeTimeout);
+        } else {
+          LOG.error("Failed taking snapshot {} on {}", job.getSnapshotName(), node, throwable);
+          job.nodeTerminated(node.getHostname(), SnapshotJob.State.FAILED, throwable.getMessage());
+        }
+      }
+    }, executor);
+  }
+
+  private static String nodeKey(Node host) {
+    return host.getCluster().getName() + "-" + host.getHostname();
+  }
+
   public String formatSnapshotName(String snapshotName) {
     return snapshotName + "-" + LocalDateTime.now().format(FORMATTER);
   }
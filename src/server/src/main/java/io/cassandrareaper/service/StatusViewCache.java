@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.cassandrareaper.service;
+
+import io.cassandrareaper.AppContext;
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSchedule;
+import io.cassandrareaper.core.RepairSegment;
+import io.cassandrareaper.core.RepairUnit;
+import io.cassandrareaper.resources.view.RepairRunStatus;
+import io.cassandrareaper.resources.view.RepairScheduleStatus;
+import io.cassandrareaper.storage.IDistributedStorage;
+import io.cassandrareaper.storage.StorageListener;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+
+/**
+ * Keeps what the repair run and repair schedule views are built from in memory, so that listing them does not query
+ * the storage for every run and schedule.
+ *
+ * <p>Entries are updated or invalidated as the corresponding storage mutations are reported through
+ * {@link StorageListener}. They also expire after a while, as other Reaper instances sharing a distributed storage
+ * mutate it without us knowing. The views themselves are built on each call, as their durations and ETA depend on the
+ * current time.
+ */
+public final class StatusViewCache implements StorageListener {
+
+  private final AppContext context;
+  private final Cache<String, List<RepairRun>> runsByCluster;
+  private final Cache<UUID, Integer> segmentsRepaired;
+  private final Cache<UUID, RepairUnit> repairUnits;
+  private final Cache<String, List<RepairSchedule>> schedules;
+
+  private StatusViewCache(AppContext context, long ttlSeconds) {
+    this.context = context;
+    this.runsByCluster = CacheBuilder.newBuilder().expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).build();
+    this.segmentsRepaired = CacheBuilder.newBuilder().expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).build();
+    this.repairUnits = CacheBuilder.newBuilder().expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).build();
+    this.schedules = CacheBuilder.newBuilder().expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).build();
+  }
+
+  /**
+   * Creates a cache to be fed with the storage's mutations through {@link io.cassandrareaper.storage.ObservedStorage}.
+   */
+  public static StatusViewCache create(AppContext context) {
+    long defaultTtlSeconds = context.storage instanceof IDistributedStorage ? 5 : 300;
+    return new StatusViewCache(
+        context,
+        Long.getLong(StatusViewCache.class.getPackage().getName() + ".status_views_ttl_seconds", defaultTtlSeconds));
+  }
+
+  /**
+   * Creates a cache that caches nothing, for when the storage's mutations are not observed.
+   */
+  public static StatusViewCache uncached(AppContext context) {
+    return new StatusViewCache(context, 0);
+  }
+
+  public Collection<RepairRun> getRepairRunsForCluster(String clusterName) {
+    List<RepairRun> runs = runsByCluster.getIfPresent(clusterName);
+    if (null == runs) {
+      runs = ImmutableList.copyOf(context.storage.getRepairRunsForCluster(clusterName, Optional.empty()));
+      runsByCluster.put(clusterName, runs);
+    }
+    return runs;
+  }
+
+  public List<RepairRunStatus> getRepairRunStatuses(String clusterName) {
+    return getRepairRunsForCluster(clusterName).stream().map(this::getRepairRunStatus).collect(Collectors.toList());
+  }
+
+  public RepairRunStatus getRepairRunStatus(RepairRun repairRun) {
+    RepairRunStatus status
+        = new RepairRunStatus(repairRun, getRepairUnit(repairRun.getRepairUnitId()), getSegmentsRepaired(repairRun));
+
+    // runs repaired by this instance have their throughput tracked, and a better estimated time of arrival
+    RepairThroughput.of(repairRun.getId()).ifPresent(throughput -> throughput.describe(status));
+    return status;
+  }
+
+  /**
+   * @return the schedules of the given cluster and keyspace, or of all clusters and keyspaces for absent ones.
+   */
+  public Collection<RepairSchedule> getRepairSchedules(Optional<String> clusterName, Optional<String> keyspaceName) {
+    String key = clusterName.orElse("") + "/" + keyspaceName.orElse("");
+    List<RepairSchedule> found = schedules.getIfPresent(key);
+    if (null == found) {
+      found = ImmutableList.copyOf(loadRepairSchedules(clusterName, keyspaceName));
+      schedules.put(key, found);
+    }
+    return found;
+  }
+
+  private Collection<RepairSchedule> loadRepairSchedules(Optional<String> clusterName, Optional<String> keyspaceName) {
+    if (clusterName.isPresent() && keyspaceName.isPresent()) {
+      return context.storage.getRepairSchedulesForClusterAndKeyspace(clusterName.get(), keyspaceName.get());
+    } else if (clusterName.isPresent()) {
+      return context.storage.getRepairSchedulesForCluster(clusterName.get());
+    } else if (keyspaceName.isPresent()) {
+      return context.storage.getRepairSchedulesForKeyspace(keyspaceName.get());
+    }
+    return context.storage.getAllRepairSchedules();
+  }
+
+  public RepairScheduleStatus getRepairScheduleStatus(RepairSchedule repairSchedule) {
+    return new RepairScheduleStatus(repairSchedule, getRepairUnit(repairSchedule.getRepairUnitId()));
+  }
+
+  private RepairUnit getRepairUnit(UUID repairUnitId) {
+    RepairUnit unit = repairUnits.getIfPresent(repairUnitId);
+    if (null == unit) {
+      unit = context.storage.getRepairUnit(repairUnitId);
+      if (null != unit) {
+        repairUnits.put(repairUnitId, unit);
+      }
+    }
+    return unit;
+  }
+
+  private int getSegmentsRepaired(RepairRun repairRun) {
+    if (RepairRun.RunState.DONE == repairRun.getRunState()) {
+      return repairRun.getSegmentCount();
+    }
+    Integer count = segmentsRepaired.getIfPresent(repairRun.getId());
+    if (null == count) {
+      count = context.storage.getSegmentAmountForRepairRunWithState(repairRun.getId(), RepairSegment.State.DONE);
+      segmentsRepaired.put(repairRun.getId(), count);
+    }
+    return count;
+  }
+
+  @Override
+  public void onRepairRunUpdated(RepairRun repairRun) {
+    List<RepairRun> runs = runsByCluster.getIfPresent(repairRun.getClusterName());
+    if (null != runs && runs.stream().anyMatch(run -> run.getId().equals(repairRun.getId()))) {
+      // updates, like a new last event, are frequent while the run is going on. swap it in rather than reload them all
+      runsByCluster.asMap().replace(
+          repairRun.getClusterName(),
+          runs,
+          runs.stream()
+              .map(run -> run.getId().equals(repairRun.getId()) ? repairRun : run)
+              .collect(Collectors.collectingAndThen(Collectors.toList(), ImmutableList::copyOf)));
+    } else {
+      runsByCluster.invalidate(repairRun.getClusterName());
+    }
+  }
+
+  @Override
+  public void onRepairRunDeleted(RepairRun repairRun) {
+    runsByCluster.invalidate(repairRun.getClusterName());
+    segmentsRepaired.invalidate(repairRun.getId());
+  }
+
+  @Override
+  public void onRepairSegmentUpdated(RepairSegment repairSegment) {
+    // only entering DONE, or leaving it through a reset, changes the count of repaired segments
+    if (RepairSegment.State.DONE == repairSegment.getState()
+        || RepairSegment.State.NOT_STARTED == repairSegment.getState()) {
+      segmentsRepaired.invalidate(repairSegment.getRunId());
+    }
+  }
+
+  @Override
+  public void onRepairScheduleUpdated(RepairSchedule repairSchedule) {
+    schedules.invalidateAll();
+  }
+
+  @Override
+  public void onRepairScheduleDeleted(UUID repairScheduleId) {
+    schedules.invalidateAll();
+  }
+
+  @Override
+  public void onClusterDeleted(String clusterName) {
+    runsByCluster.invalidate(clusterName);
+    segmentsRepaired.invalidateAll();
+    repairUnits.invalidateAll();
+    schedules.invalidateAll();
+  }
+}
@@ -27,15 +27,19 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.management.openmbean.CompositeData;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
 import org.apache.cassandra.streaming.ProgressInfo;
 import org.apache.cassandra.streaming.SessionInfo;
 import org.apache.cassandra.streaming.StreamState;
@@ -50,66 +54,95 @@ public final class StreamService {
 
   private static final Logger LOG = LoggerFactory.getLogger(StreamService.class);
 
+  // how often a node whose streams are followed through notifications gets polled anyway, to recover lost notifications
+  private static final long STREAMS_RESYNC_MILLIS = TimeUnit.SECONDS.toMillis(
+      Long.getLong(StreamService.class.getPackage().getName() + ".streams_resync_seconds", 60));
+
+  // how often a node gets polled when its notifications can't be relied on
+  private static final long STREAMS_POLL_MILLIS = TimeUnit.SECONDS.toMillis(
+      Long.getLong(StreamService.class.getPackage().getName() + ".streams_poll_seconds", 2));
+
   private final AppContext context;
   private final ClusterFacade clusterFacade;
+  private final ConcurrentMap<String, StreamTracker> trackers = Maps.newConcurrentMap();
+  private final Counter polls;
+  private final Counter parsedStreamStates;
 
   private StreamService(AppContext context) {
     this.context = context;
     this.clusterFacade = ClusterFacade.create(context);
+    this.polls = context.metricRegistry.counter(MetricRegistry.name(StreamService.class, "polls"));
+    this.parsedStreamStates = context.metricRegistry.counter(MetricRegistry.name(StreamService.class, "parsed"));
   }
 
   public static StreamService create(AppContext context) {
     return new StreamService(context);
   }
 
+  /**
+   * Lists the streams of a node.
+   *
+   * <p>Streams are served from memory, kept up to date through the node's streaming notifications. The node is only
+   * polled when its notifications can't be relied on, or every so often to recover from lost notifications.
+   */
   public List<StreamSession> listStreams(Node node) throws ReaperException {
+    StreamTracker tracker = trackers.computeIfAbsent(
+        node.getCluster().getName() + "-" + node.getHostname(),
+        key -> new StreamTracker(node.getHostname()));
+
     try {
-      LOG.debug("Pulling streams for node {}", node);
-      return pullStreamInfo(node);
+      if (tracker.needsSync(STREAMS_RESYNC_MILLIS, STREAMS_POLL_MILLIS)) {
+        LOG.debug("Pulling streams for node {}", node);
+        pullStreamInfo(node, tracker);
+      }
+      return tracker.getSessions();
     } catch (ReaperException e) {
       LOG.info("Pulling streams failed: {}", e.getMessage());
       throw new ReaperException(e);
     }
   }
 
-  private List<StreamSession> pullStreamInfo(Node node) throws ReaperException {
+  private void pullStreamInfo(Node node, StreamTracker tracker) throws ReaperException {
+    // (re)subscribe first so that no notification gets lost between the poll and the subscription
+    tracker.setSubscribed(clusterFacade.subscribeToStreams(node, tracker));
     Set<CompositeData> streams = clusterFacade.listStreams(node);
+    polls.inc();
 
-    if (streams.isEmpty()) {
-      return ImmutableList.of();
-    }
-
-    Set<StreamState> streamStates = parse(streams);
-
-    return streamStates.stream()
-        .map(streamState -> StreamSessionFactory.fromStreamState(node.getHostname(), streamState))
-        .collect(Collectors.toList());
+    tracker.synced(parse(streams, tracker.getPolledStates()));
   }
 
-  private Set<StreamState> parse(Set<CompositeData> payload) throws ReaperException {
-    Set<StreamState> result = Sets.newHashSet();
+  /**
+   * Parses the stream states, reusing the parsed states of the previous poll for the payloads that did not change.
+   */
+  private Map<CompositeData, StreamState> parse(Set<CompositeData> payload, Map<CompositeData, StreamState> previous)
+      throws ReaperException {
+
+    Map<CompositeData, StreamState> result = Maps.newHashMap();
 
     for (CompositeData compositeData : payload) {
+      StreamState streamState = previous.get(compositeData);
+      if (null == streamState) {
+        streamState = parse(compositeData);
+        parsedStreamStates.inc();
+      }
+      result.put(compositeData, streamState);
+    }
+    return result;
+  }
 
+  private StreamState parse(CompositeData compositeData) throws ReaperException {
+    try {
+      // start by trying to parse with classes coming from Reaper's C* dependency
+      return StreamStateCompositeData.fromCompositeData(compositeData);
+    } catch (AssertionError e) {
+      // if that fails, try the older version
       try {
-        // start by trying to parse with classes coming from Reaper's C* dependency
-        StreamState streamState = StreamStateCompositeData.fromCompositeData(compositeData);
-        result.add(streamState);
-      } catch (AssertionError e) {
-        // if that fails, try the older version
-        try {
-          StreamState olderStreamState = parseStreamStatePre2_1(compositeData);
-          result.add(olderStreamState);
-          continue;
-        } catch (ReaperException re) {
-          LOG.warn("Parsing StreamState message for v 2.0.17 failed");
-        }
-        throw new ReaperException("Could not parse composite data");
+        return parseStreamStatePre2_1(compositeData);
+      } catch (ReaperException re) {
+        LOG.warn("Parsing StreamState message for v 2.0.17 failed");
       }
-
+      throw new ReaperException("Could not parse composite data");
     }
-
-    return result;
   }
 
   private StreamState parseStreamStatePre2_1(CompositeData compositeData) throws ReaperException {
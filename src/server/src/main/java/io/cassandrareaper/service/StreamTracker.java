@@ -0,0 +1,224 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.cassandrareaper.service;
+
+import io.cassandrareaper.core.StreamSession;
+import io.cassandrareaper.jmx.StreamStatusHandler;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import javax.management.openmbean.CompositeData;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import org.apache.cassandra.streaming.ProgressInfo;
+import org.apache.cassandra.streaming.SessionInfo;
+import org.apache.cassandra.streaming.StreamEvent;
+import org.apache.cassandra.streaming.StreamState;
+import org.apache.cassandra.streaming.management.ProgressInfoCompositeData;
+import org.apache.cassandra.streaming.management.SessionInfoCompositeData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps the stream sessions of one node in memory.
+ *
+ * <p>The state is seeded by polling the node's StreamManager, and then kept up to date by its JMX notifications. Any
+ * notification that can't be applied (unknown session, unparseable payload, failed plan) marks the state as dirty so
+ * the next read falls back to polling. Polled payloads are diffed against the previous poll, so only the stream plans
+ * that changed get parsed again.
+ */
+final class StreamTracker implements StreamStatusHandler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StreamTracker.class);
+
+  private final String host;
+
+  // guarded by this
+  private Map<CompositeData, StreamState> polledStates = ImmutableMap.of();
+  private final Map<UUID, StreamState> states = Maps.newHashMap();
+  private List<StreamSession> sessions = ImmutableList.of();
+  private boolean sessionsOutdated = false;
+
+  private volatile boolean subscribed = false;
+  private volatile boolean dirty = true;
+  private volatile long lastSyncMillis = 0;
+
+  StreamTracker(String host) {
+    this.host = host;
+  }
+
+  boolean needsSync(long resyncIntervalMillis, long pollIntervalMillis) {
+    long sinceLastSync = System.currentTimeMillis() - lastSyncMillis;
+    return subscribed && !dirty ? resyncIntervalMillis <= sinceLastSync : pollIntervalMillis <= sinceLastSync;
+  }
+
+  void setSubscribed(boolean subscribed) {
+    this.subscribed = subscribed;
+  }
+
+  synchronized Map<CompositeData, StreamState> getPolledStates() {
+    return polledStates;
+  }
+
+  /**
+   * Replaces the tracked state with the result of a poll.
+   *
+   * @param polled the parsed stream states, keyed by the composite data they were parsed from
+   */
+  synchronized void synced(Map<CompositeData, StreamState> polled) {
+    polledStates = ImmutableMap.copyOf(polled);
+    states.clear();
+    polled.values().forEach(state -> states.put(state.planId, state));
+    sessionsOutdated = true;
+    dirty = false;
+    lastSyncMillis = System.currentTimeMillis();
+  }
+
+  synchronized List<StreamSession> getSessions() {
+    if (sessionsOutdated) {
+      sessions = states.values().stream()
+          .map(state -> StreamSessionFactory.fromStreamState(host, state))
+          .collect(Collectors.collectingAndThen(Collectors.toList(), ImmutableList::copyOf));
+      sessionsOutdated = false;
+    }
+    return sessions;
+  }
+
+  @Override
+  public Future<?> handleNotification(String clusterName, String node, CompositeData payload, long timeStamp) {
+    if (null == payload) {
+      // a failed stream plan only comes with a message, let the next poll find out what is left of it
+      dirty = true;
+      return Futures.immediateFuture(null);
+    }
+    try {
+      String type = payload.getCompositeType().getTypeName();
+      if (SessionInfo.class.getName().equals(type)) {
+        sessionPrepared(planId(payload), SessionInfoCompositeData.fromCompositeData(payload));
+      } else if (ProgressInfo.class.getName().equals(type)) {
+        progress(planId(payload), ProgressInfoCompositeData.fromCompositeData(payload));
+      } else if (StreamEvent.SessionCompleteEvent.class.getName().equals(type)) {
+        sessionComplete(
+            planId(payload),
+            InetAddress.getByName((String) payload.get("peer")),
+            (Boolean) payload.get("success"));
+      } else if (StreamState.class.getName().equals(type)) {
+        planComplete(planId(payload));
+      } else {
+        LOG.debug("Unknown stream notification type {} from {}", type, host);
+        dirty = true;
+      }
+    } catch (RuntimeException | AssertionError | UnknownHostException e) {
+      // payloads from older Cassandra versions can't be parsed by our classes, polling takes over for them
+      LOG.debug("Failed applying stream notification from {}", host, e);
+      dirty = true;
+    }
+    return Futures.immediateFuture(null);
+  }
+
+  private synchronized void sessionPrepared(UUID planId, SessionInfo session) {
+    StreamState state = states.get(planId);
+    Set<SessionInfo> planSessions = null != state
+        ? state.sessions.stream().filter(s -> !isSameSession(s, session)).collect(Collectors.toSet())
+        : Sets.newHashSet();
+
+    planSessions.add(session);
+    states.put(planId, new StreamState(planId, null != state ? state.description : "", planSessions));
+    sessionsOutdated = true;
+    if (null == state) {
+      // the plan description is not part of the notification, have the next read poll for it
+      dirty = true;
+    }
+  }
+
+  private synchronized void progress(UUID planId, ProgressInfo progress) {
+    StreamState state = states.get(planId);
+    Collection<SessionInfo> matching = null != state
+        ? state.sessions.stream()
+            .filter(s -> s.peer.equals(progress.peer) && s.sessionIndex == progress.sessionIndex)
+            .collect(Collectors.toList())
+        : ImmutableList.of();
+
+    if (matching.isEmpty()) {
+      dirty = true;
+      return;
+    }
+    matching.forEach(session -> session.updateProgress(progress));
+    sessionsOutdated = true;
+  }
+
+  private synchronized void sessionComplete(UUID planId, InetAddress peer, boolean success) {
+    StreamState state = states.get(planId);
+    if (null == state || state.sessions.stream().noneMatch(s -> s.peer.equals(peer))) {
+      dirty = true;
+      return;
+    }
+    org.apache.cassandra.streaming.StreamSession.State completed = success
+        ? org.apache.cassandra.streaming.StreamSession.State.COMPLETE
+        : org.apache.cassandra.streaming.StreamSession.State.FAILED;
+
+    Set<SessionInfo> planSessions = state.sessions.stream()
+        .map(s -> s.peer.equals(peer) ? withState(s, completed) : s)
+        .collect(Collectors.toSet());
+
+    states.put(planId, new StreamState(planId, state.description, planSessions));
+    sessionsOutdated = true;
+  }
+
+  private synchronized void planComplete(UUID planId) {
+    // finished plans are no longer reported by the StreamManager
+    states.remove(planId);
+    sessionsOutdated = true;
+  }
+
+  private static SessionInfo withState(SessionInfo session, org.apache.cassandra.streaming.StreamSession.State state) {
+    SessionInfo updated = new SessionInfo(
+        session.peer,
+        session.sessionIndex,
+        session.connecting,
+        session.receivingSummaries,
+        session.sendingSummaries,
+        state);
+
+    session.getReceivingFiles().forEach(updated::updateProgress);
+    session.getSendingFiles().forEach(updated::updateProgress);
+    return updated;
+  }
+
+  private static boolean isSameSession(SessionInfo one, SessionInfo other) {
+    return one.peer.equals(other.peer) && one.sessionIndex == other.sessionIndex;
+  }
+
+  private static UUID planId(CompositeData payload) {
+    return UUID.fromString((String) payload.get("planId"));
+  }
+}
@@ -36,14 +36,22 @@ import io.cassandrareaper.resources.view.RepairRunStatus;
 import io.cassandrareaper.resources.view.RepairScheduleStatus;
 import io.cassandrareaper.service.RepairParameters;
 import io.cassandrareaper.service.RingRange;
+import io.cassandrareaper.storage.cassandra.BudgetedRetryPolicy;
+import io.cassandrareaper.storage.cassandra.CircuitBreaker;
 import io.cassandrareaper.storage.cassandra.DateTimeCodec;
 import io.cassandrareaper.storage.cassandra.Migration016;
+import io.cassandrareaper.storage.cassandra.SegmentBuckets;
+import io.cassandrareaper.storage.cassandra.VersionedCache;
+import io.cassandrareaper.storage.cassandra.VersionedCache.Versioned;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -56,6 +64,8 @@ import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.CodecRegistry;
 import com.datastax.driver.core.ConsistencyLevel;
@@ -70,21 +80,20 @@ import com.datastax.driver.core.Session;
 import com.datastax.driver.core.SimpleStatement;
 import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.VersionNumber;
-import com.datastax.driver.core.WriteType;
-import com.datastax.driver.core.exceptions.DriverException;
 import com.datastax.driver.core.exceptions.InvalidQueryException;
-import com.datastax.driver.core.policies.DefaultRetryPolicy;
 import com.datastax.driver.core.policies.DowngradingConsistencyRetryPolicy;
-import com.datastax.driver.core.policies.RetryPolicy;
+import com.datastax.driver.core.utils.Bytes;
 import com.datastax.driver.core.utils.UUIDs;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import io.dropwizard.setup.Environment;
@@ -106,7 +115,6 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
   /* Simple stmts */
   private static final String SELECT_CLUSTER = "SELECT * FROM cluster";
   private static final String SELECT_REPAIR_SCHEDULE = "SELECT * FROM repair_schedule_v1";
-  private static final String SELECT_REPAIR_UNIT = "SELECT * FROM repair_unit_v1";
   private static final String SELECT_LEADERS = "SELECT * FROM leader";
   private static final String SELECT_RUNNING_REAPERS = "SELECT reaper_instance_id FROM running_reapers";
 
@@ -114,35 +122,53 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
 
   private static final AtomicBoolean UNINITIALISED = new AtomicBoolean(true);
 
+  // published node metrics are refreshed every ten seconds, an instance that stops publishing expires its metrics
+  private static final int PUBLISHED_NODE_METRICS_TTL_SECONDS = 60;
+
+  private static final int REPAIR_RUN_READS_IN_FLIGHT = 32;
+
+  // how long cached clusters and finished repair runs are used before checking they were not written elsewhere
+  private static final long CACHE_REVALIDATE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
   private final com.datastax.driver.core.Cluster cassandra;
   private final Session session;
+  private final CircuitBreaker circuitBreaker;
+  private final Counter deletionTombstones;
   private final ObjectMapper objectMapper = new ObjectMapper();
   private final VersionNumber version;
 
-  private final LoadingCache<UUID, RepairUnit> repairUnits = CacheBuilder.newBuilder()
-      .build(new CacheLoader<UUID, RepairUnit>() {
-        @Override
-        public RepairUnit load(UUID repairUnitId) throws Exception {
-          return getRepairUnitImpl(repairUnitId);
-        }
-      });
+  private final VersionedCache<UUID, RepairUnit> repairUnits;
+  private final VersionedCache<String, Cluster> clusters;
+  private final VersionedCache<UUID, RepairRun> finishedRepairRuns;
+
+  // the number of segment buckets of a run never changes once the run is created
+  private final Cache<UUID, Integer> segmentBuckets = CacheBuilder.newBuilder().maximumSize(10_000).build();
 
   /* prepared stmts */
   private PreparedStatement insertClusterPrepStmt;
   private PreparedStatement getClusterPrepStmt;
+  private PreparedStatement getClusterVersionPrepStmt;
   private PreparedStatement deleteClusterPrepStmt;
   private PreparedStatement insertRepairRunPrepStmt;
+  private PreparedStatement insertRepairRunSegmentBucketsPrepStmt;
+  private PreparedStatement getRepairRunSegmentBucketsPrepStmt;
   private PreparedStatement insertRepairRunClusterIndexPrepStmt;
   private PreparedStatement insertRepairRunUnitIndexPrepStmt;
   private PreparedStatement getRepairRunPrepStmt;
+  private PreparedStatement getRepairRunVersionPrepStmt;
   private PreparedStatement getRepairRunForClusterPrepStmt;
   private PreparedStatement getRepairRunForUnitPrepStmt;
   private PreparedStatement deleteRepairRunPrepStmt;
   private PreparedStatement deleteRepairRunByClusterPrepStmt;
   private PreparedStatement deleteRepairRunByUnitPrepStmt;
+  private PreparedStatement deleteRepairSegmentBucketPrepStmt;
   private PreparedStatement insertRepairUnitPrepStmt;
   private PreparedStatement getRepairUnitPrepStmt;
   private PreparedStatement deleteRepairUnitPrepStmt;
+  private PreparedStatement insertRepairUnitByClusterAndKsPrepStmt;
+  private PreparedStatement getRepairUnitsByClusterAndKsPrepStmt;
+  private PreparedStatement getRepairUnitsByClusterPrepStmt;
+  private PreparedStatement deleteRepairUnitsByClusterPrepStmt;
   private PreparedStatement insertRepairSegmentPrepStmt;
   private PreparedStatement insertRepairSegmentIncrementalPrepStmt;
   private PreparedStatement updateRepairSegmentPrepStmt;
@@ -170,14 +196,56 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
   private PreparedStatement getNodeMetricsPrepStmt;
   private PreparedStatement getNodeMetricsByNodePrepStmt;
   private PreparedStatement delNodeMetricsByNodePrepStmt;
+  private PreparedStatement publishNodeMetricsPrepStmt;
+  private PreparedStatement getPublishedNodeMetricsPrepStmt;
   private PreparedStatement getSnapshotPrepStmt;
   private PreparedStatement deleteSnapshotPrepStmt;
   private PreparedStatement saveSnapshotPrepStmt;
 
   public CassandraStorage(ReaperApplicationConfiguration config, Environment environment) throws ReaperException {
+    this(CircuitBreaker.create(environment.metrics()), config, environment);
+  }
+
+  private CassandraStorage(
+      CircuitBreaker circuitBreaker,
+      ReaperApplicationConfiguration config,
+      Environment environment) throws ReaperException {
+
+    this(connect(config, environment, circuitBreaker), circuitBreaker, environment.metrics());
+  }
+
+  @VisibleForTesting
+  CassandraStorage(Session session, CircuitBreaker circuitBreaker, MetricRegistry metrics) {
+    this.cassandra = session.getCluster();
+    this.session = session;
+    this.circuitBreaker = circuitBreaker;
+    deletionTombstones = metrics.counter(MetricRegistry.name(CassandraStorage.class, "tombstonesGenerated"));
+    repairUnits = VersionedCache.immutable("repairUnit", 10_000, this::getRepairUnitImpl, metrics);
+    clusters = VersionedCache.create(
+        "cluster", 1_000, CACHE_REVALIDATE_MILLIS, this::getClusterImpl, this::getClusterVersion, cluster -> true,
+        metrics);
+    // repair runs only stop changing once they have terminated
+    finishedRepairRuns = VersionedCache.create(
+        "finishedRepairRun", 10_000, CACHE_REVALIDATE_MILLIS, this::getRepairRunImpl, this::getRepairRunVersion,
+        repairRun -> repairRun.getRunState().isTerminated(), metrics);
+
+    version = cassandra.getMetadata().getAllHosts()
+        .stream()
+        .map(h -> h.getCassandraVersion())
+        .min(VersionNumber::compareTo)
+        .get();
+
+    prepareStatements();
+  }
+
+  private static Session connect(
+      ReaperApplicationConfiguration config,
+      Environment environment,
+      CircuitBreaker circuitBreaker) throws ReaperException {
+
     CassandraFactory cassandraFactory = config.getCassandraFactory();
     overrideQueryOptions(cassandraFactory);
-    overrideRetryPolicy(cassandraFactory);
+    overrideRetryPolicy(cassandraFactory, circuitBreaker, environment.metrics());
     overridePoolingOptions(cassandraFactory);
 
     // https://docs.datastax.com/en/developer/java-driver/3.5/manual/metrics/#metrics-4-compatibility
@@ -187,23 +255,17 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
       cassandraFactory.setMetricsEnabled(false);
     }
 
-    cassandra = cassandraFactory.build(environment);
+    com.datastax.driver.core.Cluster cassandra = cassandraFactory.build(environment);
     if (config.getActivateQueryLogger()) {
       cassandra.register(QueryLogger.builder().build());
     }
+    cassandra.register(circuitBreaker);
     CodecRegistry codecRegistry = cassandra.getConfiguration().getCodecRegistry();
     codecRegistry.register(new DateTimeCodec());
-    session = cassandra.connect(config.getCassandraFactory().getKeyspace());
+    Session session = cassandra.connect(config.getCassandraFactory().getKeyspace());
 
     initializeAndUpgradeSchema(cassandra, session, config.getCassandraFactory().getKeyspace());
-
-    version = cassandra.getMetadata().getAllHosts()
-        .stream()
-        .map(h -> h.getCassandraVersion())
-        .min(VersionNumber::compareTo)
-        .get();
-
-    prepareStatements();
+    return session;
   }
 
   private static void initializeAndUpgradeSchema(
@@ -277,6 +339,11 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
             .invoke(null, session);
 
         LOG.info("executed Migration" + String.format("%03d", nextVersion));
+      } catch (InvocationTargetException e) {
+        // forget the version, so the migration runs again on the next start instead of being skipped half done
+        session.execute("DELETE FROM schema_migration WHERE applied_successful = True AND version = ?", nextVersion);
+        throw new IllegalStateException(
+            "Failed executing Migration" + String.format("%03d", nextVersion), e.getCause());
       } catch (ReflectiveOperationException ignore) { }
       LOG.info(String.format("Migrated keyspace %s to version %d", session.getLoggedKeyspace(), nextVersion));
     }
@@ -290,9 +357,11 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
                 "INSERT INTO cluster(name, partitioner, seed_hosts, properties) values(?, ?, ?, ?)")
             .setConsistencyLevel(ConsistencyLevel.QUORUM);
     getClusterPrepStmt = session
-        .prepare("SELECT * FROM cluster WHERE name = ?")
+        .prepare("SELECT name,partitioner,seed_hosts,properties,writetime(partitioner) AS version "
+            + "FROM cluster WHERE name = ?")
         .setConsistencyLevel(ConsistencyLevel.QUORUM)
         .setRetryPolicy(DowngradingConsistencyRetryPolicy.INSTANCE);
+    getClusterVersionPrepStmt = session.prepare("SELECT writetime(partitioner) FROM cluster WHERE name = ?");
     deleteClusterPrepStmt = session.prepare("DELETE FROM cluster WHERE name = ?");
     insertRepairRunPrepStmt = session
         .prepare(
@@ -300,64 +369,65 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
                 + "start_time, end_time, pause_time, intensity, last_event, segment_count, repair_parallelism,tables) "
                 + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")
         .setConsistencyLevel(ConsistencyLevel.QUORUM);
+    insertRepairRunSegmentBucketsPrepStmt = session
+        .prepare("INSERT INTO repair_run(id, segment_buckets) VALUES(?, ?)")
+        .setConsistencyLevel(ConsistencyLevel.QUORUM);
+    getRepairRunSegmentBucketsPrepStmt = session
+        .prepare("SELECT segment_buckets FROM repair_run WHERE id = ? LIMIT 1")
+        .setConsistencyLevel(ConsistencyLevel.QUORUM);
     insertRepairRunClusterIndexPrepStmt
-        = session.prepare("INSERT INTO repair_run_by_cluster(cluster_name, id) values(?, ?)");
+        = session.prepare("INSERT INTO repair_run_by_cluster_v2(cluster_name, id) values(?, ?)");
     insertRepairRunUnitIndexPrepStmt
         = session.prepare("INSERT INTO repair_run_by_unit(repair_unit_id, id) values(?, ?)");
     getRepairRunPrepStmt = session
         .prepare(
             "SELECT id,cluster_name,repair_unit_id,cause,owner,state,creation_time,start_time,end_time,"
-                + "pause_time,intensity,last_event,segment_count,repair_parallelism,tables "
-                + "FROM repair_run WHERE id = ? LIMIT 1")
+                + "pause_time,intensity,last_event,segment_count,repair_parallelism,tables,"
+                + "writetime(state) AS version FROM repair_run WHERE id = ? LIMIT 1")
         .setConsistencyLevel(ConsistencyLevel.QUORUM);
-    getRepairRunForClusterPrepStmt = session.prepare("SELECT * FROM repair_run_by_cluster WHERE cluster_name = ?");
+    getRepairRunVersionPrepStmt = session.prepare("SELECT writetime(state) FROM repair_run WHERE id = ? LIMIT 1");
+    getRepairRunForClusterPrepStmt
+        = session.prepare("SELECT id FROM repair_run_by_cluster_v2 WHERE cluster_name = ? LIMIT ?");
     getRepairRunForUnitPrepStmt = session.prepare("SELECT * FROM repair_run_by_unit WHERE repair_unit_id = ?");
     deleteRepairRunPrepStmt = session.prepare("DELETE FROM repair_run WHERE id = ?");
     deleteRepairRunByClusterPrepStmt
-        = session.prepare("DELETE FROM repair_run_by_cluster WHERE id = ? and cluster_name = ?");
+        = session.prepare("DELETE FROM repair_run_by_cluster_v2 WHERE id = ? and cluster_name = ?");
     deleteRepairRunByUnitPrepStmt = session.prepare("DELETE FROM repair_run_by_unit "
         + "WHERE id = ? and repair_unit_id= ?");
-    insertRepairUnitPrepStmt = session
-        .prepare(
-            "INSERT INTO repair_unit_v1(id, cluster_name, keyspace_name, column_families, "
-                + "incremental_repair, nodes, \"datacenters\", blacklisted_tables, repair_thread_count) "
-                + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)")
-        .setConsistencyLevel(ConsistencyLevel.QUORUM);
-    getRepairUnitPrepStmt = session
-        .prepare("SELECT * FROM repair_unit_v1 WHERE id = ?")
-        .setConsistencyLevel(ConsistencyLevel.QUORUM);
-    deleteRepairUnitPrepStmt = session.prepare("DELETE FROM repair_unit_v1 WHERE id = ?");
+    deleteRepairSegmentBucketPrepStmt = session.prepare("DELETE FROM repair_segment WHERE id = ? and bucket = ?");
+    prepareRepairUnitStatements();
     insertRepairSegmentPrepStmt = session
         .prepare(
-            "INSERT INTO repair_run"
-                + "(id,segment_id,repair_unit_id,start_token,end_token,segment_state,fail_count, token_ranges)"
-                + " VALUES(?, ?, ?, ?, ?, ?, ?, ?)")
+            "INSERT INTO repair_segment"
+                + "(id,bucket,segment_id,repair_unit_id,start_token,end_token,segment_state,fail_count,"
+                + "token_ranges_bin) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)")
         .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
     insertRepairSegmentIncrementalPrepStmt = session
         .prepare(
-            "INSERT INTO repair_run"
-                + "(id,segment_id,repair_unit_id,start_token,end_token,segment_state,coordinator_host,fail_count)"
-                + " VALUES(?, ?, ?, ?, ?, ?, ?, ?)")
+            "INSERT INTO repair_segment"
+                + "(id,bucket,segment_id,repair_unit_id,start_token,end_token,segment_state,coordinator_host,"
+                + "fail_count) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)")
         .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
     updateRepairSegmentPrepStmt = session
         .prepare(
-            "INSERT INTO repair_run"
-                + "(id,segment_id,segment_state,coordinator_host,segment_start_time,fail_count)"
-                + " VALUES(?, ?, ?, ?, ?, ?)")
+            "INSERT INTO repair_segment"
+                + "(id,bucket,segment_id,segment_state,coordinator_host,segment_start_time,fail_count)"
+                + " VALUES(?, ?, ?, ?, ?, ?, ?)")
         .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
     insertRepairSegmentEndTimePrepStmt = session
-        .prepare("INSERT INTO repair_run(id, segment_id, segment_end_time) VALUES(?, ?, ?)")
+        .prepare("INSERT INTO repair_segment(id, bucket, segment_id, segment_end_time) VALUES(?, ?, ?, ?)")
         .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
     getRepairSegmentPrepStmt = session
             .prepare(
                 "SELECT id,repair_unit_id,segment_id,start_token,end_token,segment_state,coordinator_host,"
-                    + "segment_start_time,segment_end_time,fail_count, token_ranges"
-                    + " FROM repair_run WHERE id = ? and segment_id = ?")
+                    + "segment_start_time,segment_end_time,fail_count, token_ranges_bin"
+                    + " FROM repair_segment WHERE id = ? and bucket = ? and segment_id = ?")
             .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
     getRepairSegmentsByRunIdPrepStmt = session.prepare(
         "SELECT id,repair_unit_id,segment_id,start_token,end_token,segment_state,coordinator_host,segment_start_time,"
-            + "segment_end_time,fail_count, token_ranges FROM repair_run WHERE id = ?");
-    getRepairSegmentCountByRunIdPrepStmt = session.prepare("SELECT count(*) FROM repair_run WHERE id = ?");
+            + "segment_end_time,fail_count, token_ranges_bin FROM repair_segment WHERE id = ? and bucket = ?");
+    getRepairSegmentCountByRunIdPrepStmt
+        = session.prepare("SELECT count(*) FROM repair_segment WHERE id = ? and bucket = ?");
     insertRepairSchedulePrepStmt
         = session
             .prepare(
@@ -399,19 +469,44 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
       try {
         getRepairSegmentsByRunIdAndStatePrepStmt = session.prepare(
             "SELECT id,repair_unit_id,segment_id,start_token,end_token,segment_state,coordinator_host,"
-                + "segment_start_time,segment_end_time,fail_count, token_ranges FROM repair_run "
-                + "WHERE id = ? AND segment_state = ? ALLOW FILTERING");
+                + "segment_start_time,segment_end_time,fail_count, token_ranges_bin FROM repair_segment "
+                + "WHERE id = ? AND bucket = ? AND segment_state = ? ALLOW FILTERING");
         getRepairSegmentCountByRunIdAndStatePrepStmt = session.prepare(
-            "SELECT count(segment_id) FROM repair_run WHERE id = ? AND segment_state = ? ALLOW FILTERING");
+            "SELECT count(segment_id) FROM repair_segment WHERE id = ? AND bucket = ? AND segment_state = ? "
+                + "ALLOW FILTERING");
       } catch (InvalidQueryException ex) {
         throw new AssertionError(
-            "Failure preparing `SELECT… FROM repair_run WHERE… ALLOW FILTERING` should only happen on Cassandra-2",
+            "Failure preparing `SELECT… FROM repair_segment WHERE… ALLOW FILTERING` should only happen on Cassandra-2",
             ex);
       }
     }
     prepareMetricStatements();
   }
 
+  private void prepareRepairUnitStatements() {
+    insertRepairUnitPrepStmt = session
+        .prepare(
+            "INSERT INTO repair_unit_v1(id, cluster_name, keyspace_name, column_families, "
+                + "incremental_repair, nodes, \"datacenters\", blacklisted_tables, repair_thread_count) "
+                + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)")
+        .setConsistencyLevel(ConsistencyLevel.QUORUM);
+    getRepairUnitPrepStmt = session
+        .prepare("SELECT * FROM repair_unit_v1 WHERE id = ?")
+        .setConsistencyLevel(ConsistencyLevel.QUORUM);
+    deleteRepairUnitPrepStmt = session.prepare("DELETE FROM repair_unit_v1 WHERE id = ?");
+    insertRepairUnitByClusterAndKsPrepStmt = session
+        .prepare("INSERT INTO repair_unit_by_cluster_and_keyspace(cluster_name, keyspace_name, id) VALUES(?, ?, ?)")
+        .setConsistencyLevel(ConsistencyLevel.QUORUM);
+    getRepairUnitsByClusterAndKsPrepStmt = session
+        .prepare("SELECT id FROM repair_unit_by_cluster_and_keyspace WHERE cluster_name = ? and keyspace_name = ?")
+        .setConsistencyLevel(ConsistencyLevel.QUORUM);
+    getRepairUnitsByClusterPrepStmt = session
+        .prepare("SELECT id FROM repair_unit_by_cluster_and_keyspace WHERE cluster_name = ?")
+        .setConsistencyLevel(ConsistencyLevel.QUORUM);
+    deleteRepairUnitsByClusterPrepStmt
+        = session.prepare("DELETE FROM repair_unit_by_cluster_and_keyspace WHERE cluster_name = ?");
+  }
+
   private void prepareLeaderElectionStatements(final String timeUdf) {
     takeLeadPrepStmt = session
         .prepare(
@@ -437,6 +532,10 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
         + " WHERE time_partition = ? AND run_id = ? AND node = ?");
     delNodeMetricsByNodePrepStmt = session.prepare("DELETE FROM node_metrics_v1"
         + " WHERE time_partition = ? AND run_id = ? AND node = ?");
+    publishNodeMetricsPrepStmt = session.prepare(
+        "INSERT INTO node_metrics_v2 (cluster,node,datacenter,pending_compactions,has_repair_running,"
+            + "active_anticompactions) VALUES(?, ?, ?, ?, ?, ?) USING TTL ?");
+    getPublishedNodeMetricsPrepStmt = session.prepare("SELECT * FROM node_metrics_v2 WHERE cluster = ? AND node = ?");
   }
 
   @Override
@@ -486,6 +585,8 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
     } catch (JsonProcessingException e) {
       LOG.error("Failed serializing cluster information for database write", e);
       throw new ReaperException(e);
+    } finally {
+      clusters.invalidate(cluster.getName());
     }
     return true;
   }
@@ -497,6 +598,14 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
 
   @Override
   public Optional<Cluster> getCluster(String clusterName) throws ReaperException {
+    try {
+      return clusters.get(clusterName);
+    } catch (ClusterParsingException e) {
+      throw e.reaperException;
+    }
+  }
+
+  private Optional<Versioned<Cluster>> getClusterImpl(String clusterName) {
     Row row = session.execute(getClusterPrepStmt.bind(clusterName)).one();
 
     try {
@@ -505,19 +614,26 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
               ? objectMapper.readValue(row.getString("properties"), ClusterProperties.class)
               : ClusterProperties.builder().withJmxPort(Cluster.DEFAULT_JMX_PORT).build();
       return row != null
-          ? Optional.ofNullable(
-              new Cluster(
-                  row.getString("name"),
-                  Optional.ofNullable(row.getString("partitioner")),
-                  row.getSet("seed_hosts", String.class),
-                  properties))
+          ? Optional.of(
+              Versioned.of(
+                  new Cluster(
+                      row.getString("name"),
+                      Optional.ofNullable(row.getString("partitioner")),
+                      row.getSet("seed_hosts", String.class),
+                      properties),
+                  getVersion(row)))
           : Optional.empty();
     } catch (RuntimeException | IOException e) {
       LOG.error("Failed parsing cluster information from the database entry", e);
-      throw new ReaperException(e);
+      throw new ClusterParsingException(e);
     }
   }
 
+  private Optional<Long> getClusterVersion(String clusterName) {
+    Row row = session.execute(getClusterVersionPrepStmt.bind(clusterName)).one();
+    return null != row && !row.isNull(0) ? Optional.of(row.getLong(0)) : Optional.empty();
+  }
+
   @Override
   public Optional<Cluster> deleteCluster(String clusterName) {
     assert getRepairSchedulesForCluster(clusterName).isEmpty()
@@ -526,17 +642,15 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
     assert getRepairRunsForCluster(clusterName, Optional.of(Integer.MAX_VALUE)).isEmpty()
         : StringUtils.join(getRepairRunsForCluster(clusterName, Optional.of(Integer.MAX_VALUE)));
 
-    Statement stmt = new SimpleStatement(SELECT_REPAIR_UNIT);
-    stmt.setIdempotent(Boolean.TRUE);
-    ResultSet results = session.execute(stmt);
-    for (Row row : results) {
-      if (row.getString("cluster_name").equals(clusterName)) {
-        UUID id = row.getUUID("id");
-        assert getRepairRunsForUnit(id).isEmpty() : StringUtils.join(getRepairRunsForUnit(id));
-        session.executeAsync(deleteRepairUnitPrepStmt.bind(id));
-      }
+    for (Row row : session.execute(getRepairUnitsByClusterPrepStmt.bind(clusterName))) {
+      UUID id = row.getUUID("id");
+      assert getRepairRunsForUnit(id).isEmpty() : StringUtils.join(getRepairRunsForUnit(id));
+      session.executeAsync(deleteRepairUnitPrepStmt.bind(id));
+      repairUnits.invalidate(id);
     }
+    session.executeAsync(deleteRepairUnitsByClusterPrepStmt.bind(clusterName));
     session.executeAsync(deleteClusterPrepStmt.bind(clusterName));
+    clusters.invalidate(clusterName);
     return Optional.ofNullable(new Cluster(clusterName, null, null));
   }
 
@@ -544,8 +658,8 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
   public RepairRun addRepairRun(Builder repairRun, Collection<RepairSegment.Builder> newSegments) {
     RepairRun newRepairRun = repairRun.build(UUIDs.timeBased());
     BatchStatement repairRunBatch = new BatchStatement(BatchStatement.Type.UNLOGGED);
-    List<ResultSetFuture> futures = Lists.newArrayList();
     Boolean isIncremental = null;
+    int buckets = SegmentBuckets.count(newSegments.size());
 
     repairRunBatch.add(
         insertRepairRunPrepStmt.bind(
@@ -565,7 +679,13 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
             newRepairRun.getRepairParallelism().toString(),
             newRepairRun.getTables()));
 
-    int nbRanges = 0;
+    repairRunBatch.add(insertRepairRunSegmentBucketsPrepStmt.bind(newRepairRun.getId(), buckets));
+    segmentBuckets.put(newRepairRun.getId(), buckets);
+    List<ResultSetFuture> futures = Lists.newArrayList(session.executeAsync(repairRunBatch));
+
+    // each batch only holds segments of the same bucket, so that it writes to a single partition
+    BatchStatement[] segmentBatches = new BatchStatement[buckets];
+    int[] nbRanges = new int[buckets];
     for (RepairSegment.Builder builder : newSegments) {
       RepairSegment segment = builder.withRunId(newRepairRun.getId()).withId(UUIDs.timeBased()).build();
       isIncremental = null == isIncremental ? null != segment.getCoordinatorHost() : isIncremental;
@@ -576,10 +696,15 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
       assert 0 == segment.getFailCount();
       assert (null != segment.getCoordinatorHost()) == isIncremental;
 
+      int bucket = SegmentBuckets.of(segment.getId(), buckets);
+      if (null == segmentBatches[bucket]) {
+        segmentBatches[bucket] = new BatchStatement(BatchStatement.Type.UNLOGGED);
+      }
       if (isIncremental) {
-        repairRunBatch.add(
+        segmentBatches[bucket].add(
             insertRepairSegmentIncrementalPrepStmt.bind(
               segment.getRunId(),
+              bucket,
               segment.getId(),
               segment.getRepairUnitId(),
               segment.getStartToken(),
@@ -588,34 +713,35 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
               segment.getCoordinatorHost(),
               segment.getFailCount()));
       } else {
-        try {
-          repairRunBatch.add(
-              insertRepairSegmentPrepStmt.bind(
-                  segment.getRunId(),
-                  segment.getId(),
-                  segment.getRepairUnitId(),
-                  segment.getStartToken(),
-                  segment.getEndToken(),
-                  segment.getState().ordinal(),
-                  segment.getFailCount(),
-                  objectMapper.writeValueAsString(segment.getTokenRange().getTokenRanges())));
-        } catch (JsonProcessingException e) {
-          throw new IllegalStateException(e);
-        }
+        segmentBatches[bucket].add(
+            insertRepairSegmentPrepStmt.bind(
+                segment.getRunId(),
+                bucket,
+                segment.getId(),
+                segment.getRepairUnitId(),
+                segment.getStartToken(),
+                segment.getEndToken(),
+                segment.getState().ordinal(),
+                segment.getFailCount(),
+                ByteBuffer.wrap(TokenRangesCodec.encode(segment.getTokenRange().getTokenRanges()))));
       }
 
-      nbRanges += segment.getTokenRange().getTokenRanges().size();
+      nbRanges[bucket] += segment.getTokenRange().getTokenRanges().size();
 
-      if (100 <= nbRanges) {
+      if (100 <= nbRanges[bucket]) {
         // Limit batch size to prevent queries being rejected
-        futures.add(session.executeAsync(repairRunBatch));
-        repairRunBatch = new BatchStatement(BatchStatement.Type.UNLOGGED);
-        nbRanges = 0;
+        futures.add(session.executeAsync(segmentBatches[bucket]));
+        segmentBatches[bucket] = null;
+        nbRanges[bucket] = 0;
       }
     }
     assert getRepairUnit(newRepairRun.getRepairUnitId()).getIncrementalRepair() == isIncremental.booleanValue();
 
-    futures.add(session.executeAsync(repairRunBatch));
+    for (BatchStatement segmentBatch : segmentBatches) {
+      if (null != segmentBatch) {
+        futures.add(session.executeAsync(segmentBatch));
+      }
+    }
     futures.add(
         session.executeAsync(
             insertRepairRunClusterIndexPrepStmt.bind(newRepairRun.getClusterName(), newRepairRun.getId())));
@@ -650,16 +776,21 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
               repairRun.getSegmentCount(),
               repairRun.getRepairParallelism().toString(),
               repairRun.getTables()));
+    finishedRepairRuns.invalidate(repairRun.getId());
     return true;
   }
 
   @Override
   public Optional<RepairRun> getRepairRun(UUID id) {
-    RepairRun repairRun = null;
+    return finishedRepairRuns.get(id);
+  }
+
+  private Optional<Versioned<RepairRun>> getRepairRunImpl(UUID id) {
+    Versioned<RepairRun> repairRun = null;
     Row repairRunResult = session.execute(getRepairRunPrepStmt.bind(id)).one();
     if (repairRunResult != null) {
       try {
-        repairRun = buildRepairRunFromRow(repairRunResult, id);
+        repairRun = Versioned.of(buildRepairRunFromRow(repairRunResult, id), getVersion(repairRunResult));
       } catch (RuntimeException ignore) {
         // has been since deleted, but zombie segments has been re-inserted
       }
@@ -667,21 +798,37 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
     return Optional.ofNullable(repairRun);
   }
 
+  private static Optional<Long> getVersion(Row row) {
+    return row.isNull("version") ? Optional.empty() : Optional.of(row.getLong("version"));
+  }
+
+  private Optional<Long> getRepairRunVersion(UUID id) {
+    Row row = session.execute(getRepairRunVersionPrepStmt.bind(id)).one();
+    return null != row && !row.isNull(0) ? Optional.of(row.getLong(0)) : Optional.empty();
+  }
+
   @Override
   public Collection<RepairRun> getRepairRunsForCluster(String clusterName, Optional<Integer> limit) {
-    List<ResultSetFuture> repairRunFutures = Lists.<ResultSetFuture>newArrayList();
-
-    // Grab all ids for the given cluster name
-    Collection<UUID> repairRunIds = getRepairRunIdsForCluster(clusterName);
-    // Grab repair runs asynchronously for all the ids returned by the index table
-    for (UUID repairRunId : repairRunIds) {
-      repairRunFutures.add(session.executeAsync(getRepairRunPrepStmt.bind(repairRunId)));
-      if (repairRunFutures.size() == limit.orElse(1000)) {
-        break;
+    int runLimit = limit.orElse(1000);
+    Collection<RepairRun> repairRuns = Lists.<RepairRun>newArrayList();
+    if (0 >= runLimit) {
+      return repairRuns;
+    }
+    // The index is clustered newest first, so only the ids of the requested runs are read, a page at a time
+    Statement repairRunIdsStmt = getRepairRunForClusterPrepStmt
+        .bind(clusterName, runLimit)
+        .setFetchSize(Math.min(runLimit, REPAIR_RUN_READS_IN_FLIGHT));
+
+    // Grab repair runs asynchronously, with a bounded number of reads in flight
+    Deque<ResultSetFuture> repairRunFutures = Queues.newArrayDeque();
+    for (Row repairRunId : session.execute(repairRunIdsStmt)) {
+      if (REPAIR_RUN_READS_IN_FLIGHT == repairRunFutures.size()) {
+        repairRuns.addAll(getRepairRunsAsync(Collections.singletonList(repairRunFutures.poll())));
       }
+      repairRunFutures.add(session.executeAsync(getRepairRunPrepStmt.bind(repairRunId.getUUID("id"))));
     }
-
-    return getRepairRunsAsync(repairRunFutures);
+    repairRuns.addAll(getRepairRunsAsync(Lists.newArrayList(repairRunFutures)));
+    return repairRuns;
   }
 
   @Override
@@ -758,17 +905,46 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
   @Override
   public Optional<RepairRun> deleteRepairRun(UUID id) {
     Optional<RepairRun> repairRun = getRepairRun(id);
+    List<ResultSetFuture> futures = Lists.newArrayList();
     if (repairRun.isPresent()) {
-      session.executeAsync(deleteRepairRunByUnitPrepStmt.bind(id, repairRun.get().getRepairUnitId()));
-      session.executeAsync(deleteRepairRunByClusterPrepStmt.bind(id, repairRun.get().getClusterName()));
+      futures.add(session.executeAsync(deleteRepairRunByUnitPrepStmt.bind(id, repairRun.get().getRepairUnitId())));
+      futures.add(session.executeAsync(deleteRepairRunByClusterPrepStmt.bind(id, repairRun.get().getClusterName())));
+    }
+    for (int bucket = 0; bucket < getSegmentBuckets(id); ++bucket) {
+      futures.add(session.executeAsync(deleteRepairSegmentBucketPrepStmt.bind(id, bucket)));
+    }
+    futures.add(session.executeAsync(deleteRepairRunPrepStmt.bind(id)));
+    segmentBuckets.invalidate(id);
+    finishedRepairRuns.invalidate(id);
+
+    // wait for the deletes so callers deleting many runs (ie the PurgeService) can bound the load they generate,
+    // and fail like a synchronous delete would rather than report the run as deleted
+    int deletes = 0;
+    RuntimeException failure = null;
+    for (ResultSetFuture future : futures) {
+      try {
+        future.getUninterruptibly();
+        ++deletes;
+      } catch (RuntimeException ex) {
+        failure = null != failure ? failure : ex;
+      }
+    }
+    // every delete drops a whole partition or a row, leaving one tombstone
+    deletionTombstones.inc(deletes);
+    if (null != failure) {
+      LOG.error("failed to delete repair run {}", id, failure);
+      throw failure;
     }
-    session.executeAsync(deleteRepairRunPrepStmt.bind(id));
     return repairRun;
   }
 
   @Override
   public RepairUnit addRepairUnit(RepairUnit.Builder newRepairUnit) {
     RepairUnit repairUnit = newRepairUnit.build(UUIDs.timeBased());
+    // index first, an index entry without its unit is skipped by the lookups
+    session.execute(
+        insertRepairUnitByClusterAndKsPrepStmt.bind(
+            repairUnit.getClusterName(), repairUnit.getKeyspaceName(), repairUnit.getId()));
     session.execute(
         insertRepairUnitPrepStmt.bind(
             repairUnit.getId(),
@@ -785,10 +961,10 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
     return repairUnit;
   }
 
-  private RepairUnit getRepairUnitImpl(UUID id) {
+  private Optional<RepairUnit> getRepairUnitImpl(UUID id) {
     Row repairUnitRow = session.execute(getRepairUnitPrepStmt.bind(id)).one();
     if (repairUnitRow != null) {
-      return RepairUnit.builder()
+      return Optional.of(RepairUnit.builder()
               .clusterName(repairUnitRow.getString("cluster_name"))
               .keyspaceName(repairUnitRow.getString("keyspace_name"))
               .columnFamilies(repairUnitRow.getSet("column_families", String.class))
@@ -797,51 +973,28 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
               .datacenters(repairUnitRow.getSet("datacenters", String.class))
               .blacklistedTables(repairUnitRow.getSet("blacklisted_tables", String.class))
               .repairThreadCount(repairUnitRow.getInt("repair_thread_count"))
-              .build(id);
+              .build(id));
     }
-    throw new IllegalArgumentException("No repair unit exists for " + id);
+    return Optional.empty();
   }
 
   @Override
   public RepairUnit getRepairUnit(UUID id) {
-    return repairUnits.getUnchecked(id);
+    return repairUnits.get(id).orElseThrow(() -> new IllegalArgumentException("No repair unit exists for " + id));
   }
 
   @Override
   public Optional<RepairUnit> getRepairUnit(RepairUnit.Builder params) {
-    // brute force again
-    RepairUnit repairUnit = null;
-    Statement stmt = new SimpleStatement(SELECT_REPAIR_UNIT);
-    stmt.setIdempotent(Boolean.TRUE);
-    ResultSet results = session.execute(stmt);
-    for (Row repairUnitRow : results) {
-      if (repairUnitRow.getString("cluster_name").equals(params.clusterName)
-          && repairUnitRow.getString("keyspace_name").equals(params.keyspaceName)
-          && repairUnitRow.getSet("column_families", String.class).equals(params.columnFamilies)
-          && repairUnitRow.getBool("incremental_repair") == params.incrementalRepair
-          && repairUnitRow.getSet("nodes", String.class).equals(params.nodes)
-          && repairUnitRow.getSet("datacenters", String.class).equals(params.datacenters)
-          && repairUnitRow
-              .getSet("blacklisted_tables", String.class)
-              .equals(params.blacklistedTables)
-          && repairUnitRow.getInt("repair_thread_count") == params.repairThreadCount) {
-
-        repairUnit = RepairUnit.builder()
-            .clusterName(repairUnitRow.getString("cluster_name"))
-            .keyspaceName(repairUnitRow.getString("keyspace_name"))
-            .columnFamilies(repairUnitRow.getSet("column_families", String.class))
-            .incrementalRepair(repairUnitRow.getBool("incremental_repair"))
-            .nodes(repairUnitRow.getSet("nodes", String.class))
-            .datacenters(repairUnitRow.getSet("datacenters", String.class))
-            .blacklistedTables(repairUnitRow.getSet("blacklisted_tables", String.class))
-            .repairThreadCount(repairUnitRow.getInt("repair_thread_count"))
-            .build(repairUnitRow.getUUID("id"));
-        // exit the loop once we find a match
-        break;
+    ResultSet results = session.execute(
+        getRepairUnitsByClusterAndKsPrepStmt.bind(params.clusterName, params.keyspaceName));
+
+    for (Row row : results) {
+      Optional<RepairUnit> repairUnit = repairUnits.get(row.getUUID("id"));
+      if (repairUnit.isPresent() && repairUnit.get().with().equals(params)) {
+        return repairUnit;
       }
     }
-
-    return Optional.ofNullable(repairUnit);
+    return Optional.empty();
   }
 
   @Override
@@ -853,10 +1006,12 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
         : "non-leader trying to update repair segment " + segment.getId() + " of run " + segment.getRunId();
 
     BatchStatement updateRepairSegmentBatch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+    int bucket = SegmentBuckets.of(segment.getId(), getSegmentBuckets(segment.getRunId()));
 
     updateRepairSegmentBatch.add(
         updateRepairSegmentPrepStmt.bind(
             segment.getRunId(),
+            bucket,
             segment.getId(),
             segment.getState().ordinal(),
             segment.getCoordinatorHost(),
@@ -880,6 +1035,7 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
       updateRepairSegmentBatch.add(
           insertRepairSegmentEndTimePrepStmt.bind(
               segment.getRunId(),
+              bucket,
               segment.getId(),
               segment.hasEndTime() ? segment.getEndTime().toDate() : null));
 
@@ -893,7 +1049,8 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
   @Override
   public Optional<RepairSegment> getRepairSegment(UUID runId, UUID segmentId) {
     RepairSegment segment = null;
-    Row segmentRow = session.execute(getRepairSegmentPrepStmt.bind(runId, segmentId)).one();
+    int bucket = SegmentBuckets.of(segmentId, getSegmentBuckets(runId));
+    Row segmentRow = session.execute(getRepairSegmentPrepStmt.bind(runId, bucket, segmentId)).one();
     if (segmentRow != null) {
       segment = createRepairSegmentFromRow(segmentRow);
     }
@@ -904,23 +1061,64 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
   @Override
   public Collection<RepairSegment> getRepairSegmentsForRun(UUID runId) {
     Collection<RepairSegment> segments = Lists.newArrayList();
-    // First gather segments ids
-    ResultSet segmentsIdResultSet = session.execute(getRepairSegmentsByRunIdPrepStmt.bind(runId));
-    for (Row segmentRow : segmentsIdResultSet) {
-      segments.add(createRepairSegmentFromRow(segmentRow));
+    for (ResultSet segmentsResultSet : executeOnSegmentBuckets(runId, getRepairSegmentsByRunIdPrepStmt)) {
+      for (Row segmentRow : segmentsResultSet) {
+        segments.add(createRepairSegmentFromRow(segmentRow));
+      }
     }
-
     return segments;
   }
 
+  private int getSegmentBuckets(UUID runId) {
+    Integer buckets = segmentBuckets.getIfPresent(runId);
+    if (null == buckets) {
+      Row row = session.execute(getRepairRunSegmentBucketsPrepStmt.bind(runId)).one();
+      if (null == row) {
+        // unknown run, don't cache anything until it's been written
+        return 1;
+      }
+      buckets = row.isNull("segment_buckets") ? 1 : row.getInt("segment_buckets");
+      segmentBuckets.put(runId, buckets);
+    }
+    return buckets;
+  }
+
+  /**
+   * Executes the statement, bound to the run id, the bucket and any further values, on every segment bucket of the
+   * run in parallel.
+   */
+  private List<ResultSet> executeOnSegmentBuckets(
+      UUID runId,
+      PreparedStatement stmt,
+      Optional<ConsistencyLevel> consistency,
+      Object... values) {
+
+    List<ResultSetFuture> futures = Lists.newArrayList();
+    for (int bucket = 0; bucket < getSegmentBuckets(runId); ++bucket) {
+      Object[] bindValues = new Object[2 + values.length];
+      bindValues[0] = runId;
+      bindValues[1] = bucket;
+      System.arraycopy(values, 0, bindValues, 2, values.length);
+      Statement statement = stmt.bind(bindValues);
+      consistency.ifPresent(statement::setConsistencyLevel);
+      futures.add(session.executeAsync(statement));
+    }
+    return futures.stream().map(ResultSetFuture::getUninterruptibly).collect(Collectors.toList());
+  }
+
+  private List<ResultSet> executeOnSegmentBuckets(UUID runId, PreparedStatement stmt, Object... values) {
+    return executeOnSegmentBuckets(runId, stmt, Optional.empty(), values);
+  }
+
   private static boolean segmentIsWithinRange(RepairSegment segment, RingRange range) {
     return range.encloses(new RingRange(segment.getStartToken(), segment.getEndToken()));
   }
 
   private static RepairSegment createRepairSegmentFromRow(Row segmentRow) {
 
-    List<RingRange> tokenRanges
-        = JsonParseUtils.parseRingRangeList(Optional.ofNullable(segmentRow.getString("token_ranges")));
+    List<RingRange> tokenRanges = segmentRow.isNull("token_ranges_bin")
+        ? Collections.emptyList()
+        : TokenRangesCodec.decode(Bytes.getArray(segmentRow.getBytes("token_ranges_bin")));
 
     Segment.Builder segmentBuilder = Segment.builder();
 
@@ -969,17 +1167,20 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
   public Collection<RepairSegment> getSegmentsWithState(UUID runId, State segmentState) {
     Collection<RepairSegment> segments = Lists.newArrayList();
 
-    Statement statement = null != getRepairSegmentsByRunIdAndStatePrepStmt
-        ? getRepairSegmentsByRunIdAndStatePrepStmt.bind(runId, segmentState.ordinal())
+    Optional<ConsistencyLevel> consistency = State.STARTED == segmentState
+        ? Optional.of(ConsistencyLevel.LOCAL_QUORUM)
+        : Optional.empty();
+
+    List<ResultSet> resultSets = null != getRepairSegmentsByRunIdAndStatePrepStmt
+        ? executeOnSegmentBuckets(runId, getRepairSegmentsByRunIdAndStatePrepStmt, consistency, segmentState.ordinal())
         // legacy mode for Cassandra-2 backends
-        : getRepairSegmentsByRunIdPrepStmt.bind(runId);
+        : executeOnSegmentBuckets(runId, getRepairSegmentsByRunIdPrepStmt, consistency);
 
-    if (State.STARTED == segmentState) {
-      statement = statement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
-    }
-    for (Row segmentRow : session.execute(statement)) {
-      if (segmentRow.getInt("segment_state") == segmentState.ordinal()) {
-        segments.add(createRepairSegmentFromRow(segmentRow));
+    for (ResultSet resultSet : resultSets) {
+      for (Row segmentRow : resultSet) {
+        if (segmentRow.getInt("segment_state") == segmentState.ordinal()) {
+          segments.add(createRepairSegmentFromRow(segmentRow));
+        }
       }
     }
     return segments;
@@ -1011,7 +1212,7 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
   @Override
   public SortedSet<UUID> getRepairRunIdsForCluster(String clusterName) {
     SortedSet<UUID> repairRunIds = Sets.newTreeSet((u0, u1) -> (int)(u0.timestamp() - u1.timestamp()));
-    ResultSet results = session.execute(getRepairRunForClusterPrepStmt.bind(clusterName));
+    ResultSet results = session.execute(getRepairRunForClusterPrepStmt.bind(clusterName, Integer.MAX_VALUE));
     for (Row result : results) {
       repairRunIds.add(result.getUUID("id"));
     }
@@ -1020,21 +1221,27 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
     return repairRunIds;
   }
 
+  @Override
+  public Iterable<UUID> getRepairRunIdsForCluster(String clusterName, int pageSize) {
+    Statement stmt = getRepairRunForClusterPrepStmt.bind(clusterName, Integer.MAX_VALUE).setFetchSize(pageSize);
+    return Iterables.transform(session.execute(stmt), row -> row.getUUID("id"));
+  }
+
   @Override
   public int getSegmentAmountForRepairRun(UUID runId) {
-    return (int) session
-        .execute(getRepairSegmentCountByRunIdPrepStmt.bind(runId))
-        .one()
-        .getLong(0);
+    return (int) executeOnSegmentBuckets(runId, getRepairSegmentCountByRunIdPrepStmt)
+        .stream()
+        .mapToLong(resultSet -> resultSet.one().getLong(0))
+        .sum();
   }
 
   @Override
   public int getSegmentAmountForRepairRunWithState(UUID runId, State state) {
     if (null != getRepairSegmentCountByRunIdAndStatePrepStmt) {
-      return (int) session
-          .execute(getRepairSegmentCountByRunIdAndStatePrepStmt.bind(runId, state.ordinal()))
-          .one()
-          .getLong(0);
+      return (int) executeOnSegmentBuckets(runId, getRepairSegmentCountByRunIdAndStatePrepStmt, state.ordinal())
+          .stream()
+          .mapToLong(resultSet -> resultSet.one().getLong(0))
+          .sum();
     } else {
       // legacy mode for Cassandra-2 backends
       return getSegmentsWithState(runId, state).size();
@@ -1369,6 +1576,40 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
     session.executeAsync(delNodeMetricsByNodePrepStmt.bind(minute, runId, node));
   }
 
+  @Override
+  public boolean isCircuitBreakerOpen() {
+    return circuitBreaker.isOpen();
+  }
+
+  @Override
+  public void publishNodeMetrics(NodeMetrics nodeMetrics) {
+    session.executeAsync(
+        publishNodeMetricsPrepStmt.bind(
+            nodeMetrics.getCluster(),
+            nodeMetrics.getNode(),
+            nodeMetrics.getDatacenter(),
+            nodeMetrics.getPendingCompactions(),
+            nodeMetrics.hasRepairRunning(),
+            nodeMetrics.getActiveAnticompactions(),
+            PUBLISHED_NODE_METRICS_TTL_SECONDS));
+  }
+
+  @Override
+  public Optional<NodeMetrics> getPublishedNodeMetrics(String clusterName, String node) {
+    Row row = session.execute(getPublishedNodeMetricsPrepStmt.bind(clusterName, node)).one();
+    return null != row
+        ? Optional.of(
+            NodeMetrics.builder()
+                .withNode(row.getString("node"))
+                .withDatacenter(row.getString("datacenter"))
+                .withCluster(row.getString("cluster"))
+                .withPendingCompactions(row.getInt("pending_compactions"))
+                .withHasRepairRunning(row.getBool("has_repair_running"))
+                .withActiveAnticompactions(row.getInt("active_anticompactions"))
+                .build())
+        : Optional.empty();
+  }
+
   private static NodeMetrics createNodeMetrics(Row row) {
     return NodeMetrics.builder()
         .withNode(row.getString("node"))
@@ -1405,11 +1646,16 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
     cassandraFactory.setQueryOptions(java.util.Optional.of(new QueryOptions().setDefaultIdempotence(true)));
   }
 
-  private static void overrideRetryPolicy(CassandraFactory cassandraFactory) {
+  private static void overrideRetryPolicy(
+      CassandraFactory cassandraFactory,
+      CircuitBreaker circuitBreaker,
+      MetricRegistry metricRegistry) {
+
     if (cassandraFactory.getRetryPolicy().isPresent()) {
       LOG.warn("Customization of cassandra's retry policy is not supported and will be overridden");
     }
-    cassandraFactory.setRetryPolicy(java.util.Optional.of((RetryPolicyFactory) () -> new RetryPolicyImpl()));
+    cassandraFactory.setRetryPolicy(
+        java.util.Optional.of((RetryPolicyFactory) () -> new BudgetedRetryPolicy(circuitBreaker, metricRegistry)));
   }
 
   private static void overridePoolingOptions(CassandraFactory cassandraFactory) {
@@ -1436,75 +1682,6 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
     return !range.isPresent() || segmentIsWithinRange(segment, range.get());
   }
 
-  /**
-   * Retry all statements.
-   *
-   * <p>
-   * All reaper statements are idempotent. Reaper generates few read and writes requests, so it's ok to keep
-   * retrying.
-   *
-   * <p>
-   * Sleep 100 milliseconds in between subsequent read retries. Fail after the tenth read retry.
-   *
-   * <p>
-   * Writes keep retrying forever.
-   */
-  private static class RetryPolicyImpl implements RetryPolicy {
-
-    @Override
-    public RetryDecision onReadTimeout(
-        Statement stmt,
-        ConsistencyLevel cl,
-        int required,
-        int received,
-        boolean retrieved,
-        int retry) {
-
-      if (retry > 1) {
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException expected) { }
-      }
-      return null != stmt && Boolean.FALSE != stmt.isIdempotent()
-          ? retry < 10 ? RetryDecision.retry(cl) : RetryDecision.rethrow()
-          : DefaultRetryPolicy.INSTANCE.onReadTimeout(stmt, cl, required, received, retrieved, retry);
-    }
-
-    @Override
-    public RetryDecision onWriteTimeout(
-        Statement stmt,
-        ConsistencyLevel cl,
-        WriteType type,
-        int required,
-        int received,
-        int retry) {
-
-      Preconditions.checkState(WriteType.CAS != type ||  ConsistencyLevel.SERIAL == cl);
-
-      return null != stmt && Boolean.FALSE != stmt.isIdempotent()
-          ? WriteType.CAS == type ? RetryDecision.retry(ConsistencyLevel.ONE) : RetryDecision.retry(cl)
-          : DefaultRetryPolicy.INSTANCE.onWriteTimeout(stmt, cl, type, required, received, retry);
-    }
-
-    @Override
-    public RetryDecision onUnavailable(Statement stmt, ConsistencyLevel cl, int required, int aliveReplica, int retry) {
-      return DefaultRetryPolicy.INSTANCE.onUnavailable(stmt, cl, required, aliveReplica, retry == 1 ? 0 : retry);
-    }
-
-    @Override
-    public RetryDecision onRequestError(Statement stmt, ConsistencyLevel cl, DriverException ex, int nbRetry) {
-      return DefaultRetryPolicy.INSTANCE.onRequestError(stmt, cl, ex, nbRetry);
-    }
-
-    @Override
-    public void init(com.datastax.driver.core.Cluster cluster) {
-    }
-
-    @Override
-    public void close() {
-    }
-  }
-
   @Override
   public boolean saveSnapshot(Snapshot snapshot) {
     session.execute(
@@ -1538,4 +1715,19 @@ public final class CassandraStorage implements IStorage, IDistributedStorage {
 
     return snapshotBuilder.build();
   }
+
+  /**
+   * Carries a failure to parse a cluster out of the cache loader, to be rethrown as a ReaperException.
+   */
+  private static final class ClusterParsingException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ReaperException reaperException;
+
+    ClusterParsingException(Exception cause) {
+      super(cause);
+      this.reaperException = new ReaperException(cause);
+    }
+  }
 }
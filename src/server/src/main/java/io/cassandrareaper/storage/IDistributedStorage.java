@@ -52,4 +52,24 @@ public interface IDistributedStorage {
 
   void storeNodeMetrics(UUID runId, NodeMetrics nodeMetrics);
 
+  /**
+   * @return true while the storage backend fails most requests, repairs should not start new segments meanwhile
+   */
+  boolean isCircuitBreakerOpen();
+
+  /**
+   * Publishes the latest metrics of a node, for the other reaper instances that cannot reach it through JMX.
+   */
+  void publishNodeMetrics(NodeMetrics nodeMetrics);
+
+  /**
+   * @return the latest metrics published for the node by any reaper instance, unless they have expired
+   */
+  Optional<NodeMetrics> getPublishedNodeMetrics(String clusterName, String node);
+
+  /**
+   * @return the ids of the repair runs of the cluster, newest first, read a page at a time as they are iterated
+   */
+  Iterable<UUID> getRepairRunIdsForCluster(String clusterName, int pageSize);
+
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.google.common.reflect.AbstractInvocationHandler;
+import com.google.common.reflect.TypeToken;
+
+
+/**
+ * Wraps a storage so that each of its calls is timed, and the rows it returns counted, per method and per caller.
+ *
+ * <p>The caller is the simple name of the first reaper class on the call stack that is neither a storage nor a storage
+ * wrapper, for example SegmentRunner or RepairRunResource, so that the load on the storage backend can be attributed
+ * to the runners, the REST resources or the schedulers. The returned storage implements every interface of the
+ * wrapped one.
+ */
+public final class InstrumentedStorage extends AbstractInvocationHandler {
+
+  private static final CallerResolver CALLER_RESOLVER = new CallerResolver();
+
+  private final IStorage storage;
+  private final MetricRegistry metricRegistry;
+
+  private InstrumentedStorage(IStorage storage, MetricRegistry metricRegistry) {
+    this.storage = storage;
+    this.metricRegistry = metricRegistry;
+  }
+
+  public static IStorage create(IStorage storage, MetricRegistry metricRegistry) {
+    Class<?>[] interfaces
+        = TypeToken.of(storage.getClass()).getTypes().interfaces().rawTypes().toArray(new Class<?>[0]);
+
+    return (IStorage) Proxy.newProxyInstance(
+        storage.getClass().getClassLoader(),
+        interfaces,
+        new InstrumentedStorage(storage, metricRegistry));
+  }
+
+  @Override
+  protected Object handleInvocation(Object proxy, Method method, Object[] args) throws Throwable {
+    String caller = CALLER_RESOLVER.getCaller();
+    Object result;
+    try (Timer.Context timer = metricRegistry.timer(timerName(method.getName(), caller)).time()) {
+      result = method.invoke(storage, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+    Optional<Integer> rows = countRows(result);
+    if (rows.isPresent()) {
+      metricRegistry.histogram(rowsName(method.getName(), caller)).update(rows.get());
+    }
+    return result;
+  }
+
+  @VisibleForTesting
+  static String timerName(String methodName, String caller) {
+    return MetricRegistry.name(InstrumentedStorage.class, methodName, caller);
+  }
+
+  @VisibleForTesting
+  static String rowsName(String methodName, String caller) {
+    return MetricRegistry.name(InstrumentedStorage.class, methodName, caller, "rows");
+  }
+
+  private static Optional<Integer> countRows(Object result) {
+    if (result instanceof Collection) {
+      return Optional.of(((Collection<?>) result).size());
+    }
+    if (result instanceof Map) {
+      return Optional.of(((Map<?, ?>) result).size());
+    }
+    if (result instanceof Optional) {
+      return Optional.of(((Optional<?>) result).isPresent() ? 1 : 0);
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public String toString() {
+    return storage.toString();
+  }
+
+  /**
+   * Reads the class names on the call stack, resolving whether each one is a storage class only once.
+   */
+  private static final class CallerResolver {
+
+    private static final String REAPER_PACKAGE = "io.cassandrareaper.";
+
+    private final Map<String, Boolean> storageOrWrapper = Maps.newConcurrentMap();
+
+    String getCaller() {
+      for (StackTraceElement frame : Thread.currentThread().getStackTrace()) {
+        String name = frame.getClassName();
+        if (name.startsWith(REAPER_PACKAGE) && !storageOrWrapper.computeIfAbsent(name, this::isStorageOrWrapper)) {
+          // inner classes and lambdas are attributed to their enclosing class
+          int nested = name.indexOf('$');
+          return name.substring(name.lastIndexOf('.') + 1, 0 < nested ? nested : name.length());
+        }
+      }
+      return "other";
+    }
+
+    private boolean isStorageOrWrapper(String className) {
+      try {
+        Class<?> clazz = Class.forName(className, false, CallerResolver.class.getClassLoader());
+        return CallerResolver.class == clazz
+            || IStorage.class.isAssignableFrom(clazz)
+            || InvocationHandler.class.isAssignableFrom(clazz);
+      } catch (ClassNotFoundException | LinkageError e) {
+        return false;
+      }
+    }
+  }
+}
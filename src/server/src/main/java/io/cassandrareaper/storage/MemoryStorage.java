@@ -28,39 +28,234 @@ import io.cassandrareaper.resources.view.RepairScheduleStatus;
 import io.cassandrareaper.service.RepairParameters;
 import io.cassandrareaper.service.RingRange;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.datastax.driver.core.utils.UUIDs;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Implements the StorageAPI using transient Java classes.
+ *
+ * <p>Next to the entities, runs are indexed by cluster, unit and state, units by cluster and keyspace, schedules by
+ * unit, and the segments of each run by state. Every index is a concurrent collection, and each entity is updated
+ * atomically with its index entries through {@link ConcurrentMap#compute}, so that concurrent repair runners neither
+ * contend on a storage wide lock nor scan every run or segment.
+ *
+ * <p>When created with a directory, every change is also appended to a {@link MemoryStorageLog} in that directory,
+ * which is replayed when reaper starts again and periodically checkpointed. Changes only share a read lock, which
+ * checkpoints take exclusively. The log is flushed and closed when the storage is stopped.
  */
-public final class MemoryStorage implements IStorage {
+public final class MemoryStorage implements IStorage, Managed {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MemoryStorage.class);
+
+  private static final int DEFAULT_REPAIR_RUNS_LIMIT = 1000;
+  private static final String LOG_FILE = "memory-storage.log";
+
+  // newest runs first, time based uuids do not sort chronologically by their natural order
+  private static final Comparator<UUID> NEWEST_FIRST
+      = Comparator.comparingLong(UUID::timestamp).thenComparing(Comparator.naturalOrder()).reversed();
 
   private final ConcurrentMap<String, Cluster> clusters = Maps.newConcurrentMap();
   private final ConcurrentMap<UUID, RepairRun> repairRuns = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, ConcurrentNavigableMap<UUID, RepairRun>> repairRunsByCluster
+      = Maps.newConcurrentMap();
+  private final ConcurrentMap<UUID, Set<UUID>> repairRunsByUnit = Maps.newConcurrentMap();
+  private final Map<RepairRun.RunState, Set<UUID>> repairRunsByState = new EnumMap<>(RepairRun.RunState.class);
   private final ConcurrentMap<UUID, RepairUnit> repairUnits = Maps.newConcurrentMap();
   private final ConcurrentMap<RepairUnit.Builder, RepairUnit> repairUnitsByKey = Maps.newConcurrentMap();
-  private final ConcurrentMap<UUID, RepairSegment> repairSegments = Maps.newConcurrentMap();
-  private final ConcurrentMap<UUID, LinkedHashMap<UUID, RepairSegment>> repairSegmentsByRunId = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, ConcurrentMap<String, Set<UUID>>> repairUnitsByClusterAndKeyspace
+      = Maps.newConcurrentMap();
+  private final ConcurrentMap<UUID, RunSegments> repairSegmentsByRunId = Maps.newConcurrentMap();
+  private final ConcurrentMap<UUID, RunSegments> repairSegmentsById = Maps.newConcurrentMap();
   private final ConcurrentMap<UUID, RepairSchedule> repairSchedules = Maps.newConcurrentMap();
+  private final ConcurrentMap<UUID, Set<UUID>> repairSchedulesByUnit = Maps.newConcurrentMap();
   private final ConcurrentMap<String, Snapshot> snapshots = Maps.newConcurrentMap();
+  // changes share the read lock, so that a checkpoint, which takes the write lock, sees each change either entirely
+  // or not at all
+  private final ReadWriteLock changes = new ReentrantReadWriteLock();
+  private final Optional<MemoryStorageLog> storageLog;
+  private final Optional<ScheduledExecutorService> checkpointer;
+
+  public MemoryStorage() {
+    this(Optional.empty(), Optional.empty());
+  }
+
+  private MemoryStorage(Optional<MemoryStorageLog> storageLog, Optional<ScheduledExecutorService> checkpointer) {
+    this.storageLog = storageLog;
+    this.checkpointer = checkpointer;
+    for (RepairRun.RunState state : RepairRun.RunState.values()) {
+      repairRunsByState.put(state, ConcurrentHashMap.newKeySet());
+    }
+  }
+
+  /**
+   * Creates a memory storage that keeps its entities across restarts in the given directory.
+   *
+   * @param directory where the log of the storage is kept, created if missing
+   * @param checkpointPeriod how often the log is flushed to disk, and checkpointed once it has doubled in size
+   */
+  public static MemoryStorage create(Path directory, Duration checkpointPeriod) throws IOException {
+    Files.createDirectories(directory);
+    Path file = directory.resolve(LOG_FILE);
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    MemoryStorageLog.Recovered recovered = MemoryStorageLog.recover(file);
+    ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("memory-storage-checkpoint").build());
+
+    MemoryStorage storage
+        = new MemoryStorage(Optional.of(MemoryStorageLog.open(file, recovered)), Optional.of(checkpointer));
+    storage.restore(recovered);
+
+    LOG.info(
+        "recovered {} repair runs with {} segments from {} in {}",
+        storage.repairRuns.size(),
+        storage.repairSegmentsById.size(),
+        file,
+        stopwatch);
+
+    checkpointer.scheduleWithFixedDelay(
+        storage::checkpointIfGrown,
+        checkpointPeriod.toMillis(),
+        checkpointPeriod.toMillis(),
+        TimeUnit.MILLISECONDS);
+
+    return storage;
+  }
+
+  private void restore(MemoryStorageLog.Recovered recovered) {
+    clusters.putAll(recovered.clusters);
+    recovered.repairUnits.values().forEach(this::putRepairUnit);
+    for (RepairRun repairRun : recovered.repairRuns.values()) {
+      putRepairSegments(repairRun.getId(), recovered.getRepairSegments(repairRun.getId()));
+      repairRuns.put(repairRun.getId(), repairRun);
+      indexRepairRun(repairRun);
+    }
+    recovered.repairSchedules.values().forEach(this::putRepairSchedule);
+  }
+
+  @Override
+  public void start() {
+    // the log is recovered and the checkpoints scheduled on creation
+  }
+
+  /**
+   * Stops the checkpoints, then flushes and closes the log once the changes in progress have been appended.
+   */
+  @Override
+  public void stop() throws IOException, InterruptedException {
+    if (checkpointer.isPresent()) {
+      checkpointer.get().shutdown();
+      checkpointer.get().awaitTermination(1, TimeUnit.MINUTES);
+    }
+    if (storageLog.isPresent()) {
+      changes.writeLock().lock();
+      try {
+        storageLog.get().close();
+      } finally {
+        changes.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Applies a change in memory and appends it to the log, without a checkpoint in between.
+   */
+  private <T> T change(Supplier<T> change) {
+    changes.readLock().lock();
+    try {
+      return change.get();
+    } finally {
+      changes.readLock().unlock();
+    }
+  }
+
+  private void record(Consumer<MemoryStorageLog> change) {
+    storageLog.ifPresent(change);
+  }
+
+  private void checkpointIfGrown() {
+    MemoryStorageLog log = storageLog.get();
+    try {
+      if (log.getSizeSinceCheckpoint() >= log.getCheckpointSize()) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        checkpoint();
+        LOG.debug("checkpointed the memory storage in {}", stopwatch);
+      } else {
+        log.force();
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.error("failed checkpointing the memory storage", e);
+    }
+  }
+
+  /**
+   * Replaces the log with the entities currently in storage.
+   *
+   * <p>Each change updates memory and appends to the log under the read lock. The checkpoint takes the write lock, so
+   * that no change can be both missing from the entities it reads and written to the log it replaces.
+   */
+  @VisibleForTesting
+  void checkpoint() throws IOException {
+    MemoryStorageLog log = storageLog.get();
+    changes.writeLock().lock();
+    try {
+      log.checkpoint(() -> {
+        clusters.values().forEach(log::putCluster);
+        repairUnits.values().forEach(log::putRepairUnit);
+        repairSegmentsByRunId.values().forEach((segments) -> segments.getAll().forEach(log::putRepairSegment));
+        repairRuns.values().forEach(log::putRepairRun);
+        repairSchedules.values().forEach(log::putRepairSchedule);
+      });
+    } finally {
+      changes.writeLock().unlock();
+    }
+  }
 
   @Override
   public boolean isStorageConnected() {
@@ -75,18 +270,23 @@ public final class MemoryStorage implements IStorage {
 
   @Override
   public boolean addCluster(Cluster cluster) {
-    Cluster existing = clusters.putIfAbsent(cluster.getName(), cluster);
-    return existing == null;
+    return change(() -> {
+      Cluster existing = clusters.putIfAbsent(cluster.getName(), cluster);
+      if (null == existing) {
+        record((log) -> log.putCluster(cluster));
+      }
+      return existing == null;
+    });
   }
 
   @Override
   public boolean updateCluster(Cluster newCluster) {
-    if (!getCluster(newCluster.getName()).isPresent()) {
-      return false;
-    } else {
-      clusters.put(newCluster.getName(), newCluster);
-      return true;
-    }
+    return change(() -> {
+      return null != clusters.computeIfPresent(newCluster.getName(), (name, existing) -> {
+        record((log) -> log.putCluster(newCluster));
+        return newCluster;
+      });
+    });
   }
 
   @Override
@@ -96,44 +296,56 @@ public final class MemoryStorage implements IStorage {
 
   @Override
   public Optional<Cluster> deleteCluster(String clusterName) {
-    assert getRepairSchedulesForCluster(clusterName).isEmpty()
-        : StringUtils.join(getRepairSchedulesForCluster(clusterName));
+    return change(() -> {
+      assert getRepairSchedulesForCluster(clusterName).isEmpty()
+          : StringUtils.join(getRepairSchedulesForCluster(clusterName));
 
-    assert getRepairRunsForCluster(clusterName, Optional.of(Integer.MAX_VALUE)).isEmpty()
-        : StringUtils.join(getRepairRunsForCluster(clusterName, Optional.of(Integer.MAX_VALUE)));
+      assert getRepairRunsForCluster(clusterName, Optional.of(Integer.MAX_VALUE)).isEmpty()
+          : StringUtils.join(getRepairRunsForCluster(clusterName, Optional.of(Integer.MAX_VALUE)));
 
-    if (getRepairSchedulesForCluster(clusterName).isEmpty()
-        && getRepairRunsForCluster(clusterName, Optional.of(Integer.MAX_VALUE)).isEmpty()) {
+      if (getRepairSchedulesForCluster(clusterName).isEmpty()
+          && getRepairRunsForCluster(clusterName, Optional.of(Integer.MAX_VALUE)).isEmpty()) {
 
-      repairUnits.values().stream()
-          .filter((unit) -> unit.getClusterName().equals(clusterName))
-          .forEach((unit) -> {
-            assert getRepairRunsForUnit(unit.getId()).isEmpty() : StringUtils.join(getRepairRunsForUnit(unit.getId()));
-            repairUnits.remove(unit.getId());
-            repairUnitsByKey.remove(unit.with());
-          });
+        getRepairUnitIdsForCluster(clusterName).forEach((unitId) -> {
+          assert getRepairRunsForUnit(unitId).isEmpty() : StringUtils.join(getRepairRunsForUnit(unitId));
+          removeRepairUnit(unitId);
+        });
 
-      return Optional.ofNullable(clusters.remove(clusterName));
-    }
-    return Optional.empty();
+        Optional<Cluster> deletedCluster = Optional.ofNullable(clusters.remove(clusterName));
+        deletedCluster.ifPresent((cluster) -> record((log) -> log.deleteCluster(clusterName)));
+        return deletedCluster;
+      }
+      return Optional.empty();
+    });
   }
 
   @Override
   public RepairRun addRepairRun(RepairRun.Builder repairRun, Collection<RepairSegment.Builder> newSegments) {
-    RepairRun newRepairRun = repairRun.build(UUIDs.timeBased());
-    repairRuns.put(newRepairRun.getId(), newRepairRun);
-    addRepairSegments(newSegments, newRepairRun.getId());
-    return newRepairRun;
+    return change(() -> {
+      RepairRun newRepairRun = repairRun.build(UUIDs.timeBased());
+      addRepairSegments(newSegments, newRepairRun.getId());
+      repairRuns.compute(newRepairRun.getId(), (id, existing) -> {
+        record((log) -> log.putRepairRun(newRepairRun));
+        indexRepairRun(newRepairRun);
+        return newRepairRun;
+      });
+      return newRepairRun;
+    });
   }
 
   @Override
   public boolean updateRepairRun(RepairRun repairRun) {
-    if (!getRepairRun(repairRun.getId()).isPresent()) {
-      return false;
-    } else {
-      repairRuns.put(repairRun.getId(), repairRun);
-      return true;
-    }
+    return change(() -> {
+      return null != repairRuns.computeIfPresent(repairRun.getId(), (id, existing) -> {
+        record((log) -> log.putRepairRun(repairRun));
+        repairRunsByState.get(repairRun.getRunState()).add(id);
+        if (existing.getRunState() != repairRun.getRunState()) {
+          repairRunsByState.get(existing.getRunState()).remove(id);
+        }
+        repairRunsByCluster(repairRun.getClusterName()).put(id, repairRun);
+        return repairRun;
+      });
+    });
   }
 
   @Override
@@ -143,40 +355,47 @@ public final class MemoryStorage implements IStorage {
 
   @Override
   public List<RepairRun> getRepairRunsForCluster(String clusterName, Optional<Integer> limit) {
-    List<RepairRun> foundRepairRuns = new ArrayList<>();
-    TreeMap<UUID,RepairRun> reverseOrder = new TreeMap<>(Collections.reverseOrder());
-    reverseOrder.putAll(repairRuns);
-    for (RepairRun repairRun : reverseOrder.values()) {
-      if (repairRun.getClusterName().equalsIgnoreCase(clusterName)) {
-        foundRepairRuns.add(repairRun);
-        if (foundRepairRuns.size() == limit.orElse(1000)) {
-          break;
-        }
-      }
-    }
-    return foundRepairRuns;
+    return repairRunsByCluster(clusterName).values().stream()
+        .limit(Math.max(0, limit.orElse(DEFAULT_REPAIR_RUNS_LIMIT)))
+        .collect(Collectors.toList());
   }
 
   @Override
   public Collection<RepairRun> getRepairRunsForUnit(UUID repairUnitId) {
-    List<RepairRun> foundRepairRuns = new ArrayList<>();
-    for (RepairRun repairRun : repairRuns.values()) {
-      if (repairRun.getRepairUnitId().equals(repairUnitId)) {
-        foundRepairRuns.add(repairRun);
-      }
-    }
-    return foundRepairRuns;
+    return getRepairRuns(repairRunsByUnit.getOrDefault(repairUnitId, Collections.emptySet()));
   }
 
   @Override
   public Collection<RepairRun> getRepairRunsWithState(RepairRun.RunState runState) {
-    List<RepairRun> foundRepairRuns = new ArrayList<>();
-    for (RepairRun repairRun : repairRuns.values()) {
-      if (repairRun.getRunState() == runState) {
-        foundRepairRuns.add(repairRun);
-      }
-    }
-    return foundRepairRuns;
+    return getRepairRuns(repairRunsByState.get(runState)).stream()
+        .filter((run) -> run.getRunState() == runState)
+        .collect(Collectors.toList());
+  }
+
+  private Collection<RepairRun> getRepairRuns(Collection<UUID> ids) {
+    return ids.stream().map(repairRuns::get).filter(Objects::nonNull).collect(Collectors.toList());
+  }
+
+  private ConcurrentNavigableMap<UUID, RepairRun> repairRunsByCluster(String clusterName) {
+    // cluster names of runs are matched regardless of their case
+    return repairRunsByCluster.computeIfAbsent(
+        clusterName.toLowerCase(Locale.ROOT), (name) -> new ConcurrentSkipListMap<>(NEWEST_FIRST));
+  }
+
+  private void indexRepairRun(RepairRun repairRun) {
+    repairRunsByCluster(repairRun.getClusterName()).put(repairRun.getId(), repairRun);
+    repairRunsByUnit.computeIfAbsent(repairRun.getRepairUnitId(), (unitId) -> ConcurrentHashMap.newKeySet())
+        .add(repairRun.getId());
+    repairRunsByState.get(repairRun.getRunState()).add(repairRun.getId());
+  }
+
+  private void unindexRepairRun(RepairRun repairRun) {
+    repairRunsByCluster(repairRun.getClusterName()).remove(repairRun.getId());
+    repairRunsByUnit.computeIfPresent(repairRun.getRepairUnitId(), (unitId, runIds) -> {
+      runIds.remove(repairRun.getId());
+      return runIds.isEmpty() ? null : runIds;
+    });
+    repairRunsByState.get(repairRun.getRunState()).remove(repairRun.getId());
   }
 
   /**
@@ -187,66 +406,85 @@ public final class MemoryStorage implements IStorage {
    */
   private Optional<RepairUnit> deleteRepairUnit(UUID repairUnitId) {
     RepairUnit deletedUnit = null;
-    boolean canDelete = true;
-    for (RepairRun repairRun : repairRuns.values()) {
-      if (repairRun.getRepairUnitId().equals(repairUnitId)) {
-        canDelete = false;
-        break;
-      }
+    if (!repairRunsByUnit.containsKey(repairUnitId) && !repairSchedulesByUnit.containsKey(repairUnitId)) {
+      deletedUnit = removeRepairUnit(repairUnitId);
     }
-    if (canDelete) {
-      for (RepairSchedule schedule : repairSchedules.values()) {
-        if (schedule.getRepairUnitId().equals(repairUnitId)) {
-          canDelete = false;
-          break;
-        }
-      }
-    }
-    if (canDelete) {
-      deletedUnit = repairUnits.remove(repairUnitId);
+    return Optional.ofNullable(deletedUnit);
+  }
+
+  private RepairUnit removeRepairUnit(UUID repairUnitId) {
+    RepairUnit deletedUnit = repairUnits.remove(repairUnitId);
+    if (null != deletedUnit) {
+      record((log) -> log.deleteRepairUnit(repairUnitId));
       repairUnitsByKey.remove(deletedUnit.with());
+      repairUnitsByClusterAndKeyspace.computeIfPresent(deletedUnit.getClusterName(), (cluster, keyspaces) -> {
+        keyspaces.computeIfPresent(deletedUnit.getKeyspaceName(), (keyspace, unitIds) -> {
+          unitIds.remove(repairUnitId);
+          return unitIds.isEmpty() ? null : unitIds;
+        });
+        return keyspaces.isEmpty() ? null : keyspaces;
+      });
     }
-    return Optional.ofNullable(deletedUnit);
+    return deletedUnit;
+  }
+
+  private Collection<UUID> getRepairUnitIdsForCluster(String clusterName) {
+    return repairUnitsByClusterAndKeyspace.getOrDefault(clusterName, Maps.newConcurrentMap()).values().stream()
+        .flatMap(Set::stream)
+        .collect(Collectors.toList());
   }
 
   private int deleteRepairSegmentsForRun(UUID runId) {
-    Map<UUID, RepairSegment> segmentsMap = repairSegmentsByRunId.remove(runId);
-    if (null != segmentsMap) {
-      for (RepairSegment segment : segmentsMap.values()) {
-        repairSegments.remove(segment.getId());
-      }
+    RunSegments segments = repairSegmentsByRunId.remove(runId);
+    if (null != segments) {
+      segments.getIds().forEach(repairSegmentsById::remove);
     }
-    return segmentsMap != null ? segmentsMap.size() : 0;
+    return segments != null ? segments.size() : 0;
   }
 
   @Override
   public Optional<RepairRun> deleteRepairRun(UUID id) {
-    RepairRun deletedRun = repairRuns.remove(id);
-    if (deletedRun != null) {
-      if (getSegmentAmountForRepairRunWithState(id, RepairSegment.State.RUNNING) == 0) {
-        deleteRepairUnit(deletedRun.getRepairUnitId());
-        deleteRepairSegmentsForRun(id);
-
-        deletedRun = deletedRun.with()
-            .runState(RepairRun.RunState.DELETED)
-            .endTime(DateTime.now())
-            .build(id);
+    return change(() -> {
+      RepairRun deletedRun = repairRuns.remove(id);
+      if (deletedRun != null) {
+        record((log) -> log.deleteRepairRun(id));
+        unindexRepairRun(deletedRun);
+        if (getSegmentAmountForRepairRunWithState(id, RepairSegment.State.RUNNING) == 0) {
+          deleteRepairUnit(deletedRun.getRepairUnitId());
+          deleteRepairSegmentsForRun(id);
+
+          deletedRun = deletedRun.with()
+              .runState(RepairRun.RunState.DELETED)
+              .endTime(DateTime.now())
+              .build(id);
+        }
       }
-    }
-    return Optional.ofNullable(deletedRun);
+      return Optional.ofNullable(deletedRun);
+    });
   }
 
   @Override
   public RepairUnit addRepairUnit(RepairUnit.Builder repairUnit) {
-    Optional<RepairUnit> existing = getRepairUnit(repairUnit);
-    if (existing.isPresent() && repairUnit.incrementalRepair == existing.get().getIncrementalRepair()) {
-      return existing.get();
-    } else {
-      RepairUnit newRepairUnit = repairUnit.build(UUIDs.timeBased());
-      repairUnits.put(newRepairUnit.getId(), newRepairUnit);
-      repairUnitsByKey.put(repairUnit, newRepairUnit);
-      return newRepairUnit;
-    }
+    return change(() -> {
+      Optional<RepairUnit> existing = getRepairUnit(repairUnit);
+      if (existing.isPresent() && repairUnit.incrementalRepair == existing.get().getIncrementalRepair()) {
+        return existing.get();
+      } else {
+        RepairUnit newRepairUnit = repairUnit.build(UUIDs.timeBased());
+        putRepairUnit(newRepairUnit);
+        record((log) -> log.putRepairUnit(newRepairUnit));
+        return newRepairUnit;
+      }
+    });
+  }
+
+  private void putRepairUnit(RepairUnit repairUnit) {
+    repairUnits.put(repairUnit.getId(), repairUnit);
+    repairUnitsByKey.put(repairUnit.with(), repairUnit);
+    repairUnitsByClusterAndKeyspace
+        .computeIfAbsent(repairUnit.getClusterName(), (cluster) -> Maps.newConcurrentMap())
+        .computeIfAbsent(repairUnit.getKeyspaceName(), (keyspace) -> ConcurrentHashMap.newKeySet())
+        .add(repairUnit.getId());
   }
 
   @Override
@@ -262,70 +500,55 @@ public final class MemoryStorage implements IStorage {
   }
 
   private void addRepairSegments(Collection<RepairSegment.Builder> segments, UUID runId) {
-    LinkedHashMap<UUID, RepairSegment> newSegments = Maps.newLinkedHashMap();
+    List<RepairSegment> newSegments = Lists.newArrayListWithCapacity(segments.size());
     for (RepairSegment.Builder segment : segments) {
-      RepairSegment newRepairSegment = segment.withRunId(runId).withId(UUIDs.timeBased()).build();
-      repairSegments.put(newRepairSegment.getId(), newRepairSegment);
-      newSegments.put(newRepairSegment.getId(), newRepairSegment);
+      newSegments.add(segment.withRunId(runId).withId(UUIDs.timeBased()).build());
     }
-    repairSegmentsByRunId.put(runId, newSegments);
+    putRepairSegments(runId, newSegments);
+    newSegments.forEach((segment) -> record((log) -> log.putRepairSegment(segment)));
+  }
+
+  private void putRepairSegments(UUID runId, List<RepairSegment> segments) {
+    RunSegments runSegments = new RunSegments(segments);
+    runSegments.getIds().forEach((segmentId) -> repairSegmentsById.put(segmentId, runSegments));
+    repairSegmentsByRunId.put(runId, runSegments);
   }
 
   @Override
   public boolean updateRepairSegment(RepairSegment newRepairSegment) {
-    if (getRepairSegment(newRepairSegment.getRunId(), newRepairSegment.getId()) == null) {
-      return false;
-    } else {
-      repairSegments.put(newRepairSegment.getId(), newRepairSegment);
-      LinkedHashMap<UUID, RepairSegment> updatedSegment = repairSegmentsByRunId.get(newRepairSegment.getRunId());
-      updatedSegment.put(newRepairSegment.getId(), newRepairSegment);
-      return true;
-    }
+    return change(() -> {
+      RunSegments segments = repairSegmentsByRunId.get(newRepairSegment.getRunId());
+      return null != segments
+          && segments.update(newRepairSegment, (segment) -> record((log) -> log.putRepairSegment(segment)));
+    });
   }
 
   @Override
   public Optional<RepairSegment> getRepairSegment(UUID runId, UUID segmentId) {
-    return Optional.ofNullable(repairSegments.get(segmentId));
+    RunSegments segments = repairSegmentsById.get(segmentId);
+    return null != segments ? segments.get(segmentId) : Optional.empty();
   }
 
   @Override
   public Collection<RepairSegment> getRepairSegmentsForRun(UUID runId) {
-    return repairSegmentsByRunId.get(runId).values();
-  }
-
-  private Optional<RepairSegment> getNextFreeSegment(UUID runId) {
-    for (RepairSegment segment : repairSegmentsByRunId.get(runId).values()) {
-      if (segment.getState() == RepairSegment.State.NOT_STARTED) {
-        return Optional.of(segment);
-      }
-    }
-    return Optional.empty();
+    RunSegments segments = repairSegmentsByRunId.get(runId);
+    return null != segments ? segments.getAll() : Collections.emptyList();
   }
 
   @Override
   public Optional<RepairSegment> getNextFreeSegmentInRange(UUID runId, Optional<RingRange> range) {
-    if (range.isPresent()) {
-      for (RepairSegment segment : repairSegmentsByRunId.get(runId).values()) {
-        if (segment.getState() == RepairSegment.State.NOT_STARTED
-            && range.get().encloses(segment.getTokenRange().getBaseRange())) {
-          return Optional.of(segment);
-        }
-      }
-    } else {
-      return getNextFreeSegment(runId);
-    }
-    return Optional.empty();
+    RunSegments segments = repairSegmentsByRunId.get(runId);
+    return null != segments
+        ? segments.getFirstWithState(
+            RepairSegment.State.NOT_STARTED,
+            (segment) -> !range.isPresent() || range.get().encloses(segment.getTokenRange().getBaseRange()))
+        : Optional.empty();
   }
 
   @Override
   public Collection<RepairSegment> getSegmentsWithState(UUID runId, RepairSegment.State segmentState) {
-    List<RepairSegment> segments = Lists.newArrayList();
-    for (RepairSegment segment : repairSegmentsByRunId.get(runId).values()) {
-      if (segment.getState() == segmentState) {
-        segments.add(segment);
-      }
-    }
-    return segments;
+    RunSegments segments = repairSegmentsByRunId.get(runId);
+    return null != segments ? segments.getWithState(segmentState) : Collections.emptyList();
   }
 
   @Override
@@ -345,39 +568,42 @@ public final class MemoryStorage implements IStorage {
   @Override
   public SortedSet<UUID> getRepairRunIdsForCluster(String clusterName) {
     SortedSet<UUID> repairRunIds = Sets.newTreeSet((u0, u1) -> (int)(u0.timestamp() - u1.timestamp()));
-    for (RepairRun repairRun : repairRuns.values()) {
-      if (repairRun.getClusterName().equalsIgnoreCase(clusterName)) {
-        repairRunIds.add(repairRun.getId());
-      }
-    }
+    repairRunIds.addAll(repairRunsByCluster(clusterName).keySet());
     return repairRunIds;
   }
 
   @Override
   public int getSegmentAmountForRepairRun(UUID runId) {
-    Map<UUID, RepairSegment> segmentsMap = repairSegmentsByRunId.get(runId);
-    return segmentsMap == null ? 0 : segmentsMap.size();
+    RunSegments segments = repairSegmentsByRunId.get(runId);
+    return segments == null ? 0 : segments.size();
   }
 
   @Override
   public int getSegmentAmountForRepairRunWithState(UUID runId, RepairSegment.State state) {
-    Map<UUID, RepairSegment> segmentsMap = repairSegmentsByRunId.get(runId);
-    int amount = 0;
-    if (null != segmentsMap) {
-      for (RepairSegment segment : segmentsMap.values()) {
-        if (segment.getState() == state) {
-          amount += 1;
-        }
-      }
-    }
-    return amount;
+    RunSegments segments = repairSegmentsByRunId.get(runId);
+    return segments == null ? 0 : segments.count(state);
   }
 
   @Override
   public RepairSchedule addRepairSchedule(RepairSchedule.Builder repairSchedule) {
-    RepairSchedule newRepairSchedule = repairSchedule.build(UUIDs.timeBased());
-    repairSchedules.put(newRepairSchedule.getId(), newRepairSchedule);
-    return newRepairSchedule;
+    return change(() -> {
+      RepairSchedule newRepairSchedule = repairSchedule.build(UUIDs.timeBased());
+      repairSchedules.compute(newRepairSchedule.getId(), (id, existing) -> {
+        record((log) -> log.putRepairSchedule(newRepairSchedule));
+        repairSchedulesByUnit
+            .computeIfAbsent(newRepairSchedule.getRepairUnitId(), (unitId) -> ConcurrentHashMap.newKeySet())
+            .add(id);
+        return newRepairSchedule;
+      });
+      return newRepairSchedule;
+    });
+  }
+
+  private void putRepairSchedule(RepairSchedule repairSchedule) {
+    repairSchedules.put(repairSchedule.getId(), repairSchedule);
+    repairSchedulesByUnit
+        .computeIfAbsent(repairSchedule.getRepairUnitId(), (unitId) -> ConcurrentHashMap.newKeySet())
+        .add(repairSchedule.getId());
   }
 
   @Override
@@ -387,38 +613,30 @@ public final class MemoryStorage implements IStorage {
 
   @Override
   public Collection<RepairSchedule> getRepairSchedulesForCluster(String clusterName) {
-    Collection<RepairSchedule> foundRepairSchedules = new ArrayList<>();
-    for (RepairSchedule repairSchedule : repairSchedules.values()) {
-      RepairUnit repairUnit = getRepairUnit(repairSchedule.getRepairUnitId());
-      if (repairUnit.getClusterName().equals(clusterName)) {
-        foundRepairSchedules.add(repairSchedule);
-      }
-    }
-    return foundRepairSchedules;
+    return getRepairSchedulesForUnits(getRepairUnitIdsForCluster(clusterName));
   }
 
   @Override
   public Collection<RepairSchedule> getRepairSchedulesForKeyspace(String keyspaceName) {
-    Collection<RepairSchedule> foundRepairSchedules = new ArrayList<>();
-    for (RepairSchedule repairSchedule : repairSchedules.values()) {
-      RepairUnit repairUnit = getRepairUnit(repairSchedule.getRepairUnitId());
-      if (repairUnit.getKeyspaceName().equals(keyspaceName)) {
-        foundRepairSchedules.add(repairSchedule);
-      }
-    }
-    return foundRepairSchedules;
+    return getRepairSchedulesForUnits(
+        repairUnitsByClusterAndKeyspace.values().stream()
+            .flatMap((keyspaces) -> keyspaces.getOrDefault(keyspaceName, Collections.emptySet()).stream())
+            .collect(Collectors.toList()));
   }
 
   @Override
   public Collection<RepairSchedule> getRepairSchedulesForClusterAndKeyspace(String clusterName, String keyspaceName) {
-    Collection<RepairSchedule> foundRepairSchedules = new ArrayList<>();
-    for (RepairSchedule repairSchedule : repairSchedules.values()) {
-      RepairUnit repairUnit = getRepairUnit(repairSchedule.getRepairUnitId());
-      if (repairUnit.getClusterName().equals(clusterName) && repairUnit.getKeyspaceName().equals(keyspaceName)) {
-        foundRepairSchedules.add(repairSchedule);
-      }
-    }
-    return foundRepairSchedules;
+    return getRepairSchedulesForUnits(
+        repairUnitsByClusterAndKeyspace.getOrDefault(clusterName, Maps.newConcurrentMap())
+            .getOrDefault(keyspaceName, Collections.emptySet()));
+  }
+
+  private Collection<RepairSchedule> getRepairSchedulesForUnits(Collection<UUID> unitIds) {
+    return unitIds.stream()
+        .flatMap((unitId) -> repairSchedulesByUnit.getOrDefault(unitId, Collections.emptySet()).stream())
+        .map(repairSchedules::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
   }
 
   @Override
@@ -428,21 +646,28 @@ public final class MemoryStorage implements IStorage {
 
   @Override
   public boolean updateRepairSchedule(RepairSchedule newRepairSchedule) {
-    if (repairSchedules.get(newRepairSchedule.getId()) == null) {
-      return false;
-    } else {
-      repairSchedules.put(newRepairSchedule.getId(), newRepairSchedule);
-      return true;
-    }
+    return change(() -> {
+      return null != repairSchedules.computeIfPresent(newRepairSchedule.getId(), (id, existing) -> {
+        record((log) -> log.putRepairSchedule(newRepairSchedule));
+        return newRepairSchedule;
+      });
+    });
   }
 
   @Override
   public Optional<RepairSchedule> deleteRepairSchedule(UUID id) {
-    RepairSchedule deletedSchedule = repairSchedules.remove(id);
-    if (deletedSchedule != null) {
-      deletedSchedule = deletedSchedule.with().state(RepairSchedule.State.DELETED).build(id);
-    }
-    return Optional.ofNullable(deletedSchedule);
+    return change(() -> {
+      RepairSchedule deletedSchedule = repairSchedules.remove(id);
+      if (deletedSchedule != null) {
+        record((log) -> log.deleteRepairSchedule(id));
+        repairSchedulesByUnit.computeIfPresent(deletedSchedule.getRepairUnitId(), (unitId, scheduleIds) -> {
+          scheduleIds.remove(id);
+          return scheduleIds.isEmpty() ? null : scheduleIds;
+        });
+        deletedSchedule = deletedSchedule.with().state(RepairSchedule.State.DELETED).build(id);
+      }
+      return Optional.ofNullable(deletedSchedule);
+    });
   }
 
   @Override
@@ -517,4 +742,90 @@ public final class MemoryStorage implements IStorage {
     Snapshot snapshot = snapshots.get(clusterName + "-" + snapshotName);
     return snapshot;
   }
+
+  /**
+   * The segments of a repair run, in the order they were added, indexed by state.
+   *
+   * <p>A segment and its index entries are updated together within {@link ConcurrentMap#compute}. Readers can briefly
+   * find a segment under both its previous and its new state, so they check the state of the segment itself.
+   */
+  private static final class RunSegments {
+
+    private final ImmutableList<UUID> ids;
+    private final ImmutableMap<UUID, Integer> positions;
+    private final ConcurrentMap<UUID, RepairSegment> segments = Maps.newConcurrentMap();
+    private final Map<RepairSegment.State, NavigableSet<Integer>> positionsByState
+        = new EnumMap<>(RepairSegment.State.class);
+    private final Map<RepairSegment.State, AtomicInteger> counts = new EnumMap<>(RepairSegment.State.class);
+
+    RunSegments(List<RepairSegment> newSegments) {
+      for (RepairSegment.State state : RepairSegment.State.values()) {
+        positionsByState.put(state, new ConcurrentSkipListSet<>());
+        counts.put(state, new AtomicInteger());
+      }
+      ImmutableList.Builder<UUID> idsBuilder = ImmutableList.builder();
+      ImmutableMap.Builder<UUID, Integer> positionsBuilder = ImmutableMap.builder();
+      for (int position = 0; position < newSegments.size(); ++position) {
+        RepairSegment segment = newSegments.get(position);
+        idsBuilder.add(segment.getId());
+        positionsBuilder.put(segment.getId(), position);
+        segments.put(segment.getId(), segment);
+        positionsByState.get(segment.getState()).add(position);
+        counts.get(segment.getState()).incrementAndGet();
+      }
+      ids = idsBuilder.build();
+      positions = positionsBuilder.build();
+    }
+
+    /**
+     * @param onUpdate called with the updated segment before the update is visible
+     */
+    boolean update(RepairSegment newSegment, Consumer<RepairSegment> onUpdate) {
+      Integer position = positions.get(newSegment.getId());
+      return null != position && null != segments.computeIfPresent(newSegment.getId(), (id, existing) -> {
+        onUpdate.accept(newSegment);
+        if (existing.getState() != newSegment.getState()) {
+          positionsByState.get(newSegment.getState()).add(position);
+          counts.get(newSegment.getState()).incrementAndGet();
+          positionsByState.get(existing.getState()).remove(position);
+          counts.get(existing.getState()).decrementAndGet();
+        }
+        return newSegment;
+      });
+    }
+
+    Optional<RepairSegment> get(UUID segmentId) {
+      return Optional.ofNullable(segments.get(segmentId));
+    }
+
+    List<UUID> getIds() {
+      return ids;
+    }
+
+    List<RepairSegment> getAll() {
+      return ids.stream().map(segments::get).collect(Collectors.toList());
+    }
+
+    List<RepairSegment> getWithState(RepairSegment.State state) {
+      return withState(state).collect(Collectors.toList());
+    }
+
+    Optional<RepairSegment> getFirstWithState(RepairSegment.State state, Predicate<RepairSegment> filter) {
+      return withState(state).filter(filter).findFirst();
+    }
+
+    private Stream<RepairSegment> withState(RepairSegment.State state) {
+      return positionsByState.get(state).stream()
+          .map((position) -> segments.get(ids.get(position)))
+          .filter((segment) -> segment.getState() == state);
+    }
+
+    int count(RepairSegment.State state) {
+      return counts.get(state).get();
+    }
+
+    int size() {
+      return ids.size();
+    }
+  }
 }
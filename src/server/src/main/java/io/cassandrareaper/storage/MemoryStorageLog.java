@@ -0,0 +1,564 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage;
+
+import io.cassandrareaper.core.Cluster;
+import io.cassandrareaper.core.ClusterProperties;
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSchedule;
+import io.cassandrareaper.core.RepairSegment;
+import io.cassandrareaper.core.RepairUnit;
+import io.cassandrareaper.core.Segment;
+import io.cassandrareaper.service.RingRange;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.cassandra.repair.RepairParallelism;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only binary log of the changes made to a {@link MemoryStorage}, replayed when reaper starts again.
+ *
+ * <p>Records are appended to a memory-mapped file, mapped in regions of {@link #REGION_SIZE} bytes, so that writing one
+ * is a copy into memory that the operating system flushes to disk on its own. Each record is its length, the CRC32 of
+ * its body, then the body: a type byte followed by the entity or id it is about. A zero length ends the log, and a
+ * length of -1 skips the rest of a region that could not fit the next record. Replaying stops at the first record
+ * whose checksum does not match, which is how a record torn by a crash is left out.
+ *
+ * <p>As every change is appended the log only grows, so it is checkpointed: the live entities are written to a new
+ * file that atomically replaces the log, and that file is forced to disk.
+ */
+final class MemoryStorageLog implements Closeable {
+
+  @VisibleForTesting
+  static final int REGION_SIZE = 16 * 1024 * 1024;
+
+  private static final Logger LOG = LoggerFactory.getLogger(MemoryStorageLog.class);
+
+  private static final int HEADER_SIZE = 2 * Integer.BYTES;
+  private static final int END_OF_REGION = -1;
+
+  private static final byte PUT_CLUSTER = 1;
+  private static final byte DELETE_CLUSTER = 2;
+  private static final byte PUT_REPAIR_UNIT = 3;
+  private static final byte DELETE_REPAIR_UNIT = 4;
+  private static final byte PUT_REPAIR_RUN = 5;
+  private static final byte DELETE_REPAIR_RUN = 6;
+  private static final byte PUT_REPAIR_SEGMENT = 7;
+  private static final byte PUT_REPAIR_SCHEDULE = 8;
+  private static final byte DELETE_REPAIR_SCHEDULE = 9;
+
+  private final Path file;
+  private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+  private final DataOutputStream recordOut = new DataOutputStream(record);
+  private final CRC32 crc = new CRC32();
+  private FileChannel channel;
+  private MappedByteBuffer region;
+  private long regionStart;
+  private long checkpointSize;
+
+  private MemoryStorageLog(Path file, FileChannel channel, long end) throws IOException {
+    this.file = file;
+    this.channel = channel;
+    this.checkpointSize = end;
+    this.regionStart = end - end % REGION_SIZE;
+    this.region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, REGION_SIZE);
+    // clear whatever a crash left after the last complete record
+    region.position((int) (end - regionStart));
+    while (region.hasRemaining()) {
+      region.put((byte) 0);
+    }
+    region.position((int) (end - regionStart));
+  }
+
+  /**
+   * Opens the log for appending after the entities it holds.
+   */
+  static MemoryStorageLog open(Path file, Recovered recovered) throws IOException {
+    FileChannel channel = FileChannel.open(
+        file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    return new MemoryStorageLog(file, channel, recovered.end);
+  }
+
+  /**
+   * Reads the entities of the log, as they were after the last complete record.
+   */
+  static Recovered recover(Path file) throws IOException {
+    Recovered recovered = new Recovered();
+    if (!Files.exists(file)) {
+      return recovered;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      CRC32 crc = new CRC32();
+      long position = 0;
+      while (position + HEADER_SIZE <= size) {
+        long start = position - position % REGION_SIZE;
+        MappedByteBuffer buffer
+            = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+        buffer.position((int) (position - start));
+        position = recoverRegion(buffer, start, crc, recovered);
+        if (position < 0) {
+          break;
+        }
+      }
+    }
+    return recovered;
+  }
+
+  /**
+   * @return the position of the next region to read, or -1 once the end of the log is reached
+   */
+  private static long recoverRegion(MappedByteBuffer buffer, long start, CRC32 crc, Recovered recovered)
+      throws IOException {
+
+    while (HEADER_SIZE <= buffer.remaining()) {
+      int length = buffer.getInt();
+      if (END_OF_REGION == length) {
+        return start + REGION_SIZE;
+      }
+      final int checksum = buffer.getInt();
+      if (length <= 0 || buffer.remaining() < length) {
+        return -1;
+      }
+      byte[] body = new byte[length];
+      buffer.get(body);
+      crc.reset();
+      crc.update(body, 0, length);
+      if ((int) crc.getValue() != checksum) {
+        LOG.warn("ignoring the torn end of the memory storage log, after byte {}", recovered.end);
+        return -1;
+      }
+      recovered.apply(new DataInputStream(new ByteArrayInputStream(body)));
+      recovered.end = start + buffer.position();
+    }
+    return -1;
+  }
+
+  synchronized void putCluster(Cluster cluster) {
+    append(PUT_CLUSTER, out -> {
+      out.writeUTF(cluster.getName());
+      writeNullable(out, cluster.getPartitioner().orElse(null));
+      writeStrings(out, cluster.getSeedHosts());
+      out.writeInt(cluster.getProperties().getJmxPort());
+    });
+  }
+
+  synchronized void deleteCluster(String clusterName) {
+    append(DELETE_CLUSTER, out -> out.writeUTF(clusterName));
+  }
+
+  synchronized void putRepairUnit(RepairUnit unit) {
+    append(PUT_REPAIR_UNIT, out -> {
+      writeUuid(out, unit.getId());
+      out.writeUTF(unit.getClusterName());
+      out.writeUTF(unit.getKeyspaceName());
+      writeStrings(out, unit.getColumnFamilies());
+      out.writeBoolean(unit.getIncrementalRepair());
+      writeStrings(out, unit.getNodes());
+      writeStrings(out, unit.getDatacenters());
+      writeStrings(out, unit.getBlacklistedTables());
+      out.writeInt(unit.getRepairThreadCount());
+    });
+  }
+
+  synchronized void deleteRepairUnit(UUID unitId) {
+    append(DELETE_REPAIR_UNIT, out -> writeUuid(out, unitId));
+  }
+
+  synchronized void putRepairRun(RepairRun run) {
+    append(PUT_REPAIR_RUN, out -> {
+      writeUuid(out, run.getId());
+      out.writeUTF(run.getClusterName());
+      writeUuid(out, run.getRepairUnitId());
+      writeNullable(out, run.getCause());
+      writeNullable(out, run.getOwner());
+      out.writeUTF(run.getRunState().name());
+      writeDateTime(out, run.getCreationTime());
+      writeDateTime(out, run.getStartTime());
+      writeDateTime(out, run.getEndTime());
+      writeDateTime(out, run.getPauseTime());
+      out.writeDouble(run.getIntensity());
+      writeNullable(out, run.getLastEvent());
+      out.writeInt(run.getSegmentCount());
+      out.writeUTF(run.getRepairParallelism().name());
+      writeStrings(out, run.getTables());
+    });
+  }
+
+  synchronized void deleteRepairRun(UUID runId) {
+    append(DELETE_REPAIR_RUN, out -> writeUuid(out, runId));
+  }
+
+  synchronized void putRepairSegment(RepairSegment segment) {
+    append(PUT_REPAIR_SEGMENT, out -> {
+      writeUuid(out, segment.getId());
+      writeUuid(out, segment.getRunId());
+      writeUuid(out, segment.getRepairUnitId());
+      // the state ordinals are stable, they are also stored by the postgres storage
+      out.writeByte(segment.getState().ordinal());
+      out.writeInt(segment.getFailCount());
+      writeNullable(out, segment.getCoordinatorHost());
+      writeDateTime(out, segment.getStartTime());
+      writeDateTime(out, segment.getEndTime());
+      // the base range goes first, followed by the token ranges of the segment
+      List<RingRange> ranges = Lists.newArrayList(segment.getTokenRange().getBaseRange());
+      ranges.addAll(segment.getTokenRange().getTokenRanges());
+      byte[] encoded = TokenRangesCodec.encode(ranges);
+      out.writeInt(encoded.length);
+      out.write(encoded);
+    });
+  }
+
+  synchronized void putRepairSchedule(RepairSchedule schedule) {
+    append(PUT_REPAIR_SCHEDULE, out -> {
+      writeUuid(out, schedule.getId());
+      writeUuid(out, schedule.getRepairUnitId());
+      out.writeUTF(schedule.getState().name());
+      out.writeInt(schedule.getDaysBetween());
+      writeDateTime(out, schedule.getNextActivation());
+      out.writeInt(schedule.getRunHistory().size());
+      for (UUID runId : schedule.getRunHistory()) {
+        writeUuid(out, runId);
+      }
+      out.writeInt(schedule.getSegmentCount());
+      out.writeUTF(schedule.getRepairParallelism().name());
+      out.writeDouble(schedule.getIntensity());
+      writeDateTime(out, schedule.getCreationTime());
+      writeNullable(out, schedule.getOwner());
+      writeDateTime(out, schedule.getPauseTime());
+      out.writeInt(schedule.getSegmentCountPerNode());
+    });
+  }
+
+  synchronized void deleteRepairSchedule(UUID scheduleId) {
+    append(DELETE_REPAIR_SCHEDULE, out -> writeUuid(out, scheduleId));
+  }
+
+  /**
+   * @return the size of the log written by the last checkpoint, or of the log that was opened
+   */
+  synchronized long getCheckpointSize() {
+    return checkpointSize;
+  }
+
+  /**
+   * @return the number of bytes appended since the last checkpoint, or since the log was opened
+   */
+  synchronized long getSizeSinceCheckpoint() {
+    return regionStart + region.position() - checkpointSize;
+  }
+
+  /**
+   * Replaces the log with the live entities, which the writer appends to this log again.
+   *
+   * <p>Appends wait for the checkpoint to complete. Changes that were made while it ran are appended after it, so that
+   * they are replayed after the entities the writer wrote, whether or not the writer saw them.
+   */
+  synchronized void checkpoint(Runnable writer) throws IOException {
+    Path checkpoint = file.resolveSibling(file.getFileName() + ".checkpoint");
+    final FileChannel previous = channel;
+    channel = FileChannel.open(
+        checkpoint,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    regionStart = 0;
+    region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+    writer.run();
+    region.force();
+    channel.force(true);
+    Files.move(checkpoint, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    previous.close();
+    checkpointSize = regionStart + region.position();
+  }
+
+  /**
+   * Flushes the appended records to disk.
+   */
+  synchronized void force() throws IOException {
+    region.force();
+    channel.force(false);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    force();
+    channel.close();
+  }
+
+  private void append(byte type, RecordWriter writer) {
+    try {
+      record.reset();
+      recordOut.writeByte(type);
+      writer.write(recordOut);
+      recordOut.flush();
+      int length = record.size();
+      Preconditions.checkState(length + 2 * HEADER_SIZE <= REGION_SIZE, "record of %s bytes is too large", length);
+      if (region.remaining() < length + 2 * HEADER_SIZE) {
+        // leave room for the end of log marker, records never span two regions
+        region.putInt(END_OF_REGION);
+        regionStart += REGION_SIZE;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, REGION_SIZE);
+      }
+      byte[] body = record.toByteArray();
+      crc.reset();
+      crc.update(body, 0, length);
+      region.putInt(length);
+      region.putInt((int) crc.getValue());
+      region.put(body, 0, length);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private static void writeUuid(DataOutput out, UUID uuid) throws IOException {
+    out.writeLong(uuid.getMostSignificantBits());
+    out.writeLong(uuid.getLeastSignificantBits());
+  }
+
+  private static UUID readUuid(DataInput in) throws IOException {
+    return new UUID(in.readLong(), in.readLong());
+  }
+
+  private static void writeNullable(DataOutput out, String value) throws IOException {
+    out.writeBoolean(null != value);
+    if (null != value) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullable(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeStrings(DataOutput out, Collection<String> values) throws IOException {
+    out.writeInt(values.size());
+    for (String value : values) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static Set<String> readStrings(DataInput in) throws IOException {
+    int size = in.readInt();
+    Set<String> values = Sets.newLinkedHashSetWithExpectedSize(size);
+    for (int i = 0; i < size; ++i) {
+      values.add(in.readUTF());
+    }
+    return values;
+  }
+
+  private static void writeDateTime(DataOutput out, DateTime value) throws IOException {
+    out.writeBoolean(null != value);
+    if (null != value) {
+      out.writeLong(value.getMillis());
+    }
+  }
+
+  private static DateTime readDateTime(DataInput in) throws IOException {
+    return in.readBoolean() ? new DateTime(in.readLong()) : null;
+  }
+
+  @FunctionalInterface
+  private interface RecordWriter {
+
+    void write(DataOutput out) throws IOException;
+  }
+
+  /**
+   * The entities of a replayed log, in the order they were first added.
+   */
+  static final class Recovered {
+
+    final Map<String, Cluster> clusters = Maps.newLinkedHashMap();
+    final Map<UUID, RepairUnit> repairUnits = Maps.newLinkedHashMap();
+    final Map<UUID, RepairRun> repairRuns = Maps.newLinkedHashMap();
+    final Map<UUID, Map<UUID, RepairSegment>> repairSegments = Maps.newLinkedHashMap();
+    final Map<UUID, RepairSchedule> repairSchedules = Maps.newLinkedHashMap();
+    long end;
+
+    /**
+     * @return the segments of the run, in the order they were added to it
+     */
+    List<RepairSegment> getRepairSegments(UUID runId) {
+      return ImmutableList.copyOf(repairSegments.getOrDefault(runId, Maps.newLinkedHashMap()).values());
+    }
+
+    private void apply(DataInput in) throws IOException {
+      byte type = in.readByte();
+      switch (type) {
+        case PUT_CLUSTER:
+          Cluster cluster = new Cluster(
+              in.readUTF(),
+              Optional.ofNullable(readNullable(in)),
+              readStrings(in),
+              ClusterProperties.builder().withJmxPort(in.readInt()).build());
+          clusters.put(cluster.getName(), cluster);
+          break;
+        case DELETE_CLUSTER:
+          clusters.remove(in.readUTF());
+          break;
+        case PUT_REPAIR_UNIT:
+          RepairUnit unit = readRepairUnit(in);
+          repairUnits.put(unit.getId(), unit);
+          break;
+        case DELETE_REPAIR_UNIT:
+          repairUnits.remove(readUuid(in));
+          break;
+        case PUT_REPAIR_RUN:
+          RepairRun run = readRepairRun(in);
+          repairRuns.put(run.getId(), run);
+          break;
+        case DELETE_REPAIR_RUN:
+          UUID runId = readUuid(in);
+          repairRuns.remove(runId);
+          repairSegments.remove(runId);
+          break;
+        case PUT_REPAIR_SEGMENT:
+          RepairSegment segment = readRepairSegment(in);
+          repairSegments.computeIfAbsent(segment.getRunId(), id -> Maps.newLinkedHashMap())
+              .put(segment.getId(), segment);
+          break;
+        case PUT_REPAIR_SCHEDULE:
+          RepairSchedule schedule = readRepairSchedule(in);
+          repairSchedules.put(schedule.getId(), schedule);
+          break;
+        case DELETE_REPAIR_SCHEDULE:
+          repairSchedules.remove(readUuid(in));
+          break;
+        default:
+          throw new IllegalArgumentException("unknown memory storage log record " + type);
+      }
+    }
+
+    private static RepairUnit readRepairUnit(DataInput in) throws IOException {
+      UUID id = readUuid(in);
+      return RepairUnit.builder()
+          .clusterName(in.readUTF())
+          .keyspaceName(in.readUTF())
+          .columnFamilies(readStrings(in))
+          .incrementalRepair(in.readBoolean())
+          .nodes(readStrings(in))
+          .datacenters(readStrings(in))
+          .blacklistedTables(readStrings(in))
+          .repairThreadCount(in.readInt())
+          .build(id);
+    }
+
+    private static RepairRun readRepairRun(DataInput in) throws IOException {
+      UUID id = readUuid(in);
+      String clusterName = in.readUTF();
+      return RepairRun.builder(clusterName, readUuid(in))
+          .cause(readNullable(in))
+          .owner(readNullable(in))
+          .runState(RepairRun.RunState.valueOf(in.readUTF()))
+          .creationTime(readDateTime(in))
+          .startTime(readDateTime(in))
+          .endTime(readDateTime(in))
+          .pauseTime(readDateTime(in))
+          .intensity(in.readDouble())
+          .lastEvent(readNullable(in))
+          .segmentCount(in.readInt())
+          .repairParallelism(RepairParallelism.valueOf(in.readUTF()))
+          .tables(readStrings(in))
+          .build(id);
+    }
+
+    private static RepairSegment readRepairSegment(DataInput in) throws IOException {
+      UUID id = readUuid(in);
+      UUID runId = readUuid(in);
+      UUID unitId = readUuid(in);
+      RepairSegment.State state = RepairSegment.State.values()[in.readByte()];
+      int failCount = in.readInt();
+      String coordinatorHost = readNullable(in);
+      DateTime startTime = readDateTime(in);
+      DateTime endTime = readDateTime(in);
+      byte[] encoded = new byte[in.readInt()];
+      in.readFully(encoded);
+      List<RingRange> ranges = TokenRangesCodec.decode(encoded);
+      Segment tokenRange = Segment.builder()
+          .withBaseRange(ranges.get(0))
+          .withTokenRanges(ranges.subList(1, ranges.size()))
+          .build();
+
+      return RepairSegment.builder(tokenRange, unitId)
+          .withId(id)
+          .withRunId(runId)
+          .withState(state)
+          .withFailCount(failCount)
+          .withCoordinatorHost(coordinatorHost)
+          .withStartTime(startTime)
+          .withEndTime(endTime)
+          .build();
+    }
+
+    private static RepairSchedule readRepairSchedule(DataInput in) throws IOException {
+      UUID id = readUuid(in);
+      RepairSchedule.Builder schedule = RepairSchedule.builder(readUuid(in))
+          .state(RepairSchedule.State.valueOf(in.readUTF()))
+          .daysBetween(in.readInt())
+          .nextActivation(readDateTime(in));
+
+      int runs = in.readInt();
+      ImmutableList.Builder<UUID> runHistory = ImmutableList.builder();
+      for (int i = 0; i < runs; ++i) {
+        runHistory.add(readUuid(in));
+      }
+      return schedule
+          .runHistory(runHistory.build())
+          .segmentCount(in.readInt())
+          .repairParallelism(RepairParallelism.valueOf(in.readUTF()))
+          .intensity(in.readDouble())
+          .creationTime(readDateTime(in))
+          .owner(readNullable(in))
+          .pauseTime(readDateTime(in))
+          .segmentCountPerNode(in.readInt())
+          .build(id);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.cassandrareaper.storage;
+
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSchedule;
+import io.cassandrareaper.core.RepairSegment;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.UUID;
+
+import com.google.common.reflect.AbstractInvocationHandler;
+import com.google.common.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Wraps a storage so that its mutations are reported to a {@link StorageListener}.
+ *
+ * <p>The returned storage implements every interface of the wrapped one, so that for example a wrapped
+ * {@link IDistributedStorage} still is one.
+ */
+public final class ObservedStorage extends AbstractInvocationHandler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ObservedStorage.class);
+
+  private final IStorage storage;
+  private final StorageListener listener;
+
+  private ObservedStorage(IStorage storage, StorageListener listener) {
+    this.storage = storage;
+    this.listener = listener;
+  }
+
+  public static IStorage create(IStorage storage, StorageListener listener) {
+    Class<?>[] interfaces
+        = TypeToken.of(storage.getClass()).getTypes().interfaces().rawTypes().toArray(new Class<?>[0]);
+
+    return (IStorage) Proxy.newProxyInstance(
+        storage.getClass().getClassLoader(),
+        interfaces,
+        new ObservedStorage(storage, listener));
+  }
+
+  @Override
+  protected Object handleInvocation(Object proxy, Method method, Object[] args) throws Throwable {
+    Object result;
+    try {
+      result = method.invoke(storage, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+    try {
+      notify(method.getName(), args, result);
+    } catch (RuntimeException e) {
+      LOG.error("Storage listener failed handling {}", method.getName(), e);
+    }
+    return result;
+  }
+
+  private void notify(String methodName, Object[] args, Object result) {
+    switch (methodName) {
+      case "addRepairRun":
+        listener.onRepairRunUpdated((RepairRun) result);
+        break;
+      case "updateRepairRun":
+        if ((Boolean) result) {
+          listener.onRepairRunUpdated((RepairRun) args[0]);
+        }
+        break;
+      case "deleteRepairRun":
+        ((Optional<?>) result).ifPresent(repairRun -> listener.onRepairRunDeleted((RepairRun) repairRun));
+        break;
+      case "updateRepairSegment":
+        if ((Boolean) result) {
+          listener.onRepairSegmentUpdated((RepairSegment) args[0]);
+        }
+        break;
+      case "addRepairSchedule":
+        listener.onRepairScheduleUpdated((RepairSchedule) result);
+        break;
+      case "updateRepairSchedule":
+        if ((Boolean) result) {
+          listener.onRepairScheduleUpdated((RepairSchedule) args[0]);
+        }
+        break;
+      case "deleteRepairSchedule":
+        listener.onRepairScheduleDeleted((UUID) args[0]);
+        break;
+      case "deleteCluster":
+        listener.onClusterDeleted((String) args[0]);
+        break;
+      default:
+        // not a mutation
+    }
+  }
+
+  @Override
+  public String toString() {
+    return storage.toString();
+  }
+}
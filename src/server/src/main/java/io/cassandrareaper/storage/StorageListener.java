@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.cassandrareaper.storage;
+
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSchedule;
+import io.cassandrareaper.core.RepairSegment;
+
+import java.util.UUID;
+
+
+/**
+ * Callbacks for the mutations going through a storage wrapped with {@link ObservedStorage}.
+ *
+ * <p>Callbacks are invoked synchronously, after the mutation succeeded, on the thread that issued it.
+ */
+public interface StorageListener {
+
+  default void onRepairRunUpdated(RepairRun repairRun) {}
+
+  default void onRepairRunDeleted(RepairRun repairRun) {}
+
+  default void onRepairSegmentUpdated(RepairSegment repairSegment) {}
+
+  default void onRepairScheduleUpdated(RepairSchedule repairSchedule) {}
+
+  default void onRepairScheduleDeleted(UUID repairScheduleId) {}
+
+  default void onClusterDeleted(String clusterName) {}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage;
+
+import io.cassandrareaper.service.RingRange;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Binary encoding of the token ranges of a segment, replacing their json text representation in storage.
+ *
+ * <p>The encoding starts with a version byte, followed by the kind of token encoding used, the number of ranges as a
+ * varint, and then the start and end token of each range. When all tokens fit in 64 bits, as with the Murmur3
+ * partitioner, they are written as fixed 8 byte longs. Otherwise each token is written as its varint length followed by
+ * its two's-complement bytes.
+ */
+public final class TokenRangesCodec {
+
+  private static final byte VERSION_1 = 1;
+
+  private static final byte FIXED_64_TOKENS = 0;
+  private static final byte VARIABLE_LENGTH_TOKENS = 1;
+  private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+  private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+  private TokenRangesCodec() {
+    throw new IllegalStateException("Utility class");
+  }
+
+  public static byte[] encode(List<RingRange> tokenRanges) {
+    boolean fixed64
+        = tokenRanges.stream().allMatch(range -> fitsInLong(range.getStart()) && fitsInLong(range.getEnd()));
+
+    ByteBuffer buffer = ByteBuffer.allocate(
+        2 + 5 + tokenRanges.size() * 2 * (fixed64 ? Long.BYTES : 5 + maxTokenLength(tokenRanges)));
+
+    buffer.put(VERSION_1);
+    buffer.put(fixed64 ? FIXED_64_TOKENS : VARIABLE_LENGTH_TOKENS);
+    writeVarint(buffer, tokenRanges.size());
+    for (RingRange range : tokenRanges) {
+      writeToken(buffer, range.getStart(), fixed64);
+      writeToken(buffer, range.getEnd(), fixed64);
+    }
+    byte[] bytes = new byte[buffer.position()];
+    buffer.flip();
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  public static List<RingRange> decode(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    byte version = buffer.get();
+    Preconditions.checkArgument(VERSION_1 == version, "unknown token ranges encoding version %s", version);
+    byte tokens = buffer.get();
+    Preconditions.checkArgument(
+        FIXED_64_TOKENS == tokens || VARIABLE_LENGTH_TOKENS == tokens, "unknown token encoding %s", tokens);
+
+    boolean fixed64 = FIXED_64_TOKENS == tokens;
+    int count = readVarint(buffer);
+    List<RingRange> tokenRanges = Lists.newArrayListWithCapacity(count);
+    for (int i = 0; i < count; ++i) {
+      BigInteger start = readToken(buffer, fixed64);
+      tokenRanges.add(new RingRange(start, readToken(buffer, fixed64)));
+    }
+    return tokenRanges;
+  }
+
+  /**
+   * Decodes the binary token ranges, falling back to the json text that segments stored before the binary encoding.
+   */
+  public static List<RingRange> decode(Optional<byte[]> bytes, Optional<String> json) {
+    return bytes.isPresent() ? decode(bytes.get()) : JsonParseUtils.parseRingRangeList(json);
+  }
+
+  private static boolean fitsInLong(BigInteger token) {
+    return 0 <= token.compareTo(MIN_LONG) && 0 >= token.compareTo(MAX_LONG);
+  }
+
+  private static int maxTokenLength(List<RingRange> tokenRanges) {
+    return tokenRanges.stream()
+        .mapToInt(range -> Math.max(range.getStart().bitLength(), range.getEnd().bitLength()) / 8 + 1)
+        .max()
+        .orElse(0);
+  }
+
+  private static void writeToken(ByteBuffer buffer, BigInteger token, boolean fixed64) {
+    if (fixed64) {
+      buffer.putLong(token.longValue());
+    } else {
+      byte[] bytes = token.toByteArray();
+      writeVarint(buffer, bytes.length);
+      buffer.put(bytes);
+    }
+  }
+
+  private static BigInteger readToken(ByteBuffer buffer, boolean fixed64) {
+    if (fixed64) {
+      return BigInteger.valueOf(buffer.getLong());
+    }
+    byte[] bytes = new byte[readVarint(buffer)];
+    buffer.get(bytes);
+    return new BigInteger(bytes);
+  }
+
+  private static void writeVarint(ByteBuffer buffer, int value) {
+    Preconditions.checkArgument(0 <= value);
+    while (0 != (value & ~0x7F)) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static int readVarint(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte next = buffer.get();
+      value |= (next & 0x7F) << shift;
+      if (0 == (next & 0x80)) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("malformed varint");
+  }
+}
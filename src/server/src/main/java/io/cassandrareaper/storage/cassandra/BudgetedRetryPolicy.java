@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.policies.DefaultRetryPolicy;
+import com.datastax.driver.core.policies.RetryPolicy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Retries idempotent statements, within a budget.
+ *
+ * <p>All reaper statements are idempotent, and reaper generates few reads and writes, so it is fine to retry them.
+ * Retries are immediate, the driver calls the policy on its I/O threads which must never sleep, and stop after the
+ * tenth retry of a statement. No retries are made while the {@link CircuitBreaker} is open or its retry budget is
+ * spent, so that retries cannot pile up on a backend that is already failing.
+ *
+ * <p>Retries are counted per type of statement, being its CQL verb and table.
+ */
+public final class BudgetedRetryPolicy implements RetryPolicy {
+
+  private static final int MAX_RETRIES = 10;
+  private static final Pattern TABLE
+      = Pattern.compile("\\b(?:FROM|INTO|UPDATE)\\s+([\\w.\"]+)", Pattern.CASE_INSENSITIVE);
+
+  private final CircuitBreaker circuitBreaker;
+  private final MetricRegistry metricRegistry;
+  private final Map<String, String> statementTypes = Maps.newConcurrentMap();
+
+  public BudgetedRetryPolicy(CircuitBreaker circuitBreaker, MetricRegistry metricRegistry) {
+    this.circuitBreaker = circuitBreaker;
+    this.metricRegistry = metricRegistry;
+  }
+
+  @Override
+  public RetryDecision onReadTimeout(
+      Statement stmt,
+      ConsistencyLevel cl,
+      int required,
+      int received,
+      boolean retrieved,
+      int retry) {
+
+    return isIdempotent(stmt)
+        ? retry < MAX_RETRIES ? retry(stmt, RetryDecision.retry(cl)) : RetryDecision.rethrow()
+        : DefaultRetryPolicy.INSTANCE.onReadTimeout(stmt, cl, required, received, retrieved, retry);
+  }
+
+  @Override
+  public RetryDecision onWriteTimeout(
+      Statement stmt,
+      ConsistencyLevel cl,
+      WriteType type,
+      int required,
+      int received,
+      int retry) {
+
+    Preconditions.checkState(WriteType.CAS != type ||  ConsistencyLevel.SERIAL == cl);
+
+    return isIdempotent(stmt)
+        ? retry < MAX_RETRIES
+            ? retry(stmt, WriteType.CAS == type ? RetryDecision.retry(ConsistencyLevel.ONE) : RetryDecision.retry(cl))
+            : RetryDecision.rethrow()
+        : DefaultRetryPolicy.INSTANCE.onWriteTimeout(stmt, cl, type, required, received, retry);
+  }
+
+  @Override
+  public RetryDecision onUnavailable(Statement stmt, ConsistencyLevel cl, int required, int aliveReplica, int retry) {
+    return retry(
+        stmt,
+        DefaultRetryPolicy.INSTANCE.onUnavailable(stmt, cl, required, aliveReplica, retry == 1 ? 0 : retry));
+  }
+
+  @Override
+  public RetryDecision onRequestError(Statement stmt, ConsistencyLevel cl, DriverException ex, int nbRetry) {
+    return retry(stmt, DefaultRetryPolicy.INSTANCE.onRequestError(stmt, cl, ex, nbRetry));
+  }
+
+  @Override
+  public void init(Cluster cluster) {
+  }
+
+  @Override
+  public void close() {
+  }
+
+  private static boolean isIdempotent(Statement stmt) {
+    return null != stmt && Boolean.FALSE != stmt.isIdempotent();
+  }
+
+  /**
+   * Lets a retry, on the same or the next host, through only if the circuit breaker grants it.
+   */
+  private RetryDecision retry(Statement stmt, RetryDecision decision) {
+    if (RetryDecision.Type.RETRY != decision.getType()) {
+      return decision;
+    }
+    if (!circuitBreaker.tryAcquireRetry()) {
+      metricRegistry.counter(MetricRegistry.name(BudgetedRetryPolicy.class, "rejected", statementType(stmt))).inc();
+      return RetryDecision.rethrow();
+    }
+    metricRegistry.counter(MetricRegistry.name(BudgetedRetryPolicy.class, "retries", statementType(stmt))).inc();
+    return decision;
+  }
+
+  @VisibleForTesting
+  String statementType(Statement stmt) {
+    if (stmt instanceof BoundStatement) {
+      return statementTypes.computeIfAbsent(
+          ((BoundStatement) stmt).preparedStatement().getQueryString(), BudgetedRetryPolicy::parseStatementType);
+    }
+    if (stmt instanceof RegularStatement) {
+      return statementTypes.computeIfAbsent(
+          ((RegularStatement) stmt).getQueryString(), BudgetedRetryPolicy::parseStatementType);
+    }
+    return stmt instanceof BatchStatement ? "batch" : "other";
+  }
+
+  private static String parseStatementType(String query) {
+    String verb = query.trim().split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+    Matcher table = TABLE.matcher(query);
+    return table.find()
+        ? verb + '_' + table.group(1).substring(table.group(1).lastIndexOf('.') + 1).replace("\"", "")
+        : verb;
+  }
+}
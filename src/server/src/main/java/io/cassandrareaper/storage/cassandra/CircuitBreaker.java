@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.QueryValidationException;
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Follows the outcome of every request sent to the storage backend, to stop retrying requests and starting new
+ * repairs while the backend is failing.
+ *
+ * <p>The breaker opens after a number of consecutive failed requests, and stays open for a backoff that doubles each
+ * time it opens again without any request succeeding in between. The backoff is jittered so that reaper instances do
+ * not all come back at once. Once the backoff has elapsed requests go through again, the first success closes the
+ * breaker and the first failure opens it again.
+ *
+ * <p>Retries also draw from a budget that each successful request refills by a tenth of a retry, so that retries
+ * never add more than a tenth to the load of a struggling backend.
+ */
+public final class CircuitBreaker implements LatencyTracker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  private static final int FAILURE_THRESHOLD = 10;
+  private static final long MIN_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+  private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  // the budget is counted in tenths of a retry
+  private static final long RETRY_COST = 10;
+  private static final long MAX_RETRY_BUDGET = 100 * RETRY_COST;
+
+  private final int failureThreshold;
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private final AtomicInteger consecutiveOpenings = new AtomicInteger();
+  private final AtomicLong retryBudget = new AtomicLong(MAX_RETRY_BUDGET);
+  private final AtomicLong openings = new AtomicLong();
+  private volatile long openUntilNanos;
+  private volatile boolean open;
+
+  @VisibleForTesting
+  CircuitBreaker(int failureThreshold) {
+    this.failureThreshold = failureThreshold;
+  }
+
+  public static CircuitBreaker create(MetricRegistry metricRegistry) {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(FAILURE_THRESHOLD);
+    // a new storage connection replaces the breaker of the previous attempt
+    String openName = MetricRegistry.name(CircuitBreaker.class, "open");
+    String openingsName = MetricRegistry.name(CircuitBreaker.class, "openings");
+    metricRegistry.remove(openName);
+    metricRegistry.remove(openingsName);
+    metricRegistry.register(openName, (Gauge<Integer>) () -> circuitBreaker.isOpen() ? 1 : 0);
+    metricRegistry.register(openingsName, (Gauge<Long>) circuitBreaker.openings::get);
+    return circuitBreaker;
+  }
+
+  /**
+   * @return true while the backend is considered unhealthy and requests should not be retried
+   */
+  public boolean isOpen() {
+    return open && System.nanoTime() - openUntilNanos < 0;
+  }
+
+  /**
+   * Takes a retry out of the budget.
+   *
+   * @return false if the breaker is open or the budget is spent, the request should then fail rather than be retried
+   */
+  boolean tryAcquireRetry() {
+    if (isOpen()) {
+      return false;
+    }
+    long budget;
+    do {
+      budget = retryBudget.get();
+      if (budget < RETRY_COST) {
+        return false;
+      }
+    } while (!retryBudget.compareAndSet(budget, budget - RETRY_COST));
+    return true;
+  }
+
+  @Override
+  public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+    if (null == exception) {
+      onSuccess();
+    } else if (!(exception instanceof QueryValidationException)) {
+      // invalid or unauthorized queries are bugs, not a sign of an overloaded backend
+      onFailure();
+    }
+  }
+
+  @VisibleForTesting
+  void onSuccess() {
+    retryBudget.getAndUpdate(budget -> Math.min(MAX_RETRY_BUDGET, budget + 1));
+    consecutiveFailures.set(0);
+    if (open) {
+      open = false;
+      consecutiveOpenings.set(0);
+      LOG.info("storage backend is healthy again, closing the circuit breaker");
+    }
+  }
+
+  @VisibleForTesting
+  void onFailure() {
+    if (failureThreshold <= consecutiveFailures.incrementAndGet() && !isOpen()) {
+      synchronized (this) {
+        if (!isOpen()) {
+          long backoffMillis = backoffMillis(consecutiveOpenings.getAndIncrement());
+          openUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+          open = true;
+          openings.incrementAndGet();
+          LOG.warn("storage backend is failing, opening the circuit breaker for {} ms", backoffMillis);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the exponential backoff for the given number of consecutive openings, with a jitter of plus or minus 20%
+   */
+  @VisibleForTesting
+  static long backoffMillis(int consecutiveOpenings) {
+    long backoff = MIN_BACKOFF_MILLIS << Math.min(consecutiveOpenings, 16);
+    return (long) (Math.min(MAX_BACKOFF_MILLIS, backoff) * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+  }
+
+  @Override
+  public void onRegister(Cluster cluster) {
+  }
+
+  @Override
+  public void onUnregister(Cluster cluster) {
+  }
+}
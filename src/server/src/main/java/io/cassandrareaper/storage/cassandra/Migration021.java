@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.cassandrareaper.storage.cassandra;
+
+import io.cassandrareaper.storage.JsonParseUtils;
+import io.cassandrareaper.storage.TokenRangesCodec;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class Migration021 {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Migration021.class);
+
+  private Migration021() {
+  }
+
+  /**
+   * rewrite the json token ranges of the segments in the repair_run table with their binary encoding.
+   */
+  public static void migrate(Session session) {
+    LOG.warn("Encoding the token ranges of segments in the repair_run table. This may take some minutes…");
+
+    Statement getRepairSegmentsPrepStmt
+        = new SimpleStatement("SELECT id,segment_id,token_ranges FROM repair_run")
+            .setConsistencyLevel(ConsistencyLevel.QUORUM);
+
+    PreparedStatement updateRepairSegmentPrepStmt = session
+        .prepare("INSERT INTO repair_run (id,segment_id,token_ranges,token_ranges_bin) VALUES(?, ?, null, ?)")
+        .setConsistencyLevel(ConsistencyLevel.EACH_QUORUM);
+
+    ResultSet resultSet = session.execute(getRepairSegmentsPrepStmt);
+    int rowsRead = 0;
+    for (Row row : resultSet) {
+      resultSet.fetchMoreResults();
+      String json = row.getString("token_ranges");
+      if (null != json) {
+        byte[] bytes = TokenRangesCodec.encode(JsonParseUtils.parseRingRangeList(Optional.of(json)));
+        session.executeAsync(
+            updateRepairSegmentPrepStmt.bind(row.getUUID("id"), row.getUUID("segment_id"), ByteBuffer.wrap(bytes)));
+      }
+      ++rowsRead;
+      if (0 == rowsRead % 1000) {
+        LOG.warn("rows read: " + rowsRead);
+      }
+    }
+
+    LOG.warn("Encoding of the token ranges in the repair_run table completed.");
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class Migration023 {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Migration023.class);
+
+  private Migration023() {
+  }
+
+  /**
+   * copy the repair_run_by_cluster index into repair_run_by_cluster_v2, which is clustered newest first.
+   *
+   * <p>A run missing from the new index is no longer listed, so a failed write fails the migration.
+   */
+  public static void migrate(Session session) {
+    LOG.warn("Copying the repair_run_by_cluster table into repair_run_by_cluster_v2…");
+
+    Statement getRepairRunsByClusterStmt
+        = new SimpleStatement("SELECT cluster_name,id FROM repair_run_by_cluster")
+            .setConsistencyLevel(ConsistencyLevel.QUORUM);
+
+    PreparedStatement insertRepairRunByClusterPrepStmt = session
+        .prepare("INSERT INTO repair_run_by_cluster_v2 (cluster_name,id) VALUES(?, ?)")
+        .setConsistencyLevel(ConsistencyLevel.EACH_QUORUM);
+
+    MigrationWrites writes = new MigrationWrites(session);
+    ResultSet resultSet = session.execute(getRepairRunsByClusterStmt);
+    int rowsRead = 0;
+    for (Row row : resultSet) {
+      resultSet.fetchMoreResults();
+      writes.execute(insertRepairRunByClusterPrepStmt.bind(row.getString("cluster_name"), row.getUUID("id")));
+      ++rowsRead;
+      if (0 == rowsRead % 1000) {
+        LOG.warn("rows read: " + rowsRead);
+      }
+    }
+    writes.await();
+
+    LOG.warn("Copy of the repair_run_by_cluster table completed.");
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import io.cassandrareaper.storage.JsonParseUtils;
+import io.cassandrareaper.storage.TokenRangesCodec;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.UUID;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class Migration024 {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Migration024.class);
+
+  private Migration024() {
+  }
+
+  /**
+   * copy the segments of every repair run from the repair_run table into the buckets of the repair_segment table.
+   *
+   * <p>The segment rows left in the repair_run table are no longer read, and are deleted along with their run. A
+   * segment that fails to be copied fails the migration, which can then be run again.
+   */
+  public static void migrate(Session session) {
+    KeyspaceMetadata metadata = session.getCluster().getMetadata().getKeyspace(session.getLoggedKeyspace());
+    if (null == metadata.getTable("repair_run").getColumn("segment_buckets")) {
+      session.execute("ALTER TABLE repair_run ADD segment_buckets int STATIC");
+    }
+
+    LOG.warn("Copying the segments of the repair_run table into repair_segment buckets. This may take some minutes…");
+
+    Statement getRepairSegmentsStmt = new SimpleStatement(
+        "SELECT id,segment_count,segment_id,repair_unit_id,start_token,end_token,segment_state,coordinator_host,"
+            + "segment_start_time,segment_end_time,fail_count,token_ranges,token_ranges_bin FROM repair_run")
+        .setConsistencyLevel(ConsistencyLevel.QUORUM);
+
+    PreparedStatement insertSegmentBucketsPrepStmt = session
+        .prepare("INSERT INTO repair_run (id,segment_buckets) VALUES(?, ?)")
+        .setConsistencyLevel(ConsistencyLevel.EACH_QUORUM);
+
+    PreparedStatement insertRepairSegmentPrepStmt = session
+        .prepare(
+            "INSERT INTO repair_segment (id,bucket,segment_id,repair_unit_id,start_token,end_token,segment_state,"
+                + "coordinator_host,segment_start_time,segment_end_time,fail_count,token_ranges_bin)"
+                + " VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")
+        .setConsistencyLevel(ConsistencyLevel.EACH_QUORUM);
+
+    MigrationWrites writes = new MigrationWrites(session);
+    ResultSet resultSet = session.execute(getRepairSegmentsStmt);
+    UUID runId = null;
+    int buckets = 1;
+    int rowsRead = 0;
+    for (Row row : resultSet) {
+      resultSet.fetchMoreResults();
+      if (!row.getUUID("id").equals(runId)) {
+        // the rows of a run are read together, its static columns repeated on each of them
+        runId = row.getUUID("id");
+        buckets = SegmentBuckets.count(row.isNull("segment_count") ? 0 : row.getInt("segment_count"));
+        writes.execute(insertSegmentBucketsPrepStmt.bind(runId, buckets));
+      }
+      if (!row.isNull("segment_id")) {
+        writes.execute(
+            insertRepairSegmentPrepStmt.bind(
+                runId,
+                SegmentBuckets.of(row.getUUID("segment_id"), buckets),
+                row.getUUID("segment_id"),
+                row.getUUID("repair_unit_id"),
+                row.getVarint("start_token"),
+                row.getVarint("end_token"),
+                row.getInt("segment_state"),
+                row.getString("coordinator_host"),
+                row.getTimestamp("segment_start_time"),
+                row.getTimestamp("segment_end_time"),
+                row.getInt("fail_count"),
+                getTokenRangesBin(row)));
+      }
+      ++rowsRead;
+      if (0 == rowsRead % 1000) {
+        LOG.warn("rows read: " + rowsRead);
+      }
+    }
+    writes.await();
+
+    LOG.warn("Copy of the segments into repair_segment buckets completed.");
+  }
+
+  private static ByteBuffer getTokenRangesBin(Row row) {
+    if (!row.isNull("token_ranges_bin") || row.isNull("token_ranges")) {
+      return row.getBytes("token_ranges_bin");
+    }
+    // segments still holding json token ranges are encoded on the way
+    return ByteBuffer.wrap(
+        TokenRangesCodec.encode(JsonParseUtils.parseRingRangeList(Optional.of(row.getString("token_ranges")))));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class Migration025 {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Migration025.class);
+
+  private Migration025() {
+  }
+
+  /**
+   * index every repair unit of the repair_unit_v1 table into repair_unit_by_cluster_and_keyspace.
+   *
+   * <p>A unit missing from the index can no longer be found nor deleted, so a failed write fails the migration.
+   */
+  public static void migrate(Session session) {
+    LOG.warn("Indexing the repair_unit_v1 table into repair_unit_by_cluster_and_keyspace…");
+
+    Statement getRepairUnitsStmt
+        = new SimpleStatement("SELECT id,cluster_name,keyspace_name FROM repair_unit_v1")
+            .setConsistencyLevel(ConsistencyLevel.QUORUM);
+
+    PreparedStatement insertRepairUnitByClusterAndKsPrepStmt = session
+        .prepare("INSERT INTO repair_unit_by_cluster_and_keyspace (cluster_name,keyspace_name,id) VALUES(?, ?, ?)")
+        .setConsistencyLevel(ConsistencyLevel.EACH_QUORUM);
+
+    MigrationWrites writes = new MigrationWrites(session);
+    ResultSet resultSet = session.execute(getRepairUnitsStmt);
+    int rowsRead = 0;
+    for (Row row : resultSet) {
+      resultSet.fetchMoreResults();
+      writes.execute(
+          insertRepairUnitByClusterAndKsPrepStmt.bind(
+              row.getString("cluster_name"), row.getString("keyspace_name"), row.getUUID("id")));
+      ++rowsRead;
+      if (0 == rowsRead % 1000) {
+        LOG.warn("rows read: " + rowsRead);
+      }
+    }
+    writes.await();
+
+    LOG.warn("Indexing of the repair_unit_v1 table completed.");
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import java.util.Deque;
+
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.collect.Queues;
+
+/**
+ * The asynchronous writes of a data migration.
+ *
+ * <p>No more than a bounded number of writes are in flight, well below what the driver's request queues hold. Every
+ * write is waited on, and the first one to fail is thrown, aborting the migration rather than losing the row.
+ */
+final class MigrationWrites {
+
+  private static final int MAX_WRITES_IN_FLIGHT = 128;
+
+  private final Session session;
+  private final Deque<ResultSetFuture> inFlight = Queues.newArrayDeque();
+
+  MigrationWrites(Session session) {
+    this.session = session;
+  }
+
+  void execute(Statement stmt) {
+    if (MAX_WRITES_IN_FLIGHT <= inFlight.size()) {
+      inFlight.poll().getUninterruptibly();
+    }
+    inFlight.add(session.executeAsync(stmt));
+  }
+
+  /**
+   * Waits for every write still in flight.
+   */
+  void await() {
+    while (!inFlight.isEmpty()) {
+      inFlight.poll().getUninterruptibly();
+    }
+  }
+}
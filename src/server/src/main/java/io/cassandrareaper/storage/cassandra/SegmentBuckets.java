@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import java.util.UUID;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Spreads the segments of a repair run over partitions of about a thousand segments each.
+ *
+ * <p>The number of buckets of a run is fixed when the run is created, and a segment's bucket is derived from its id,
+ * so that a segment is found without reading its run's other segments.
+ */
+public final class SegmentBuckets {
+
+  static final int SEGMENTS_PER_BUCKET = 1000;
+
+  private SegmentBuckets() {
+  }
+
+  /**
+   * @return the number of buckets for a run of the given number of segments, at least one
+   */
+  public static int count(int segments) {
+    return Math.max(1, (segments + SEGMENTS_PER_BUCKET - 1) / SEGMENTS_PER_BUCKET);
+  }
+
+  /**
+   * @return the bucket, from zero to buckets exclusive, of the segment
+   */
+  public static int of(UUID segmentId, int buckets) {
+    Preconditions.checkArgument(0 < buckets, "a run has at least one segment bucket");
+    // time based ids differ in their low bits, spreading consecutive segments evenly over the buckets
+    return Math.floorMod(segmentId.hashCode(), buckets);
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A bounded read-through cache for entities that rarely change once written.
+ *
+ * <p>An entry is served from memory until its revalidation period has elapsed. Then the entity's version, the write
+ * time of one of its columns, is read again, and the entity is only reloaded if it has been written since, for
+ * example by another reaper instance. Writes made by this instance update or invalidate the entries directly.
+ *
+ * <p>The loader reads an entity together with its version, so that a miss costs a single round trip.
+ */
+public final class VersionedCache<K, V> {
+
+  private final Cache<K, Entry<V>> cache;
+  private final Function<K, Optional<Versioned<V>>> loader;
+  private final Function<K, Optional<Long>> versions;
+  private final Predicate<V> cacheable;
+  private final long revalidateNanos;
+  private final Counter hits;
+  private final Counter loads;
+
+  private VersionedCache(
+      long maximumSize,
+      long revalidateMillis,
+      Function<K, Optional<Versioned<V>>> loader,
+      Function<K, Optional<Long>> versions,
+      Predicate<V> cacheable,
+      Counter hits,
+      Counter loads) {
+
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    this.revalidateNanos = TimeUnit.MILLISECONDS.toNanos(revalidateMillis);
+    this.loader = loader;
+    this.versions = versions;
+    this.cacheable = cacheable;
+    this.hits = hits;
+    this.loads = loads;
+  }
+
+  /**
+   * Creates a cache of entities that are only ever written once, and so never need revalidating.
+   */
+  public static <K, V> VersionedCache<K, V> immutable(
+      String name,
+      long maximumSize,
+      Function<K, Optional<V>> loader,
+      MetricRegistry metricRegistry) {
+
+    return create(
+        name,
+        maximumSize,
+        Long.MAX_VALUE,
+        key -> loader.apply(key).map(value -> Versioned.of(value, Optional.empty())),
+        key -> Optional.empty(),
+        value -> true,
+        metricRegistry);
+  }
+
+  /**
+   * @param name the name of the cached entities, in the cache's metric names
+   * @param maximumSize the maximum number of entities cached
+   * @param revalidateMillis for how long an entity is served from memory without checking its version
+   * @param loader reads the entity with its version, empty if it does not exist
+   * @param versions reads only the version of the entity, empty if it does not exist
+   * @param cacheable whether a loaded entity can be cached
+   */
+  public static <K, V> VersionedCache<K, V> create(
+      String name,
+      long maximumSize,
+      long revalidateMillis,
+      Function<K, Optional<Versioned<V>>> loader,
+      Function<K, Optional<Long>> versions,
+      Predicate<V> cacheable,
+      MetricRegistry metricRegistry) {
+
+    Counter hits = metricRegistry.counter(MetricRegistry.name(VersionedCache.class, name, "hits"));
+    Counter loads = metricRegistry.counter(MetricRegistry.name(VersionedCache.class, name, "loads"));
+
+    VersionedCache<K, V> versionedCache
+        = new VersionedCache<>(maximumSize, revalidateMillis, loader, versions, cacheable, hits, loads);
+
+    // a new storage connection replaces the caches of the previous attempt
+    String hitRatioName = MetricRegistry.name(VersionedCache.class, name, "hitRatio");
+    String sizeName = MetricRegistry.name(VersionedCache.class, name, "size");
+    metricRegistry.remove(hitRatioName);
+    metricRegistry.remove(sizeName);
+    metricRegistry.register(hitRatioName, new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        return Ratio.of(hits.getCount(), hits.getCount() + loads.getCount());
+      }
+    });
+    metricRegistry.register(sizeName, (Gauge<Long>) versionedCache.cache::size);
+    return versionedCache;
+  }
+
+  public Optional<V> get(K key) {
+    Entry<V> entry = cache.getIfPresent(key);
+    if (null != entry) {
+      long nowNanos = System.nanoTime();
+      if (nowNanos - entry.checkedNanos < revalidateNanos) {
+        hits.inc();
+        return Optional.of(entry.value);
+      }
+      Optional<Long> version = versions.apply(key);
+      if (version.equals(entry.version)) {
+        entry.checkedNanos = nowNanos;
+        hits.inc();
+        return Optional.of(entry.value);
+      }
+    }
+    return load(key);
+  }
+
+  private Optional<V> load(K key) {
+    loads.inc();
+    long nowNanos = System.nanoTime();
+    Optional<Versioned<V>> versioned = loader.apply(key);
+    if (versioned.isPresent() && cacheable.test(versioned.get().value)) {
+      cache.put(key, new Entry<>(versioned.get().value, versioned.get().version, nowNanos));
+    } else {
+      cache.invalidate(key);
+    }
+    return versioned.map(loaded -> loaded.value);
+  }
+
+  /**
+   * Caches an entity just written by this instance, only valid for entities that are never written again.
+   */
+  public void put(K key, V value) {
+    cache.put(key, new Entry<>(value, Optional.empty(), System.nanoTime()));
+  }
+
+  public void invalidate(K key) {
+    cache.invalidate(key);
+  }
+
+  @VisibleForTesting
+  long size() {
+    return cache.size();
+  }
+
+  /**
+   * An entity read together with its version.
+   */
+  public static final class Versioned<V> {
+
+    private final V value;
+    private final Optional<Long> version;
+
+    private Versioned(V value, Optional<Long> version) {
+      this.value = value;
+      this.version = version;
+    }
+
+    public static <V> Versioned<V> of(V value, Optional<Long> version) {
+      return new Versioned<>(value, version);
+    }
+  }
+
+  private static final class Entry<V> {
+
+    private final V value;
+    private final Optional<Long> version;
+    private volatile long checkedNanos;
+
+    private Entry(V value, Optional<Long> version, long checkedNanos) {
+      this.value = value;
+      this.version = version;
+      this.checkedNanos = checkedNanos;
+    }
+  }
+}
@@ -116,13 +116,14 @@ public interface IStoragePostgreSql {
   //
   String SQL_REPAIR_SEGMENT_ALL_FIELDS_NO_ID
       = "repair_unit_id, run_id, start_token, end_token, state, coordinator_host, start_time, "
-          + "end_time, fail_count, token_ranges";
+          + "end_time, fail_count, token_ranges, token_ranges_bin";
   String SQL_REPAIR_SEGMENT_ALL_FIELDS = "repair_segment.id, " + SQL_REPAIR_SEGMENT_ALL_FIELDS_NO_ID;
   String SQL_INSERT_REPAIR_SEGMENT = "INSERT INTO repair_segment ("
-          + SQL_REPAIR_SEGMENT_ALL_FIELDS_NO_ID
+          + "repair_unit_id, run_id, start_token, end_token, state, coordinator_host, start_time, "
+          + "end_time, fail_count, token_ranges_bin"
           + ") VALUES "
           + "(:repairUnitId, :runId, :startToken, :endToken, :state, :coordinatorHost, :startTime, "
-          + ":endTime, :failCount, :tokenRangesTxt)";
+          + ":endTime, :failCount, :tokenRangesBin)";
   String SQL_UPDATE_REPAIR_SEGMENT = "UPDATE repair_segment SET repair_unit_id = :repairUnitId, run_id = :runId, "
           + "start_token = :startToken, end_token = :endToken, state = :state, "
           + "coordinator_host = :coordinatorHost, start_time = :startTime, end_time = :endTime, "
@@ -20,7 +20,7 @@ package io.cassandrareaper.storage.postgresql;
 import io.cassandrareaper.core.RepairSegment;
 import io.cassandrareaper.core.RepairSegment.State;
 import io.cassandrareaper.core.Segment;
-import io.cassandrareaper.storage.JsonParseUtils;
+import io.cassandrareaper.storage.TokenRangesCodec;
 
 import java.math.BigInteger;
 import java.util.UUID;
@@ -37,7 +37,7 @@ public class PostgresRepairSegment {
   private final String coordinatorHost;
   private final DateTime startTime;
   private final DateTime endTime;
-  private final String tokenRangesTxt;
+  private final byte[] tokenRangesBin;
 
   public PostgresRepairSegment(RepairSegment original) {
     runId = original.getRunId();
@@ -49,7 +49,7 @@ public class PostgresRepairSegment {
     coordinatorHost = original.getCoordinatorHost();
     startTime = original.getStartTime();
     endTime = original.getEndTime();
-    tokenRangesTxt = JsonParseUtils.writeTokenRangesTxt(original.getTokenRange().getTokenRanges());
+    tokenRangesBin = TokenRangesCodec.encode(original.getTokenRange().getTokenRanges());
   }
 
   public UUID getId() {
@@ -88,8 +88,8 @@ public class PostgresRepairSegment {
     return endTime;
   }
 
-  public String getTokenRangesTxt() {
-    return tokenRangesTxt;
+  public byte[] getTokenRangesBin() {
+    return tokenRangesBin;
   }
 
   public BigInteger getStartToken() {
@@ -20,7 +20,7 @@ package io.cassandrareaper.storage.postgresql;
 import io.cassandrareaper.core.RepairSegment;
 import io.cassandrareaper.core.Segment;
 import io.cassandrareaper.service.RingRange;
-import io.cassandrareaper.storage.JsonParseUtils;
+import io.cassandrareaper.storage.TokenRangesCodec;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -45,7 +45,8 @@ public final class RepairSegmentMapper implements ResultSetMapper<RepairSegment>
             .withTokenRange(
                 Segment.builder()
                     .withTokenRanges(
-                        JsonParseUtils.parseRingRangeList(
+                        TokenRangesCodec.decode(
+                            Optional.ofNullable(rs.getBytes("token_ranges_bin")),
                             Optional.ofNullable(rs.getString("token_ranges"))))
                     .build());
 
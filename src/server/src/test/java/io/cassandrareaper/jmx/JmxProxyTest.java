@@ -25,6 +25,7 @@ import java.util.Random;
 import javax.management.MBeanServerConnection;
 
 import com.google.common.base.Preconditions;
+import org.apache.cassandra.gms.FailureDetectorMBean;
 import org.apache.cassandra.locator.EndpointSnitchInfoMBean;
 import org.apache.cassandra.service.StorageServiceMBean;
 import org.apache.cassandra.streaming.StreamManagerMBean;
@@ -61,6 +62,11 @@ public final class JmxProxyTest {
     Mockito.when(((JmxProxyImpl)proxy).getEndpointSnitchInfoMBean()).thenReturn(endpointSnitchInfoMBean);
   }
 
+  public static void mockGetFailureDetectorMBean(JmxProxy proxy, FailureDetectorMBean failureDetectorMBean) {
+    Preconditions.checkArgument(proxy instanceof JmxProxyImpl, "only JmxProxyImpl is supported");
+    Mockito.when(((JmxProxyImpl)proxy).getFailureDetectorMBean()).thenReturn(failureDetectorMBean);
+  }
+
   @Test
   public void testVersionCompare() throws ReaperException {
     assertEquals(Integer.valueOf(0), JmxProxyImpl.versionCompare("1.0", "1.0"));
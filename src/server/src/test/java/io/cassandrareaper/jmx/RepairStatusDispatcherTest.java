@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.jmx;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import org.awaitility.Duration;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+public final class RepairStatusDispatcherTest {
+
+  @Test
+  public void testPreservesOrderPerRepair() throws InterruptedException {
+    RepairStatusDispatcher dispatcher = new RepairStatusDispatcher(2, 1000);
+    List<Integer> handled = Lists.newCopyOnWriteArrayList();
+    CountDownLatch blocked = new CountDownLatch(1);
+
+    // repairs 1 and 3 share a stripe, repair 2 has the other one
+    dispatcher.dispatch(1, () -> awaitUninterruptibly(blocked));
+    for (int i = 0; i < 100; ++i) {
+      int notification = i;
+      dispatcher.dispatch(1, () -> handled.add(100 + notification));
+      dispatcher.dispatch(2, () -> handled.add(200 + notification));
+      dispatcher.dispatch(3, () -> handled.add(300 + notification));
+    }
+
+    await().atMost(Duration.FIVE_SECONDS).until(() -> 100 == handled.size());
+    assertThat(handled).containsExactlyElementsOf(IntStream.range(200, 300).boxed().collect(Collectors.toList()));
+    assertThat(dispatcher.queueDepth()).isEqualTo(200);
+
+    blocked.countDown();
+    await().atMost(Duration.FIVE_SECONDS).until(() -> 300 == handled.size());
+    for (int repairNo = 1; repairNo <= 3; ++repairNo) {
+      int base = repairNo * 100;
+      assertThat(handled.stream().filter(notification -> notification / 100 * 100 == base))
+          .isSorted()
+          .hasSize(100);
+    }
+    assertThat(dispatcher.queueDepth()).isZero();
+    await().atMost(Duration.FIVE_SECONDS).until(() -> 301 == dispatcher.getHandlerLatency().getCount());
+  }
+
+  @Test
+  public void testFullQueueWaitsForRoom() throws InterruptedException {
+    RepairStatusDispatcher dispatcher = new RepairStatusDispatcher(1, 1);
+    List<Integer> handled = Lists.newCopyOnWriteArrayList();
+    CountDownLatch blocked = new CountDownLatch(1);
+
+    dispatcher.dispatch(1, () -> awaitUninterruptibly(blocked));
+    dispatcher.dispatch(1, () -> handled.add(1));
+    Thread producer = new Thread(() -> dispatcher.dispatch(1, () -> handled.add(2)));
+    producer.start();
+
+    // the third notification waits for room instead of being rejected or dropped
+    producer.join(200);
+    assertThat(producer.isAlive()).isTrue();
+
+    blocked.countDown();
+    producer.join(TimeUnit.SECONDS.toMillis(5));
+    await().atMost(Duration.FIVE_SECONDS).until(() -> 2 == handled.size());
+    assertThat(handled).containsExactly(1, 2);
+  }
+
+  @Test
+  public void testHandlerFailureDoesNotStopTheStripe() {
+    RepairStatusDispatcher dispatcher = new RepairStatusDispatcher(1, 10);
+    List<Integer> handled = Lists.newCopyOnWriteArrayList();
+
+    dispatcher.dispatch(1, () -> {
+      throw new IllegalStateException("failing handler");
+    });
+    dispatcher.dispatch(1, () -> handled.add(1));
+
+    await().atMost(Duration.FIVE_SECONDS).until(() -> 1 == handled.size());
+  }
+
+  @Test
+  public void testRegistersMetrics() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    RepairStatusDispatcher dispatcher = new RepairStatusDispatcher(1, 10);
+    dispatcher.registerMetrics(metricRegistry);
+    dispatcher.registerMetrics(metricRegistry);
+
+    assertThat(metricRegistry.getGauges())
+        .containsKey(MetricRegistry.name(RepairStatusDispatcher.class, "queueDepth"));
+    assertThat(metricRegistry.getTimers())
+        .containsKey(MetricRegistry.name(RepairStatusDispatcher.class, "handlerLatency"));
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
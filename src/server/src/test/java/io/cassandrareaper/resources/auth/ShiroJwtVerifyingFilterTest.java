@@ -19,10 +19,17 @@ package io.cassandrareaper.resources.auth;
 
 import io.cassandrareaper.AppContext;
 
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
 import java.security.Principal;
+import java.util.Date;
+import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 
+import com.google.common.hash.Hashing;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.mgt.DefaultSecurityManager;
 import org.apache.shiro.subject.Subject;
@@ -199,5 +206,65 @@ public final class ShiroJwtVerifyingFilterTest {
     }
   }
 
+  @Test
+  public void testAuthorizationValidIsCached() throws Exception {
+    Key signingKey = ShiroJwtProvider.SIGNING_KEY;
+    try {
+      SecurityUtils.setSecurityManager(new DefaultSecurityManager());
+      ShiroJwtVerifyingFilter.VERIFIED_TOKENS.invalidateAll();
+      HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+      Principal principal = Mockito.mock(Principal.class);
+      Mockito.when(principal.getName()).thenReturn("test-user");
+      Mockito.when(req.getUserPrincipal()).thenReturn(principal);
+      String jwt = new ShiroJwtProvider(Mockito.mock(AppContext.class)).getJwt(req);
+      Mockito.when(req.getHeader("Authorization")).thenReturn("Bearer " + jwt);
+      ShiroJwtVerifyingFilter filter = new ShiroJwtVerifyingFilter();
+      long hits = ShiroJwtVerifyingFilter.VERIFIED_TOKENS.stats().hitCount();
+
+      Assertions.assertThat(filter.isAccessAllowed(req, Mockito.mock(ServletResponse.class), null)).isTrue();
+      Assertions.assertThat(filter.isAccessAllowed(req, Mockito.mock(ServletResponse.class), null)).isTrue();
+      Assertions.assertThat(ShiroJwtVerifyingFilter.VERIFIED_TOKENS.size()).isEqualTo(1);
+      Assertions.assertThat(ShiroJwtVerifyingFilter.VERIFIED_TOKENS.stats().hitCount()).isEqualTo(hits + 1);
+      Assertions.assertThat(ShiroJwtVerifyingFilter.VERIFIED_TOKENS.asMap().keySet()).doesNotContain(jwt);
+
+      // a cached token must not outlive the signing key it was verified with
+      ShiroJwtProvider.SIGNING_KEY = new SecretKeySpec(new byte[]{1, 2, 3, 4}, SignatureAlgorithm.HS256.getJcaName());
+      Assertions.assertThat(filter.isAccessAllowed(req, Mockito.mock(ServletResponse.class), null)).isFalse();
+    } finally {
+      ShiroJwtProvider.SIGNING_KEY = signingKey;
+      ThreadContext.unbindSubject();
+      ThreadContext.unbindSecurityManager();
+    }
+  }
+
+  @Test
+  public void testAuthorizationExpired() throws Exception {
+    try {
+      SecurityUtils.setSecurityManager(new DefaultSecurityManager());
+      new ShiroJwtProvider(Mockito.mock(AppContext.class));
+      HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+
+      Date expiration = new Date(System.currentTimeMillis() - 1000);
+      String jwt = Jwts.builder()
+          .setSubject("test-user")
+          .setExpiration(expiration)
+          .signWith(SignatureAlgorithm.HS256, ShiroJwtProvider.SIGNING_KEY)
+          .compact();
+
+      Mockito.when(req.getHeader("Authorization")).thenReturn("Bearer " + jwt);
+      ShiroJwtVerifyingFilter filter = new ShiroJwtVerifyingFilter();
+      Assertions.assertThat(filter.isAccessAllowed(req, Mockito.mock(ServletResponse.class), null)).isFalse();
+
+      // the token was cached while it was still valid
+      String hash = Hashing.sha256().hashString(jwt, StandardCharsets.UTF_8).toString();
+      ShiroJwtVerifyingFilter.VERIFIED_TOKENS.put(
+          hash, new ShiroJwtVerifyingFilter.VerifiedToken("test-user", expiration, ShiroJwtProvider.SIGNING_KEY));
+      Assertions.assertThat(filter.isAccessAllowed(req, Mockito.mock(ServletResponse.class), null)).isFalse();
+      Assertions.assertThat(ShiroJwtVerifyingFilter.VERIFIED_TOKENS.getIfPresent(hash)).isNull();
+    } finally {
+      ThreadContext.unbindSubject();
+      ThreadContext.unbindSecurityManager();
+    }
+  }
 
 }
@@ -140,6 +140,37 @@ public final class NodesStatusTest {
         "c.example.com/2a:6:b0:61aa:34b3:7805:1d3d:32");
   }
 
+  @Test
+  public void testParseSkipsLeftEndpointsAndSumsLoad() {
+    String endpointsStatusString = "/127.0.0.1\n"
+        + "  generation:1496849190\n"
+        + "  STATUS:14:NORMAL,-9223372036854775808\n"
+        + "  LOAD:1231851:1.5E3\n"
+        + "  DC:6:dc1\n"
+        + "  RACK:8:rack1\n"
+        + "/127.0.0.2\n"
+        + "  STATUS:20:LEFT,-3074457345618258603,1497347537\n"
+        + "  LOAD:1231851:500.0\n"
+        + "  DC:6:dc1\n"
+        + "  RACK:8:rack1\n"
+        + "/127.0.0.3\n"
+        + "  generation:1496849191\n";
+
+    NodesStatus nodesStatus = new NodesStatus("127.0.0.1", endpointsStatusString, Maps.newHashMap());
+
+    NodesStatus.GossipInfo gossipInfo = nodesStatus.endpointStates.get(0);
+    assertEquals(2, gossipInfo.endpointNames.size());
+    assertTrue(gossipInfo.endpointNames.contains("127.0.0.1"));
+    assertTrue(gossipInfo.endpointNames.contains("127.0.0.3"));
+    assertTrue(gossipInfo.totalLoad.equals(2000.0));
+    assertEquals(1, gossipInfo.endpoints.get("dc1").get("rack1").size());
+
+    EndpointState incomplete = gossipInfo.endpoints.get("Not available").get("Not available").get(0);
+    assertEquals("127.0.0.3", incomplete.endpoint);
+    assertEquals("Not available", incomplete.status);
+    assertEquals("Not available", incomplete.tokens);
+  }
+
   private void testParseEndpoint22StatusString(String sourceNode,
                                                String endpoint1, String endpoint2, String endpoint3) {
     Map<String, String> simpleStates = Maps.newHashMap();
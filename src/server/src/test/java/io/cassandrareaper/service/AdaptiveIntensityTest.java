@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.service;
+
+import io.cassandrareaper.AppContext;
+import io.cassandrareaper.ReaperApplicationConfiguration;
+import io.cassandrareaper.ReaperApplicationConfiguration.AdaptiveIntensityConfiguration;
+import io.cassandrareaper.ReaperException;
+import io.cassandrareaper.core.Cluster;
+import io.cassandrareaper.core.DroppedMessages;
+import io.cassandrareaper.core.MetricsHistogram;
+import io.cassandrareaper.jmx.ClusterFacade;
+import io.cassandrareaper.jmx.JmxProxy;
+import io.cassandrareaper.storage.IStorage;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import javax.management.JMException;
+import javax.management.openmbean.CompositeData;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class AdaptiveIntensityTest {
+
+  private static final String HOST = "127.0.0.1";
+
+  private AppContext context;
+  private ClusterFacade clusterFacade;
+  private JmxProxy jmx;
+  private AdaptiveIntensity adaptiveIntensity;
+
+  @Before
+  public void setUp() throws ReaperException, JMException {
+    AdaptiveIntensityConfiguration adaptiveConfig = new AdaptiveIntensityConfiguration();
+    adaptiveConfig.setEnabled(true);
+    adaptiveConfig.setMinIntensityFactor(0.2);
+    adaptiveConfig.setIntensityFactorIncrease(0.25);
+    adaptiveConfig.setMaxClientLatencyP99(Duration.ofMillis(50));
+
+    context = new AppContext();
+    context.config = new ReaperApplicationConfiguration();
+    context.config.setMaxPendingCompactions(20);
+    context.config.setAdaptiveIntensity(adaptiveConfig);
+
+    jmx = mock(JmxProxy.class);
+    clusterFacade = mock(ClusterFacade.class);
+    when(clusterFacade.connectAny(any(), any())).thenReturn(jmx);
+    when(clusterFacade.getDroppedMessages(any())).thenReturn(Collections.emptyList());
+    when(clusterFacade.getClientRequestLatencies(any())).thenReturn(Collections.emptyList());
+    when(clusterFacade.listStreams(any())).thenReturn(Collections.emptySet());
+
+    adaptiveIntensity = AdaptiveIntensity.create(context, clusterFacade);
+  }
+
+  @Test
+  public void testMultiplicativeDecreaseAdditiveIncrease() {
+    String clusterName = "aimd_cluster";
+    assertThat(adaptiveIntensity.effectiveIntensity(clusterName, 0.8)).isEqualTo(0.8);
+
+    assertThat(adaptiveIntensity.update(clusterName, true)).isEqualTo(0.5);
+    assertThat(adaptiveIntensity.effectiveIntensity(clusterName, 0.8)).isEqualTo(0.4);
+    assertThat(adaptiveIntensity.update(clusterName, true)).isEqualTo(0.25);
+    // bounded by the minimum factor
+    assertThat(adaptiveIntensity.update(clusterName, true)).isEqualTo(0.2);
+
+    assertThat(adaptiveIntensity.update(clusterName, false)).isCloseTo(0.45, within(1e-9));
+    assertThat(adaptiveIntensity.update(clusterName, false)).isCloseTo(0.7, within(1e-9));
+    assertThat(adaptiveIntensity.update(clusterName, false)).isCloseTo(0.95, within(1e-9));
+    // never above the intensity of the run
+    assertThat(adaptiveIntensity.update(clusterName, false)).isEqualTo(1.0);
+
+    assertThat(context.metricRegistry.getGauges())
+        .containsKey(MetricRegistry.name(AdaptiveIntensity.class, "factor", "aimdcluster"));
+  }
+
+  @Test
+  public void testDisabledKeepsIntensity() {
+    String clusterName = "disabled_cluster";
+    adaptiveIntensity.update(clusterName, true);
+    context.config.getAdaptiveIntensity().setEnabled(false);
+
+    assertThat(adaptiveIntensity.effectiveIntensity(clusterName, 0.8)).isEqualTo(0.8);
+  }
+
+  @Test
+  public void testLoadSignals() throws JMException, ReaperException {
+    Cluster cluster = new Cluster("signals_cluster", Optional.empty(), Collections.singleton(HOST));
+    assertThat(adaptiveIntensity.isUnderLoad(cluster, HOST)).isFalse();
+
+    when(jmx.getPendingCompactions()).thenReturn(11);
+    assertThat(adaptiveIntensity.isUnderLoad(cluster, HOST)).isTrue();
+    when(jmx.getPendingCompactions()).thenReturn(10);
+    assertThat(adaptiveIntensity.isUnderLoad(cluster, HOST)).isFalse();
+
+    when(clusterFacade.getDroppedMessages(any())).thenReturn(
+        Collections.singletonList(DroppedMessages.builder().withName("MUTATION").withCount(3).build()));
+    // mutations dropped before the first sample are not a signal
+    assertThat(adaptiveIntensity.isUnderLoad(cluster, HOST)).isFalse();
+    when(clusterFacade.getDroppedMessages(any())).thenReturn(
+        Collections.singletonList(DroppedMessages.builder().withName("MUTATION").withCount(5).build()));
+    assertThat(adaptiveIntensity.isUnderLoad(cluster, HOST)).isTrue();
+    assertThat(adaptiveIntensity.isUnderLoad(cluster, HOST)).isFalse();
+
+    when(clusterFacade.getClientRequestLatencies(any())).thenReturn(
+        Collections.singletonList(MetricsHistogram.builder().withName("Write").withType("Latency").withP99(60000.0)
+            .build()));
+    assertThat(adaptiveIntensity.isUnderLoad(cluster, HOST)).isTrue();
+    when(clusterFacade.getClientRequestLatencies(any())).thenReturn(
+        Collections.singletonList(MetricsHistogram.builder().withName("Write").withType("Latency").withP99(40000.0)
+            .build()));
+    assertThat(adaptiveIntensity.isUnderLoad(cluster, HOST)).isFalse();
+
+    when(clusterFacade.listStreams(any())).thenReturn(Collections.singleton(mock(CompositeData.class)));
+    assertThat(adaptiveIntensity.isUnderLoad(cluster, HOST)).isTrue();
+  }
+
+  @Test
+  public void testSamplesInTheBackgroundOncePerCluster() throws JMException, ReaperException {
+    String clusterName = "background_cluster";
+    Cluster cluster = new Cluster(clusterName, Optional.empty(), Collections.singleton(HOST));
+    context.storage = mock(IStorage.class);
+    when(context.storage.getCluster(clusterName)).thenReturn(Optional.of(cluster));
+    when(jmx.getPendingCompactions()).thenReturn(11);
+    List<Runnable> tasks = Lists.newArrayList();
+    AdaptiveIntensity background = AdaptiveIntensity.create(context, clusterFacade, tasks::add);
+
+    background.requestSample(clusterName, Collections.singleton(HOST));
+    background.requestSample(clusterName, Collections.singleton(HOST));
+    assertThat(tasks).hasSize(1);
+    // nothing is sampled by the caller
+    assertThat(background.factor(clusterName)).isEqualTo(1.0);
+
+    tasks.remove(0).run();
+    assertThat(background.factor(clusterName)).isEqualTo(0.5);
+    background.requestSample(clusterName, Collections.singleton(HOST));
+    assertThat(tasks).hasSize(1);
+  }
+
+  @Test
+  public void testUnreachableNodeIsNotUnderLoad() throws ReaperException {
+    Cluster cluster = new Cluster("unreachable_cluster", Optional.empty(), Collections.singleton(HOST));
+    when(clusterFacade.connectAny(any(), any())).thenThrow(new ReaperException("unreachable"));
+
+    assertThat(adaptiveIntensity.isUnderLoad(cluster, HOST)).isFalse();
+  }
+}
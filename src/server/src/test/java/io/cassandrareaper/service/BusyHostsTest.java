@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class BusyHostsTest {
+
+  @Test
+  public void testLocalSegmentsNeedNoStorageRead() {
+    BusyHosts busyHosts = new BusyHosts(60_000);
+    AtomicInteger reads = new AtomicInteger();
+    Supplier<Set<String>> stored = () -> {
+      reads.incrementAndGet();
+      return Collections.emptySet();
+    };
+
+    UUID segment1 = UUID.randomUUID();
+    UUID segment2 = UUID.randomUUID();
+    busyHosts.add(segment1, Arrays.asList("node1", "node2"));
+    busyHosts.add(segment2, Arrays.asList("node2", "node3"));
+    assertThat(busyHosts.isBusy("node1", stored)).isTrue();
+    assertThat(busyHosts.isBusy("node2", stored)).isTrue();
+    assertThat(reads.get()).isZero();
+
+    // node2 is still involved in the second segment
+    busyHosts.remove(segment1);
+    assertThat(busyHosts.isBusy("node2", stored)).isTrue();
+    assertThat(reads.get()).isZero();
+
+    // an idle host is always checked against storage
+    assertThat(busyHosts.isBusy("node1", stored)).isFalse();
+    assertThat(reads.get()).isEqualTo(1);
+    busyHosts.remove(segment2);
+    assertThat(busyHosts.isBusy("node3", stored)).isFalse();
+    assertThat(reads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testSegmentsOfOtherInstancesAreReconciledPeriodically() throws InterruptedException {
+    BusyHosts busyHosts = new BusyHosts(100);
+    AtomicInteger reads = new AtomicInteger();
+    Supplier<Set<String>> stored = () -> {
+      reads.incrementAndGet();
+      return ImmutableSet.of("remote1");
+    };
+
+    assertThat(busyHosts.isBusy("remote1", stored)).isTrue();
+    assertThat(busyHosts.isBusy("remote1", stored)).isTrue();
+    assertThat(reads.get()).isEqualTo(1);
+
+    Thread.sleep(150);
+    assertThat(busyHosts.isBusy("remote1", stored)).isTrue();
+    assertThat(reads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testSharedPerCluster() {
+    assertThat(BusyHosts.of("shared_cluster")).isSameAs(BusyHosts.of("shared_cluster"));
+    assertThat(BusyHosts.of("shared_cluster")).isNotSameAs(BusyHosts.of("other_cluster"));
+  }
+}
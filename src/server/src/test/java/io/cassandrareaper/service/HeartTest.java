@@ -26,6 +26,7 @@ import io.cassandrareaper.core.NodeMetrics;
 import io.cassandrareaper.jmx.HostConnectionCounters;
 import io.cassandrareaper.jmx.JmxConnectionFactory;
 import io.cassandrareaper.jmx.JmxProxy;
+import io.cassandrareaper.jmx.JmxProxyTest;
 import io.cassandrareaper.storage.CassandraStorage;
 import io.cassandrareaper.storage.MemoryStorage;
 
@@ -40,9 +41,11 @@ import java.util.concurrent.TimeUnit;
 
 import javax.management.JMException;
 
+import org.apache.cassandra.gms.FailureDetectorMBean;
 import org.assertj.core.api.Assertions;
 import org.awaitility.Awaitility;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -399,4 +402,70 @@ public final class HeartTest {
     Mockito.verify(context.jmxConnectionFactory, Mockito.times(2)).connectAny(any(Collection.class));
     Mockito.verify((CassandraStorage)context.storage, Mockito.times(2)).storeNodeMetrics(any(), any());
   }
+
+  @Test
+  public void testPublishMetrics_eachDatacenterAvailability() throws ReaperException, JMException {
+    AppContext context = new AppContext();
+    context.config = new ReaperApplicationConfiguration();
+    context.config.setDatacenterAvailability(ReaperApplicationConfiguration.DatacenterAvailability.EACH);
+    context.storage = Mockito.mock(CassandraStorage.class);
+
+    context.repairManager = RepairManager.create(
+        context,
+        Executors.newScheduledThreadPool(1),
+        REPAIR_TIMEOUT_S,
+        TimeUnit.SECONDS,
+        RETRY_DELAY_S,
+        TimeUnit.SECONDS);
+
+    RepairRunner repairRunner = Mockito.mock(RepairRunner.class);
+    Mockito.when(repairRunner.getClusterName()).thenReturn("publish_cluster");
+    context.repairManager.repairRunners.put(UUID.randomUUID(), repairRunner);
+    context.repairManager.repairRunners.put(UUID.randomUUID(), repairRunner);
+
+    Mockito.when(context.storage.getCluster(any()))
+        .thenReturn(
+            Optional.of(
+                new Cluster(
+                    "publish_cluster",
+                    Optional.empty(),
+                    new HashSet<String>(Arrays.asList("127.0.0.1")),
+                    ClusterProperties.builder().withJmxPort(7199).build())));
+
+    FailureDetectorMBean failureDetector = Mockito.mock(FailureDetectorMBean.class);
+    Mockito.when(failureDetector.getAllEndpointStates()).thenReturn(
+        "/127.0.0.1\n  DC:6:dc1\n  RACK:8:rack1\n/127.0.0.2\n  DC:6:dc2\n  RACK:8:rack1\n");
+    Mockito.when(failureDetector.getSimpleStates()).thenReturn(Collections.emptyMap());
+
+    JmxProxy nodeProxy = JmxProxyTest.mockJmxProxyImpl();
+    JmxProxyTest.mockGetFailureDetectorMBean(nodeProxy, failureDetector);
+    Mockito.when(nodeProxy.getPendingCompactions()).thenReturn(5);
+    Mockito.when(nodeProxy.isRepairRunning()).thenReturn(true);
+
+    context.jmxConnectionFactory = Mockito.mock(JmxConnectionFactory.class);
+    Mockito.when(context.jmxConnectionFactory.connectAny(any(Collection.class))).thenReturn(nodeProxy);
+    Mockito.when(context.jmxConnectionFactory.getAccessibleDatacenters()).thenReturn(Collections.singleton("dc1"));
+
+    ArgumentCaptor<NodeMetrics> published = ArgumentCaptor.forClass(NodeMetrics.class);
+    try (Heart heart = Heart.create(context)) {
+      heart.publishMetrics();
+      Awaitility.await().until(() -> {
+        try {
+          // only the node of the datacenter reachable through JMX is published, once for both runs of the cluster
+          Mockito.verify((CassandraStorage)context.storage, Mockito.times(1)).publishNodeMetrics(published.capture());
+          return true;
+        } catch (AssertionError ex) {
+          return false;
+        }
+      });
+    }
+
+    Assertions.assertThat(published.getValue().getCluster()).isEqualTo("publish_cluster");
+    Assertions.assertThat(published.getValue().getNode()).isEqualTo("127.0.0.1");
+    Assertions.assertThat(published.getValue().getDatacenter()).isEqualTo("dc1");
+    Assertions.assertThat(published.getValue().getPendingCompactions()).isEqualTo(5);
+    Assertions.assertThat(published.getValue().hasRepairRunning()).isTrue();
+    Assertions.assertThat(published.getValue().isRequested()).isFalse();
+    Mockito.verify((CassandraStorage)context.storage, Mockito.times(0)).storeNodeMetrics(any(), any());
+  }
 }
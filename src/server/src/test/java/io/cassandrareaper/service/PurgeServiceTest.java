@@ -30,11 +30,13 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.UUID;
 
 import com.datastax.driver.core.utils.UUIDs;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.apache.cassandra.repair.RepairParallelism;
 import org.joda.time.DateTime;
 import org.junit.Test;
@@ -45,6 +47,9 @@ import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public final class PurgeServiceTest {
@@ -84,7 +89,7 @@ public final class PurgeServiceTest {
               .build(UUIDs.timeBased()));
     }
 
-    when(context.storage.getRepairRunsForCluster(anyString(), any())).thenReturn(repairRuns);
+    mockRepairRuns(context, repairRuns);
 
     // Invoke the purge manager
     int purged = PurgeService.create(context).purgeDatabase();
@@ -124,7 +129,7 @@ public final class PurgeServiceTest {
               .build(UUIDs.timeBased()));
     }
 
-    when(context.storage.getRepairRunsForCluster(anyString(), any())).thenReturn(repairRuns);
+    mockRepairRuns(context, repairRuns);
 
     // Invoke the purge manager
     int purged = PurgeService.create(context).purgeDatabase();
@@ -164,7 +169,7 @@ public final class PurgeServiceTest {
               .build(UUIDs.timeBased()));
     }
 
-    when(context.storage.getRepairRunsForCluster(anyString(), any())).thenReturn(repairRuns);
+    mockRepairRuns(context, repairRuns);
 
     // Invoke the purge manager
     int purged = PurgeService.create(context).purgeDatabase();
@@ -173,4 +178,96 @@ public final class PurgeServiceTest {
     assertEquals(0, purged);
   }
 
+  @Test
+  public void testPurgeInBatches() throws InterruptedException, ReaperException {
+    AppContext context = new AppContext();
+    context.config = new ReaperApplicationConfiguration();
+    context.config.setPurgeRecordsAfterInDays(1);
+    context.config.setPurgeBatchSize(3);
+
+    // Create storage mock
+    context.storage = mock(IStorage.class);
+
+    List<Cluster> clusters = Arrays.asList(new Cluster(CLUSTER_NAME, Optional.empty(), Collections.EMPTY_SET));
+    when(context.storage.getClusters()).thenReturn(clusters);
+
+    // Add repair runs to the mock
+    List<RepairRun> repairRuns = Lists.newArrayList();
+    DateTime currentDate = DateTime.now();
+    for (int i = 0; i < 10; i++) {
+      UUID repairUnitId = UUIDs.timeBased();
+      DateTime startTime = currentDate.minusDays(i).minusHours(1);
+
+      repairRuns.add(
+          RepairRun.builder(CLUSTER_NAME, repairUnitId)
+              .startTime(startTime)
+              .intensity(0.9)
+              .segmentCount(10)
+              .repairParallelism(RepairParallelism.DATACENTER_AWARE)
+              .tables(TABLES)
+              .endTime(startTime.plusSeconds(1))
+              .runState(RunState.DONE)
+              .build(UUIDs.timeBased()));
+    }
+
+    mockRepairRuns(context, repairRuns);
+
+    // Invoke the purge manager
+    int purged = PurgeService.create(context).purgeDatabase();
+
+    // Check that runs were removed, and that the full history was never read at once
+    assertEquals(9, purged);
+    verify(context.storage, times(9)).deleteRepairRun(any());
+    verify(context.storage, never()).getRepairRunsForCluster(anyString(), any());
+    assertEquals(10, context.metricRegistry.counter("io.cassandrareaper.service.PurgeService.runsScanned").getCount());
+    assertEquals(9, context.metricRegistry.counter("io.cassandrareaper.service.PurgeService.runsPurged").getCount());
+  }
+
+  @Test
+  public void testFailedDeletesAreNotCountedAsPurged() throws InterruptedException, ReaperException {
+    AppContext context = new AppContext();
+    context.config = new ReaperApplicationConfiguration();
+    context.config.setPurgeRecordsAfterInDays(1);
+    context.config.setPurgeBatchSize(2);
+    context.storage = mock(IStorage.class);
+
+    List<Cluster> clusters = Arrays.asList(new Cluster(CLUSTER_NAME, Optional.empty(), Collections.EMPTY_SET));
+    when(context.storage.getClusters()).thenReturn(clusters);
+
+    List<RepairRun> repairRuns = Lists.newArrayList();
+    DateTime startTime = DateTime.now().minusDays(2);
+    for (int i = 0; i < 5; i++) {
+      repairRuns.add(
+          RepairRun.builder(CLUSTER_NAME, UUIDs.timeBased())
+              .startTime(startTime)
+              .intensity(0.9)
+              .segmentCount(10)
+              .repairParallelism(RepairParallelism.DATACENTER_AWARE)
+              .tables(TABLES)
+              .endTime(startTime.plusSeconds(1))
+              .runState(RunState.DONE)
+              .build(UUIDs.timeBased()));
+    }
+    mockRepairRuns(context, repairRuns);
+    // one delete fails, another finds the run already deleted
+    when(context.storage.deleteRepairRun(repairRuns.get(1).getId())).thenThrow(new IllegalStateException("failing"));
+    when(context.storage.deleteRepairRun(repairRuns.get(3).getId())).thenReturn(Optional.empty());
+
+    int purged = PurgeService.create(context).purgeDatabase();
+
+    assertEquals(3, purged);
+    verify(context.storage, times(5)).deleteRepairRun(any());
+    assertEquals(3, context.metricRegistry.counter("io.cassandrareaper.service.PurgeService.runsPurged").getCount());
+    assertEquals(1, context.metricRegistry.counter("io.cassandrareaper.service.PurgeService.runsFailed").getCount());
+  }
+
+  private static void mockRepairRuns(AppContext context, List<RepairRun> repairRuns) {
+    SortedSet<UUID> repairRunIds = Sets.newTreeSet();
+    for (RepairRun repairRun : repairRuns) {
+      repairRunIds.add(repairRun.getId());
+      when(context.storage.getRepairRun(repairRun.getId())).thenReturn(Optional.of(repairRun));
+      when(context.storage.deleteRepairRun(repairRun.getId())).thenReturn(Optional.of(repairRun));
+    }
+    when(context.storage.getRepairRunIdsForCluster(anyString())).thenReturn(repairRunIds);
+  }
 }
@@ -17,17 +17,25 @@
 
 package io.cassandrareaper.service;
 
+import io.cassandrareaper.AppContext;
 import io.cassandrareaper.ReaperException;
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSegment;
 import io.cassandrareaper.core.RepairUnit;
 import io.cassandrareaper.core.Segment;
+import io.cassandrareaper.storage.IStorage;
 
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
+import com.datastax.driver.core.utils.UUIDs;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.apache.commons.lang3.tuple.Pair;
+import org.joda.time.DateTime;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -185,4 +193,49 @@ public final class RepairRunServiceTest {
     assertEquals(replicasToRangeMap.get(Arrays.asList("node1")).size(), 1);
     assertEquals(replicasToRangeMap.get(Arrays.asList("node1", "node2")).size(), 2);
   }
+
+  @Test
+  public void getSegmentDurationsFromLastFinishedRunTest() {
+    UUID unitId = UUIDs.timeBased();
+    RepairUnit repairUnit = mock(RepairUnit.class);
+    when(repairUnit.getId()).thenReturn(unitId);
+
+    RepairRun olderRun = mockRun(RepairRun.RunState.DONE, DateTime.now().minusDays(2));
+    RepairRun lastRun = mockRun(RepairRun.RunState.ERROR, DateTime.now().minusDays(1));
+    RepairRun runningRun = mockRun(RepairRun.RunState.RUNNING, null);
+
+    DateTime start = DateTime.now().minusDays(1).minusHours(1);
+    Segment repaired = Segment.builder().withTokenRange(new RingRange("0", "100")).build();
+    RepairSegment done = RepairSegment.builder(repaired, unitId)
+        .withRunId(lastRun.getId())
+        .withId(UUIDs.timeBased())
+        .withState(RepairSegment.State.DONE)
+        .withStartTime(start)
+        .withEndTime(start.plusSeconds(42))
+        .build();
+    RepairSegment notStarted = RepairSegment.builder(
+            Segment.builder().withTokenRange(new RingRange("100", "200")).build(), unitId)
+        .withRunId(lastRun.getId())
+        .withId(UUIDs.timeBased())
+        .build();
+
+    AppContext context = new AppContext();
+    context.storage = mock(IStorage.class);
+    when(context.storage.getRepairRunsForUnit(unitId)).thenReturn(Arrays.asList(olderRun, lastRun, runningRun));
+    when(context.storage.getRepairSegmentsForRun(lastRun.getId())).thenReturn(Arrays.asList(done, notStarted));
+
+    List<Pair<Segment, Long>> durations = RepairRunService.create(context).getSegmentDurations(repairUnit);
+
+    assertEquals(1, durations.size());
+    assertEquals(repaired, durations.get(0).getLeft());
+    assertEquals(Long.valueOf(42000), durations.get(0).getRight());
+  }
+
+  private static RepairRun mockRun(RepairRun.RunState state, DateTime endTime) {
+    RepairRun run = mock(RepairRun.class);
+    when(run.getId()).thenReturn(UUIDs.timeBased());
+    when(run.getRunState()).thenReturn(state);
+    when(run.getEndTime()).thenReturn(endTime);
+    return run;
+  }
 }
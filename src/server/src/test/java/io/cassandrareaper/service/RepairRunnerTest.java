@@ -36,19 +36,21 @@ import io.cassandrareaper.storage.MemoryStorage;
 
 import java.math.BigInteger;
 import java.net.UnknownHostException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
-import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
@@ -67,6 +69,7 @@ import org.slf4j.LoggerFactory;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -523,6 +526,10 @@ public final class RepairRunnerTest {
     context.repairManager.resumeRunningRepairRuns();
     Thread.sleep(1000);
     assertEquals(RepairRun.RunState.DONE, storage.getRepairRun(RUN_ID).get().getRunState());
+
+    // the throughput gauges of the run go with its runner
+    await().with().atMost(5, TimeUnit.SECONDS).until(
+        () -> context.metricRegistry.getGauges((name, metric) -> name.contains("millisToCompletion")).isEmpty());
   }
 
   @Test
@@ -536,61 +543,6 @@ public final class RepairRunnerTest {
     assertEquals(2, RepairRunner.getPossibleParallelRepairsCount(map, endpointsSixNodes));
   }
 
-  @Test
-  public void getParallelSegmentsTest() throws ReaperException {
-    List<BigInteger> tokens = Lists
-        .transform(Lists.newArrayList("0", "50", "100", "150", "200", "250"), (string) -> new BigInteger(string));
-
-    SegmentGenerator generator = new SegmentGenerator(new BigInteger("0"), new BigInteger("299"));
-
-    List<Segment> segments = generator.generateSegments(
-            32,
-            tokens,
-            Boolean.FALSE,
-            RepairRunService.buildReplicasToRangeMap(RepairRunnerTest.sixNodeCluster()),
-            "2.2.10");
-
-    Map<List<String>, List<String>> map = RepairRunnerTest.sixNodeCluster();
-    Map<String, String> endpointsSixNodes = RepairRunnerTest.sixNodeClusterEndpoint();
-
-    List<RingRange> ranges = RepairRunner.getParallelRanges(
-            RepairRunner.getPossibleParallelRepairsCount(map, endpointsSixNodes),
-            Lists.newArrayList(
-                Collections2.transform(segments, segment -> segment.getBaseRange())));
-
-    assertEquals(2, ranges.size());
-    assertEquals("0", ranges.get(0).getStart().toString());
-    assertEquals("150", ranges.get(0).getEnd().toString());
-    assertEquals("150", ranges.get(1).getStart().toString());
-    assertEquals("0", ranges.get(1).getEnd().toString());
-  }
-
-  @Test
-  public void getParallelSegmentsTest2() throws ReaperException {
-    List<BigInteger> tokens = Lists.transform(
-        Lists.newArrayList("0", "25", "50", "75", "100", "125", "150", "175", "200", "225", "250"),
-        (string) -> new BigInteger(string));
-
-    SegmentGenerator generator = new SegmentGenerator(new BigInteger("0"), new BigInteger("299"));
-
-    Map<List<String>, List<String>> map = RepairRunnerTest.sixNodeCluster();
-    Map<String, String> endpointsSixNodes = RepairRunnerTest.sixNodeClusterEndpoint();
-
-    List<Segment> segments = generator.generateSegments(
-            32, tokens, Boolean.FALSE, RepairRunService.buildReplicasToRangeMap(map), "2.2.10");
-
-    List<RingRange> ranges = RepairRunner.getParallelRanges(
-            RepairRunner.getPossibleParallelRepairsCount(map, endpointsSixNodes),
-            Lists.newArrayList(
-                Collections2.transform(segments, segment -> segment.getBaseRange())));
-
-    assertEquals(2, ranges.size());
-    assertEquals("0", ranges.get(0).getStart().toString());
-    assertEquals("150", ranges.get(0).getEnd().toString());
-    assertEquals("150", ranges.get(1).getStart().toString());
-    assertEquals("0", ranges.get(1).getEnd().toString());
-  }
-
   @Test
   public void getNoSegmentCoalescingTest() throws ReaperException {
     List<BigInteger> tokens = Lists.transform(
@@ -622,6 +574,61 @@ public final class RepairRunnerTest {
     assertEquals(6, segments.size());
   }
 
+  @Test
+  public void pickFreeSegmentWithIdleReplicasTest() {
+    Map<List<String>, List<String>> map = RepairRunnerTest.sixNodeCluster();
+    UUID runId = UUID.randomUUID();
+    UUID unitId = UUID.randomUUID();
+    Map<RepairSegment, List<String>> replicas = new HashMap<>();
+    List<RepairSegment> freeSegments = Lists.newArrayList();
+    for (Map.Entry<List<String>, List<String>> range : map.entrySet()) {
+      RepairSegment segment = RepairSegment.builder(
+              Segment.builder()
+                  .withTokenRange(
+                      new RingRange(new BigInteger(range.getKey().get(0)), new BigInteger(range.getKey().get(1))))
+                  .build(),
+              unitId)
+          .withRunId(runId)
+          .withId(UUID.randomUUID())
+          .build();
+      replicas.put(segment, range.getValue());
+      freeSegments.add(segment);
+    }
+    freeSegments.sort((s1, s2) -> s1.getStartToken().compareTo(s2.getStartToken()));
+
+    Map<Collection<String>, Queue<RepairSegment>> grouped = RepairRunner.groupByReplicas(freeSegments, replicas::get);
+
+    // nothing running, the first segment is taken
+    assertEquals(
+        freeSegments.get(0),
+        RepairRunner.pollFreeSegment(grouped, Collections.emptyList(), Optional::of).get());
+
+    // a1, a2 and a3 are busy, so the next segment to not involve them is 150-200
+    List<Collection<String>> busy = Lists.newArrayList();
+    busy.add(replicas.get(freeSegments.get(0)));
+    assertEquals(
+        "150",
+        RepairRunner.pollFreeSegment(grouped, busy, Optional::of).get().getStartToken().toString());
+
+    // with 150-200 running as well every replica is busy
+    busy.add(replicas.get(freeSegments.get(3)));
+    assertFalse(RepairRunner.pollFreeSegment(grouped, busy, Optional::of).isPresent());
+
+    // candidates started by another instance meanwhile are skipped and dropped
+    grouped = RepairRunner.groupByReplicas(freeSegments, replicas::get);
+    RepairSegment first = freeSegments.get(0);
+    Function<RepairSegment, Optional<RepairSegment>> stillFree
+        = segment -> first.equals(segment) ? Optional.empty() : Optional.of(segment);
+    assertEquals(freeSegments.get(1), RepairRunner.pollFreeSegment(grouped, Collections.emptyList(), stillFree).get());
+    assertFalse(grouped.containsKey(replicas.get(first)));
+
+    // segments whose replicas failed to be looked up are never taken, even with nothing running
+    replicas.put(first, Collections.emptyList());
+    grouped = RepairRunner.groupByReplicas(Collections.singletonList(first), replicas::get);
+    assertFalse(RepairRunner.pollFreeSegment(grouped, Collections.emptyList(), Optional::of).isPresent());
+    assertEquals(1, grouped.get(Collections.emptyList()).size());
+  }
+
   public static Map<List<String>, List<String>> threeNodeCluster() {
     Map<List<String>, List<String>> map = new HashMap<List<String>, List<String>>();
     map = addRangeToMap(map, "0", "50", "a1", "a2", "a3");
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.service;
+
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSegment;
+import io.cassandrareaper.core.Segment;
+import io.cassandrareaper.resources.view.RepairRunStatus;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+import com.datastax.driver.core.utils.UUIDs;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class RepairThroughputTest {
+
+  private static final DateTime START = DateTime.now().minusHours(1);
+  private static final Optional<BigInteger> RING_SIZE = Optional.of(BigInteger.valueOf(1000));
+
+  @Test
+  public void testMovingAverages() {
+    RepairRun run = mockRun("throughput_cluster");
+    RepairThroughput throughput = RepairThroughput.start(run, RING_SIZE, Collections.emptyList());
+    assertThat(throughput.segmentsPerMinute().isPresent()).isFalse();
+    assertThat(throughput.millisToRepair(10)).isEmpty();
+
+    // one segment of 100 tokens per minute
+    throughput.record(segment(run, 0, 100, 0, 60));
+    assertThat(throughput.segmentsPerMinute().getAsDouble()).isCloseTo(1.0, within(1e-9));
+    assertThat(throughput.tokensPerMinute().getAsDouble()).isCloseTo(100.0, within(1e-9));
+    assertThat(throughput.millisToRepair(10)).contains(600_000L);
+
+    // a segment completing 30 seconds later weighs in for a fifth
+    throughput.record(segment(run, 100, 200, 60, 90));
+    assertThat(throughput.millisToRepair(1)).contains(54_000L);
+
+    // a parallel segment completing out of order is one more segment repaired in the last 30 seconds
+    throughput.record(segment(run, 200, 300, 30, 80));
+    assertThat(throughput.millisToRepair(1)).contains(51_000L);
+
+    // a later interval is measured from the latest end time
+    throughput.record(segment(run, 300, 400, 90, 150));
+    assertThat(throughput.millisToRepair(1)).contains(52_800L);
+
+    // a segment without end time is not measured
+    throughput.record(
+        segment(run, 400, 500, 150, 160).with().withState(RepairSegment.State.RUNNING).withEndTime(null).build());
+    assertThat(throughput.millisToRepair(1)).contains(52_800L);
+
+    throughput.stop();
+    assertThat(RepairThroughput.of(run.getId())).isEmpty();
+  }
+
+  @Test
+  public void testReplaysRepairedSegments() {
+    RepairRun run = mockRun("replay_cluster");
+    RepairThroughput throughput = RepairThroughput.start(
+        run,
+        Optional.empty(),
+        Arrays.asList(segment(run, 100, 200, 60, 120), segment(run, 0, 100, 0, 60)));
+
+    assertThat(throughput.segmentsPerMinute().getAsDouble()).isCloseTo(1.0, within(1e-9));
+    assertThat(throughput.tokensPerMinute().isPresent()).isFalse();
+    assertThat(RepairThroughput.of(run.getId())).contains(throughput);
+
+    RepairRun otherRun = mockRun("replay_cluster");
+    RepairThroughput.start(otherRun, Optional.empty(), Arrays.asList(segment(otherRun, 0, 100, 0, 30)));
+    assertThat(RepairThroughput.clusterSegmentsPerMinute("replay_cluster")).isCloseTo(3.0, within(1e-9));
+
+    RepairRunStatus status = new RepairRunStatus();
+    status.setState(RepairRun.RunState.RUNNING);
+    status.setTotalSegments(12);
+    status.setSegmentsRepaired(2);
+    throughput.describe(status);
+    assertThat(status.getSegmentsPerMinute()).isCloseTo(1.0, within(1e-9));
+    assertThat(status.getTokensPerMinute()).isNull();
+    long eta = DateTime.parse(status.getEstimatedTimeOfArrivalIso8601()).getMillis();
+    assertThat(eta).isCloseTo(DateTime.now().plusMinutes(10).getMillis(), within(2_000L));
+  }
+
+  private static RepairRun mockRun(String clusterName) {
+    RepairRun run = mock(RepairRun.class);
+    when(run.getId()).thenReturn(UUIDs.timeBased());
+    when(run.getClusterName()).thenReturn(clusterName);
+    when(run.getStartTime()).thenReturn(START);
+    return run;
+  }
+
+  private static RepairSegment segment(RepairRun run, int startToken, int endToken, int startSecond, int endSecond) {
+    return RepairSegment.builder(
+            Segment.builder()
+                .withTokenRange(new RingRange(BigInteger.valueOf(startToken), BigInteger.valueOf(endToken)))
+                .build(),
+            UUID.randomUUID())
+        .withRunId(run.getId())
+        .withId(UUIDs.timeBased())
+        .withState(RepairSegment.State.DONE)
+        .withStartTime(START.plusSeconds(startSecond))
+        .withEndTime(START.plusSeconds(endSecond))
+        .build();
+  }
+}
@@ -22,11 +22,13 @@ import io.cassandrareaper.core.Segment;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -265,4 +267,79 @@ public final class SegmentGeneratorTest {
     // Ranges with 100 tokens will get coalesced two by two
     assertEquals(7, segments.size());
   }
+
+  @Test
+  public void resizeByDurationTest() {
+    SegmentGenerator sg = new SegmentGenerator(BigInteger.valueOf(0), BigInteger.valueOf(999));
+    List<BigInteger> ringTokens = Arrays.asList(BigInteger.valueOf(0), BigInteger.valueOf(500));
+    List<Segment> segments = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      segments.add(segment(i * 100, (i + 1) * 100 % 1000));
+    }
+
+    // the first quarter of the ring took 40 ms per token to repair, the rest 1 ms per token
+    List<Pair<Segment, Long>> history = Arrays.asList(
+        Pair.of(segment(0, 250), 10000L),
+        Pair.of(segment(250, 500), 250L),
+        Pair.of(segment(500, 0), 500L));
+
+    List<Segment> resized = sg.resizeByDuration(segments, ringTokens, history, 1000);
+
+    assertEquals(13, resized.size());
+    assertEquals("(0,25]", resized.get(0).getBaseRange().toString());
+    assertEquals("(175,200]", resized.get(7).getBaseRange().toString());
+    assertEquals("(200,233]", resized.get(8).getBaseRange().toString());
+    // fast segments are merged, but never across the token of a node
+    assertEquals("(300,500]", resized.get(11).getBaseRange().toString());
+    assertEquals("(500,0]", resized.get(12).getBaseRange().toString());
+    assertEquals(
+        BigInteger.valueOf(1000),
+        resized.stream().map(segment -> segment.countTokens(BigInteger.valueOf(1000))).reduce(BigInteger::add).get());
+
+    assertEquals(segments, sg.resizeByDuration(segments, ringTokens, Collections.emptyList(), 1000));
+  }
+
+  @Test
+  public void resizeByDurationAddsOverlappingHistoryTest() {
+    SegmentGenerator sg = new SegmentGenerator(BigInteger.valueOf(0), BigInteger.valueOf(999));
+    List<BigInteger> ringTokens = Arrays.asList(BigInteger.valueOf(0), BigInteger.valueOf(500));
+    List<Segment> segments = Arrays.asList(segment(0, 500), segment(500, 0));
+
+    // 2 ms per token each, overlapping on (250,500] and, wrapping around the ring, on (0,100]
+    List<Pair<Segment, Long>> history = Arrays.asList(
+        Pair.of(segment(0, 500), 1000L),
+        Pair.of(segment(250, 500), 500L),
+        Pair.of(segment(900, 100), 400L));
+
+    // the first segment is expected to take 1700 ms, the second 1000 ms with its uncovered tokens at the average cost
+    List<Segment> resized = sg.resizeByDuration(segments, ringTokens, history, 1000);
+
+    assertEquals(3, resized.size());
+    assertEquals("(0,250]", resized.get(0).getBaseRange().toString());
+    assertEquals("(250,500]", resized.get(1).getBaseRange().toString());
+    assertEquals("(500,0]", resized.get(2).getBaseRange().toString());
+  }
+
+  @Test
+  public void resizeByDurationSplitsCoalescedSegmentsTest() {
+    SegmentGenerator sg = new SegmentGenerator(BigInteger.valueOf(0), BigInteger.valueOf(999));
+    Segment coalesced = Segment.builder()
+        .withTokenRanges(Arrays.asList(range(0, 100), range(200, 300), range(400, 500), range(600, 700)))
+        .build();
+
+    List<Segment> resized = sg.resizeByDuration(
+        Arrays.asList(coalesced), Collections.emptyList(), Arrays.asList(Pair.of(coalesced, 1600L)), 1000);
+
+    assertEquals(2, resized.size());
+    assertEquals("[(0,100], (200,300]]", resized.get(0).getTokenRanges().toString());
+    assertEquals("[(400,500], (600,700]]", resized.get(1).getTokenRanges().toString());
+  }
+
+  private static Segment segment(int start, int end) {
+    return Segment.builder().withTokenRange(range(start, end)).build();
+  }
+
+  private static RingRange range(int start, int end) {
+    return new RingRange(BigInteger.valueOf(start), BigInteger.valueOf(end));
+  }
 }
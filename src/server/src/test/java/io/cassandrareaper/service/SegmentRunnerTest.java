@@ -54,6 +54,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -347,6 +348,12 @@ public final class SegmentRunnerTest {
 
     assertEquals(RepairSegment.State.DONE, storage.getRepairSegment(runId, segmentId).get().getState());
     assertEquals(0, storage.getRepairSegment(runId, segmentId).get().getFailCount());
+
+    for (String phase
+        : Arrays.asList("connectCoordinator", "canRepair", "updateSegment", "triggerRepair", "triggerToRunning")) {
+      String timer = MetricRegistry.name(SegmentRunner.class, phase, "reaper");
+      assertEquals(timer, 1, context.metricRegistry.timer(timer).getCount());
+    }
   }
 
   @Test
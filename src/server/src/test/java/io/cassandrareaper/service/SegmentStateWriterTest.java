@@ -0,0 +1,252 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.service;
+
+import io.cassandrareaper.AppContext;
+import io.cassandrareaper.ReaperApplicationConfiguration;
+import io.cassandrareaper.core.RepairSegment;
+import io.cassandrareaper.core.Segment;
+import io.cassandrareaper.storage.IStorage;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import io.dropwizard.db.DataSourceFactory;
+import org.awaitility.Duration;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class SegmentStateWriterTest {
+
+  private static final UUID RUN_ID = UUID.randomUUID();
+
+  @Test
+  public void testCoalescesPendingStates() throws InterruptedException {
+    AppContext context = new AppContext();
+    context.storage = mock(IStorage.class);
+    List<RepairSegment> written = Lists.newCopyOnWriteArrayList();
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    when(context.storage.updateRepairSegment(any())).then(invocation -> {
+      if (written.isEmpty()) {
+        writing.countDown();
+        blocked.await();
+      }
+      written.add(invocation.getArgument(0));
+      return true;
+    });
+    SegmentStateWriter writer
+        = new SegmentStateWriter(context, Optional.of(SegmentStateWriter.createExecutor(2)));
+
+    RepairSegment notStarted = segment(UUID.randomUUID());
+    RepairSegment started = notStarted.with().withState(RepairSegment.State.STARTED)
+        .withStartTime(DateTime.now()).withId(notStarted.getId()).build();
+    RepairSegment running = started.with().withState(RepairSegment.State.RUNNING).withId(notStarted.getId()).build();
+    final RepairSegment done = running.with().withState(RepairSegment.State.DONE)
+        .withEndTime(DateTime.now()).withId(notStarted.getId()).build();
+
+    // the first write blocks, the next states replace each other while it is in flight
+    writer.submit(started);
+    writing.await();
+    writer.submit(running);
+    writer.submit(running);
+    writer.submit(done);
+    assertThat(writer.getRepairSegment(RUN_ID, notStarted.getId()).get().getState())
+        .isEqualTo(RepairSegment.State.DONE);
+    assertThat(writer.flush(notStarted.getId(), 100)).isFalse();
+    verify(context.storage, never()).getRepairSegment(any(), any());
+
+    blocked.countDown();
+    assertThat(writer.flush(notStarted.getId(), 5000)).isTrue();
+    assertThat(written).extracting(RepairSegment::getState)
+        .containsExactly(RepairSegment.State.STARTED, RepairSegment.State.DONE);
+    assertThat(writer.pendingCount()).isZero();
+
+    String metric = MetricRegistry.name(SegmentStateWriter.class, "coalesced");
+    assertThat(context.metricRegistry.counter(metric).getCount()).isEqualTo(3);
+    metric = MetricRegistry.name(SegmentStateWriter.class, "writeLag");
+    assertThat(context.metricRegistry.timer(metric).getCount()).isEqualTo(2);
+    assertThat(context.metricRegistry.getGauges())
+        .containsKey(MetricRegistry.name(SegmentStateWriter.class, "pending"));
+  }
+
+  @Test
+  public void testRetriesFailedWrites() {
+    AppContext context = new AppContext();
+    context.storage = mock(IStorage.class);
+    AtomicInteger attempts = new AtomicInteger();
+    when(context.storage.updateRepairSegment(any())).then(invocation -> {
+      if (1 == attempts.incrementAndGet()) {
+        throw new IllegalStateException("storage is failing");
+      }
+      return true;
+    });
+    SegmentStateWriter writer
+        = new SegmentStateWriter(context, Optional.of(SegmentStateWriter.createExecutor(1)));
+
+    RepairSegment segment = segment(UUID.randomUUID());
+    writer.submit(segment);
+    await().atMost(Duration.FIVE_SECONDS).until(() -> 0 == writer.pendingCount());
+
+    assertThat(attempts.get()).isEqualTo(2);
+    String metric = MetricRegistry.name(SegmentStateWriter.class, "failures");
+    assertThat(context.metricRegistry.counter(metric).getCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testDropsWritesThatKeepFailing() {
+    AppContext context = new AppContext();
+    context.storage = mock(IStorage.class);
+    when(context.storage.updateRepairSegment(any())).thenThrow(new IllegalStateException("storage is failing"));
+    SegmentStateWriter writer
+        = new SegmentStateWriter(context, Optional.of(SegmentStateWriter.createExecutor(1)), 10);
+
+    RepairSegment segment = segment(UUID.randomUUID());
+    writer.submit(segment);
+    await().atMost(Duration.FIVE_SECONDS).until(() -> 0 == writer.pendingCount());
+
+    verify(context.storage, times(10)).updateRepairSegment(segment);
+    String metric = MetricRegistry.name(SegmentStateWriter.class, "dropped");
+    assertThat(context.metricRegistry.counter(metric).getCount()).isEqualTo(1);
+    assertThat(writer.flush(segment.getId(), 100)).isTrue();
+  }
+
+  @Test
+  public void testDropsWritesWithoutLead() {
+    AppContext context = new AppContext();
+    context.storage = mock(IStorage.class);
+    when(context.storage.updateRepairSegment(any())).thenThrow(new AssertionError("no lead on segment"));
+    SegmentStateWriter writer
+        = new SegmentStateWriter(context, Optional.of(SegmentStateWriter.createExecutor(1)));
+
+    RepairSegment segment = segment(UUID.randomUUID());
+    writer.submit(segment);
+    await().atMost(Duration.FIVE_SECONDS).until(() -> 0 == writer.pendingCount());
+
+    // without the lead the write is not retried
+    verify(context.storage, times(1)).updateRepairSegment(segment);
+  }
+
+  @Test
+  public void testCancelWaitsForTheWriteInFlight() throws InterruptedException {
+    AppContext context = new AppContext();
+    context.storage = mock(IStorage.class);
+    List<RepairSegment> written = Lists.newCopyOnWriteArrayList();
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    when(context.storage.updateRepairSegment(any())).then(invocation -> {
+      writing.countDown();
+      blocked.await();
+      written.add(invocation.getArgument(0));
+      return true;
+    });
+    SegmentStateWriter writer
+        = new SegmentStateWriter(context, Optional.of(SegmentStateWriter.createExecutor(1)));
+
+    RepairSegment notStarted = segment(UUID.randomUUID());
+    final RepairSegment started = notStarted.with().withState(RepairSegment.State.STARTED)
+        .withStartTime(DateTime.now()).withId(notStarted.getId()).build();
+    writer.submit(notStarted);
+    writing.await();
+    writer.submit(started);
+
+    AtomicBoolean cancelled = new AtomicBoolean();
+    Thread canceller = new Thread(() -> cancelled.set(writer.cancel(notStarted.getId())));
+    canceller.start();
+    canceller.join(200);
+    assertThat(canceller.isAlive()).isTrue();
+
+    blocked.countDown();
+    canceller.join(5000);
+    assertThat(cancelled.get()).isTrue();
+    assertThat(written).containsExactly(notStarted);
+    assertThat(writer.pendingCount()).isZero();
+    assertThat(writer.cancel(notStarted.getId())).isFalse();
+  }
+
+  @Test
+  public void testOnlyRemoteStoragesAreWrittenAsynchronously() {
+    AppContext context = new AppContext();
+    assertThat(SegmentStateWriter.isRemote(context)).isFalse();
+
+    context.config = new ReaperApplicationConfiguration();
+    context.config.setStorageType("memory");
+    assertThat(SegmentStateWriter.isRemote(context)).isFalse();
+    context.config.setStorageType("h2");
+    assertThat(SegmentStateWriter.isRemote(context)).isFalse();
+    context.config.setStorageType("cassandra");
+    assertThat(SegmentStateWriter.isRemote(context)).isTrue();
+    context.config.setStorageType("postgres");
+    assertThat(SegmentStateWriter.isRemote(context)).isTrue();
+
+    DataSourceFactory dataSourceFactory = new DataSourceFactory();
+    context.config.setPostgresDataSourceFactory(dataSourceFactory);
+    context.config.setStorageType("database");
+    dataSourceFactory.setUrl("jdbc:h2:~/reaper-db/db;MODE=PostgreSQL");
+    assertThat(SegmentStateWriter.isRemote(context)).isFalse();
+    dataSourceFactory.setUrl("jdbc:postgresql://127.0.0.1/reaper");
+    assertThat(SegmentStateWriter.isRemote(context)).isTrue();
+  }
+
+  @Test
+  public void testWritesInlineWithoutExecutor() {
+    AppContext context = new AppContext();
+    context.storage = mock(IStorage.class);
+    SegmentStateWriter writer = new SegmentStateWriter(context, Optional.empty());
+
+    RepairSegment segment = segment(UUID.randomUUID());
+    writer.submit(segment);
+    verify(context.storage).updateRepairSegment(segment);
+    assertThat(writer.pendingCount()).isZero();
+
+    writer.getRepairSegment(RUN_ID, segment.getId());
+    verify(context.storage).getRepairSegment(RUN_ID, segment.getId());
+  }
+
+  @Test
+  public void testSharedPerContext() {
+    AppContext context = new AppContext();
+    assertThat(SegmentStateWriter.of(context)).isSameAs(SegmentStateWriter.of(context));
+    assertThat(SegmentStateWriter.of(context)).isNotSameAs(SegmentStateWriter.of(new AppContext()));
+  }
+
+  private static RepairSegment segment(UUID segmentId) {
+    return RepairSegment.builder(
+            Segment.builder().withTokenRange(new RingRange(BigInteger.ONE, BigInteger.TEN)).build(),
+            UUID.randomUUID())
+        .withRunId(RUN_ID)
+        .withId(segmentId)
+        .build();
+  }
+}
@@ -22,6 +22,7 @@ import io.cassandrareaper.ReaperException;
 import io.cassandrareaper.core.Cluster;
 import io.cassandrareaper.core.Node;
 import io.cassandrareaper.core.Snapshot;
+import io.cassandrareaper.core.SnapshotJob;
 import io.cassandrareaper.jmx.ClusterFacade;
 import io.cassandrareaper.jmx.JmxConnectionFactory;
 import io.cassandrareaper.jmx.JmxProxy;
@@ -29,22 +30,28 @@ import io.cassandrareaper.jmx.JmxProxyTest;
 import io.cassandrareaper.storage.IStorage;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.ImmutableSet;
 import org.apache.cassandra.service.StorageServiceMBean;
 import org.apache.commons.lang3.tuple.Pair;
 import org.assertj.core.api.Assertions;
+import org.awaitility.Awaitility;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -205,4 +212,76 @@ public final class SnapshotServiceTest {
     }
     verify(storageMBean, times(3)).takeSnapshot("snapshot");
   }
+
+  @Test
+  public void testSubmitSnapshotClusterWide() throws ReaperException, ClassNotFoundException, InterruptedException {
+
+    JmxProxy proxy = (JmxProxy) mock(Class.forName("io.cassandrareaper.jmx.JmxProxyImpl"));
+    StorageServiceMBean storageMBean = Mockito.mock(StorageServiceMBean.class);
+    JmxProxyTest.mockGetStorageServiceMBean(proxy, storageMBean);
+
+    AppContext cxt = new AppContext();
+    cxt.config = TestRepairConfiguration.defaultConfig();
+    cxt.jmxConnectionFactory = mock(JmxConnectionFactory.class);
+    when(cxt.jmxConnectionFactory.connect(Mockito.any(Node.class))).thenReturn(proxy);
+    when(cxt.jmxConnectionFactory.connectAny(Mockito.any(Cluster.class))).thenReturn(proxy);
+    ClusterFacade clusterFacadeSpy = Mockito.spy(ClusterFacade.create(cxt));
+    Mockito.doReturn(Arrays.asList("127.0.0.2", "127.0.0.1", "127.0.0.3")).when(clusterFacadeSpy).getLiveNodes(any());
+    Mockito.doReturn("dc1").when(clusterFacadeSpy).getDatacenter(any(Cluster.class), eq("127.0.0.1"));
+    Mockito.doReturn("dc1").when(clusterFacadeSpy).getDatacenter(any(Cluster.class), eq("127.0.0.2"));
+    Mockito.doReturn("dc2").when(clusterFacadeSpy).getDatacenter(any(Cluster.class), eq("127.0.0.3"));
+
+    // the first node of dc1 never answers in time, and keeps the slot of dc1 until it is interrupted
+    AtomicBoolean interrupted = new AtomicBoolean();
+    AtomicInteger dc1Calls = new AtomicInteger();
+    AtomicInteger maxDc1Calls = new AtomicInteger();
+    Mockito.doAnswer(invocation -> {
+      Node node = invocation.getArgument(1);
+      boolean dc1 = !"127.0.0.3".equals(node.getHostname());
+      if (dc1) {
+        maxDc1Calls.accumulateAndGet(dc1Calls.incrementAndGet(), Math::max);
+      }
+      try {
+        if ("127.0.0.2".equals(node.getHostname())) {
+          Thread.sleep(10_000);
+        }
+        return Pair.of(node, invocation.getArgument(0));
+      } catch (InterruptedException e) {
+        interrupted.set(true);
+        throw e;
+      } finally {
+        if (dc1) {
+          dc1Calls.decrementAndGet();
+        }
+      }
+    }).when(clusterFacadeSpy).takeSnapshot(anyString(), any(Node.class));
+
+    cxt.storage = mock(IStorage.class);
+    Cluster cluster = new Cluster("testCluster", Optional.of("murmur3"), ImmutableSet.of("127.0.0.1"));
+    when(cxt.storage.getCluster(anyString())).thenReturn(Optional.of(cluster));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      SnapshotService service = SnapshotService.create(cxt, executor, () -> clusterFacadeSpy);
+
+      SnapshotJob job = service
+          .submitSnapshotClusterWide("snapshot", "testCluster", "testOwner", "testCause", 1, Duration.ofMillis(500));
+
+      Assertions.assertThat(service.getSnapshotJob(job.getId())).contains(job);
+      Awaitility.await().atMost(5, TimeUnit.SECONDS).until(job::isTerminated);
+
+      Assertions.assertThat(job.getState()).isEqualTo(SnapshotJob.State.FAILED);
+      Assertions.assertThat(job.getNodes()).hasSize(3);
+      Assertions.assertThat(job.getNode("127.0.0.1").getState()).isEqualTo(SnapshotJob.State.DONE);
+      Assertions.assertThat(job.getNode("127.0.0.2").getState()).isEqualTo(SnapshotJob.State.TIMED_OUT);
+      Assertions.assertThat(job.getNode("127.0.0.2").getDatacenter()).isEqualTo("dc1");
+      Assertions.assertThat(job.getNode("127.0.0.3").getState()).isEqualTo(SnapshotJob.State.DONE);
+      Assertions.assertThat(job.getNode("127.0.0.3").getDatacenter()).isEqualTo("dc2");
+      Assertions.assertThat(interrupted.get()).isTrue();
+      Assertions.assertThat(maxDc1Calls.get()).isEqualTo(1);
+      verify(cxt.storage, times(1)).saveSnapshot(any(Snapshot.class));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.service;
+
+import io.cassandrareaper.AppContext;
+import io.cassandrareaper.ReaperException;
+import io.cassandrareaper.core.Cluster;
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSegment;
+import io.cassandrareaper.core.RepairUnit;
+import io.cassandrareaper.core.Segment;
+import io.cassandrareaper.resources.view.RepairRunStatus;
+import io.cassandrareaper.storage.CassandraStorage;
+import io.cassandrareaper.storage.IDistributedStorage;
+import io.cassandrareaper.storage.IStorage;
+import io.cassandrareaper.storage.MemoryStorage;
+import io.cassandrareaper.storage.ObservedStorage;
+import io.cassandrareaper.storage.StorageListener;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.apache.cassandra.repair.RepairParallelism;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public final class StatusViewCacheTest {
+
+  private static final String CLUSTER_NAME = "test_cluster";
+
+  private IStorage storage;
+  private AppContext context;
+  private StatusViewCache statusViews;
+  private RepairRun run;
+
+  @Before
+  public void setUp() throws ReaperException {
+    storage = spy(new MemoryStorage());
+    context = new AppContext();
+    context.storage = storage;
+    statusViews = StatusViewCache.create(context);
+    context.storage = ObservedStorage.create(storage, statusViews);
+
+    context.storage.addCluster(new Cluster(CLUSTER_NAME, null, Collections.singleton("127.0.0.1")));
+    RepairUnit unit = context.storage.addRepairUnit(
+        RepairUnit.builder()
+            .clusterName(CLUSTER_NAME)
+            .keyspaceName("test_keyspace")
+            .columnFamilies(Collections.emptySet())
+            .incrementalRepair(false)
+            .nodes(Collections.emptySet())
+            .datacenters(Collections.emptySet())
+            .blacklistedTables(Collections.emptySet())
+            .repairThreadCount(1));
+
+    List<RepairSegment.Builder> segments = Lists.newArrayList(
+        RepairSegment.builder(
+            Segment.builder().withTokenRange(new RingRange(BigInteger.ZERO, new BigInteger("100"))).build(),
+            unit.getId()),
+        RepairSegment.builder(
+            Segment.builder().withTokenRange(new RingRange(new BigInteger("100"), new BigInteger("200"))).build(),
+            unit.getId()));
+
+    run = context.storage.addRepairRun(
+        RepairRun.builder(CLUSTER_NAME, unit.getId())
+            .intensity(0.5)
+            .segmentCount(2)
+            .repairParallelism(RepairParallelism.PARALLEL)
+            .tables(ImmutableSet.of("table1")),
+        segments);
+  }
+
+  @Test
+  public void testRepairRunStatusesServedFromMemory() {
+    assertThat(statusViews.getRepairRunStatuses(CLUSTER_NAME)).hasSize(1);
+    assertThat(statusViews.getRepairRunStatuses(CLUSTER_NAME)).hasSize(1);
+
+    verify(storage, times(1)).getRepairRunsForCluster(CLUSTER_NAME, Optional.empty());
+    verify(storage, times(1)).getRepairUnit(run.getRepairUnitId());
+    verify(storage, times(1)).getSegmentAmountForRepairRunWithState(run.getId(), RepairSegment.State.DONE);
+  }
+
+  @Test
+  public void testRepairRunStatusFollowsStorageMutations() {
+    assertThat(statusViews.getRepairRunStatuses(CLUSTER_NAME).get(0).getSegmentsRepaired()).isEqualTo(0);
+
+    context.storage.updateRepairRun(
+        run.with().runState(RepairRun.RunState.RUNNING).startTime(DateTime.now()).build(run.getId()));
+    RepairSegment segment = context.storage.getNextFreeSegmentInRange(run.getId(), Optional.empty()).get();
+    context.storage.updateRepairSegment(
+        segment.with()
+            .withState(RepairSegment.State.DONE)
+            .withStartTime(DateTime.now())
+            .withEndTime(DateTime.now())
+            .build());
+
+    RepairRunStatus status = statusViews.getRepairRunStatuses(CLUSTER_NAME).get(0);
+    assertThat(status.getState()).isEqualTo(RepairRun.RunState.RUNNING);
+    assertThat(status.getSegmentsRepaired()).isEqualTo(1);
+    // the updated run was swapped into the cached list, only the segment count got reloaded
+    verify(storage, times(1)).getRepairRunsForCluster(CLUSTER_NAME, Optional.empty());
+    verify(storage, times(2)).getSegmentAmountForRepairRunWithState(run.getId(), RepairSegment.State.DONE);
+
+    context.storage.deleteRepairRun(run.getId());
+    assertThat(statusViews.getRepairRunStatuses(CLUSTER_NAME)).isEmpty();
+  }
+
+  @Test
+  public void testUncachedAlwaysQueriesStorage() {
+    StatusViewCache uncached = StatusViewCache.uncached(context);
+    uncached.getRepairRunStatuses(CLUSTER_NAME);
+    uncached.getRepairRunStatuses(CLUSTER_NAME);
+
+    verify(storage, times(2)).getRepairRunsForCluster(eq(CLUSTER_NAME), any());
+  }
+
+  @Test
+  public void testObservedStorageKeepsStorageInterfaces() {
+    IStorage observed = ObservedStorage.create(mock(CassandraStorage.class), new StorageListener() {});
+    assertThat(observed).isInstanceOf(IDistributedStorage.class);
+    assertThat(context.storage).isNotInstanceOf(IDistributedStorage.class);
+  }
+}
@@ -47,6 +47,7 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -202,6 +203,32 @@ public class StreamServiceTest {
     assertEquals(1, result.size());
   }
 
+  @Test
+  public void testListStreamsServedFromMemory()
+      throws OpenDataException, ReaperException, ClassNotFoundException, InterruptedException {
+
+    JmxProxy proxy = (JmxProxy) mock(Class.forName("io.cassandrareaper.jmx.JmxProxyImpl"));
+    StreamManagerMBean streamingManagerMBean = Mockito.mock(StreamManagerMBean.class);
+    JmxProxyTest.mockGetStreamManagerMBean(proxy, streamingManagerMBean);
+    when(streamingManagerMBean.getCurrentStreams()).thenReturn(ImmutableSet.of(makeCompositeData_3_11_2()));
+
+    AppContext cxt = new AppContext();
+    cxt.config = TestRepairConfiguration.defaultConfig();
+    cxt.jmxConnectionFactory = mock(JmxConnectionFactory.class);
+    when(cxt.jmxConnectionFactory.connect(Mockito.any(Node.class))).thenReturn(proxy);
+
+    StreamService streamService = StreamService.create(cxt);
+    Node node = Node.builder().withClusterName("test").withHostname("127.0.0.1").build();
+
+    List<StreamSession> first = streamService.listStreams(node);
+    List<StreamSession> second = streamService.listStreams(node);
+
+    // the node emits notifications, so the second listing comes from memory without polling nor parsing again
+    verify(streamingManagerMBean, times(1)).getCurrentStreams();
+    assertEquals(1, second.size());
+    assertSame(first, second);
+  }
+
   private CompositeData makeCompositeData_3_11_2() throws OpenDataException {
 
     Map<String, Object> fields = Maps.newTreeMap();
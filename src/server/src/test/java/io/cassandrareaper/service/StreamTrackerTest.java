@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.cassandrareaper.service;
+
+import io.cassandrareaper.core.Stream;
+import io.cassandrareaper.core.StreamSession;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.OpenDataException;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.cassandra.streaming.ProgressInfo;
+import org.apache.cassandra.streaming.SessionInfo;
+import org.apache.cassandra.streaming.StreamSession.State;
+import org.apache.cassandra.streaming.StreamState;
+import org.apache.cassandra.streaming.StreamSummary;
+import org.apache.cassandra.streaming.management.ProgressInfoCompositeData;
+import org.apache.cassandra.streaming.management.SessionCompleteEventCompositeData;
+import org.apache.cassandra.streaming.management.SessionInfoCompositeData;
+import org.apache.cassandra.streaming.management.StreamStateCompositeData;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public final class StreamTrackerTest {
+
+  private static final UUID PLAN_ID = UUID.fromString("7805a580-8038-11e8-adb7-4751e6155332");
+  private static final String FILE = "/cass/data/keyspace1/standard1-af5311f0633a11e89d71710c22f847e7/lb-4-big-Data.db";
+
+  @Test
+  public void testNotificationsUpdateTrackedSessions() throws UnknownHostException, OpenDataException {
+    InetAddress peer = InetAddress.getByName("127.0.0.2");
+    SessionInfo session = newSession(peer, State.STREAMING);
+
+    StreamTracker tracker = new StreamTracker("127.0.0.1");
+    tracker.setSubscribed(true);
+    tracker.synced(ImmutableMap.of(
+        StreamStateCompositeData.toCompositeData(newStreamState(session)),
+        newStreamState(session)));
+
+    assertFalse(tracker.needsSync(60_000, 0));
+
+    tracker.handleNotification("test", "127.0.0.1", progress(peer, 10), System.currentTimeMillis());
+
+    List<StreamSession> sessions = tracker.getSessions();
+    assertEquals(1, sessions.size());
+    Stream stream = sessions.get(0).getStreams().values().iterator().next();
+    assertEquals(10, stream.getSizeSent());
+    assertFalse(tracker.needsSync(60_000, 0));
+
+    tracker.handleNotification("test", "127.0.0.1", sessionComplete(peer), System.currentTimeMillis());
+    stream = tracker.getSessions().get(0).getStreams().values().iterator().next();
+    assertTrue(stream.getCompleted());
+    assertEquals(10, stream.getSizeSent());
+
+    tracker.handleNotification(
+        "test",
+        "127.0.0.1",
+        StreamStateCompositeData.toCompositeData(newStreamState(newSession(peer, State.COMPLETE))),
+        System.currentTimeMillis());
+
+    assertTrue(tracker.getSessions().isEmpty());
+    assertFalse(tracker.needsSync(60_000, 0));
+  }
+
+  @Test
+  public void testNewPlanFromNotification() throws UnknownHostException {
+    StreamTracker tracker = new StreamTracker("127.0.0.1");
+    tracker.setSubscribed(true);
+    tracker.synced(ImmutableMap.of());
+
+    SessionInfo session = newSession(InetAddress.getByName("127.0.0.2"), State.PREPARING);
+    tracker.handleNotification(
+        "test",
+        "127.0.0.1",
+        SessionInfoCompositeData.toCompositeData(PLAN_ID, session),
+        System.currentTimeMillis());
+
+    assertEquals(1, tracker.getSessions().size());
+    assertEquals(PLAN_ID.toString(), tracker.getSessions().get(0).getPlanId());
+    // the notification does not carry the plan's description
+    assertTrue(tracker.needsSync(60_000, 0));
+  }
+
+  @Test
+  public void testUnknownSessionForcesPolling() throws UnknownHostException {
+    StreamTracker tracker = new StreamTracker("127.0.0.1");
+    tracker.setSubscribed(true);
+    tracker.synced(ImmutableMap.of());
+    assertFalse(tracker.needsSync(60_000, 0));
+
+    tracker.handleNotification(
+        "test",
+        "127.0.0.1",
+        progress(InetAddress.getByName("127.0.0.2"), 10),
+        System.currentTimeMillis());
+
+    assertTrue(tracker.getSessions().isEmpty());
+    assertTrue(tracker.needsSync(60_000, 0));
+  }
+
+  @Test
+  public void testFailedPlanForcesPolling() {
+    StreamTracker tracker = new StreamTracker("127.0.0.1");
+    tracker.setSubscribed(true);
+    tracker.synced(ImmutableMap.of());
+
+    tracker.handleNotification("test", "127.0.0.1", null, System.currentTimeMillis());
+
+    assertTrue(tracker.needsSync(60_000, 0));
+  }
+
+  @Test
+  public void testUnparseableNotificationForcesPolling() {
+    StreamTracker tracker = new StreamTracker("127.0.0.1");
+    tracker.setSubscribed(true);
+    tracker.synced(ImmutableMap.of());
+
+    CompositeData payload = Mockito.mock(CompositeData.class, Mockito.RETURNS_DEEP_STUBS);
+    Mockito.when(payload.getCompositeType().getTypeName()).thenReturn(ProgressInfo.class.getName());
+
+    tracker.handleNotification("test", "127.0.0.1", payload, System.currentTimeMillis());
+
+    assertTrue(tracker.needsSync(60_000, 0));
+  }
+
+  private static SessionInfo newSession(InetAddress peer, State state) {
+    return new SessionInfo(
+        peer,
+        0,
+        peer,
+        Collections.emptySet(),
+        Collections.singleton(new StreamSummary(UUID.randomUUID(), 1, 100)),
+        state);
+  }
+
+  private static StreamState newStreamState(SessionInfo session) {
+    return new StreamState(PLAN_ID, "Repair", ImmutableSet.of(session));
+  }
+
+  private static CompositeData progress(InetAddress peer, long bytes) {
+    return ProgressInfoCompositeData.toCompositeData(
+        PLAN_ID,
+        new ProgressInfo(peer, 0, FILE, ProgressInfo.Direction.OUT, bytes, 100));
+  }
+
+  private static CompositeData sessionComplete(InetAddress peer) throws OpenDataException {
+    return new CompositeDataSupport(
+        SessionCompleteEventCompositeData.COMPOSITE_TYPE,
+        new String[]{"planId", "peer", "success"},
+        new Object[]{PLAN_ID.toString(), peer.getHostAddress(), true});
+  }
+}
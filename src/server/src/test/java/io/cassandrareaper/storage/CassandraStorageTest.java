@@ -17,18 +17,218 @@
 
 package io.cassandrareaper.storage;
 
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairUnit;
+import io.cassandrareaper.storage.cassandra.CircuitBreaker;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.VersionNumber;
+import com.datastax.driver.core.utils.UUIDs;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.cognitor.cassandra.migration.MigrationRepository;
 import org.fest.assertions.api.Assertions;
+import org.junit.Before;
 import org.junit.Test;
 
-
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public final class CassandraStorageTest {
 
+  private static final String CLUSTER_NAME = "test";
+  private static final String KEYSPACE_NAME = "test_keyspace";
+
+  private final Map<String, PreparedStatement> statements = Maps.newHashMap();
+  private Session session;
+
+  @Before
+  public void mockSession() {
+    session = mock(Session.class);
+    when(session.prepare(anyString())).then(
+        invocation -> statements.computeIfAbsent(
+            invocation.getArgument(0), query -> mock(PreparedStatement.class, RETURNS_SELF)));
+
+    Host host = mock(Host.class);
+    when(host.getCassandraVersion()).thenReturn(VersionNumber.parse("3.11.4"));
+    com.datastax.driver.core.Cluster cassandra = mock(com.datastax.driver.core.Cluster.class, RETURNS_DEEP_STUBS);
+    when(cassandra.getMetadata().getAllHosts()).thenReturn(Collections.singleton(host));
+    when(session.getCluster()).thenReturn(cassandra);
+  }
+
   @Test
   public void testMigrationRepository() {
     MigrationRepository migration = new MigrationRepository("db/cassandra");
     Assertions.assertThat(migration.getLatestVersion()).isGreaterThan(0);
   }
 
+  @Test
+  public void testGetRepairRunsForClusterReadsOnlyTheRequestedRuns() {
+    final CassandraStorage storage = createStorage();
+    // the index is clustered newest first
+    List<UUID> runIds = Lists.reverse(Arrays.asList(UUIDs.timeBased(), UUIDs.timeBased(), UUIDs.timeBased()));
+
+    BoundStatement runIdsStmt = mock(BoundStatement.class, RETURNS_SELF);
+    when(prepared("FROM repair_run_by_cluster_v2 WHERE cluster_name = ? LIMIT ?").bind(CLUSTER_NAME, 3))
+        .thenReturn(runIdsStmt);
+    List<Row> runIdRows = runIds.stream().map(CassandraStorageTest::idRow).collect(Collectors.toList());
+    when(session.execute(runIdsStmt)).then(invocation -> resultSet(runIdRows));
+    for (UUID runId : runIds) {
+      mockRepairRunRead(runId);
+    }
+
+    List<UUID> repairRuns = storage.getRepairRunsForCluster(CLUSTER_NAME, Optional.of(3))
+        .stream()
+        .map(RepairRun::getId)
+        .collect(Collectors.toList());
+
+    Assertions.assertThat(repairRuns).isEqualTo(runIds);
+    // the limit is pushed down to the index query, rather than applied once every id was read
+    verify(runIdsStmt).setFetchSize(3);
+  }
+
+  @Test
+  public void testGetRepairRunsForClusterWithoutRunsToRead() {
+    CassandraStorage storage = createStorage();
+    Assertions.assertThat(storage.getRepairRunsForCluster(CLUSTER_NAME, Optional.of(0))).isEmpty();
+    verify(session, never()).execute(any(Statement.class));
+  }
+
+  @Test
+  public void testGetRepairUnitReadsOnlyTheUnitsOfItsKeyspace() {
+    final CassandraStorage storage = createStorage();
+    RepairUnit.Builder otherTables = repairUnit().columnFamilies(Collections.singleton("other"));
+    final RepairUnit.Builder params = repairUnit();
+    UUID otherTablesId = UUIDs.timeBased();
+    UUID missingId = UUIDs.timeBased();
+    UUID unitId = UUIDs.timeBased();
+
+    BoundStatement unitIdsStmt = mock(BoundStatement.class);
+    when(prepared("FROM repair_unit_by_cluster_and_keyspace WHERE cluster_name = ? and keyspace_name = ?")
+        .bind(CLUSTER_NAME, KEYSPACE_NAME))
+        .thenReturn(unitIdsStmt);
+    List<Row> unitIdRows = Arrays.asList(idRow(otherTablesId), idRow(missingId), idRow(unitId));
+    when(session.execute(unitIdsStmt)).then(invocation -> resultSet(unitIdRows));
+    mockRepairUnitRead(otherTablesId, Optional.of(otherTables));
+    // an index entry whose unit was never written is skipped
+    mockRepairUnitRead(missingId, Optional.empty());
+    mockRepairUnitRead(unitId, Optional.of(params));
+
+    Optional<RepairUnit> repairUnit = storage.getRepairUnit(params);
+
+    Assertions.assertThat(repairUnit.isPresent()).isTrue();
+    Assertions.assertThat(repairUnit.get().getId()).isEqualTo(unitId);
+    Assertions.assertThat(repairUnit.get().with()).isEqualTo(params);
+    // only the units of the cluster and keyspace are read, not the whole repair_unit_v1 table
+    verify(session, never()).execute(any(SimpleStatement.class));
+  }
+
+  @Test
+  public void testGetRepairUnitWithoutUnitsInItsKeyspace() {
+    final CassandraStorage storage = createStorage();
+    BoundStatement unitIdsStmt = mock(BoundStatement.class);
+    when(prepared("FROM repair_unit_by_cluster_and_keyspace WHERE cluster_name = ? and keyspace_name = ?")
+        .bind(CLUSTER_NAME, KEYSPACE_NAME))
+        .thenReturn(unitIdsStmt);
+    when(session.execute(unitIdsStmt)).then(invocation -> resultSet(Collections.emptyList()));
+
+    Assertions.assertThat(storage.getRepairUnit(repairUnit()).isPresent()).isFalse();
+    verify(session, never()).execute(any(SimpleStatement.class));
+  }
+
+  private CassandraStorage createStorage() {
+    return new CassandraStorage(session, CircuitBreaker.create(new MetricRegistry()), new MetricRegistry());
+  }
+
+  private PreparedStatement prepared(String queryPart) {
+    List<String> queries = statements.keySet().stream()
+        .filter(query -> query.contains(queryPart))
+        .collect(Collectors.toList());
+
+    Assertions.assertThat(queries).hasSize(1);
+    return statements.get(queries.get(0));
+  }
+
+  private void mockRepairRunRead(UUID runId) {
+    Row row = idRow(runId);
+    when(row.getString("cluster_name")).thenReturn(CLUSTER_NAME);
+    when(row.getUUID("repair_unit_id")).thenReturn(UUIDs.timeBased());
+    when(row.getDouble("intensity")).thenReturn(0.5);
+    when(row.getInt("segment_count")).thenReturn(10);
+    when(row.getString("repair_parallelism")).thenReturn("parallel");
+    when(row.getString("state")).thenReturn(RepairRun.RunState.NOT_STARTED.name());
+
+    BoundStatement runStmt = mock(BoundStatement.class);
+    when(prepared("AS version FROM repair_run WHERE id = ?").bind(runId)).thenReturn(runStmt);
+    ResultSetFuture future = mock(ResultSetFuture.class);
+    when(future.getUninterruptibly()).then(invocation -> resultSet(Collections.singletonList(row)));
+    when(session.executeAsync(runStmt)).thenReturn(future);
+  }
+
+  private void mockRepairUnitRead(UUID unitId, Optional<RepairUnit.Builder> unit) {
+    List<Row> rows = Lists.newArrayList();
+    if (unit.isPresent()) {
+      Row row = idRow(unitId);
+      when(row.getString("cluster_name")).thenReturn(unit.get().clusterName);
+      when(row.getString("keyspace_name")).thenReturn(unit.get().keyspaceName);
+      when(row.getSet("column_families", String.class)).thenReturn(unit.get().columnFamilies);
+      when(row.getBool("incremental_repair")).thenReturn(unit.get().incrementalRepair);
+      when(row.getSet("nodes", String.class)).thenReturn(unit.get().nodes);
+      when(row.getSet("datacenters", String.class)).thenReturn(unit.get().datacenters);
+      when(row.getSet("blacklisted_tables", String.class)).thenReturn(unit.get().blacklistedTables);
+      when(row.getInt("repair_thread_count")).thenReturn(unit.get().repairThreadCount);
+      rows.add(row);
+    }
+    BoundStatement unitStmt = mock(BoundStatement.class);
+    when(prepared("SELECT * FROM repair_unit_v1 WHERE id = ?").bind(unitId)).thenReturn(unitStmt);
+    when(session.execute(unitStmt)).then(invocation -> resultSet(rows));
+  }
+
+  private static RepairUnit.Builder repairUnit() {
+    return RepairUnit.builder()
+        .clusterName(CLUSTER_NAME)
+        .keyspaceName(KEYSPACE_NAME)
+        .columnFamilies(Collections.singleton("table"))
+        .incrementalRepair(false)
+        .nodes(Collections.emptySet())
+        .datacenters(Collections.emptySet())
+        .blacklistedTables(Collections.emptySet())
+        .repairThreadCount(1);
+  }
+
+  private static Row idRow(UUID id) {
+    Row row = mock(Row.class);
+    when(row.getUUID("id")).thenReturn(id);
+    return row;
+  }
+
+  private static ResultSet resultSet(List<Row> rows) {
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.iterator()).then(invocation -> rows.iterator());
+    when(resultSet.one()).thenReturn(rows.isEmpty() ? null : rows.get(0));
+    return resultSet;
+  }
 }
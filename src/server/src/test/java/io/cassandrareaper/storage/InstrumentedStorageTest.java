@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage;
+
+import io.cassandrareaper.ReaperException;
+import io.cassandrareaper.core.RepairRun;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class InstrumentedStorageTest {
+
+  private static final String CALLER = InstrumentedStorageTest.class.getSimpleName();
+
+  @Test
+  public void testTimesCallsAndCountsRowsPerCaller() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    CassandraStorage storage = mock(CassandraStorage.class);
+    when(storage.getRepairRunsForCluster(any(), any()))
+        .thenReturn(Lists.newArrayList(mock(RepairRun.class), mock(RepairRun.class)));
+    when(storage.getRepairRun(any())).thenReturn(Optional.empty());
+
+    IStorage instrumented = InstrumentedStorage.create(storage, metricRegistry);
+    instrumented.getRepairRunsForCluster("test", Optional.empty());
+    instrumented.getRepairRunsForCluster("test", Optional.empty());
+    instrumented.getRepairRun(UUID.randomUUID());
+    instrumented.isStorageConnected();
+
+    assertThat(metricRegistry.timer(InstrumentedStorage.timerName("getRepairRunsForCluster", CALLER)).getCount())
+        .isEqualTo(2);
+    assertThat(metricRegistry.histogram(InstrumentedStorage.rowsName("getRepairRunsForCluster", CALLER))
+        .getSnapshot().getMax()).isEqualTo(2);
+    assertThat(metricRegistry.histogram(InstrumentedStorage.rowsName("getRepairRun", CALLER))
+        .getSnapshot().getMax()).isEqualTo(0);
+    assertThat(metricRegistry.timer(InstrumentedStorage.timerName("isStorageConnected", CALLER)).getCount())
+        .isEqualTo(1);
+    assertThat(metricRegistry.getHistograms())
+        .doesNotContainKey(InstrumentedStorage.rowsName("isStorageConnected", CALLER));
+  }
+
+  @Test
+  public void testCallerThroughAnotherWrapper() throws ReaperException {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    IStorage storage = ObservedStorage.create(
+        InstrumentedStorage.create(mock(CassandraStorage.class), metricRegistry),
+        new StorageListener() {});
+
+    storage.getClusters();
+    assertThat(metricRegistry.timer(InstrumentedStorage.timerName("getClusters", CALLER)).getCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testKeepsStorageInterfacesAndExceptions() {
+    CassandraStorage storage = mock(CassandraStorage.class);
+    when(storage.getRepairRun(any())).thenThrow(new IllegalStateException("storage failure"));
+    IStorage instrumented = InstrumentedStorage.create(storage, new MetricRegistry());
+
+    assertThat(instrumented).isInstanceOf(IDistributedStorage.class);
+    assertThat(InstrumentedStorage.create(new MemoryStorage(), new MetricRegistry()))
+        .isNotInstanceOf(IDistributedStorage.class);
+    assertThatThrownBy(() -> instrumented.getRepairRun(UUID.randomUUID()))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessage("storage failure");
+  }
+}
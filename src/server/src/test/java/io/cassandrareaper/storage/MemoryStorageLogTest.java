@@ -0,0 +1,243 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage;
+
+import io.cassandrareaper.core.Cluster;
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSchedule;
+import io.cassandrareaper.core.RepairSegment;
+import io.cassandrareaper.core.RepairUnit;
+import io.cassandrareaper.core.Segment;
+import io.cassandrareaper.service.RingRange;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.apache.cassandra.repair.RepairParallelism;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class MemoryStorageLogTest {
+
+  private static final Duration CHECKPOINT_PERIOD = Duration.ofHours(1);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRecoversEntities() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    MemoryStorage storage = MemoryStorage.create(directory, CHECKPOINT_PERIOD);
+    RepairUnit unit = addRepairUnit(storage, "keyspace");
+    RepairRun run = addRepairRun(storage, unit, 3);
+    RepairRun runningRun
+        = run.with().runState(RepairRun.RunState.RUNNING).startTime(DateTime.now()).build(run.getId());
+    storage.updateRepairRun(runningRun);
+    List<RepairSegment> segments = Lists.newArrayList(storage.getRepairSegmentsForRun(run.getId()));
+    RepairSegment runningSegment = segments.get(1).with()
+        .withState(RepairSegment.State.RUNNING)
+        .withCoordinatorHost("127.0.0.1")
+        .withStartTime(DateTime.now())
+        .build();
+    storage.updateRepairSegment(runningSegment);
+    final RepairSchedule schedule = storage.addRepairSchedule(repairSchedule(unit));
+    RepairSchedule deletedSchedule = storage.addRepairSchedule(repairSchedule(addRepairUnit(storage, "other")));
+    storage.deleteRepairSchedule(deletedSchedule.getId());
+
+    MemoryStorage recovered = MemoryStorage.create(directory, CHECKPOINT_PERIOD);
+    assertThat(recovered.getCluster("test_cluster")).isPresent();
+    assertThat(recovered.getRepairUnit(unit.with())).isPresent();
+    assertThat(recovered.getRepairUnit(unit.getId()).getKeyspaceName()).isEqualTo("keyspace");
+    RepairRun recoveredRun = recovered.getRepairRun(run.getId()).get();
+    assertThat(recoveredRun.getRunState()).isEqualTo(RepairRun.RunState.RUNNING);
+    assertThat(recoveredRun.getStartTime()).isEqualTo(runningRun.getStartTime());
+    assertThat(recoveredRun.getTables()).isEqualTo(run.getTables());
+    assertThat(recovered.getRepairRunsWithState(RepairRun.RunState.RUNNING)).hasSize(1);
+
+    List<RepairSegment> recoveredSegments = Lists.newArrayList(recovered.getRepairSegmentsForRun(run.getId()));
+    assertThat(recoveredSegments).extracting(RepairSegment::getId)
+        .containsExactly(segments.get(0).getId(), segments.get(1).getId(), segments.get(2).getId());
+    assertThat(recoveredSegments.get(1).getState()).isEqualTo(RepairSegment.State.RUNNING);
+    assertThat(recoveredSegments.get(1).getCoordinatorHost()).isEqualTo("127.0.0.1");
+    assertThat(recoveredSegments.get(1).getTokenRange().getBaseRange().toString())
+        .isEqualTo(segments.get(1).getTokenRange().getBaseRange().toString());
+    assertThat(recovered.getSegmentAmountForRepairRunWithState(run.getId(), RepairSegment.State.NOT_STARTED))
+        .isEqualTo(2);
+
+    assertThat(recovered.getAllRepairSchedules()).extracting(RepairSchedule::getId).containsExactly(schedule.getId());
+    assertThat(recovered.getRepairSchedulesForClusterAndKeyspace("test_cluster", "keyspace")).hasSize(1);
+  }
+
+  @Test
+  public void testCheckpointKeepsLiveEntities() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    MemoryStorage storage = MemoryStorage.create(directory, CHECKPOINT_PERIOD);
+    RepairUnit unit = addRepairUnit(storage, "keyspace");
+    RepairRun deletedRun = addRepairRun(storage, unit, 2);
+    final RepairRun keptRun = addRepairRun(storage, unit, 2);
+    storage.updateRepairRun(
+        deletedRun.with().runState(RepairRun.RunState.RUNNING).startTime(DateTime.now()).build(deletedRun.getId()));
+    storage.deleteRepairRun(deletedRun.getId());
+
+    storage.checkpoint();
+    RepairRun laterRun = addRepairRun(storage, unit, 2);
+
+    MemoryStorage recovered = MemoryStorage.create(directory, CHECKPOINT_PERIOD);
+    assertThat(recovered.getRepairRunsForCluster("test_cluster", Optional.empty()))
+        .extracting(RepairRun::getId)
+        .containsExactly(laterRun.getId(), keptRun.getId());
+    assertThat(recovered.getRepairSegmentsForRun(keptRun.getId())).hasSize(2);
+    assertThat(recovered.getRepairSegmentsForRun(deletedRun.getId())).isEmpty();
+  }
+
+  @Test
+  public void testCheckpointRacingSegmentUpdatesLosesNoChange() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    MemoryStorage storage = MemoryStorage.create(directory, CHECKPOINT_PERIOD);
+    RepairRun run = addRepairRun(storage, addRepairUnit(storage, "keyspace"), 2000);
+
+    List<RepairSegment> segments = Lists.newArrayList(storage.getRepairSegmentsForRun(run.getId()));
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> updates = Lists.newArrayList();
+      for (List<RepairSegment> partition : Lists.partition(segments, 500)) {
+        updates.add(executor.submit(() -> {
+          for (RepairSegment segment : partition) {
+            storage.updateRepairSegment(
+                segment.with()
+                    .withState(RepairSegment.State.DONE)
+                    .withStartTime(DateTime.now())
+                    .withEndTime(DateTime.now())
+                    .build());
+          }
+        }));
+      }
+      while (!updates.stream().allMatch(Future::isDone)) {
+        storage.checkpoint();
+      }
+      for (Future<?> update : updates) {
+        update.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    storage.stop();
+
+    MemoryStorage recovered = MemoryStorage.create(directory, CHECKPOINT_PERIOD);
+    assertThat(recovered.getSegmentAmountForRepairRunWithState(run.getId(), RepairSegment.State.DONE))
+        .isEqualTo(2000);
+    assertThat(recovered.getSegmentsWithState(run.getId(), RepairSegment.State.NOT_STARTED)).isEmpty();
+  }
+
+  @Test
+  public void testStopFlushesTheLog() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    MemoryStorage storage = MemoryStorage.create(directory, CHECKPOINT_PERIOD);
+    RepairRun run = addRepairRun(storage, addRepairUnit(storage, "keyspace"), 2);
+    storage.stop();
+
+    assertThat(MemoryStorageLog.recover(directory.resolve("memory-storage.log")).repairRuns)
+        .containsOnlyKeys(run.getId());
+  }
+
+  @Test
+  public void testTornRecordIsIgnored() throws IOException {
+    Path file = folder.getRoot().toPath().resolve("test.log");
+    MemoryStorageLog log = MemoryStorageLog.open(file, MemoryStorageLog.recover(file));
+    log.putCluster(cluster("cluster1"));
+    long end = log.getSizeSinceCheckpoint();
+    log.putCluster(cluster("cluster2"));
+    log.close();
+
+    // corrupt the body of the second record, as a crash in the middle of writing it would
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(end + 12);
+      raf.write(0xFF ^ raf.readByte());
+    }
+    MemoryStorageLog.Recovered recovered = MemoryStorageLog.recover(file);
+    assertThat(recovered.clusters).containsOnlyKeys("cluster1");
+    assertThat(recovered.end).isEqualTo(end);
+
+    // appending again overwrites the torn record
+    log = MemoryStorageLog.open(file, recovered);
+    log.putCluster(cluster("cluster3"));
+    log.close();
+    assertThat(MemoryStorageLog.recover(file).clusters).containsOnlyKeys("cluster1", "cluster3");
+  }
+
+  private static Cluster cluster(String name) {
+    return new Cluster(name, Optional.of("Murmur3Partitioner"), ImmutableSet.of("127.0.0.1"));
+  }
+
+  private static RepairUnit addRepairUnit(MemoryStorage storage, String keyspace) {
+    storage.addCluster(cluster("test_cluster"));
+    return storage.addRepairUnit(
+        RepairUnit.builder()
+            .clusterName("test_cluster")
+            .keyspaceName(keyspace)
+            .columnFamilies(ImmutableSet.of("table1", "table2"))
+            .incrementalRepair(false)
+            .nodes(Collections.emptySet())
+            .datacenters(ImmutableSet.of("dc1"))
+            .blacklistedTables(Collections.emptySet())
+            .repairThreadCount(2));
+  }
+
+  private static RepairRun addRepairRun(MemoryStorage storage, RepairUnit unit, int segmentCount) {
+    List<RepairSegment.Builder> segments = Lists.newArrayList();
+    for (int i = 0; i < segmentCount; ++i) {
+      segments.add(
+          RepairSegment.builder(
+              Segment.builder()
+                  .withTokenRange(new RingRange(BigInteger.valueOf(i * 10), BigInteger.valueOf(i * 10 + 10)))
+                  .build(),
+              unit.getId()));
+    }
+    return storage.addRepairRun(
+        RepairRun.builder("test_cluster", unit.getId())
+            .intensity(0.5)
+            .segmentCount(segmentCount)
+            .repairParallelism(RepairParallelism.DATACENTER_AWARE)
+            .tables(ImmutableSet.of("table1")),
+        segments);
+  }
+
+  private static RepairSchedule.Builder repairSchedule(RepairUnit unit) {
+    return RepairSchedule.builder(unit.getId())
+        .daysBetween(7)
+        .nextActivation(DateTime.now())
+        .repairParallelism(RepairParallelism.PARALLEL)
+        .intensity(0.5)
+        .segmentCountPerNode(16);
+  }
+}
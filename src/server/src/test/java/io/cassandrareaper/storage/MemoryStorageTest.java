@@ -0,0 +1,218 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage;
+
+import io.cassandrareaper.core.Cluster;
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSchedule;
+import io.cassandrareaper.core.RepairSegment;
+import io.cassandrareaper.core.RepairUnit;
+import io.cassandrareaper.core.Segment;
+import io.cassandrareaper.service.RingRange;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.apache.cassandra.repair.RepairParallelism;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class MemoryStorageTest {
+
+  private static final String CLUSTER = "test_cluster";
+
+  private final MemoryStorage storage = new MemoryStorage();
+
+  @Test
+  public void testRepairRunsForClusterAreNewestFirst() {
+    RepairUnit unit = addRepairUnit("keyspace");
+    List<UUID> runIds = IntStream.range(0, 5)
+        .mapToObj(i -> addRepairRun(CLUSTER, unit, 2).getId())
+        .collect(Collectors.toList());
+    addRepairRun("other_cluster", addRepairUnit("other_cluster", "keyspace"), 2);
+
+    assertThat(storage.getRepairRunsForCluster(CLUSTER, Optional.of(3)))
+        .extracting(RepairRun::getId)
+        .containsExactly(runIds.get(4), runIds.get(3), runIds.get(2));
+
+    assertThat(storage.getRepairRunsForCluster(CLUSTER.toUpperCase(), Optional.empty())).hasSize(5);
+    assertThat(storage.getRepairRunIdsForCluster(CLUSTER)).containsExactlyElementsOf(runIds);
+    assertThat(storage.getRepairRunsForUnit(unit.getId())).hasSize(5);
+  }
+
+  @Test
+  public void testRepairRunStateIndex() {
+    RepairUnit unit = addRepairUnit("keyspace");
+    RepairRun run = addRepairRun(CLUSTER, unit, 2);
+    assertThat(storage.getRepairRunsWithState(RepairRun.RunState.NOT_STARTED)).containsExactly(run);
+
+    RepairRun running = run.with().runState(RepairRun.RunState.RUNNING).startTime(DateTime.now()).build(run.getId());
+    assertThat(storage.updateRepairRun(running)).isTrue();
+    assertThat(storage.getRepairRunsWithState(RepairRun.RunState.NOT_STARTED)).isEmpty();
+    assertThat(storage.getRepairRunsWithState(RepairRun.RunState.RUNNING)).containsExactly(running);
+    assertThat(storage.getRepairRunsForCluster(CLUSTER, Optional.empty())).containsExactly(running);
+
+    assertThat(storage.deleteRepairRun(run.getId()).get().getRunState()).isEqualTo(RepairRun.RunState.DELETED);
+    assertThat(storage.getRepairRunsWithState(RepairRun.RunState.RUNNING)).isEmpty();
+    assertThat(storage.getRepairRunsForCluster(CLUSTER, Optional.empty())).isEmpty();
+    assertThat(storage.getRepairRunsForUnit(unit.getId())).isEmpty();
+    assertThat(storage.getRepairSegmentsForRun(run.getId())).isEmpty();
+    assertThat(storage.updateRepairRun(running)).isFalse();
+  }
+
+  @Test
+  public void testSegmentStateIndex() {
+    RepairRun run = addRepairRun(CLUSTER, addRepairUnit("keyspace"), 4);
+    List<RepairSegment> segments = Lists.newArrayList(storage.getRepairSegmentsForRun(run.getId()));
+    assertThat(segments).hasSize(4);
+    assertThat(storage.getNextFreeSegmentInRange(run.getId(), Optional.empty())).contains(segments.get(0));
+
+    RepairSegment running = segments.get(0).with()
+        .withState(RepairSegment.State.RUNNING)
+        .withStartTime(DateTime.now())
+        .build();
+    assertThat(storage.updateRepairSegment(running)).isTrue();
+    assertThat(storage.getSegmentAmountForRepairRunWithState(run.getId(), RepairSegment.State.RUNNING)).isEqualTo(1);
+    assertThat(storage.getSegmentAmountForRepairRunWithState(run.getId(), RepairSegment.State.NOT_STARTED))
+        .isEqualTo(3);
+    assertThat(storage.getSegmentsWithState(run.getId(), RepairSegment.State.RUNNING)).containsExactly(running);
+    assertThat(storage.getNextFreeSegmentInRange(run.getId(), Optional.empty())).contains(segments.get(1));
+
+    // only the last segment lies within the range
+    RingRange lastRange = segments.get(3).getTokenRange().getBaseRange();
+    assertThat(storage.getNextFreeSegmentInRange(run.getId(), Optional.of(lastRange))).contains(segments.get(3));
+
+    // the segments keep their order whatever their state
+    assertThat(storage.getRepairSegmentsForRun(run.getId()))
+        .containsExactly(running, segments.get(1), segments.get(2), segments.get(3));
+    assertThat(storage.getRepairSegment(run.getId(), running.getId())).contains(running);
+  }
+
+  @Test
+  public void testConcurrentSegmentUpdates() throws Exception {
+    RepairRun run = addRepairRun(CLUSTER, addRepairUnit("keyspace"), 1000);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = Lists.newArrayList();
+      for (int i = 0; i < 8; ++i) {
+        futures.add(executor.submit(() -> {
+          for (RepairSegment segment : storage.getRepairSegmentsForRun(run.getId())) {
+            RepairSegment running = segment.with()
+                .withState(RepairSegment.State.RUNNING)
+                .withStartTime(DateTime.now())
+                .build();
+            storage.updateRepairSegment(running);
+            storage.updateRepairSegment(running.reset().build());
+            storage.updateRepairSegment(running);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(storage.getSegmentAmountForRepairRunWithState(run.getId(), RepairSegment.State.RUNNING))
+        .isEqualTo(1000);
+    int total = 0;
+    for (RepairSegment.State state : RepairSegment.State.values()) {
+      int amount = storage.getSegmentAmountForRepairRunWithState(run.getId(), state);
+      assertThat(storage.getSegmentsWithState(run.getId(), state)).hasSize(amount);
+      total += amount;
+    }
+    assertThat(total).isEqualTo(1000);
+  }
+
+  @Test
+  public void testRepairSchedulesByClusterAndKeyspace() {
+    RepairUnit unit1 = addRepairUnit("keyspace1");
+    RepairUnit unit2 = addRepairUnit("keyspace2");
+    RepairUnit otherUnit = addRepairUnit("other_cluster", "keyspace1");
+    RepairSchedule schedule1 = storage.addRepairSchedule(repairSchedule(unit1));
+    RepairSchedule schedule2 = storage.addRepairSchedule(repairSchedule(unit2));
+    RepairSchedule otherSchedule = storage.addRepairSchedule(repairSchedule(otherUnit));
+
+    assertThat(storage.getRepairSchedulesForCluster(CLUSTER)).containsExactlyInAnyOrder(schedule1, schedule2);
+    assertThat(storage.getRepairSchedulesForKeyspace("keyspace1")).containsExactlyInAnyOrder(schedule1, otherSchedule);
+    assertThat(storage.getRepairSchedulesForClusterAndKeyspace(CLUSTER, "keyspace2")).containsExactly(schedule2);
+
+    storage.deleteRepairSchedule(schedule2.getId());
+    assertThat(storage.getRepairSchedulesForCluster(CLUSTER)).containsExactly(schedule1);
+    assertThat(storage.getRepairSchedulesForClusterAndKeyspace(CLUSTER, "keyspace2")).isEmpty();
+  }
+
+  private RepairUnit addRepairUnit(String keyspace) {
+    return addRepairUnit(CLUSTER, keyspace);
+  }
+
+  private RepairUnit addRepairUnit(String cluster, String keyspace) {
+    storage.addCluster(new Cluster(cluster, Optional.of("Murmur3Partitioner"), ImmutableSet.of("127.0.0.1")));
+    return storage.addRepairUnit(
+        RepairUnit.builder()
+            .clusterName(cluster)
+            .keyspaceName(keyspace)
+            .columnFamilies(Collections.emptySet())
+            .incrementalRepair(false)
+            .nodes(Collections.emptySet())
+            .datacenters(Collections.emptySet())
+            .blacklistedTables(Collections.emptySet())
+            .repairThreadCount(1));
+  }
+
+  private RepairRun addRepairRun(String cluster, RepairUnit unit, int segmentCount) {
+    List<RepairSegment.Builder> segments = Lists.newArrayList();
+    for (int i = 0; i < segmentCount; ++i) {
+      segments.add(
+          RepairSegment.builder(
+              Segment.builder()
+                  .withTokenRange(new RingRange(BigInteger.valueOf(i * 10), BigInteger.valueOf(i * 10 + 10)))
+                  .build(),
+              unit.getId()));
+    }
+    return storage.addRepairRun(
+        RepairRun.builder(cluster, unit.getId())
+            .intensity(0.5)
+            .segmentCount(segmentCount)
+            .repairParallelism(RepairParallelism.PARALLEL)
+            .tables(Collections.emptySet()),
+        segments);
+  }
+
+  private static RepairSchedule.Builder repairSchedule(RepairUnit unit) {
+    return RepairSchedule.builder(unit.getId())
+        .daysBetween(1)
+        .nextActivation(DateTime.now())
+        .repairParallelism(RepairParallelism.PARALLEL)
+        .intensity(0.5)
+        .segmentCount(0)
+        .segmentCountPerNode(16);
+  }
+}
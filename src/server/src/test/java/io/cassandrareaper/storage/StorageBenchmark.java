@@ -0,0 +1,371 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage;
+
+import io.cassandrareaper.ReaperApplicationConfiguration;
+import io.cassandrareaper.ReaperException;
+import io.cassandrareaper.core.Cluster;
+import io.cassandrareaper.core.RepairRun;
+import io.cassandrareaper.core.RepairSchedule;
+import io.cassandrareaper.core.RepairSegment;
+import io.cassandrareaper.core.RepairUnit;
+import io.cassandrareaper.core.Segment;
+import io.cassandrareaper.service.RingRange;
+
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jdbi.DBIFactory;
+import io.dropwizard.jersey.validation.Validators;
+import io.dropwizard.setup.Environment;
+import org.apache.cassandra.repair.RepairParallelism;
+import org.flywaydb.core.Flyway;
+import org.joda.time.DateTime;
+import systems.composable.dropwizard.cassandra.CassandraFactory;
+
+/**
+ * Drives a storage with the workloads of reaper, reporting the throughput and the latency percentiles of each storage
+ * operation.
+ *
+ * <p>The phases are run one after the other: registering repair runs, moving their segments through the states of a
+ * repair, listing run statuses, adding and scanning repair schedules, and purging the runs. Within a phase the
+ * operations are issued concurrently.
+ *
+ * <p>Not run as part of the test suite. Run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.cassandrareaper.storage.StorageBenchmark}
+ * which benchmarks the memory and the embedded H2 storages. Set {@code -Dbenchmark.storage} to {@code postgres} along
+ * with {@code -Dbenchmark.url}, {@code -Dbenchmark.user} and {@code -Dbenchmark.password}, or to {@code cassandra}
+ * along with {@code -Dbenchmark.contactPoints} and {@code -Dbenchmark.keyspace} (the keyspace must exist), to
+ * benchmark another backend. The workload is sized by {@code -Dbenchmark.runs}, {@code -Dbenchmark.segments},
+ * {@code -Dbenchmark.transitions}, {@code -Dbenchmark.schedules}, {@code -Dbenchmark.queries} and
+ * {@code -Dbenchmark.threads}.
+ */
+public final class StorageBenchmark {
+
+  private static final String PREFIX = "benchmark.";
+  private static final String CLUSTER = "benchmark";
+  private static final String PARTITIONER = "org.apache.cassandra.dht.Murmur3Partitioner";
+
+  private final IStorage storage;
+  private final int runs;
+  private final int segmentsPerRun;
+  private final int transitionsPerRun;
+  private final int schedules;
+  private final int queries;
+  private final int threads;
+  private final MetricRegistry metrics = new MetricRegistry();
+  private final Map<String, Long> phaseNanos = Maps.newConcurrentMap();
+  private final Map<String, String> operationPhases = Maps.newConcurrentMap();
+  private final ThreadLocal<String> operationPhase = new ThreadLocal<>();
+
+  StorageBenchmark(
+      IStorage storage,
+      int runs,
+      int segmentsPerRun,
+      int transitionsPerRun,
+      int schedules,
+      int queries,
+      int threads) {
+
+    this.storage = storage;
+    this.runs = runs;
+    this.segmentsPerRun = segmentsPerRun;
+    this.transitionsPerRun = Math.min(transitionsPerRun, segmentsPerRun);
+    this.schedules = schedules;
+    this.queries = queries;
+    this.threads = threads;
+  }
+
+  public static void main(String[] args) throws Exception {
+    String storageType = System.getProperty(PREFIX + "storage", "memory,h2");
+    for (String type : storageType.split(",")) {
+      StorageBenchmark benchmark = new StorageBenchmark(
+          createStorage(type.trim()),
+          Integer.getInteger(PREFIX + "runs", 20),
+          Integer.getInteger(PREFIX + "segments", 1000),
+          Integer.getInteger(PREFIX + "transitions", 100),
+          Integer.getInteger(PREFIX + "schedules", 100),
+          Integer.getInteger(PREFIX + "queries", 200),
+          Integer.getInteger(PREFIX + "threads", 8));
+
+      benchmark.run();
+      benchmark.report(type.trim(), System.out);
+    }
+    // the cassandra driver's threads would otherwise keep the jvm running
+    System.exit(0);
+  }
+
+  static IStorage createStorage(String type) throws ReaperException {
+    switch (type) {
+      case "memory":
+        return new MemoryStorage();
+      case "h2":
+        return createJdbcStorage(
+            "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "", "", "/db/h2");
+      case "postgres":
+        return createJdbcStorage(
+            System.getProperty(PREFIX + "url", "jdbc:postgresql://127.0.0.1/reaper"),
+            System.getProperty(PREFIX + "user", "reaper"),
+            System.getProperty(PREFIX + "password", ""),
+            "/db/postgres");
+      case "cassandra":
+        return createCassandraStorage();
+      default:
+        throw new IllegalArgumentException("unknown storage " + type);
+    }
+  }
+
+  private static IStorage createJdbcStorage(String url, String user, String password, String migrations) {
+    Flyway flyway = new Flyway();
+    flyway.setDataSource(url, user, password);
+    flyway.setLocations(migrations);
+    flyway.setBaselineOnMigrate(true);
+    flyway.migrate();
+
+    DataSourceFactory dataSourceFactory = new DataSourceFactory();
+    dataSourceFactory.setDriverClass(url.startsWith("jdbc:h2:") ? "org.h2.Driver" : "org.postgresql.Driver");
+    dataSourceFactory.setUrl(url);
+    dataSourceFactory.setUser(user);
+    dataSourceFactory.setPassword(password);
+    return new PostgresStorage(new DBIFactory().build(createEnvironment(), dataSourceFactory, "benchmark"));
+  }
+
+  private static IStorage createCassandraStorage() throws ReaperException {
+    CassandraFactory cassandraFactory = new CassandraFactory();
+    cassandraFactory.setContactPoints(System.getProperty(PREFIX + "contactPoints", "127.0.0.1").split(","));
+    cassandraFactory.setKeyspace(System.getProperty(PREFIX + "keyspace", "reaper_db"));
+    ReaperApplicationConfiguration config = new ReaperApplicationConfiguration();
+    config.setCassandraFactory(cassandraFactory);
+
+    return new CassandraStorage(config, createEnvironment());
+  }
+
+  private static Environment createEnvironment() {
+    return new Environment(
+        "benchmark",
+        Jackson.newObjectMapper(),
+        Validators.newValidator(),
+        new MetricRegistry(),
+        StorageBenchmark.class.getClassLoader());
+  }
+
+  void run() throws ReaperException, InterruptedException, ExecutionException {
+    storage.addCluster(new Cluster(CLUSTER, Optional.of(PARTITIONER), ImmutableSet.of("127.0.0.1")));
+    RepairUnit repairUnit = storage.addRepairUnit(repairUnit("keyspace"));
+
+    List<RepairRun> repairRuns = runPhase(
+        "register",
+        IntStream.range(0, runs).mapToObj(run -> (Callable<RepairRun>) () -> addRepairRun(repairUnit)));
+
+    runPhase("transitions", repairRuns.stream().map(run -> (Callable<Void>) () -> transitionSegments(run)));
+
+    runPhase(
+        "listing",
+        IntStream.range(0, queries).mapToObj(query -> (Callable<Void>) () -> {
+          time("getClusterRunStatuses", () -> storage.getClusterRunStatuses(CLUSTER, 10));
+          time("getRepairRunsForCluster", () -> storage.getRepairRunsForCluster(CLUSTER, Optional.of(50)));
+          RepairRun run = repairRuns.get(query % repairRuns.size());
+          time(
+              "getSegmentAmountForRepairRunWithState",
+              () -> storage.getSegmentAmountForRepairRunWithState(run.getId(), RepairSegment.State.DONE));
+          return null;
+        }));
+
+    runPhase(
+        "schedules",
+        IntStream.range(0, schedules).mapToObj(schedule -> (Callable<RepairSchedule>) () -> {
+          RepairUnit scheduleUnit
+              = time("addRepairUnit", () -> storage.addRepairUnit(repairUnit("keyspace" + schedule)));
+          return time("addRepairSchedule", () -> storage.addRepairSchedule(repairSchedule(scheduleUnit)));
+        }));
+
+    runPhase(
+        "scans",
+        IntStream.range(0, queries).mapToObj(query -> (Callable<Void>) () -> {
+          time("getAllRepairSchedules", storage::getAllRepairSchedules);
+          time(
+              "getRepairSchedulesForClusterAndKeyspace",
+              () -> storage.getRepairSchedulesForClusterAndKeyspace(CLUSTER, "keyspace" + query % schedules));
+          return null;
+        }));
+
+    runPhase(
+        "purge",
+        repairRuns.stream().map(run -> (Callable<Void>) () -> {
+          time("deleteRepairRun", () -> storage.deleteRepairRun(run.getId()));
+          return null;
+        }));
+  }
+
+  private RepairRun addRepairRun(RepairUnit repairUnit) throws Exception {
+    BigInteger step = BigInteger.valueOf(Long.MAX_VALUE / segmentsPerRun * 2);
+    List<RepairSegment.Builder> segments = Lists.newArrayListWithCapacity(segmentsPerRun);
+    for (int i = 0; i < segmentsPerRun; ++i) {
+      BigInteger start = BigInteger.valueOf(Long.MIN_VALUE).add(step.multiply(BigInteger.valueOf(i)));
+      segments.add(
+          RepairSegment.builder(
+              Segment.builder().withTokenRange(new RingRange(start, start.add(step))).build(),
+              repairUnit.getId()));
+    }
+    RepairRun.Builder repairRun = RepairRun.builder(CLUSTER, repairUnit.getId())
+        .intensity(0.9)
+        .segmentCount(segmentsPerRun)
+        .repairParallelism(RepairParallelism.PARALLEL)
+        .tables(Collections.singleton("table"));
+
+    RepairRun added = time("addRepairRun", () -> storage.addRepairRun(repairRun, segments));
+    return time(
+        "updateRepairRun",
+        () -> {
+          RepairRun running = added.with().runState(RepairRun.RunState.RUNNING).startTime(DateTime.now()).build(
+              added.getId());
+          storage.updateRepairRun(running);
+          return running;
+        });
+  }
+
+  /**
+   * Moves segments of the run through the states a segment runner gives them.
+   */
+  private Void transitionSegments(RepairRun run) throws Exception {
+    for (int i = 0; i < transitionsPerRun; ++i) {
+      Optional<RepairSegment> free
+          = time("getNextFreeSegmentInRange", () -> storage.getNextFreeSegmentInRange(run.getId(), Optional.empty()));
+      if (!free.isPresent()) {
+        break;
+      }
+      RepairSegment started = free.get().with()
+          .withState(RepairSegment.State.STARTED)
+          .withCoordinatorHost("127.0.0.1")
+          .withStartTime(DateTime.now())
+          .build();
+      time("updateRepairSegment", () -> storage.updateRepairSegment(started));
+      RepairSegment running = started.with().withState(RepairSegment.State.RUNNING).build();
+      time("updateRepairSegment", () -> storage.updateRepairSegment(running));
+      time("getRepairSegment", () -> storage.getRepairSegment(run.getId(), running.getId()));
+      RepairSegment done = running.with()
+          .withState(RepairSegment.State.DONE)
+          .withEndTime(DateTime.now())
+          .build();
+      time("updateRepairSegment", () -> storage.updateRepairSegment(done));
+    }
+    return null;
+  }
+
+  private <T> List<T> runPhase(String phase, Stream<Callable<T>> tasks)
+      throws InterruptedException, ExecutionException {
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      List<Future<T>> futures = Lists.newArrayList();
+      for (Callable<T> task : tasks.collect(Collectors.toList())) {
+        futures.add(executor.submit(() -> {
+          operationPhase.set(phase);
+          return task.call();
+        }));
+      }
+      List<T> results = Lists.newArrayListWithCapacity(futures.size());
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      phaseNanos.put(phase, stopwatch.elapsed(TimeUnit.NANOSECONDS));
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private <T> T time(String operation, Callable<T> call) throws Exception {
+    operationPhases.putIfAbsent(operation, operationPhase.get());
+    try (Timer.Context timer = metrics.timer(operation).time()) {
+      return call.call();
+    }
+  }
+
+  Map<String, Timer> getTimers() {
+    return metrics.getTimers();
+  }
+
+  void report(String storageType, PrintStream out) {
+    out.printf("%s storage: %d runs of %d segments, %d threads%n", storageType, runs, segmentsPerRun, threads);
+    out.printf(
+        "  %-40s %8s %10s %10s %10s %10s %10s%n",
+        "operation", "count", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+
+    metrics.getTimers().forEach((operation, timer) -> {
+      Snapshot snapshot = timer.getSnapshot();
+      double phaseSeconds = phaseNanos.get(operationPhases.get(operation)) / 1e9;
+      out.printf(
+          "  %-40s %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+          operation,
+          timer.getCount(),
+          timer.getCount() / phaseSeconds,
+          snapshot.getMedian() / 1e6,
+          snapshot.get95thPercentile() / 1e6,
+          snapshot.get99thPercentile() / 1e6,
+          snapshot.getMax() / 1e6);
+    });
+  }
+
+  private static RepairUnit.Builder repairUnit(String keyspace) {
+    return RepairUnit.builder()
+        .clusterName(CLUSTER)
+        .keyspaceName(keyspace)
+        .columnFamilies(Collections.emptySet())
+        .incrementalRepair(false)
+        .nodes(Collections.emptySet())
+        .datacenters(Collections.emptySet())
+        .blacklistedTables(Collections.emptySet())
+        .repairThreadCount(1);
+  }
+
+  private static RepairSchedule.Builder repairSchedule(RepairUnit repairUnit) {
+    return RepairSchedule.builder(repairUnit.getId())
+        .daysBetween(1)
+        .nextActivation(DateTime.now().plusDays(1))
+        .repairParallelism(RepairParallelism.PARALLEL)
+        .intensity(0.9)
+        .segmentCount(0)
+        .segmentCountPerNode(16);
+  }
+}
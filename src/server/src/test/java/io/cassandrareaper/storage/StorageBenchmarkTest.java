@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class StorageBenchmarkTest {
+
+  @Test
+  public void testMemoryStorage() throws Exception {
+    assertBenchmarkRuns("memory");
+  }
+
+  @Test
+  public void testH2Storage() throws Exception {
+    assertBenchmarkRuns("h2");
+  }
+
+  private static void assertBenchmarkRuns(String storageType) throws Exception {
+    IStorage storage = StorageBenchmark.createStorage(storageType);
+    StorageBenchmark benchmark = new StorageBenchmark(storage, 2, 10, 5, 3, 4, 2);
+    benchmark.run();
+
+    assertThat(benchmark.getTimers().get("addRepairRun").getCount()).isEqualTo(2);
+    assertThat(benchmark.getTimers().get("updateRepairSegment").getCount()).isEqualTo(2 * 5 * 3);
+    assertThat(benchmark.getTimers().get("getAllRepairSchedules").getCount()).isEqualTo(4);
+    assertThat(benchmark.getTimers().get("deleteRepairRun").getCount()).isEqualTo(2);
+    assertThat(storage.getRepairRunsForCluster("benchmark", Optional.empty())).isEmpty();
+
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    benchmark.report(storageType, new PrintStream(report, true, "UTF-8"));
+    assertThat(report.toString("UTF-8")).contains("getNextFreeSegmentInRange", "p99 ms");
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.cassandrareaper.storage;
+
+import io.cassandrareaper.service.RingRange;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the size and the encoding/decoding costs of the json and binary token ranges of segments.
+ *
+ * <p>Not run as part of the test suite. Run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.cassandrareaper.storage.TokenRangesCodecBenchmark}
+ */
+public final class TokenRangesCodecBenchmark {
+
+  private static final int SEGMENTS = 50_000;
+  private static final int[] RANGES_PER_SEGMENT = {1, 16, 64};
+
+  private TokenRangesCodecBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    for (int rangesPerSegment : RANGES_PER_SEGMENT) {
+      List<List<RingRange>> segments = Lists.newArrayListWithCapacity(SEGMENTS);
+      for (int i = 0; i < SEGMENTS; ++i) {
+        segments.add(randomRanges(rangesPerSegment));
+      }
+      List<String> json = Lists.newArrayListWithCapacity(SEGMENTS);
+      List<byte[]> binary = Lists.newArrayListWithCapacity(SEGMENTS);
+
+      // first pass warms up
+      for (int pass = 0; pass < 2; ++pass) {
+        json.clear();
+        binary.clear();
+        long jsonEncode = time(() -> segments.forEach(ranges -> json.add(JsonParseUtils.writeTokenRangesTxt(ranges))));
+        long binaryEncode = time(() -> segments.forEach(ranges -> binary.add(TokenRangesCodec.encode(ranges))));
+        long jsonDecode = time(() -> json.forEach(text -> JsonParseUtils.parseRingRangeList(Optional.of(text))));
+        long binaryDecode = time(() -> binary.forEach(TokenRangesCodec::decode));
+
+        if (1 == pass) {
+          System.out.printf(
+              "%d segments of %d ranges%n"
+                  + "  json   : %,d bytes/segment, encode %,d ms, decode %,d ms%n"
+                  + "  binary : %,d bytes/segment, encode %,d ms, decode %,d ms%n",
+              SEGMENTS,
+              rangesPerSegment,
+              json.stream().mapToInt(String::length).sum() / SEGMENTS,
+              jsonEncode,
+              jsonDecode,
+              binary.stream().mapToInt(bytes -> bytes.length).sum() / SEGMENTS,
+              binaryEncode,
+              binaryDecode);
+        }
+      }
+    }
+  }
+
+  private static List<RingRange> randomRanges(int count) {
+    List<RingRange> ranges = Lists.newArrayListWithCapacity(count);
+    for (int i = 0; i < count; ++i) {
+      long start = ThreadLocalRandom.current().nextLong();
+      ranges.add(new RingRange(BigInteger.valueOf(start), BigInteger.valueOf(start + 1_000_000)));
+    }
+    return ranges;
+  }
+
+  private static long time(Runnable task) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    task.run();
+    return stopwatch.elapsed(TimeUnit.MILLISECONDS);
+  }
+}
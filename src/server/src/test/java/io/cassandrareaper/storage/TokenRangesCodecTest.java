@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.cassandrareaper.storage;
+
+import io.cassandrareaper.service.RingRange;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class TokenRangesCodecTest {
+
+  @Test
+  public void testMurmur3TokensAreFixed64() {
+    List<RingRange> ranges = Lists.newArrayList(
+        new RingRange(BigInteger.valueOf(Long.MIN_VALUE), BigInteger.valueOf(-1)),
+        new RingRange(BigInteger.ZERO, BigInteger.valueOf(Long.MAX_VALUE)));
+
+    byte[] bytes = TokenRangesCodec.encode(ranges);
+
+    assertThat(bytes).hasSize(2 + 1 + 4 * Long.BYTES);
+    assertThat(TokenRangesCodec.decode(bytes)).usingFieldByFieldElementComparator().containsExactlyElementsOf(ranges);
+  }
+
+  @Test
+  public void testRandomPartitionerTokens() {
+    List<RingRange> ranges = Lists.newArrayList(
+        new RingRange(BigInteger.ZERO, BigInteger.valueOf(2).pow(127)),
+        new RingRange(BigInteger.valueOf(2).pow(127), BigInteger.ONE));
+
+    assertThat(TokenRangesCodec.decode(TokenRangesCodec.encode(ranges)))
+        .usingFieldByFieldElementComparator()
+        .containsExactlyElementsOf(ranges);
+  }
+
+  @Test
+  public void testEmptyAndManyRanges() {
+    assertThat(TokenRangesCodec.decode(TokenRangesCodec.encode(Collections.emptyList()))).isEmpty();
+
+    List<RingRange> ranges = Lists.newArrayList();
+    for (long i = 0; i < 300; ++i) {
+      ranges.add(new RingRange(BigInteger.valueOf(i * 100), BigInteger.valueOf(i * 100 + 50)));
+    }
+    assertThat(TokenRangesCodec.decode(TokenRangesCodec.encode(ranges)))
+        .usingFieldByFieldElementComparator()
+        .containsExactlyElementsOf(ranges);
+  }
+
+  @Test
+  public void testFallsBackToJson() {
+    List<RingRange> ranges = Lists.newArrayList(new RingRange(BigInteger.ONE, BigInteger.TEN));
+    String json = "[{\"start\":1,\"end\":10}]";
+
+    assertThat(TokenRangesCodec.decode(Optional.empty(), Optional.of(json)))
+        .usingFieldByFieldElementComparator()
+        .containsExactlyElementsOf(ranges);
+    assertThat(TokenRangesCodec.decode(Optional.of(TokenRangesCodec.encode(ranges)), Optional.of("[]")))
+        .usingFieldByFieldElementComparator()
+        .containsExactlyElementsOf(ranges);
+    assertThat(TokenRangesCodec.decode(Optional.empty(), Optional.empty())).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownVersion() {
+    TokenRangesCodec.decode(new byte[]{2, 0, 0});
+  }
+}
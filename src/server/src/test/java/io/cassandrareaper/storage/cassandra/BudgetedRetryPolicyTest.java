@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.policies.RetryPolicy.RetryDecision;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class BudgetedRetryPolicyTest {
+
+  private static final Statement SELECT
+      = new SimpleStatement("SELECT * FROM reaper_db.repair_run WHERE id = ?").setIdempotent(true);
+
+  private static final Statement UPDATE
+      = new SimpleStatement("UPDATE repair_run SET state = ? WHERE id = ?").setIdempotent(true);
+
+  @Test
+  public void testRetriesAreBoundedAndCounted() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    BudgetedRetryPolicy policy = new BudgetedRetryPolicy(new CircuitBreaker(Integer.MAX_VALUE), metricRegistry);
+
+    assertThat(policy.onReadTimeout(SELECT, ConsistencyLevel.QUORUM, 2, 1, false, 0).getType())
+        .isEqualTo(RetryDecision.Type.RETRY);
+    assertThat(policy.onReadTimeout(SELECT, ConsistencyLevel.QUORUM, 2, 1, false, 10).getType())
+        .isEqualTo(RetryDecision.Type.RETHROW);
+
+    // writes used to be retried forever
+    assertThat(policy.onWriteTimeout(UPDATE, ConsistencyLevel.QUORUM, WriteType.SIMPLE, 2, 1, 9).getType())
+        .isEqualTo(RetryDecision.Type.RETRY);
+    assertThat(policy.onWriteTimeout(UPDATE, ConsistencyLevel.QUORUM, WriteType.SIMPLE, 2, 1, 10).getType())
+        .isEqualTo(RetryDecision.Type.RETHROW);
+
+    assertThat(policy.onWriteTimeout(UPDATE, ConsistencyLevel.SERIAL, WriteType.CAS, 2, 1, 0)
+        .getRetryConsistencyLevel()).isEqualTo(ConsistencyLevel.ONE);
+
+    assertThat(metricRegistry.counter(MetricRegistry.name(BudgetedRetryPolicy.class, "retries", "select_repair_run"))
+        .getCount()).isEqualTo(1);
+    assertThat(metricRegistry.counter(MetricRegistry.name(BudgetedRetryPolicy.class, "retries", "update_repair_run"))
+        .getCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testNoRetriesWhileCircuitBreakerIsOpen() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    CircuitBreaker circuitBreaker = new CircuitBreaker(1);
+    BudgetedRetryPolicy policy = new BudgetedRetryPolicy(circuitBreaker, metricRegistry);
+
+    circuitBreaker.onFailure();
+    assertThat(policy.onReadTimeout(SELECT, ConsistencyLevel.QUORUM, 2, 1, false, 0).getType())
+        .isEqualTo(RetryDecision.Type.RETHROW);
+    assertThat(policy.onUnavailable(SELECT, ConsistencyLevel.QUORUM, 2, 1, 0).getType())
+        .isEqualTo(RetryDecision.Type.RETHROW);
+
+    assertThat(metricRegistry.counter(MetricRegistry.name(BudgetedRetryPolicy.class, "rejected", "select_repair_run"))
+        .getCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testStatementTypes() {
+    BudgetedRetryPolicy policy = new BudgetedRetryPolicy(new CircuitBreaker(1), new MetricRegistry());
+
+    assertThat(policy.statementType(new SimpleStatement("INSERT INTO \"cluster\" (name) VALUES (?)")))
+        .isEqualTo("insert_cluster");
+    assertThat(policy.statementType(new SimpleStatement("DELETE FROM leader WHERE leader_id = ? IF EXISTS")))
+        .isEqualTo("delete_leader");
+    assertThat(policy.statementType(new SimpleStatement("TRUNCATE leader"))).isEqualTo("truncate");
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.SyntaxError;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class CircuitBreakerTest {
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(3);
+
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.isOpen()).isFalse();
+    assertThat(circuitBreaker.tryAcquireRetry()).isTrue();
+
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.isOpen()).isTrue();
+    assertThat(circuitBreaker.tryAcquireRetry()).isFalse();
+
+    circuitBreaker.onSuccess();
+    assertThat(circuitBreaker.isOpen()).isFalse();
+  }
+
+  @Test
+  public void testInvalidQueriesAreNotFailures() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(1);
+
+    circuitBreaker.update(null, null, new SyntaxError(null, "bad query"), 0);
+    assertThat(circuitBreaker.isOpen()).isFalse();
+    circuitBreaker.update(null, null, new OperationTimedOutException(null), 0);
+    assertThat(circuitBreaker.isOpen()).isTrue();
+  }
+
+  @Test
+  public void testRetryBudget() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(Integer.MAX_VALUE);
+
+    for (int i = 0; i < 100; ++i) {
+      assertThat(circuitBreaker.tryAcquireRetry()).isTrue();
+    }
+    assertThat(circuitBreaker.tryAcquireRetry()).isFalse();
+
+    // each success refills a tenth of a retry
+    for (int i = 0; i < 9; ++i) {
+      circuitBreaker.onSuccess();
+    }
+    assertThat(circuitBreaker.tryAcquireRetry()).isFalse();
+    circuitBreaker.onSuccess();
+    assertThat(circuitBreaker.tryAcquireRetry()).isTrue();
+    assertThat(circuitBreaker.tryAcquireRetry()).isFalse();
+  }
+
+  @Test
+  public void testJitteredExponentialBackoff() {
+    assertThat(CircuitBreaker.backoffMillis(0)).isBetween(800L, 1200L);
+    assertThat(CircuitBreaker.backoffMillis(3)).isBetween(6400L, 9600L);
+    assertThat(CircuitBreaker.backoffMillis(10)).isBetween(48_000L, 72_000L);
+    assertThat(CircuitBreaker.backoffMillis(Integer.MAX_VALUE)).isBetween(48_000L, 72_000L);
+  }
+
+  @Test
+  public void testGaugesReplacedOnReconnection() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    CircuitBreaker.create(metricRegistry);
+    CircuitBreaker.create(metricRegistry);
+
+    assertThat(metricRegistry.getGauges().get(MetricRegistry.name(CircuitBreaker.class, "open")).getValue())
+        .isEqualTo(0);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.utils.UUIDs;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class Migration023Test {
+
+  @Test
+  public void testCopiesTheRepairRunsOfEveryCluster() {
+    Session session = mock(Session.class);
+    PreparedStatement insert = mock(PreparedStatement.class, RETURNS_SELF);
+    when(session.prepare("INSERT INTO repair_run_by_cluster_v2 (cluster_name,id) VALUES(?, ?)")).thenReturn(insert);
+
+    UUID firstRunId = UUIDs.timeBased();
+    UUID secondRunId = UUIDs.timeBased();
+    List<Row> rows = Arrays.asList(row("first", firstRunId), row("second", secondRunId));
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.iterator()).then(invocation -> rows.iterator());
+    when(session.execute(any(Statement.class))).thenReturn(resultSet);
+
+    BoundStatement firstInsert = mock(BoundStatement.class);
+    when(insert.bind("first", firstRunId)).thenReturn(firstInsert);
+    BoundStatement secondInsert = mock(BoundStatement.class);
+    when(insert.bind("second", secondRunId)).thenReturn(secondInsert);
+    ResultSetFuture firstWrite = mock(ResultSetFuture.class);
+    when(session.executeAsync(firstInsert)).thenReturn(firstWrite);
+    ResultSetFuture secondWrite = mock(ResultSetFuture.class);
+    when(session.executeAsync(secondInsert)).thenReturn(secondWrite);
+
+    Migration023.migrate(session);
+
+    ArgumentCaptor<Statement> select = ArgumentCaptor.forClass(Statement.class);
+    verify(session).execute(select.capture());
+    assertThat(((SimpleStatement) select.getValue()).getQueryString())
+        .isEqualTo("SELECT cluster_name,id FROM repair_run_by_cluster");
+
+    verify(session).executeAsync(firstInsert);
+    verify(session).executeAsync(secondInsert);
+    verify(session, times(2)).executeAsync(any(Statement.class));
+    verify(firstWrite).getUninterruptibly();
+    verify(secondWrite).getUninterruptibly();
+  }
+
+  private static Row row(String clusterName, UUID runId) {
+    Row row = mock(Row.class);
+    when(row.getString("cluster_name")).thenReturn(clusterName);
+    when(row.getUUID("id")).thenReturn(runId);
+    return row;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import java.util.Collections;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import com.datastax.driver.core.utils.UUIDs;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class Migration024Test {
+
+  private final Session session = mock(Session.class);
+  private final Cluster cassandra = mock(Cluster.class, RETURNS_DEEP_STUBS);
+  private final BoundStatement insertBuckets = mock(BoundStatement.class);
+  private final BoundStatement insertSegment = mock(BoundStatement.class);
+  private final ResultSetFuture bucketsWrite = mock(ResultSetFuture.class);
+  private final ResultSetFuture segmentWrite = mock(ResultSetFuture.class);
+
+  @Before
+  public void mockSession() {
+    when(session.getCluster()).thenReturn(cassandra);
+    when(session.prepare(startsWith("INSERT INTO repair_run "))).thenReturn(binding(insertBuckets));
+    when(session.prepare(startsWith("INSERT INTO repair_segment "))).thenReturn(binding(insertSegment));
+    when(session.executeAsync(insertBuckets)).thenReturn(bucketsWrite);
+    when(session.executeAsync(insertSegment)).thenReturn(segmentWrite);
+
+    Row row = mock(Row.class);
+    when(row.getUUID("id")).thenReturn(UUIDs.timeBased());
+    when(row.getInt("segment_count")).thenReturn(1);
+    when(row.getUUID("segment_id")).thenReturn(UUIDs.timeBased());
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.iterator()).then(invocation -> Collections.singletonList(row).iterator());
+    when(session.execute(any(Statement.class))).thenReturn(resultSet);
+  }
+
+  @Test
+  public void testWaitsForEveryCopy() {
+    Migration024.migrate(session);
+
+    verify(bucketsWrite).getUninterruptibly();
+    verify(segmentWrite).getUninterruptibly();
+    // the static column already exists
+    verify(session, never()).execute(anyString());
+  }
+
+  @Test
+  public void testAddsTheSegmentBucketsColumnOnlyIfMissing() {
+    when(cassandra.getMetadata().getKeyspace(any()).getTable("repair_run").getColumn("segment_buckets"))
+        .thenReturn(null);
+
+    Migration024.migrate(session);
+
+    verify(session).execute("ALTER TABLE repair_run ADD segment_buckets int STATIC");
+  }
+
+  @Test
+  public void testFailsOnAFailedCopy() {
+    WriteTimeoutException timeout = new WriteTimeoutException(ConsistencyLevel.EACH_QUORUM, WriteType.SIMPLE, 1, 2);
+    when(segmentWrite.getUninterruptibly()).thenThrow(timeout);
+
+    assertThatThrownBy(() -> Migration024.migrate(session)).isSameAs(timeout);
+  }
+
+  private static PreparedStatement binding(BoundStatement bound) {
+    return mock(
+        PreparedStatement.class,
+        invocation -> "bind".equals(invocation.getMethod().getName()) ? bound : invocation.getMock());
+  }
+}
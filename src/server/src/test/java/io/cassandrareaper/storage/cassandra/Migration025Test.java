@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import com.datastax.driver.core.utils.UUIDs;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class Migration025Test {
+
+  private final Session session = mock(Session.class);
+  private final UUID firstUnitId = UUIDs.timeBased();
+  private final UUID secondUnitId = UUIDs.timeBased();
+  private final BoundStatement firstInsert = mock(BoundStatement.class);
+  private final BoundStatement secondInsert = mock(BoundStatement.class);
+  private final ResultSetFuture firstWrite = mock(ResultSetFuture.class);
+  private final ResultSetFuture secondWrite = mock(ResultSetFuture.class);
+
+  @Before
+  public void mockSession() {
+    PreparedStatement insert = mock(PreparedStatement.class, RETURNS_SELF);
+    when(session.prepare(
+        "INSERT INTO repair_unit_by_cluster_and_keyspace (cluster_name,keyspace_name,id) VALUES(?, ?, ?)"))
+        .thenReturn(insert);
+
+    List<Row> rows = Arrays.asList(row("first", "ks1", firstUnitId), row("second", "ks2", secondUnitId));
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.iterator()).then(invocation -> rows.iterator());
+    when(session.execute(any(Statement.class))).thenReturn(resultSet);
+
+    when(insert.bind("first", "ks1", firstUnitId)).thenReturn(firstInsert);
+    when(insert.bind("second", "ks2", secondUnitId)).thenReturn(secondInsert);
+    when(session.executeAsync(firstInsert)).thenReturn(firstWrite);
+    when(session.executeAsync(secondInsert)).thenReturn(secondWrite);
+  }
+
+  @Test
+  public void testIndexesEveryRepairUnit() {
+    Migration025.migrate(session);
+
+    ArgumentCaptor<Statement> select = ArgumentCaptor.forClass(Statement.class);
+    verify(session).execute(select.capture());
+    assertThat(((SimpleStatement) select.getValue()).getQueryString())
+        .isEqualTo("SELECT id,cluster_name,keyspace_name FROM repair_unit_v1");
+
+    verify(session).executeAsync(firstInsert);
+    verify(session).executeAsync(secondInsert);
+    verify(session, times(2)).executeAsync(any(Statement.class));
+    verify(firstWrite).getUninterruptibly();
+    verify(secondWrite).getUninterruptibly();
+  }
+
+  @Test
+  public void testFailsOnAFailedWrite() {
+    WriteTimeoutException timeout = new WriteTimeoutException(ConsistencyLevel.EACH_QUORUM, WriteType.SIMPLE, 1, 2);
+    when(firstWrite.getUninterruptibly()).thenThrow(timeout);
+
+    assertThatThrownBy(() -> Migration025.migrate(session)).isSameAs(timeout);
+  }
+
+  private static Row row(String clusterName, String keyspaceName, UUID unitId) {
+    Row row = mock(Row.class);
+    when(row.getString("cluster_name")).thenReturn(clusterName);
+    when(row.getString("keyspace_name")).thenReturn(keyspaceName);
+    when(row.getUUID("id")).thenReturn(unitId);
+    return row;
+  }
+}
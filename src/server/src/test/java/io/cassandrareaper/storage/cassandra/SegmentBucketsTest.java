@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import java.util.UUID;
+
+import com.datastax.driver.core.utils.UUIDs;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class SegmentBucketsTest {
+
+  @Test
+  public void testCount() {
+    assertThat(SegmentBuckets.count(0)).isEqualTo(1);
+    assertThat(SegmentBuckets.count(1)).isEqualTo(1);
+    assertThat(SegmentBuckets.count(SegmentBuckets.SEGMENTS_PER_BUCKET)).isEqualTo(1);
+    assertThat(SegmentBuckets.count(SegmentBuckets.SEGMENTS_PER_BUCKET + 1)).isEqualTo(2);
+    assertThat(SegmentBuckets.count(100_000)).isEqualTo(100);
+  }
+
+  @Test
+  public void testSegmentsAreSpreadEvenly() {
+    int buckets = SegmentBuckets.count(100_000);
+    int[] segmentsPerBucket = new int[buckets];
+    for (int i = 0; i < 100_000; ++i) {
+      UUID segmentId = UUIDs.timeBased();
+      int bucket = SegmentBuckets.of(segmentId, buckets);
+      assertThat(bucket).isEqualTo(SegmentBuckets.of(segmentId, buckets));
+      ++segmentsPerBucket[bucket];
+    }
+    for (int segments : segmentsPerBucket) {
+      assertThat(segments).isBetween(SegmentBuckets.SEGMENTS_PER_BUCKET / 2, SegmentBuckets.SEGMENTS_PER_BUCKET * 2);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoBuckets() {
+    SegmentBuckets.of(UUIDs.timeBased(), 0);
+  }
+}
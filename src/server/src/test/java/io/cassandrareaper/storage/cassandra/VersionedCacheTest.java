@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019-2019 The Last Pickle Ltd
+ *
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.cassandrareaper.storage.cassandra;
+
+import io.cassandrareaper.storage.cassandra.VersionedCache.Versioned;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class VersionedCacheTest {
+
+  private final Map<String, String> values = Maps.newConcurrentMap();
+  private final Map<String, Long> versions = Maps.newConcurrentMap();
+  private final AtomicInteger loads = new AtomicInteger();
+  private final AtomicInteger versionReads = new AtomicInteger();
+
+  private Optional<String> load(String key) {
+    loads.incrementAndGet();
+    return Optional.ofNullable(values.get(key));
+  }
+
+  private Optional<Versioned<String>> loadVersioned(String key) {
+    return load(key).map(value -> Versioned.of(value, Optional.ofNullable(versions.get(key))));
+  }
+
+  private Optional<Long> readVersion(String key) {
+    versionReads.incrementAndGet();
+    return Optional.ofNullable(versions.get(key));
+  }
+
+  private void write(String key, String value) {
+    values.put(key, value);
+    versions.merge(key, 1L, Long::sum);
+  }
+
+  @Test
+  public void testServedFromMemoryWithinRevalidationPeriod() {
+    VersionedCache<String, String> cache = VersionedCache.create(
+        "test", 100, 60_000, this::loadVersioned, this::readVersion, value -> true, new MetricRegistry());
+
+    write("a", "1");
+    assertThat(cache.get("a")).contains("1");
+    write("a", "2");
+    assertThat(cache.get("a")).contains("1");
+    assertThat(loads.get()).isEqualTo(1);
+
+    cache.invalidate("a");
+    assertThat(cache.get("a")).contains("2");
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testReloadedOnlyWhenVersionChanged() {
+    VersionedCache<String, String> cache = VersionedCache.create(
+        "test", 100, 0, this::loadVersioned, this::readVersion, value -> true, new MetricRegistry());
+
+    write("a", "1");
+    assertThat(cache.get("a")).contains("1");
+    assertThat(versionReads.get()).isZero();
+    assertThat(cache.get("a")).contains("1");
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(versionReads.get()).isEqualTo(1);
+
+    // written by another instance
+    write("a", "2");
+    assertThat(cache.get("a")).contains("2");
+    assertThat(loads.get()).isEqualTo(2);
+
+    // deleted by another instance
+    values.remove("a");
+    versions.remove("a");
+    assertThat(cache.get("a")).isEmpty();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  public void testOnlyCacheableValuesAreCached() {
+    VersionedCache<String, String> cache = VersionedCache.create(
+        "test", 100, 60_000, this::loadVersioned, this::readVersion, "done"::equals, new MetricRegistry());
+
+    write("a", "running");
+    assertThat(cache.get("a")).contains("running");
+    write("a", "done");
+    assertThat(cache.get("a")).contains("done");
+    assertThat(cache.get("a")).contains("done");
+    assertThat(loads.get()).isEqualTo(2);
+    assertThat(cache.get("missing")).isEmpty();
+    assertThat(cache.size()).isEqualTo(1);
+    // the version is read with the value, never on its own for a miss
+    assertThat(versionReads.get()).isZero();
+  }
+
+  @Test
+  public void testImmutableAndMetrics() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    VersionedCache.immutable("test", 100, this::load, metricRegistry);
+    VersionedCache<String, String> cache = VersionedCache.immutable("test", 100, this::load, metricRegistry);
+
+    cache.put("a", "1");
+    assertThat(cache.get("a")).contains("1");
+    write("b", "2");
+    assertThat(cache.get("b")).contains("2");
+    assertThat(cache.get("b")).contains("2");
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(versionReads.get()).isZero();
+
+    assertThat(metricRegistry.getGauges().get(MetricRegistry.name(VersionedCache.class, "test", "hitRatio")).getValue())
+        .isEqualTo(2.0 / 3);
+    assertThat(metricRegistry.getGauges().get(MetricRegistry.name(VersionedCache.class, "test", "size")).getValue())
+        .isEqualTo(2L);
+  }
+}